@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import cardiag.serial.ReceiveBuffer;
+import cardiag.serial.ResponseView;
+import cardiag.serial.SerialUtils;
+
+/**
+ * Benchmarks of the decoding of responses, from the payload of the adapter to values. Inputs are
+ * responses recorded with an ELM327 clone and a Škoda Fabia 2010 (CAN 11/500).
+ * <p>
+ * Run with <code>mvn -P benchmark test-compile exec:exec</code>, the GC profiler reports
+ * the allocation rate (gc.alloc.rate.norm is in bytes per operation).
+ *
+ * @author David Matějček
+ */
+@State(Scope.Thread)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecoderBenchmark {
+
+  private static final String SINGLE = "41 0C 1A F8";
+  private static final String HEADERS = "7E8 06 41 00 BE 3F A8 13\r7E9 06 41 00 98 18 80 11";
+  private static final String MULTI_FRAME = "014\r0:490201314434\r1:47503030523535\r2:42313233343536";
+  private static final String BATCH = "00C\r0:410C1AF80D32\r1:05530457042F00";
+
+  private final ResponseParser parser = new ResponseParser(Protocol.ISO_15765_4_CAN_11_500, false);
+  private final ResponseParser headersParser = new ResponseParser(Protocol.ISO_15765_4_CAN_11_500, true);
+  private final String[] supportedPIDs = {"BE", "3F", "A8", "13"};
+  private final String[] dtc = {"01", "33"};
+  private ResponseView single;
+  private ResponseView headers;
+  private ResponseView multiFrame;
+  private ResponseView batch;
+  private boolean[] bits;
+  private boolean[] dtcA;
+  private boolean[] dtcB;
+  private Response rpm;
+  private Response load;
+  private Response coolant;
+  private Response distance;
+
+
+  @Setup
+  public void init() {
+    this.single = view(SINGLE);
+    this.headers = view(HEADERS);
+    this.multiFrame = view(MULTI_FRAME);
+    this.batch = view(BATCH);
+    this.bits = SerialUtils.convertHexToBooleanArray("83");
+    this.dtcA = SerialUtils.convertHexToBooleanArray(this.dtc[0]);
+    this.dtcB = SerialUtils.convertHexToBooleanArray(this.dtc[1]);
+    this.rpm = new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM, "1A", "F8");
+    this.load = new Response(false, Mode.CURRENT_DATA, PID.ENGINE_LOAD, "80");
+    this.coolant = new Response(false, Mode.CURRENT_DATA, PID.ENGINE_COOLANT_TEMPERATURE, "7B");
+    this.distance = new Response(false, Mode.CURRENT_DATA, PID.DISTANCE_FROM_CODES_CLEARED, "01", "F4");
+  }
+
+
+  private static ResponseView view(final String response) {
+    final ReceiveBuffer buffer = new ReceiveBuffer(256);
+    final byte[] bytes = (response + "\r\r>").getBytes(StandardCharsets.US_ASCII);
+    buffer.write(bytes, 0, bytes.length);
+    return buffer.nextResponse();
+  }
+
+
+  @Benchmark
+  public List<Message> parseSingle() {
+    return this.parser.parse(this.single);
+  }
+
+
+  @Benchmark
+  public List<Message> parseHeaders() {
+    return this.headersParser.parse(this.headers);
+  }
+
+
+  @Benchmark
+  public List<Message> parseMultiFrame() {
+    return this.parser.parse(this.multiFrame);
+  }
+
+
+  @Benchmark
+  public List<Message> parseBatch() {
+    return this.parser.parse(this.batch);
+  }
+
+
+  @Benchmark
+  public boolean[] convertHexToBooleanArray() {
+    return SerialUtils.convertHexToBooleanArray(this.supportedPIDs);
+  }
+
+
+  @Benchmark
+  public int toInteger() {
+    return SerialUtils.toInteger(this.bits);
+  }
+
+
+  @Benchmark
+  public Fault decodeFault() {
+    return Fault.decode(this.dtcA, this.dtcB);
+  }
+
+
+  @Benchmark
+  public Fault decodeFaultFromHex() {
+    return Fault.decode(SerialUtils.convertHexToBooleanArray(this.dtc[0]),
+        SerialUtils.convertHexToBooleanArray(this.dtc[1]));
+  }
+
+
+  @Benchmark
+  public PID parsePID() {
+    return PID.parseHex("0C", Mode.CURRENT_DATA);
+  }
+
+
+  @Benchmark
+  public void applyFormulas(final Blackhole blackhole) {
+    blackhole.consume(PID.ENGINE_RPM.getFormula().apply(this.rpm.bytes()));
+    blackhole.consume(PID.ENGINE_LOAD.getFormula().apply(this.load.bytes()));
+    blackhole.consume(PID.ENGINE_COOLANT_TEMPERATURE.getFormula().apply(this.coolant.bytes()));
+    blackhole.consume(PID.DISTANCE_FROM_CODES_CLEARED.getFormula().apply(this.distance.bytes()));
+  }
+
+
+  @Benchmark
+  public void decodeResponses(final Blackhole blackhole) {
+    blackhole.consume(PID.ENGINE_RPM.decode(this.rpm));
+    blackhole.consume(PID.ENGINE_LOAD.decode(this.load));
+    blackhole.consume(PID.ENGINE_COOLANT_TEMPERATURE.decode(this.coolant));
+    blackhole.consume(PID.DISTANCE_FROM_CODES_CLEARED.decode(this.distance));
+  }
+
+
+  @Benchmark
+  public void decodeValues(final Blackhole blackhole) {
+    blackhole.consume(PID.ENGINE_RPM.decodeValue(this.rpm));
+    blackhole.consume(PID.ENGINE_LOAD.decodeValue(this.load));
+    blackhole.consume(PID.ENGINE_COOLANT_TEMPERATURE.decodeValue(this.coolant));
+    blackhole.consume(PID.DISTANCE_FROM_CODES_CLEARED.decodeValue(this.distance));
+  }
+}
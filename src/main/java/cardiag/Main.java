@@ -4,18 +4,35 @@
 package cardiag;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cardiag.obd2.AdapterBenchmark;
 import cardiag.obd2.OBD2Standard;
+import cardiag.obd2.PID;
+import cardiag.obd2.PollingScheduler;
 import cardiag.obd2.Report;
+import cardiag.obd2.ResponseHandler;
+import cardiag.obd2.SupportedPIDs;
 import cardiag.output.ReportFileWriter;
+import cardiag.output.SessionHeader;
+import cardiag.output.SessionRecorder;
+import cardiag.output.SessionReplay;
+import cardiag.output.WatchStreamWriter;
+import cardiag.serial.CaptureReplay;
 import cardiag.serial.PortConfiguration;
+import cardiag.serial.SerialTransport;
 import cardiag.serial.SerialUtils;
+import cardiag.serial.WireCapture;
 import cardiag.user.Action;
 import cardiag.user.ConsoleCommunication;
 import cardiag.user.ConsoleWrapper;
@@ -29,6 +46,14 @@ import cardiag.user.UserCommunication;
 public class Main {
 
   private static final Logger LOG = LoggerFactory.getLogger(Main.class);
+  private static final long EXPECTED_ROUND_TRIP = 100L;
+  /** How long to wait for the end of the watch after the stop signal */
+  private static final long STOP_TIMEOUT = 5000L;
+  private static final String SESSION_SUFFIX = ".cds";
+  /** The system property with the file for the raw capture of the serial traffic */
+  private static final String CAPTURE_PROPERTY = "cardiag.capture";
+  /** The system property with the highest baud rate negotiated with AT BRD, off by default */
+  private static final String MAX_BAUD_RATE_PROPERTY = "cardiag.maxBaudRate";
 
 
   /**
@@ -40,23 +65,35 @@ public class Main {
   public static void main(final String... args) throws Exception {
     LOG.debug("main(args={})", (Object) args);
 
+    final Action action = parseAction(args);
+    if (action == Action.REPLAY) {
+      replay(args);
+      return;
+    }
+
     final ConsoleCommunication console = new ConsoleWrapper(System.console());
     final UserCommunication user = new UserCommunication(console);
 
     final List<String> portNames = SerialUtils.getPortNames();
     final PortConfiguration cfg = user.readPortConfiguration(portNames);
+    final String captureFile = System.getProperty(CAPTURE_PROPERTY);
+    if (captureFile != null) {
+      cfg.setCaptureFile(new File(captureFile));
+    }
+    cfg.setMaxBaudRate(Integer.getInteger(MAX_BAUD_RATE_PROPERTY, 0));
 
-    final Action action = parseAction(args);
     final File homeDir = parseHomeDir(args);
 
     final OBD2Standard obd2 = new OBD2Standard(cfg);
     try {
-      if (action == Action.WATCH) {
-        watch(obd2, homeDir, 1000);
+      if (action == Action.WATCH || action == Action.RECORD) {
+        watch(obd2, homeDir, parseDuration(args), action == Action.RECORD, () -> false);
       } else if (action == Action.REPORT) {
-        watch(obd2, homeDir, 1);
+        report(obd2, homeDir);
       } else if (action == Action.CLEAR_TROUBLE_CODES) {
         obd2.clearTroubleCodes();
+      } else if (action == Action.BENCHMARK) {
+        benchmark(obd2, console, user);
       }
     } finally {
       obd2.close();
@@ -64,19 +101,161 @@ public class Main {
   }
 
 
-  private static void watch(final OBD2Standard obd2, final File homeDir, final int iterations) {
-    LOG.info("watch(obd2={}, homeDir={}, iterations={})", obd2, homeDir, iterations);
+  /**
+   * Replays the recorded session or the raw capture through the simulated port and watches it
+   * like the vehicle. The text output is written next to the replayed file.
+   *
+   * @param args - replay, the file, the optional speed, 0 for the highest speed.
+   */
+  private static void replay(final String... args) throws IOException {
+    LOG.info("replay(args={})", (Object[]) args);
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Usage: replay <file> [speed]");
+    }
+    final File file = new File(args[1]).getAbsoluteFile();
+    final double speed = args.length < 3 ? 1.0 : Double.parseDouble(args[2]);
+    final PortConfiguration cfg = new PortConfiguration();
+    cfg.setPortName(file.getName());
+    cfg.setCommandTimeout(10000L);
+    cfg.setSpaces(false);
+    final SerialTransport transport;
+    final BooleanSupplier finished;
+    if (file.getName().endsWith(SESSION_SUFFIX)) {
+      final SessionReplay replay = new SessionReplay(file);
+      replay.setSpeed(speed);
+      transport = replay;
+      finished = replay::isFinished;
+    } else {
+      final CaptureReplay replay = new CaptureReplay(file.getName(), WireCapture.read(file));
+      replay.setSpeed(speed);
+      transport = replay;
+      finished = replay::isFinished;
+    }
+    final OBD2Standard obd2 = new OBD2Standard(cfg, transport);
+    try {
+      watch(obd2, file.getParentFile(), 0L, false, finished);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  private static void report(final OBD2Standard obd2, final File homeDir) {
+    LOG.info("report(obd2={}, homeDir={})", obd2, homeDir);
+    final ReportFileWriter writer = new ReportFileWriter(createOutputFile(homeDir, "report"));
+    final Report report = obd2.createReport();
+    writer.write(report);
+  }
+
+
+  private static void benchmark(final OBD2Standard obd2, final ConsoleCommunication console,
+      final UserCommunication user) {
+    LOG.info("benchmark(obd2={})", obd2);
+    final AdapterBenchmark benchmark = new AdapterBenchmark(obd2);
+    for (final AdapterBenchmark.Result result : benchmark.run()) {
+      LOG.info("{}", result);
+      console.format("%s\n", result);
+    }
+    console.format("Best: %s\n", benchmark.getBest());
+    if (benchmark.getBestTiming() < 0) {
+      console.format("No adaptive timing mode passed without failures.\n");
+      return;
+    }
+    console.format("Best adaptive timing: AT%d\n", benchmark.getBestTiming());
+    if (user.confirm("Save the adaptive timing to the vehicle profile?")) {
+      benchmark.save();
+    }
+  }
+
+
+  /**
+   * Polls watched PIDs and streams their values to the file until the duration passes or the
+   * program is stopped, ie. by Ctrl+C.
+   *
+   * @param duration - duration in millis, 0 to watch until stopped.
+   * @param binary - true to record raw responses to the binary session, false to write values to
+   *          the text file.
+   * @param finished - true stops the watch, ie. at the end of the replay.
+   */
+  private static void watch(final OBD2Standard obd2, final File homeDir, final long duration,
+      final boolean binary, final BooleanSupplier finished) {
+    LOG.info("watch(obd2={}, homeDir={}, duration={}, binary={})", obd2, homeDir, duration, binary);
+    final SupportedPIDs supported = obd2.getSupportedPIDs();
+    final PollingScheduler scheduler = new PollingScheduler(obd2, EXPECTED_ROUND_TRIP);
+    final List<PID> watched = new ArrayList<>();
+    setRate(scheduler, supported, watched, PID.ENGINE_LOAD, 10);
+    setRate(scheduler, supported, watched, PID.FUEL_RATE, 5);
+    setRate(scheduler, supported, watched, PID.FUEL_TRIM_PERCENT_SHORT_BANK1, 2);
+    setRate(scheduler, supported, watched, PID.INTAKE_AIR_TEMPERATURE, 1);
+    setRate(scheduler, supported, watched, PID.ENGINE_COOLANT_TEMPERATURE, 0.2);
+    setRate(scheduler, supported, watched, PID.ENGINE_OIL_TEMPERATURE, 0.2);
+    setRate(scheduler, supported, watched, PID.FUEL_LEVEL_INPUT, 0.1);
+    setRate(scheduler, supported, watched, PID.DISTANCE_FROM_CODES_CLEARED, 0);
+    setRate(scheduler, supported, watched, PID.DISTANCE_WITH_MALFUNCTION, 0);
+
+    final AtomicBoolean stopped = new AtomicBoolean();
+    final Thread watchThread = Thread.currentThread();
+    final Thread stopHook = new Thread(() -> {
+      LOG.info("Stopping the watch.");
+      stopped.set(true);
+      try {
+        watchThread.join(STOP_TIMEOUT);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }, "cardiag-watch-stop");
+    Runtime.getRuntime().addShutdownHook(stopHook);
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+    final WatchStreamWriter writer = binary ? null : new WatchStreamWriter(createOutputFile(homeDir, "watch"));
+    final SessionRecorder recorder = binary ? new SessionRecorder(createOutputFile(homeDir, "session", SESSION_SUFFIX),
+        new SessionHeader(obd2.getProfile().getVin(), obd2.getProtocol(), System.currentTimeMillis(), watched))
+        : null;
+    // responses are written directly from the reused instance, no map and no copies
+    final ResponseHandler handler = binary ? recorder::record
+        : (pid, response) -> writer.write(System.currentTimeMillis(), pid, response);
+    try {
+      while (!stopped.get() && !finished.getAsBoolean() && (duration <= 0 || deadline - System.nanoTime() > 0)) {
+        scheduler.poll(handler);
+      }
+    } finally {
+      if (binary) {
+        recorder.close();
+      } else {
+        writer.close();
+      }
+      try {
+        Runtime.getRuntime().removeShutdownHook(stopHook);
+      } catch (final IllegalStateException e) {
+        LOG.trace("The JVM is shutting down.");
+      }
+      LOG.info("Negative cache: {}", obd2.getNegativeCache());
+      LOG.info("Circuit breaker: {}", obd2.getCircuitBreaker());
+    }
+  }
+
+
+  private static void setRate(final PollingScheduler scheduler, final SupportedPIDs supported,
+      final List<PID> watched, final PID pid, final double hz) {
+    if (supported.isSupported(pid)) {
+      scheduler.setRate(pid, hz);
+      watched.add(pid);
+    } else {
+      LOG.info("Skipping the PID {}, the vehicle doesn't support it.", pid);
+    }
+  }
+
+
+  private static File createOutputFile(final File homeDir, final String prefix) {
+    return createOutputFile(homeDir, prefix, ".txt");
+  }
+
+
+  private static File createOutputFile(final File homeDir, final String prefix, final String suffix) {
     final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HHmmss.SSS");
     if (!homeDir.exists()) {
       homeDir.mkdirs();
     }
-    final File file = new File(homeDir, "report" + sdf.format(new Date()) + ".txt");
-    final ReportFileWriter writer = new ReportFileWriter(file);
-    int i = iterations;
-    while (i-- > 0) {
-      final Report report = obd2.createReport();
-      writer.write(report);
-    }
+    return new File(homeDir, prefix + sdf.format(new Date()) + suffix);
   }
 
 
@@ -90,6 +269,16 @@ public class Main {
   }
 
 
+  private static long parseDuration(final String... args) {
+    LOG.trace("parseDuration(args={})", (Object[]) args);
+
+    if (args == null || args.length < 3) {
+      return 0L;
+    }
+    return TimeUnit.SECONDS.toMillis(Long.parseLong(args[2]));
+  }
+
+
   private static File parseHomeDir(final String... args) {
     LOG.trace("parseHomeDir(args={})", (Object[]) args);
 
@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.serial.LatencyHistogram;
+import cardiag.serial.PortCommunicationException;
+
+/**
+ * Measures the throughput of the connected adapter with a fixed workload: the loop of single-PID
+ * requests, multi-PID requests, repeating of the last request with the carriage return and the
+ * single-PID loop with each adaptive timing mode of the ELM327. The best timing mode can be
+ * stored to the {@link VehicleProfile}, then it is used with each next connection.
+ *
+ * @author David Matějček
+ */
+public class AdapterBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdapterBenchmark.class);
+  /** Default count of requests of each scenario */
+  public static final int DEFAULT_ITERATIONS = 50;
+  /** The default adaptive timing of the ELM327 */
+  private static final int DEFAULT_TIMING = 1;
+  private static final int[] TIMING_MODES = {0, 1, 2};
+  private static final List<PID> WORKLOAD_PIDS = Collections.unmodifiableList(Arrays.asList(PID.ENGINE_RPM,
+      PID.VEHICLE_SPEED, PID.ENGINE_LOAD, PID.ENGINE_COOLANT_TEMPERATURE, PID.INTAKE_AIR_TEMPERATURE,
+      PID.THROTTLE_POSITION));
+
+  private final OBD2Standard obd2;
+  private int iterations = DEFAULT_ITERATIONS;
+  private final List<Result> results = new ArrayList<>();
+  private int bestTiming = -1;
+
+
+  /**
+   * @param obd2 - connected adapter.
+   */
+  public AdapterBenchmark(final OBD2Standard obd2) {
+    this.obd2 = obd2;
+  }
+
+
+  /**
+   * @param iterations - count of requests of each scenario, default is {@value #DEFAULT_ITERATIONS}.
+   */
+  public void setIterations(final int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("Invalid count of iterations: " + iterations);
+    }
+    this.iterations = iterations;
+  }
+
+
+  /**
+   * Runs all scenarios. The adapter is left with the best adaptive timing mode.
+   *
+   * @return results of scenarios in the order of execution.
+   */
+  public List<Result> run() {
+    LOG.info("run(), iterations: {}", this.iterations);
+    this.results.clear();
+    List<PID> pids = this.obd2.getSupportedPIDs().filter(WORKLOAD_PIDS);
+    if (pids.isEmpty()) {
+      // every vehicle responds to it
+      pids = Collections.singletonList(PID.PIDS_SUPPORTED);
+    }
+    final PID pid = pids.get(0);
+    this.results.add(runSingle("single " + pid.hex(), -1, pid));
+    if (this.obd2.getProtocol().isCan() && pids.size() > 1) {
+      this.results.add(runBatch(pids));
+    }
+    this.results.add(runRepeat(pid));
+    Result best = null;
+    for (final int timing : TIMING_MODES) {
+      try {
+        this.obd2.setAdaptiveTiming(timing);
+      } catch (final PortCommunicationException e) {
+        LOG.warn("The adapter doesn't support the adaptive timing {}: {}", timing, e.getMessage());
+        continue;
+      }
+      final Result result = runSingle("timing AT" + timing, timing, pid);
+      this.results.add(result);
+      if (result.getFailures() == 0 && (best == null || result.getPidsPerSecond() > best.getPidsPerSecond())) {
+        best = result;
+      }
+    }
+    this.bestTiming = best == null ? -1 : best.getTiming();
+    try {
+      this.obd2.setAdaptiveTiming(this.bestTiming < 0 ? DEFAULT_TIMING : this.bestTiming);
+    } catch (final PortCommunicationException e) {
+      LOG.warn("Cannot restore the adaptive timing: {}", e.getMessage());
+    }
+    return Collections.unmodifiableList(this.results);
+  }
+
+
+  private Result runSingle(final String name, final int timing, final PID pid) {
+    final Result result = new Result(name, timing);
+    for (int i = 0; i < this.iterations; i++) {
+      final long start = System.nanoTime();
+      final Map<PID, Response> responses = this.obd2.askBatch(Mode.CURRENT_DATA, Collections.singletonList(pid));
+      result.measured(System.nanoTime() - start, 1, responses.get(pid).isError() ? 1 : 0);
+    }
+    return result;
+  }
+
+
+  private Result runBatch(final List<PID> pids) {
+    final Result result = new Result("batch of " + pids.size(), -1);
+    for (int i = 0; i < this.iterations; i++) {
+      final long start = System.nanoTime();
+      final Map<PID, Response> responses = this.obd2.askBatch(Mode.CURRENT_DATA, pids);
+      int failures = 0;
+      for (final Response response : responses.values()) {
+        if (response.isError()) {
+          failures++;
+        }
+      }
+      result.measured(System.nanoTime() - start, pids.size(), failures);
+    }
+    return result;
+  }
+
+
+  private Result runRepeat(final PID pid) {
+    final Result result = new Result("repeat " + pid.hex(), -1);
+    this.obd2.askBatch(Mode.CURRENT_DATA, Collections.singletonList(pid));
+    for (int i = 0; i < this.iterations; i++) {
+      final long start = System.nanoTime();
+      int failures;
+      try {
+        failures = this.obd2.askAgain(Mode.CURRENT_DATA, pid).get(0).isError() ? 1 : 0;
+      } catch (final PortCommunicationException e) {
+        LOG.warn("The repeated request failed: {}", e.getMessage());
+        failures = 1;
+      }
+      result.measured(System.nanoTime() - start, 1, failures);
+    }
+    return result;
+  }
+
+
+  /**
+   * @return the adaptive timing mode with the highest throughput without failures, -1 if the
+   *         benchmark did not run or all modes failed.
+   */
+  public int getBestTiming() {
+    return this.bestTiming;
+  }
+
+
+  /**
+   * @return the fastest scenario without failures or null.
+   */
+  public Result getBest() {
+    Result best = null;
+    for (final Result result : this.results) {
+      if (result.getFailures() == 0 && (best == null || result.getPidsPerSecond() > best.getPidsPerSecond())) {
+        best = result;
+      }
+    }
+    return best;
+  }
+
+
+  /**
+   * Stores the best adaptive timing to the vehicle profile.
+   *
+   * @return false if there was nothing to save.
+   */
+  public boolean save() {
+    if (this.bestTiming < 0) {
+      return false;
+    }
+    LOG.info("Saving the adaptive timing {} to the profile {}", this.bestTiming, this.obd2.getProfile());
+    this.obd2.getProfile().setAdaptiveTiming(this.bestTiming);
+    return true;
+  }
+
+
+  /**
+   * Measured values of one scenario.
+   */
+  public static final class Result {
+
+    private final String name;
+    private final int timing;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private int requests;
+    private int pids;
+    private int failures;
+    private long duration;
+
+
+    Result(final String name, final int timing) {
+      this.name = name;
+      this.timing = timing;
+    }
+
+
+    void measured(final long nanos, final int requestedPIDs, final int failedPIDs) {
+      this.latencies.record(nanos);
+      this.duration += nanos;
+      this.requests++;
+      this.pids += requestedPIDs;
+      this.failures += failedPIDs;
+    }
+
+
+    /**
+     * @return description of the scenario.
+     */
+    public String getName() {
+      return name;
+    }
+
+
+    /**
+     * @return the adaptive timing mode used by the scenario, -1 if it was not set.
+     */
+    public int getTiming() {
+      return timing;
+    }
+
+
+    /**
+     * @return count of requests.
+     */
+    public int getRequests() {
+      return requests;
+    }
+
+
+    /**
+     * @return count of PIDs without a valid response.
+     */
+    public int getFailures() {
+      return failures;
+    }
+
+
+    /**
+     * @return requests per second.
+     */
+    public double getRequestsPerSecond() {
+      return this.duration == 0 ? 0 : this.requests * (double) TimeUnit.SECONDS.toNanos(1) / this.duration;
+    }
+
+
+    /**
+     * @return requested PIDs per second.
+     */
+    public double getPidsPerSecond() {
+      return this.duration == 0 ? 0 : this.pids * (double) TimeUnit.SECONDS.toNanos(1) / this.duration;
+    }
+
+
+    /**
+     * @param percentile - 0 - 1
+     * @return the percentile of latencies in microseconds.
+     */
+    public long getPercentile(final double percentile) {
+      return this.latencies.getPercentile(percentile);
+    }
+
+
+    @Override
+    public String toString() {
+      return String.format("%-16s %8.1f req/s %8.1f PIDs/s  p50 %7d us  p99 %7d us  failures %d", this.name,
+          getRequestsPerSecond(), getPidsPerSecond(), getPercentile(0.5), getPercentile(0.99), this.failures);
+    }
+  }
+}
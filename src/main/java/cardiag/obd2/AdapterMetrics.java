@@ -0,0 +1,288 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.serial.LatencyHistogram;
+import cardiag.serial.PortStatistics;
+
+/**
+ * Latencies of requests per mode and PID and counters of failed responses. Together with the
+ * {@link PortStatistics} they are registered as MBeans in the domain {@value #JMX_DOMAIN} and
+ * periodically logged as a summary line.
+ * <p>
+ * Updates are lock-free; only the first measurement of a PID allocates its histogram.
+ *
+ * @author David Matějček
+ */
+public class AdapterMetrics implements AdapterMetricsMBean {
+
+  /** Domain of registered MBeans */
+  public static final String JMX_DOMAIN = "cardiag";
+
+  private static final Logger LOG = LoggerFactory.getLogger(AdapterMetrics.class);
+
+  private final PortStatistics portStatistics;
+  private final NegativeCache negativeCache;
+  private final CircuitBreaker circuitBreaker;
+  private final LatencyHistogram[][] latencies = new LatencyHistogram[16][256];
+  private final LatencyHistogram[] batchLatencies = new LatencyHistogram[16];
+  private final AtomicLong errorResponses = new AtomicLong();
+  private final AtomicLong noDataResponses = new AtomicLong();
+  private final List<ObjectName> registered = new ArrayList<>(2);
+  private ScheduledExecutorService summaryExecutor;
+
+
+  /**
+   * @param portStatistics - statistics of the port used by the adapter.
+   * @param negativeCache
+   * @param circuitBreaker
+   */
+  public AdapterMetrics(final PortStatistics portStatistics, final NegativeCache negativeCache,
+      final CircuitBreaker circuitBreaker) {
+    this.portStatistics = portStatistics;
+    this.negativeCache = negativeCache;
+    this.circuitBreaker = circuitBreaker;
+  }
+
+
+  /**
+   * Records the duration of the request of the PID.
+   *
+   * @param mode
+   * @param pid
+   * @param nanos - duration of the request.
+   */
+  public void measured(final Mode mode, final PID pid, final long nanos) {
+    LatencyHistogram histogram = this.latencies[mode.getCode()][pid.getCode()];
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      this.latencies[mode.getCode()][pid.getCode()] = histogram;
+    }
+    histogram.record(nanos);
+  }
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return the histogram of latencies of the PID, null if it was not measured yet.
+   */
+  public LatencyHistogram getLatency(final Mode mode, final PID pid) {
+    return this.latencies[mode.getCode()][pid.getCode()];
+  }
+
+
+  /**
+   * Records the duration of the request of several PIDs, it is not a latency of any of them.
+   *
+   * @param mode
+   * @param nanos - duration of the request.
+   */
+  public void measuredBatch(final Mode mode, final long nanos) {
+    LatencyHistogram histogram = this.batchLatencies[mode.getCode()];
+    if (histogram == null) {
+      histogram = new LatencyHistogram();
+      this.batchLatencies[mode.getCode()] = histogram;
+    }
+    histogram.record(nanos);
+  }
+
+
+  /**
+   * @param mode
+   * @return the histogram of latencies of multi-PID requests, null if it was not measured yet.
+   */
+  public LatencyHistogram getBatchLatency(final Mode mode) {
+    return this.batchLatencies[mode.getCode()];
+  }
+
+
+  /**
+   * Counts a negative response 7F.
+   */
+  void errorResponse() {
+    this.errorResponses.incrementAndGet();
+  }
+
+
+  /**
+   * Counts a NO DATA response.
+   */
+  void noDataResponse() {
+    this.noDataResponses.incrementAndGet();
+  }
+
+
+  /**
+   * Forgets latencies, ie. when another vehicle was connected. Counters are kept.
+   */
+  public void clearLatencies() {
+    for (final LatencyHistogram[] modeLatencies : this.latencies) {
+      Arrays.fill(modeLatencies, null);
+    }
+    Arrays.fill(this.batchLatencies, null);
+  }
+
+
+  /**
+   * @return statistics of the port used by the adapter.
+   */
+  public PortStatistics getPortStatistics() {
+    return this.portStatistics;
+  }
+
+
+  @Override
+  public long getErrorResponses() {
+    return this.errorResponses.get();
+  }
+
+
+  @Override
+  public long getNoDataResponses() {
+    return this.noDataResponses.get();
+  }
+
+
+  @Override
+  public long getNegativeCacheHits() {
+    return this.negativeCache.getHits();
+  }
+
+
+  @Override
+  public long getCircuitBreakerTrips() {
+    return this.circuitBreaker.getTrips();
+  }
+
+
+  @Override
+  public long getCircuitBreakerRejected() {
+    return this.circuitBreaker.getRejected();
+  }
+
+
+  @Override
+  public String[] getLatencies() {
+    final List<String> lines = new ArrayList<>();
+    for (final Mode mode : Mode.values()) {
+      for (final PID pid : PID.values(mode)) {
+        final LatencyHistogram histogram = getLatency(mode, pid);
+        if (histogram != null) {
+          lines.add(toLine(mode.hex() + ' ' + pid.hex(), histogram));
+        }
+      }
+      final LatencyHistogram batch = getBatchLatency(mode);
+      if (batch != null) {
+        lines.add(toLine(mode.hex() + " batch", batch));
+      }
+    }
+    return lines.toArray(new String[lines.size()]);
+  }
+
+
+  private static String toLine(final String name, final LatencyHistogram histogram) {
+    return name + ": count=" + histogram.getCount() + ", p50=" + histogram.getPercentile(0.5) + " us, p99="
+        + histogram.getPercentile(0.99) + " us";
+  }
+
+
+  /**
+   * Registers this and the port statistics to the platform MBean server. Failures are only
+   * logged.
+   *
+   * @param name - name of the adapter, ie. the port name.
+   */
+  public synchronized void register(final String name) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      final ObjectName metricsName = toObjectName("AdapterMetrics", name);
+      server.registerMBean(this, metricsName);
+      this.registered.add(metricsName);
+      final ObjectName portName = toObjectName("PortStatistics", name);
+      server.registerMBean(this.portStatistics, portName);
+      this.registered.add(portName);
+    } catch (final JMException e) {
+      LOG.warn("Cannot register MBeans of the adapter {}: {}", name, e.getMessage());
+    }
+  }
+
+
+  /**
+   * @param type
+   * @param name
+   * @return the name of the MBean of the type for the adapter.
+   * @throws JMException - invalid name
+   */
+  static ObjectName toObjectName(final String type, final String name) throws JMException {
+    return new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(String.valueOf(name)));
+  }
+
+
+  /**
+   * Starts logging of the summary line.
+   *
+   * @param periodMillis - period of logging, 0 disables it.
+   */
+  public synchronized void scheduleSummary(final long periodMillis) {
+    if (periodMillis <= 0 || this.summaryExecutor != null) {
+      return;
+    }
+    this.summaryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "cardiag-metrics");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.summaryExecutor.scheduleAtFixedRate(() -> LOG.info("{}", this), periodMillis, periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Stops logging of the summary line and unregisters MBeans.
+   */
+  public synchronized void close() {
+    if (this.summaryExecutor != null) {
+      this.summaryExecutor.shutdownNow();
+      this.summaryExecutor = null;
+    }
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    for (final ObjectName name : this.registered) {
+      try {
+        server.unregisterMBean(name);
+      } catch (final JMException e) {
+        LOG.warn("Cannot unregister the MBean {}: {}", name, e.getMessage());
+      }
+    }
+    this.registered.clear();
+  }
+
+
+  @Override
+  public String toString() {
+    final LatencyHistogram roundTrips = this.portStatistics.getRoundTrips();
+    return "AdapterMetrics[commands=" + this.portStatistics.getCommands() + ", roundTrip p50="
+        + roundTrips.getPercentile(0.5) + " us, p99=" + roundTrips.getPercentile(0.99) + " us, bytesIn="
+        + this.portStatistics.getBytesIn() + ", bytesOut=" + this.portStatistics.getBytesOut() + ", timeouts="
+        + this.portStatistics.getTimeouts() + ", searching=" + this.portStatistics.getSearching()
+        + ", errorResponses=" + getErrorResponses() + ", noData=" + getNoDataResponses() + ", cacheHits="
+        + getNegativeCacheHits() + ", breakerTrips=" + getCircuitBreakerTrips() + "]";
+  }
+}
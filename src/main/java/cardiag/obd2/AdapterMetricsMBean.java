@@ -0,0 +1,47 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+/**
+ * JMX view of the {@link AdapterMetrics}.
+ *
+ * @author David Matějček
+ */
+public interface AdapterMetricsMBean {
+
+  /**
+   * @return count of negative responses 7F.
+   */
+  long getErrorResponses();
+
+
+  /**
+   * @return count of NO DATA responses.
+   */
+  long getNoDataResponses();
+
+
+  /**
+   * @return count of requests skipped thanks to the {@link NegativeCache}.
+   */
+  long getNegativeCacheHits();
+
+
+  /**
+   * @return count of trips of the {@link CircuitBreaker}.
+   */
+  long getCircuitBreakerTrips();
+
+
+  /**
+   * @return count of requests rejected by the {@link CircuitBreaker}.
+   */
+  long getCircuitBreakerRejected();
+
+
+  /**
+   * @return latencies of measured PIDs, one line per mode and PID.
+   */
+  String[] getLatencies();
+}
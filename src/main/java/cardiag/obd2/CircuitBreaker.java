@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops requests of a PID after repeated timeouts. When the breaker of the PID is open, the PID
+ * is not requested until the open time passes; then one request is allowed and the next timeout
+ * opens the breaker again, while a response closes it.
+ * <p>
+ * Only PIDs cacheable by the {@link NegativeCache} are guarded.
+ *
+ * @author David Matějček
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+  /** Default count of consecutive timeouts opening the breaker */
+  public static final int DEFAULT_THRESHOLD = 3;
+  /** Default time of the open breaker */
+  public static final long DEFAULT_OPEN_TIME = TimeUnit.MINUTES.toMillis(1);
+
+  private final byte[][] timeouts = new byte[16][256];
+  private final long[][] closeTimes = new long[16][256];
+  private final AtomicLong trips = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private int threshold = DEFAULT_THRESHOLD;
+  private long openTime = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_TIME);
+
+
+  /**
+   * @param newThreshold - count of consecutive timeouts opening the breaker, at least 1.
+   * @param openMillis - time of the open breaker in millis.
+   */
+  public void setThreshold(final int newThreshold, final long openMillis) {
+    if (newThreshold < 1 || newThreshold > Byte.MAX_VALUE || openMillis < 0) {
+      throw new IllegalArgumentException("Invalid threshold: " + newThreshold + ", open time: " + openMillis);
+    }
+    this.threshold = newThreshold;
+    this.openTime = TimeUnit.MILLISECONDS.toNanos(openMillis);
+  }
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return true if the PID may be requested.
+   */
+  public boolean allows(final Mode mode, final PID pid) {
+    return allows(mode, pid, System.nanoTime());
+  }
+
+
+  boolean allows(final Mode mode, final PID pid, final long now) {
+    if (!isOpen(mode, pid, now)) {
+      return true;
+    }
+    this.rejected.incrementAndGet();
+    return false;
+  }
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return true if the breaker of the PID is open now.
+   */
+  public boolean isOpen(final Mode mode, final PID pid) {
+    return isOpen(mode, pid, System.nanoTime());
+  }
+
+
+  private boolean isOpen(final Mode mode, final PID pid, final long now) {
+    return this.timeouts[mode.getCode()][pid.getCode()] >= this.threshold
+        && now - this.closeTimes[mode.getCode()][pid.getCode()] < 0;
+  }
+
+
+  /**
+   * Counts the timeout and opens the breaker after the threshold.
+   *
+   * @param mode
+   * @param pid
+   */
+  public void timedOut(final Mode mode, final PID pid) {
+    timedOut(mode, pid, System.nanoTime());
+  }
+
+
+  void timedOut(final Mode mode, final PID pid, final long now) {
+    if (!NegativeCache.isCacheable(mode, pid)) {
+      return;
+    }
+    final int count = Math.min(Byte.MAX_VALUE, this.timeouts[mode.getCode()][pid.getCode()] + 1);
+    this.timeouts[mode.getCode()][pid.getCode()] = (byte) count;
+    if (count >= this.threshold) {
+      LOG.warn("The PID {} timed out {} times, it will not be requested for {} ms.", pid, count,
+          TimeUnit.NANOSECONDS.toMillis(this.openTime));
+      this.closeTimes[mode.getCode()][pid.getCode()] = now + this.openTime;
+      this.trips.incrementAndGet();
+    }
+  }
+
+
+  /**
+   * Closes the breaker of the PID.
+   *
+   * @param mode
+   * @param pid
+   */
+  public void succeeded(final Mode mode, final PID pid) {
+    this.timeouts[mode.getCode()][pid.getCode()] = 0;
+  }
+
+
+  /**
+   * @return count of openings of breakers.
+   */
+  public long getTrips() {
+    return this.trips.get();
+  }
+
+
+  /**
+   * @return count of requests rejected by open breakers.
+   */
+  public long getRejected() {
+    return this.rejected.get();
+  }
+
+
+  /**
+   * Closes all breakers, ie. when another vehicle was connected. Counters are kept.
+   */
+  public void clear() {
+    for (final byte[] modeTimeouts : this.timeouts) {
+      Arrays.fill(modeTimeouts, (byte) 0);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker[trips=" + getTrips() + ", rejected=" + getRejected() + "]";
+  }
+}
@@ -0,0 +1,177 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares one {@link OBD2Standard} between several components. Commands are queued and executed
+ * strictly in the order of submission by a single I/O thread, results are returned as
+ * {@link CompletableFuture}s, so callers don't block each other.
+ * <p>
+ * The {@link OBD2Standard} must not be used directly while the pipeline is open.
+ *
+ * @author David Matějček
+ */
+public class CommandPipeline implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CommandPipeline.class);
+  private static final long CLOSE_TIMEOUT = 10000L;
+
+  private final OBD2Standard obd2;
+  private final BlockingQueue<Command<?>> queue = new LinkedBlockingQueue<>();
+  /** Commands are queued only before the pipeline is closed */
+  private final Object lock = new Object();
+  private final Thread thread;
+  private volatile boolean closed;
+
+
+  /**
+   * Starts the I/O thread.
+   *
+   * @param obd2 - the only user of the port since now.
+   */
+  public CommandPipeline(final OBD2Standard obd2) {
+    this.obd2 = obd2;
+    this.thread = new Thread(this::run, "obd2-io");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+
+  /**
+   * Queues a command.
+   *
+   * @param command - a function executed in the I/O thread.
+   * @return a future completed with the result of the function or exceptionally with the
+   *         throwable thrown by the function or if the pipeline is closed.
+   */
+  public <T> CompletableFuture<T> submit(final Function<OBD2Standard, T> command) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    synchronized (this.lock) {
+      if (!this.closed) {
+        this.queue.add(new Command<>(command, future));
+        return future;
+      }
+    }
+    future.completeExceptionally(new IllegalStateException("The pipeline is closed."));
+    return future;
+  }
+
+
+  /**
+   * Queues a request and returns the first response.
+   *
+   * @param mode
+   * @param pid
+   * @param hexParams
+   * @return a future completed with the response.
+   */
+  public CompletableFuture<Response> submit(final Mode mode, final PID pid, final String... hexParams) {
+    return submit(obd -> obd.askOneLine(mode, pid, hexParams));
+  }
+
+
+  /**
+   * @return count of commands waiting for the I/O thread.
+   */
+  public int getQueueDepth() {
+    return this.queue.size();
+  }
+
+
+  private void run() {
+    LOG.debug("I/O thread started.");
+    try {
+      while (!this.closed || !this.queue.isEmpty()) {
+        final Command<?> command;
+        try {
+          command = this.queue.poll(100L, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+          LOG.warn("Interrupted.");
+          break;
+        }
+        if (command != null) {
+          command.execute(this.obd2);
+        }
+      }
+    } finally {
+      cancelQueued();
+      LOG.debug("I/O thread finished.");
+    }
+  }
+
+
+  private void cancelQueued() {
+    final List<Command<?>> commands = new ArrayList<>();
+    this.queue.drainTo(commands);
+    for (final Command<?> command : commands) {
+      command.future.completeExceptionally(new IllegalStateException("The pipeline was closed."));
+    }
+  }
+
+
+  /**
+   * Rejects new commands, waits until queued commands are executed and stops the I/O thread. The
+   * {@link OBD2Standard} is not closed.
+   */
+  @Override
+  public void close() {
+    LOG.debug("close()");
+    synchronized (this.lock) {
+      this.closed = true;
+    }
+    try {
+      this.thread.join(CLOSE_TIMEOUT);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.thread.isAlive()) {
+      LOG.warn("The I/O thread did not finish in {} ms, {} commands are waiting.", CLOSE_TIMEOUT,
+          getQueueDepth());
+      this.thread.interrupt();
+    }
+  }
+
+
+  private static final class Command<T> {
+
+    private final Function<OBD2Standard, T> function;
+    private final CompletableFuture<T> future;
+
+
+    Command(final Function<OBD2Standard, T> function, final CompletableFuture<T> future) {
+      this.function = function;
+      this.future = future;
+    }
+
+
+    void execute(final OBD2Standard obd2) {
+      if (this.future.isDone()) {
+        // cancelled by the caller
+        return;
+      }
+      try {
+        this.future.complete(this.function.apply(obd2));
+      } catch (final RuntimeException e) {
+        LOG.debug("Command failed.", e);
+        this.future.completeExceptionally(e);
+      } catch (final Throwable e) {
+        // the I/O thread must survive to execute other commands
+        LOG.error("Command failed.", e);
+        this.future.completeExceptionally(e);
+      }
+    }
+  }
+}
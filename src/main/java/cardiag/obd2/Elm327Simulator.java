@@ -0,0 +1,756 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.serial.PortCommunication;
+import cardiag.serial.SerialTransport;
+
+/**
+ * In-process simulator of the ELM327 connected to a vehicle, used instead of the serial port for
+ * tests and measurements without the hardware.
+ * <p>
+ * The simulator supports AT commands used by this application, echo, line feeds, spaces and
+ * headers, the protocol search, multi-PID requests and the count of expected responses. The
+ * vehicle answers mode 01 PIDs set by {@link #setPid(int, int...)}, supported PIDs are computed
+ * from them. PIDs set by {@link #setTransmissionPid(int, int...)} are answered by the second unit,
+ * so a multi-PID request may get two messages; the count of expected responses stops the ELM327
+ * after that count of messages. Responses of the vehicle are delayed by the latency, NO DATA by the ELM327 timeout,
+ * and then all bytes are paced by the baud rate. Responses to chosen requests can be scripted,
+ * ie. NO DATA, 7F negative responses or no response at all.
+ *
+ * @author David Matějček
+ */
+public class Elm327Simulator implements SerialTransport {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Elm327Simulator.class);
+
+  /** Scripted response: the vehicle doesn't respond and the ELM327 waits until it is interrupted. */
+  public static final String NO_RESPONSE = "<no response>";
+  /** Identification of the simulated device */
+  public static final String IDENTIFICATION = "ELM327 v1.5";
+  private static final String NO_DATA = "NO DATA";
+  private static final String OK = "OK";
+  private static final String UNKNOWN = "?";
+  private static final int CAN_FRAME_DATA = 7;
+  private static final int[][] ISO_HEADERS = {{0x48, 0x6B, 0x10}, {0x48, 0x6B, 0x18}};
+  private static final String[] CAN_11_HEADERS = {"7E8", "7E9"};
+  private static final String[] CAN_29_HEADERS = {"18DAF110", "18DAF118"};
+  private static final int ENGINE = 0;
+  private static final int TRANSMISSION = 1;
+  private static final int OUTPUT_CAPACITY = 1 << 16;
+
+  private final String name;
+  private final Object lock = new Object();
+  private final BlockingQueue<String> commands = new LinkedBlockingQueue<>();
+  private final StringBuilder input = new StringBuilder();
+  private final byte[] output = new byte[OUTPUT_CAPACITY];
+  private final int[][] pids = new int[256][];
+  private final int[][] transmissionPids = new int[256][];
+  private final Map<String, String> scripts = new HashMap<>();
+  private final AtomicLong requests = new AtomicLong();
+  private int outputHead;
+  private int outputTail;
+  private Thread worker;
+  private Listener listener;
+  private boolean busy;
+  private boolean interrupted;
+  private String lastCommand;
+
+  // settings of the device
+  private boolean echo;
+  private boolean lineFeeds;
+  private boolean spaces;
+  private boolean headers;
+  private int protocolCode;
+  private boolean connected;
+  private int baudRate = PortCommunication.DEFAULT_BAUD_RATE;
+
+  // the simulated vehicle and the link
+  private Protocol vehicleProtocol = Protocol.ISO_15765_4_CAN_11_500;
+  private String vin = "TMBJJ7NE8G0123456";
+  private long latency = TimeUnit.MILLISECONDS.toNanos(20);
+  private long noDataDelay = TimeUnit.MILLISECONDS.toNanos(200);
+  private long searchTime = TimeUnit.MILLISECONDS.toNanos(1000);
+  private boolean pacing = true;
+
+
+  /**
+   * Creates the simulator of a CAN vehicle with some current data.
+   *
+   * @param name - name of the simulated port
+   */
+  public Elm327Simulator(final String name) {
+    this.name = name;
+    resetSettings();
+    setPid(0x01, 0x00, 0x07, 0xE5, 0x00);
+    setPid(0x03, 0x02, 0x00);
+    setPid(0x04, 0x80);
+    setPid(0x05, 0x7B);
+    setPid(0x06, 0x80);
+    setPid(0x07, 0x82);
+    setPid(0x0C, 0x1A, 0xF8);
+    setPid(0x0D, 0x32);
+    setPid(0x0F, 0x41);
+    setPid(0x11, 0x30);
+    setPid(0x1C, 0x06);
+    setPid(0x1F, 0x02, 0x58);
+    setPid(0x21, 0x00, 0x00);
+    setPid(0x2F, 0x99);
+    setPid(0x31, 0x01, 0xF4);
+    setPid(0x46, 0x3C);
+  }
+
+
+  /**
+   * @param code - a PID of the mode 01, PIDs of supported PIDs are computed.
+   * @param data - unsigned bytes of the value, none to remove the PID.
+   */
+  public void setPid(final int code, final int... data) {
+    synchronized (this.lock) {
+      this.pids[code] = data.length == 0 ? null : data.clone();
+    }
+  }
+
+
+  /**
+   * @param code - a PID of the mode 01 answered by the transmission control unit.
+   * @param data - unsigned bytes of the value, none to remove the PID.
+   */
+  public void setTransmissionPid(final int code, final int... data) {
+    synchronized (this.lock) {
+      this.transmissionPids[code] = data.length == 0 ? null : data.clone();
+    }
+  }
+
+
+  /**
+   * @param vin - VIN of the vehicle, null if the vehicle doesn't provide it.
+   */
+  public void setVin(final String vin) {
+    synchronized (this.lock) {
+      this.vin = vin;
+    }
+  }
+
+
+  /**
+   * @param protocol - protocol of the vehicle.
+   */
+  public void setVehicleProtocol(final Protocol protocol) {
+    synchronized (this.lock) {
+      this.vehicleProtocol = protocol;
+      this.connected = false;
+    }
+  }
+
+
+  /**
+   * @param millis - delay of the response of the vehicle.
+   */
+  public void setLatency(final long millis) {
+    synchronized (this.lock) {
+      this.latency = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+
+  /**
+   * @param millis - time after which the ELM327 gives up waiting and responds NO DATA.
+   */
+  public void setNoDataDelay(final long millis) {
+    synchronized (this.lock) {
+      this.noDataDelay = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+
+  /**
+   * @param millis - duration of the automatic protocol search.
+   */
+  public void setSearchTime(final long millis) {
+    synchronized (this.lock) {
+      this.searchTime = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+  }
+
+
+  /**
+   * @param pacing - false to send responses immediately, without the delay given by the baud rate.
+   */
+  public void setPacing(final boolean pacing) {
+    synchronized (this.lock) {
+      this.pacing = pacing;
+    }
+  }
+
+
+  /**
+   * Replaces the response of the vehicle to the request.
+   *
+   * @param request - hex request without spaces and the count of responses, ie. 015C
+   * @param response - lines of the response separated by CR, ie. NO DATA or 7F 01 12. Null to
+   *          remove the script, {@link #NO_RESPONSE} to simulate a hanging vehicle.
+   */
+  public void script(final String request, final String response) {
+    synchronized (this.lock) {
+      if (response == null) {
+        this.scripts.remove(request.toUpperCase());
+      } else {
+        this.scripts.put(request.toUpperCase(), response);
+      }
+    }
+  }
+
+
+  /**
+   * @return count of OBD requests received by the simulator.
+   */
+  public long getRequestCount() {
+    return this.requests.get();
+  }
+
+
+  @Override
+  public String getName() {
+    return this.name;
+  }
+
+
+  @Override
+  public boolean open() {
+    synchronized (this.lock) {
+      if (this.worker != null) {
+        return false;
+      }
+      this.worker = new Thread(this::run, "elm327-simulator");
+      this.worker.setDaemon(true);
+      this.worker.start();
+      return true;
+    }
+  }
+
+
+  @Override
+  public boolean setBaudRate(final int rate) {
+    synchronized (this.lock) {
+      this.baudRate = rate;
+      return true;
+    }
+  }
+
+
+  @Override
+  public void writeBytes(final byte[] bytes) {
+    synchronized (this.lock) {
+      if (this.busy) {
+        // any character interrupts the ELM327 and is lost.
+        this.interrupted = true;
+        this.lock.notifyAll();
+        return;
+      }
+      for (final byte b : bytes) {
+        if (b == '\r') {
+          this.commands.add(this.input.toString());
+          this.input.setLength(0);
+          this.busy = true;
+        } else if (b != '\n' && b != ' ') {
+          this.input.append((char) b);
+        }
+      }
+    }
+  }
+
+
+  @Override
+  public int getInputBufferBytesCount() {
+    synchronized (this.lock) {
+      return this.outputHead - this.outputTail;
+    }
+  }
+
+
+  @Override
+  public byte[] readBytes() {
+    synchronized (this.lock) {
+      final int count = this.outputHead - this.outputTail;
+      return count == 0 ? null : readBytes(count);
+    }
+  }
+
+
+  @Override
+  public byte[] readBytes(final int count) {
+    synchronized (this.lock) {
+      final int available = Math.min(count, this.outputHead - this.outputTail);
+      final byte[] bytes = new byte[available];
+      for (int i = 0; i < available; i++) {
+        bytes[i] = this.output[this.outputTail++ & (OUTPUT_CAPACITY - 1)];
+      }
+      return bytes;
+    }
+  }
+
+
+  @Override
+  public void purgeInput() {
+    synchronized (this.lock) {
+      this.outputTail = this.outputHead;
+    }
+  }
+
+
+  @Override
+  public void setListener(final Listener newListener) {
+    synchronized (this.lock) {
+      this.listener = newListener;
+    }
+  }
+
+
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (this.lock) {
+      thread = this.worker;
+      this.worker = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+
+  private void run() {
+    try {
+      while (true) {
+        final String command = this.commands.take();
+        try {
+          process(command);
+        } finally {
+          // the host may send the next command as soon as it receives the prompt
+          synchronized (this.lock) {
+            this.busy = false;
+            this.interrupted = false;
+          }
+        }
+        sendPrompt();
+      }
+    } catch (final InterruptedException e) {
+      LOG.debug("The simulator {} was closed.", this.name);
+    }
+  }
+
+
+  private void process(final String line) throws InterruptedException {
+    LOG.trace("process(line={})", line);
+    if (this.echo) {
+      sendLine(line);
+    }
+    final String command;
+    if (line.isEmpty()) {
+      // the carriage return repeats the last command
+      if (this.lastCommand == null) {
+        return;
+      }
+      command = this.lastCommand;
+    } else {
+      command = line.toUpperCase();
+    }
+    this.lastCommand = command;
+    if (command.startsWith("AT")) {
+      sendLine(at(command.substring(2)));
+    } else if (!request(command)) {
+      sendLine("STOPPED");
+    }
+  }
+
+
+  private String at(final String command) {
+    if (command.equals("Z") || command.equals("WS")) {
+      resetSettings();
+      if (command.equals("Z")) {
+        sendLine("");
+      }
+      return IDENTIFICATION;
+    }
+    if (command.equals("I")) {
+      return IDENTIFICATION;
+    }
+    if (command.equals("DPN")) {
+      final int code = this.protocolCode == 0 && this.connected ? this.vehicleProtocol.getCode() : this.protocolCode;
+      return (this.protocolCode == 0 ? "A" : "") + Integer.toHexString(code).toUpperCase();
+    }
+    if (command.matches("[ELSH][01]")) {
+      final boolean on = command.charAt(1) == '1';
+      switch (command.charAt(0)) {
+        case 'E':
+          this.echo = on;
+          break;
+        case 'L':
+          this.lineFeeds = on;
+          break;
+        case 'S':
+          this.spaces = on;
+          break;
+        default:
+          this.headers = on;
+      }
+      return OK;
+    }
+    if (command.matches("SPA?[0-9A-C]")) {
+      this.protocolCode = Character.digit(command.charAt(command.length() - 1), 16);
+      this.connected = false;
+      return OK;
+    }
+    if (command.matches("(ST|BRT)[0-9A-F]{2}|AT[0-2]")) {
+      return OK;
+    }
+    // the baud rate change is not supported
+    return UNKNOWN;
+  }
+
+
+  private void resetSettings() {
+    this.echo = true;
+    this.lineFeeds = true;
+    this.spaces = true;
+    this.headers = false;
+    this.protocolCode = 0;
+    this.connected = false;
+  }
+
+
+  /**
+   * @return false if the request was interrupted.
+   */
+  private boolean request(final String command) throws InterruptedException {
+    if (!command.matches("([0-9A-F]{2})+[0-9A-F]?")) {
+      sendLine(UNKNOWN);
+      return true;
+    }
+    this.requests.incrementAndGet();
+    final String request = command.length() % 2 == 0 ? command : command.substring(0, command.length() - 1);
+    if (!this.connected) {
+      if (this.protocolCode == 0) {
+        sendLine("SEARCHING...");
+        if (!await(this.searchTime)) {
+          return false;
+        }
+      } else if (this.protocolCode != this.vehicleProtocol.getCode()) {
+        if (!await(this.noDataDelay)) {
+          return false;
+        }
+        sendLine("UNABLE TO CONNECT");
+        return true;
+      }
+      this.connected = true;
+    }
+    final String script;
+    synchronized (this.lock) {
+      script = this.scripts.get(request);
+      // a hanging PID blocks the multi-PID request too
+      for (int i = 2; i + 2 <= request.length(); i += 2) {
+        if (NO_RESPONSE.equals(this.scripts.get(request.substring(0, 2) + request.substring(i, i + 2)))) {
+          return await(Long.MAX_VALUE);
+        }
+      }
+    }
+    if (NO_RESPONSE.equals(script)) {
+      return await(Long.MAX_VALUE);
+    }
+    final int[][] messages = script == null ? respond(request) : null;
+    final int[] transmission = script == null ? respondTransmission(request) : null;
+    if (script == null && messages == null && transmission == null || NO_DATA.equals(script)) {
+      if (!await(this.noDataDelay)) {
+        return false;
+      }
+      sendLine(NO_DATA);
+      return true;
+    }
+    if (!await(this.latency)) {
+      return false;
+    }
+    if (script != null) {
+      for (final String scriptLine : script.split("[\r\n]+")) {
+        sendLine(scriptLine);
+      }
+      return true;
+    }
+    // the count of expected responses
+    int remaining = command.length() == request.length() ? Integer.MAX_VALUE
+        : Character.digit(command.charAt(command.length() - 1), 16);
+    if (messages != null) {
+      for (int i = 0; i < messages.length && remaining > 0; i++, remaining--) {
+        sendMessage(messages[i], ENGINE);
+      }
+    }
+    if (transmission != null && remaining > 0) {
+      sendMessage(transmission, TRANSMISSION);
+    }
+    return true;
+  }
+
+
+  /**
+   * @return the message of the transmission control unit or null if it doesn't respond.
+   */
+  private int[] respondTransmission(final String request) {
+    if (!request.startsWith("01")) {
+      return null;
+    }
+    synchronized (this.lock) {
+      return respondCurrentData(request, this.transmissionPids, false);
+    }
+  }
+
+
+  /**
+   * @param values - values of PIDs of the responding unit.
+   * @param supported - true if the unit responds supported PIDs.
+   * @return the message of the unit or null if it has none of requested PIDs.
+   */
+  private int[] respondCurrentData(final String request, final int[][] values, final boolean supported) {
+    final int[] message = new int[256];
+    message[0] = 0x41;
+    int length = 1;
+    for (int i = 2; i < request.length(); i += 2) {
+      final int pid = Integer.parseInt(request.substring(i, i + 2), 16);
+      final int[] data;
+      if (pid % 0x20 == 0) {
+        data = supported ? supportedPids(pid) : null;
+      } else {
+        data = values[pid];
+      }
+      if (data == null) {
+        continue;
+      }
+      message[length++] = pid;
+      for (final int b : data) {
+        message[length++] = b;
+      }
+    }
+    return length == 1 ? null : trim(message, length);
+  }
+
+
+  /**
+   * @return messages of the vehicle without headers or null for NO DATA.
+   */
+  private int[][] respond(final String request) {
+    final int mode = Integer.parseInt(request.substring(0, 2), 16);
+    synchronized (this.lock) {
+      if (mode == 0x01) {
+        final int[] message = respondCurrentData(request, this.pids, true);
+        return message == null ? null : new int[][] {message};
+      }
+      if (mode == 0x03) {
+        // no trouble codes
+        return new int[][] {this.vehicleProtocol.isCan() ? new int[] {0x43, 0x00} : new int[] {0x43, 0, 0, 0, 0, 0, 0}};
+      }
+      if (mode == 0x04) {
+        return new int[][] {{0x44}};
+      }
+      if (mode == 0x09 && request.equals("0902") && this.vin != null) {
+        return respondVin();
+      }
+    }
+    return null;
+  }
+
+
+  /**
+   * CAN sends one message with the count of data items, older protocols send 5 messages with the
+   * sequence number and 4 bytes, the VIN is padded by zeros.
+   */
+  private int[][] respondVin() {
+    if (this.vehicleProtocol.isCan()) {
+      final int[] message = new int[this.vin.length() + 3];
+      message[0] = 0x49;
+      message[1] = 0x02;
+      message[2] = 0x01;
+      for (int i = 0; i < this.vin.length(); i++) {
+        message[i + 3] = this.vin.charAt(i);
+      }
+      return new int[][] {message};
+    }
+    final String padded = "\0\0\0" + this.vin;
+    final int[][] messages = new int[padded.length() / 4][];
+    for (int sequence = 0; sequence < messages.length; sequence++) {
+      messages[sequence] = new int[] {0x49, 0x02, sequence + 1, padded.charAt(sequence * 4),
+          padded.charAt(sequence * 4 + 1), padded.charAt(sequence * 4 + 2), padded.charAt(sequence * 4 + 3)};
+    }
+    return messages;
+  }
+
+
+  private int[] supportedPids(final int range) {
+    long bitmap = 0;
+    for (int i = 1; i <= 0x20 && range + i < this.pids.length; i++) {
+      final int pid = range + i;
+      if (this.pids[pid] != null || this.transmissionPids[pid] != null
+          || pid % 0x20 == 0 && supportedPids(pid) != null) {
+        bitmap |= 1L << (0x20 - i);
+      }
+    }
+    if (bitmap == 0 && range > 0) {
+      return null;
+    }
+    return new int[] {(int) (bitmap >>> 24) & 0xFF, (int) (bitmap >>> 16) & 0xFF, (int) (bitmap >>> 8) & 0xFF,
+        (int) bitmap & 0xFF};
+  }
+
+
+  private static int[] trim(final int[] message, final int length) {
+    final int[] trimmed = new int[length];
+    System.arraycopy(message, 0, trimmed, 0, length);
+    return trimmed;
+  }
+
+
+  private void sendMessage(final int[] message, final int ecu) {
+    if (!this.vehicleProtocol.isCan()) {
+      sendIsoMessage(message, ecu);
+      return;
+    }
+    final String header = this.vehicleProtocol.getHeaderLength() == 3 ? CAN_11_HEADERS[ecu] : CAN_29_HEADERS[ecu];
+    if (message.length <= CAN_FRAME_DATA) {
+      final int[] frame = new int[message.length + 1];
+      frame[0] = message.length;
+      System.arraycopy(message, 0, frame, 1, message.length);
+      if (this.headers) {
+        sendLine(header, frame, 0, frame.length);
+      } else {
+        sendLine(null, frame, 1, frame.length);
+      }
+      return;
+    }
+    if (!this.headers) {
+      sendLine(String.format("%03X", message.length));
+    }
+    int index = 0;
+    for (int sequence = 0; index < message.length; sequence++) {
+      final int[] frame = new int[8];
+      int frameLength = 0;
+      if (sequence == 0) {
+        frame[frameLength++] = 0x10 | (message.length >> 8);
+        frame[frameLength++] = message.length & 0xFF;
+      } else {
+        frame[frameLength++] = 0x20 | (sequence & 0xF);
+      }
+      while (frameLength < frame.length && index < message.length) {
+        frame[frameLength++] = message[index++];
+      }
+      if (this.headers) {
+        sendLine(header, frame, 0, frame.length);
+      } else {
+        // the ELM327 shows the sequence number instead of the PCI byte, padding is shown too
+        final int pciLength = sequence == 0 ? 2 : 1;
+        sendLine(Integer.toHexString(sequence & 0xF).toUpperCase() + ':', frame, pciLength, frame.length);
+      }
+    }
+  }
+
+
+  private void sendIsoMessage(final int[] message, final int ecu) {
+    if (!this.headers) {
+      sendLine(null, message, 0, message.length);
+      return;
+    }
+    final int[] header = ISO_HEADERS[ecu];
+    final int[] line = new int[header.length + message.length + 1];
+    System.arraycopy(header, 0, line, 0, header.length);
+    System.arraycopy(message, 0, line, header.length, message.length);
+    int checksum = 0;
+    for (int i = 0; i < line.length - 1; i++) {
+      checksum += line[i];
+    }
+    line[line.length - 1] = checksum & 0xFF;
+    sendLine(null, line, 0, line.length);
+  }
+
+
+  private void sendLine(final String prefix, final int[] bytes, final int from, final int to) {
+    final StringBuilder line = new StringBuilder();
+    if (prefix != null) {
+      line.append(prefix);
+    }
+    for (int i = from; i < to; i++) {
+      if (this.spaces && line.length() > 0) {
+        line.append(' ');
+      }
+      line.append(String.format("%02X", bytes[i]));
+    }
+    sendLine(line.toString());
+  }
+
+
+  private void sendLine(final String line) {
+    send(line + (this.lineFeeds ? "\r\n" : "\r"));
+  }
+
+
+  private void sendPrompt() {
+    send((this.lineFeeds ? "\r\n" : "\r") + ">");
+  }
+
+
+  /**
+   * Sends the text to the host paced by the baud rate, 10 bits per byte.
+   */
+  private void send(final String text) {
+    final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+    final long nanosPerByte = this.pacing ? TimeUnit.SECONDS.toNanos(10) / this.baudRate : 0;
+    // chunks of about 1 ms, as the USB serial converter sends them.
+    final int chunk = nanosPerByte == 0 ? bytes.length
+        : (int) Math.max(1, TimeUnit.MILLISECONDS.toNanos(1) / nanosPerByte);
+    for (int offset = 0; offset < bytes.length; offset += chunk) {
+      final int length = Math.min(chunk, bytes.length - offset);
+      if (nanosPerByte > 0) {
+        LockSupport.parkNanos(nanosPerByte * length);
+      }
+      final Listener currentListener;
+      synchronized (this.lock) {
+        for (int i = 0; i < length; i++) {
+          this.output[this.outputHead++ & (OUTPUT_CAPACITY - 1)] = bytes[offset + i];
+        }
+        currentListener = this.listener;
+      }
+      if (currentListener != null) {
+        currentListener.dataAvailable(length);
+      }
+    }
+  }
+
+
+  /**
+   * Waits for the vehicle.
+   *
+   * @return false if the ELM327 was interrupted by the host.
+   */
+  private boolean await(final long nanos) throws InterruptedException {
+    final long deadline = nanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + nanos;
+    synchronized (this.lock) {
+      while (!this.interrupted) {
+        final long remaining = deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return true;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this.lock, Math.min(remaining, TimeUnit.SECONDS.toNanos(1)));
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+/**
+ * Converts data bytes of the response to the value of the PID. Bytes are named A, B, C, ... in
+ * the standard, here they are on indexes 0, 1, 2, ...
+ *
+ * @author David Matějček
+ */
+@FunctionalInterface
+public interface Formula {
+
+  /** A * 100 / 255, 0 - 100 % */
+  Formula PERCENT = d -> d[0] * 100.0 / 255.0;
+  /** (A - 128) * 100 / 128, -100 - 99.2 % */
+  Formula SIGNED_PERCENT = d -> (d[0] - 128.0) * 100.0 / 128.0;
+  /** A - 40, -40 - 215 °C */
+  Formula TEMPERATURE = d -> d[0] - 40.0;
+  /** B - 40, -40 - 215 °C, A contains flags of supported sensors */
+  Formula SENSOR_TEMPERATURE = d -> d[1] - 40.0;
+  /** (256 * A + B) / 10 - 40, -40 - 6513.5 °C */
+  Formula CATALYST_TEMPERATURE = d -> (d[0] * 256.0 + d[1]) / 10.0 - 40.0;
+  /** (256 * B + C) / 10 - 40, -40 - 6513.5 °C, A contains flags of supported sensors */
+  Formula SENSOR_EXHAUST_TEMPERATURE = d -> (d[1] * 256.0 + d[2]) / 10.0 - 40.0;
+  /** A, the byte without conversion */
+  Formula BYTE = d -> d[0];
+  /** 256 * A + B, two bytes without conversion */
+  Formula WORD = d -> d[0] * 256.0 + d[1];
+  /** (256 * A + B) * 100 / 255, 0 - 25700 % */
+  Formula WORD_PERCENT = d -> (d[0] * 256.0 + d[1]) * 100.0 / 255.0;
+  /** A - 125, -125 - 130 % */
+  Formula TORQUE_PERCENT = d -> d[0] - 125.0;
+  /** A / 200, 0 - 1.275 V */
+  Formula OXYGEN_SENSOR_VOLTAGE = d -> d[0] / 200.0;
+  /** 2 / 65536 * (256 * A + B), 0 - 2 */
+  Formula EQUIVALENCE_RATIO = d -> (d[0] * 256.0 + d[1]) * 2.0 / 65536.0;
+
+
+  /**
+   * @param data - unsigned bytes of the response data, without the mode and the PID.
+   * @return the value of the PID.
+   */
+  double apply(int[] data);
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.Arrays;
+
+/**
+ * One message in the response, sent by one unit of the vehicle. Instances are reused by the
+ * {@link ResponseParser}, so the message is valid only until the next response is parsed.
+ *
+ * @author David Matějček
+ */
+public final class Message {
+
+  private String ecu;
+  private int[] data = new int[8];
+  private int length;
+  private int expectedLength;
+
+
+  Message() {
+    // created only by the parser
+  }
+
+
+  /**
+   * @return the header identifying the sender, null if headers are off.
+   */
+  public String getEcu() {
+    return ecu;
+  }
+
+
+  /**
+   * @return count of bytes of the message.
+   */
+  public int length() {
+    return length;
+  }
+
+
+  /**
+   * @param index
+   * @return the unsigned byte on the index, the index 0 is the mode of the response.
+   */
+  public int byteAt(final int index) {
+    if (index >= this.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", length: " + this.length);
+    }
+    return this.data[index];
+  }
+
+
+  /**
+   * Creates strings, use {@link #byteAt(int)} where possible.
+   *
+   * @return hex bytes of the message, starting with the mode of the response.
+   */
+  public String[] getData() {
+    final String[] hex = new String[this.length];
+    for (int i = 0; i < hex.length; i++) {
+      hex[i] = ResponseParser.toHex(this.data[i]);
+    }
+    return hex;
+  }
+
+
+  /**
+   * @param newEcu - the header identifying the sender, null if headers are off.
+   * @param newExpectedLength - length of the multiframe message, 0 if it is not known.
+   */
+  void reset(final String newEcu, final int newExpectedLength) {
+    this.ecu = newEcu;
+    this.length = 0;
+    this.expectedLength = newExpectedLength;
+    if (this.data.length < newExpectedLength) {
+      this.data = new int[newExpectedLength];
+    }
+  }
+
+
+  /**
+   * Appends the byte unless the expected length was reached, so padding of the last frame is
+   * ignored.
+   *
+   * @param value - unsigned byte
+   */
+  void append(final int value) {
+    if (isComplete()) {
+      return;
+    }
+    if (this.length == this.data.length) {
+      this.data = Arrays.copyOf(this.data, this.data.length * 2);
+    }
+    this.data[this.length++] = value;
+  }
+
+
+  /**
+   * @return true if the expected length was reached.
+   */
+  boolean isComplete() {
+    return this.expectedLength > 0 && this.length >= this.expectedLength;
+  }
+
+
+  /**
+   * @return the length announced by the first frame, 0 if it is not known.
+   */
+  int getExpectedLength() {
+    return expectedLength;
+  }
+
+
+  @Override
+  public String toString() {
+    final StringBuilder string = new StringBuilder(this.length * 3 + 8);
+    if (this.ecu != null) {
+      string.append(this.ecu).append(": ");
+    }
+    for (int i = 0; i < this.length; i++) {
+      if (i > 0) {
+        string.append(' ');
+      }
+      string.append(ResponseParser.toHex(this.data[i]));
+    }
+    return string.toString();
+  }
+}
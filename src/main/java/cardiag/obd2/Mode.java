@@ -12,15 +12,25 @@ public enum Mode {
   CURRENT_DATA(1), FREEZE_FRAME_DATA(2), DIAGNOSTIC(3), CLEAR_TROUBLE_CODES(4), VEHICLE_INFO(9);
 
   private int code;
+  private String hex;
 
 
   Mode(int code) {
     this.code = code;
+    this.hex = StringUtils.leftPad(Integer.toHexString(code), 2, '0');
   }
 
 
   public String hex() {
-    return StringUtils.leftPad(Integer.toHexString(code), 2, '0');
+    return hex;
+  }
+
+
+  /**
+   * @return code of the mode, 1-9.
+   */
+  public int getCode() {
+    return code;
   }
 
 
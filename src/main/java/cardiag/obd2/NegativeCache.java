@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers PIDs which responded NO DATA or the negative response 7F, so they are not requested
+ * again until their back-off expires. The back-off doubles with each next failure up to the
+ * maximum and is reset by a valid response.
+ * <p>
+ * Only PIDs of the {@link Mode#CURRENT_DATA} and {@link Mode#FREEZE_FRAME_DATA} are cached,
+ * except PIDs of supported PIDs, which are used to detect the protocol and capabilities.
+ *
+ * @author David Matějček
+ */
+public class NegativeCache {
+
+  /** Default back-off after the first failure */
+  public static final long DEFAULT_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+  /** Default maximal back-off */
+  public static final long DEFAULT_MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+  private final byte[][] failures = new byte[16][256];
+  private final long[][] retryTimes = new long[16][256];
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long backoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_BACKOFF);
+  private long maxBackoff = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_BACKOFF);
+
+
+  /**
+   * @param initialMillis - back-off after the first failure in milliseconds, 0 disables the cache.
+   * @param maxMillis - maximal back-off in milliseconds.
+   */
+  public void setBackoff(final long initialMillis, final long maxMillis) {
+    if (initialMillis < 0 || maxMillis < initialMillis) {
+      throw new IllegalArgumentException("Invalid back-off: " + initialMillis + ", max: " + maxMillis);
+    }
+    this.backoff = TimeUnit.MILLISECONDS.toNanos(initialMillis);
+    this.maxBackoff = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+  }
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return true if failures of the PID are cached.
+   */
+  public static boolean isCacheable(final Mode mode, final PID pid) {
+    return (mode == Mode.CURRENT_DATA || mode == Mode.FREEZE_FRAME_DATA) && pid.getCode() % 0x20 != 0;
+  }
+
+
+  /**
+   * Counts a hit or a miss.
+   *
+   * @param mode
+   * @param pid
+   * @return true if the PID failed recently and should not be requested now.
+   */
+  public boolean isCached(final Mode mode, final PID pid) {
+    return isCached(mode, pid, System.nanoTime());
+  }
+
+
+  boolean isCached(final Mode mode, final PID pid, final long now) {
+    if (!isCacheable(mode, pid)) {
+      return false;
+    }
+    final int code = pid.getCode();
+    if (this.failures[mode.getCode()][code] > 0 && now - this.retryTimes[mode.getCode()][code] < 0) {
+      this.hits.incrementAndGet();
+      return true;
+    }
+    this.misses.incrementAndGet();
+    return false;
+  }
+
+
+  /**
+   * Remembers the failure and prolongs the back-off of the PID.
+   *
+   * @param mode
+   * @param pid
+   */
+  public void failed(final Mode mode, final PID pid) {
+    failed(mode, pid, System.nanoTime());
+  }
+
+
+  void failed(final Mode mode, final PID pid, final long now) {
+    if (!isCacheable(mode, pid) || this.backoff == 0) {
+      return;
+    }
+    final int count = Math.min(Byte.MAX_VALUE, this.failures[mode.getCode()][pid.getCode()] + 1);
+    this.failures[mode.getCode()][pid.getCode()] = (byte) count;
+    long delay = this.backoff;
+    for (int i = 1; i < count && delay < this.maxBackoff; i++) {
+      delay <<= 1;
+    }
+    this.retryTimes[mode.getCode()][pid.getCode()] = now + Math.min(delay, this.maxBackoff);
+  }
+
+
+  /**
+   * Forgets failures of the PID.
+   *
+   * @param mode
+   * @param pid
+   */
+  public void succeeded(final Mode mode, final PID pid) {
+    this.failures[mode.getCode()][pid.getCode()] = 0;
+  }
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return count of failures since the last valid response.
+   */
+  public int getFailures(final Mode mode, final PID pid) {
+    return this.failures[mode.getCode()][pid.getCode()];
+  }
+
+
+  /**
+   * @return count of requests skipped thanks to the cache.
+   */
+  public long getHits() {
+    return this.hits.get();
+  }
+
+
+  /**
+   * @return count of cacheable requests sent to the vehicle.
+   */
+  public long getMisses() {
+    return this.misses.get();
+  }
+
+
+  /**
+   * Forgets all failures, ie. when another vehicle was connected. Counters are kept.
+   */
+  public void clear() {
+    for (final byte[] modeFailures : this.failures) {
+      Arrays.fill(modeFailures, (byte) 0);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "NegativeCache[hits=" + getHits() + ", misses=" + getMisses() + "]";
+  }
+}
@@ -6,17 +6,23 @@ package cardiag.obd2;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cardiag.serial.LatencyHistogram;
 import cardiag.serial.PortCommunication;
 import cardiag.serial.PortCommunicationException;
+import cardiag.serial.PortCommunicationTimeoutException;
 import cardiag.serial.PortConfiguration;
+import cardiag.serial.ResponseView;
+import cardiag.serial.SerialTransport;
 import cardiag.serial.SerialUtils;
 
 /**
@@ -27,8 +33,53 @@ import cardiag.serial.SerialUtils;
 public class OBD2Standard implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(OBD2Standard.class);
+  private static final String NO_DATA = "NO DATA";
+  /** The first byte of the negative response */
+  static final int ERROR_RESPONSE = 0x7F;
+  private static final String UNKNOWN_COMMAND = "?";
+  private static final String[] HEX_DIGITS = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "A", "B", "C",
+      "D", "E", "F"};
+  private static final int RESPONSE_MODE_OFFSET = 0x40;
+  /** The ELM327 accepts up to 6 PIDs in one request on CAN protocols. */
+  public static final int MAX_PIDS_IN_REQUEST = 6;
+  /** Profiles of vehicles older than 30 days are discovered again. */
+  private static final long PROFILE_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+  private static final int VIN_LENGTH = 17;
+  /** Count of measured responses needed before the timeout of the PID adapts */
+  private static final int TIMEOUT_MIN_SAMPLES = 20;
+  private static final double TIMEOUT_PERCENTILE = 0.99;
+  private static final int TIMEOUT_FACTOR = 3;
+  /** The ELM327 waits 200 ms for the vehicle by default (AT ST), the adaptive timeout is longer. */
+  private static final long TIMEOUT_MIN = 500;
+  private static final List<PID> REPORT_PIDS = Collections.unmodifiableList(Arrays.asList(PID.ECU_COMPATIBILITY,
+      PID.MONITOR_STATUS, PID.DISTANCE_FROM_CODES_CLEARED, PID.DISTANCE_WITH_MALFUNCTION, PID.AMBIENT_AIR_TEMPERATURE,
+      PID.ENGINE_OIL_TEMPERATURE, PID.ENGINE_COOLANT_TEMPERATURE, PID.MANIFOLD_SURFACE_TEMPERATURE, PID.ENGINE_LOAD,
+      PID.EXHAUST_GAS_RECIRCULATION_TEMPERATURE, PID.FUEL_INJECTION_TIMING, PID.FUEL_LEVEL_INPUT, PID.FUEL_RATE,
+      PID.FUEL_STATUS, PID.INTAKE_AIR_TEMPERATURE, PID.INTAKE_AIR_TEMPERATURE_SENSOR,
+      PID.CATALYST_TEMPERATURE_BANK2_SENSOR1, PID.CATALYST_TEMPERATURE_BANK2_SENSOR2, PID.SECONDARY_AIR_STATUS,
+      PID.COMMANDED_EGR, PID.EGR_ERROR, PID.FUEL_TRIM_PERCENT_SHORT_BANK1, PID.FUEL_TRIM_PERCENT_LONG_BANK1,
+      PID.ETHANOL_FUEL));
+  private static final PID[] SUPPORTED_PIDS_RANGES = {PID.PIDS_SUPPORTED, PID.PIDS_SUPPORTED_21_40,
+      PID.PIDS_SUPPORTED_41_60, PID.PIDS_SUPPORTED_61_80, PID.PIDS_SUPPORTED_81_A0, PID.PIDS_SUPPORTED_A1_C0,
+      PID.PIDS_SUPPORTED_C1_E0};
 
   private final PortCommunication comm;
+  private final String portName;
+  private final ProtocolCache protocolCache;
+  private final ProfileStore profileStore;
+  private final boolean spaces;
+  private final boolean headers;
+  private ResponseParser parser = new ResponseParser(Protocol.AUTOMATIC, false);
+  private String adapter;
+  private boolean responseCountSupported = true;
+  private Protocol protocol;
+  private VehicleProfile profile;
+  private final NegativeCache negativeCache = new NegativeCache();
+  private final CircuitBreaker circuitBreaker = new CircuitBreaker();
+  /** Reused for responses passed to a {@link ResponseHandler} */
+  private final Response sample = new Response();
+  private final AdapterMetrics metrics;
+  private final long maxTimeout;
 
 
   /**
@@ -38,24 +89,279 @@ public class OBD2Standard implements Closeable {
    * @throws PortCommunicationException
    */
   public OBD2Standard(final PortConfiguration cfg) throws PortCommunicationException {
-    LOG.debug("OBD2Standard(cfg={})", cfg);
-    this.comm = new PortCommunication(cfg);
-    this.reset();
+    this(cfg, new PortCommunication(cfg), cfg.getPortName());
   }
 
 
   /**
-   * Resets the communication.
+   * Starts the communication over the transport, ie. the {@link Elm327Simulator}.
+   *
+   * @param cfg
+   * @param transport
+   * @throws PortCommunicationException
+   */
+  public OBD2Standard(final PortConfiguration cfg, final SerialTransport transport)
+      throws PortCommunicationException {
+    this(cfg, new PortCommunication(cfg, transport), transport.getName());
+  }
+
+
+  private OBD2Standard(final PortConfiguration cfg, final PortCommunication comm, final String portName) {
+    LOG.debug("OBD2Standard(cfg={}, comm={}, portName={})", cfg, comm, portName);
+    this.comm = comm;
+    this.portName = portName;
+    this.protocolCache = new ProtocolCache(cfg.getCacheDirectory());
+    this.profileStore = new ProfileStore(cfg.getCacheDirectory());
+    this.spaces = cfg.isSpaces();
+    this.headers = cfg.isHeaders();
+    this.maxTimeout = cfg.getCommandTimeout();
+    this.metrics = new AdapterMetrics(comm.getStatistics(), this.negativeCache, this.circuitBreaker);
+    this.metrics.register(portName);
+    this.metrics.scheduleSummary(cfg.getMetricsInterval());
+    try {
+      this.reset();
+    } catch (final RuntimeException e) {
+      this.metrics.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * Resets the communication. Uses the warm start of the device and the protocol cached for the
+   * adapter, so the protocol is searched only with the first connection or when the cached
+   * protocol fails.
    *
    * @throws PortCommunicationException
    */
   public void reset() throws PortCommunicationException {
     LOG.debug("reset()");
-    // TODO: why is it here twice???
-    this.comm.reset();
-    this.comm.reset();
+    this.adapter = startDevice();
     this.comm.setEcho(false);
     this.comm.setLineTermination(false);
+    if (!this.spaces) {
+      try {
+        this.comm.setSpaces(false);
+      } catch (final PortCommunicationException e) {
+        LOG.warn("The device cannot turn off spaces: {}", e.getMessage());
+      }
+    }
+    this.protocol = null;
+    this.parser = new ResponseParser(Protocol.AUTOMATIC, false);
+    this.responseCountSupported = true;
+    if (this.profile != null) {
+      this.profileStore.save(this.profile);
+    }
+    this.profile = new VehicleProfile(null, this.adapter, null);
+    this.negativeCache.clear();
+    this.circuitBreaker.clear();
+    this.metrics.clearLatencies();
+    selectProtocol();
+    if (this.headers) {
+      if (this.protocol == null || this.protocol.getHeaderLength() == 0) {
+        LOG.warn("Protocol is unknown, headers will stay off.");
+      } else {
+        this.comm.setHeaders(true);
+        this.parser = new ResponseParser(this.protocol, true);
+      }
+    }
+    if (this.protocol != null) {
+      this.profile = loadProfile();
+      if (this.profile.getAdaptiveTiming() >= 0) {
+        LOG.info("Using the adaptive timing {} from the vehicle profile.", this.profile.getAdaptiveTiming());
+        setAdaptiveTiming(this.profile.getAdaptiveTiming());
+      }
+      for (final PID pid : PID.values(Mode.CURRENT_DATA)) {
+        if (this.profile.isNoData(pid)) {
+          this.negativeCache.failed(Mode.CURRENT_DATA, pid);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Identifies the vehicle by the VIN and loads its stored profile. If there is no valid profile,
+   * capabilities of the vehicle will be discovered and stored again.
+   */
+  private VehicleProfile loadProfile() {
+    final String vin;
+    try {
+      vin = getVIN();
+    } catch (final PortCommunicationException e) {
+      LOG.warn("Cannot read the VIN, the vehicle profile will not be stored. Cause: {}", e.getMessage());
+      return this.profile;
+    }
+    if (vin == null) {
+      LOG.info("The vehicle did not provide the VIN, the vehicle profile will not be stored.");
+      return this.profile;
+    }
+    final VehicleProfile stored = this.profileStore.load(vin, this.adapter);
+    if (stored != null && stored.isValid(this.protocol, PROFILE_MAX_AGE)) {
+      LOG.info("Using the stored profile: {}", stored);
+      return stored;
+    }
+    return new VehicleProfile(vin, this.adapter, this.protocol);
+  }
+
+
+  private String startDevice() {
+    try {
+      return this.comm.warmStart();
+    } catch (final PortCommunicationException e) {
+      // the first command after opening the port may fail on garbage remaining in the device.
+      LOG.warn("Warm start failed, trying the full reset. Cause: {}", e.getMessage());
+      return this.comm.reset();
+    }
+  }
+
+
+  private void selectProtocol() {
+    final Protocol cached = this.protocolCache.get(this.portName, this.adapter);
+    if (cached != null) {
+      LOG.info("Using cached protocol: {}", cached);
+      this.comm.setProtocol(cached.hex());
+      if (isVehicleResponding()) {
+        this.protocol = cached;
+        return;
+      }
+      LOG.warn("Cached protocol {} failed, the device will search for the protocol.", cached);
+    }
+    this.comm.setProtocol(Protocol.AUTOMATIC.hex());
+    if (isVehicleResponding()) {
+      this.protocolCache.put(this.portName, this.adapter, getProtocol());
+    } else {
+      LOG.warn("The vehicle does not respond.");
+    }
+  }
+
+
+  private boolean isVehicleResponding() {
+    try {
+      return !askOneLine(Mode.CURRENT_DATA, PID.PIDS_SUPPORTED).isError();
+    } catch (final PortCommunicationException e) {
+      LOG.debug("No valid response: {}", e.getMessage());
+      return false;
+    }
+  }
+
+
+  /**
+   * @return identification of the adapter, response to the AT WS or AT Z command.
+   */
+  public String getAdapter() {
+    return this.adapter;
+  }
+
+
+  /**
+   * @return learned counts of units responding to requests.
+   */
+  public ResponseCounts getResponseCounts() {
+    return this.profile.getResponseCounts();
+  }
+
+
+  /**
+   * @return the profile of the connected vehicle.
+   */
+  public VehicleProfile getProfile() {
+    return this.profile;
+  }
+
+
+  /**
+   * @return the cache of PIDs which responded NO DATA or an error recently.
+   */
+  public NegativeCache getNegativeCache() {
+    return this.negativeCache;
+  }
+
+
+  /**
+   * @return breakers of PIDs which repeatedly timed out.
+   */
+  public CircuitBreaker getCircuitBreaker() {
+    return this.circuitBreaker;
+  }
+
+
+  /**
+   * @return latencies and counters of the communication.
+   */
+  public AdapterMetrics getMetrics() {
+    return this.metrics;
+  }
+
+
+  /**
+   * The timeout adapts to the observed latencies of the PID: it is the 99th percentile multiplied
+   * by {@value #TIMEOUT_FACTOR}, but at least {@value #TIMEOUT_MIN} ms and at most the command
+   * timeout from the configuration. Until the PID has {@value #TIMEOUT_MIN_SAMPLES} latencies, the
+   * round trips of all commands of the adapter are used, so a PID which never responds doesn't
+   * wait for the command timeout.
+   *
+   * @param mode
+   * @param pid
+   * @return the timeout of the request in millis.
+   */
+  public long getTimeout(final Mode mode, final PID pid) {
+    if (!NegativeCache.isCacheable(mode, pid)) {
+      return this.maxTimeout;
+    }
+    final LatencyHistogram histogram = this.metrics.getLatency(mode, pid);
+    if (histogram != null && histogram.getCount() >= TIMEOUT_MIN_SAMPLES) {
+      return toTimeout(histogram);
+    }
+    return toTimeout(this.metrics.getPortStatistics().getRoundTrips());
+  }
+
+
+  /**
+   * @return the timeout by the 99th percentile of latencies, the command timeout if there are not
+   *         enough of them.
+   */
+  private long toTimeout(final LatencyHistogram histogram) {
+    if (histogram.getCount() < TIMEOUT_MIN_SAMPLES) {
+      return this.maxTimeout;
+    }
+    final long timeout = TimeUnit.MICROSECONDS.toMillis(histogram.getPercentile(TIMEOUT_PERCENTILE) * TIMEOUT_FACTOR);
+    return Math.min(this.maxTimeout, Math.max(TIMEOUT_MIN, timeout));
+  }
+
+
+  /**
+   * @return the timeout by latencies of multi-PID requests, or of all commands if there are not
+   *         enough of them, but at least the timeout of each PID.
+   */
+  private long getBatchTimeout(final Mode mode, final List<PID> batch) {
+    final LatencyHistogram histogram = this.metrics.getBatchLatency(mode);
+    long timeout;
+    if (histogram != null && histogram.getCount() >= TIMEOUT_MIN_SAMPLES) {
+      timeout = toTimeout(histogram);
+    } else {
+      timeout = toTimeout(this.metrics.getPortStatistics().getRoundTrips());
+    }
+    for (final PID pid : batch) {
+      timeout = Math.max(timeout, getTimeout(mode, pid));
+    }
+    return timeout;
+  }
+
+
+  private void measured(final Mode mode, final PID pid, final long duration) {
+    this.metrics.measured(mode, pid, duration);
+    if (mode == Mode.CURRENT_DATA) {
+      this.profile.measured(pid, duration);
+    }
+  }
+
+
+  /**
+   * @return false if the device refused a request with the count of expected responses.
+   */
+  public boolean isResponseCountSupported() {
+    return this.responseCountSupported;
   }
 
 
@@ -64,6 +370,9 @@ public class OBD2Standard implements Closeable {
    */
   public void close() {
     LOG.debug("close()");
+    this.profileStore.save(this.profile);
+    this.metrics.close();
+    LOG.info("{}", this.metrics);
     this.comm.close();
   }
 
@@ -74,37 +383,48 @@ public class OBD2Standard implements Closeable {
   public Report createReport() {
     LOG.trace("createReport()");
     final Report report = new Report();
-    report.setSupportedPIDS(getSupportedPIDs());
-    report.setEcuCompatibility(getEcuCompatibility());
-    report.setMonitorStatus(getMonitorStatus());
+    final SupportedPIDs supported = getSupportedPIDs();
+    report.setSupportedPIDS(supported);
     report.setFaults(getErrorReport());
 
-    report.setDistanceSinceErrorCodesCleared(getDistanceSinceCodesCleared(false));
-    report.setDistanceWithMalfunction(getDistanceWithMalfunction(false));
-
-    report.setAmbientAirTemperature(getAmbientAirTemperature(false));
-    report.setEngineOilTemperature(getEngineOilTemperature(false));
-    report.setEngineCoolantTemperature(getEngineCoolantTemperature(false));
-    report.setManifoldSurfaceTemperature(getManifoldSurfaceTemperature(false));
-
-    report.setEngineLoad(getEngineLoad(false));
-    report.setExhaustGasRecirculationTemperature(getExhaustGasRecirculationTemperature(false));
-    report.setFuelInjectionTiming(getFuelInjectionTiming(false));
-    report.setFuelLevelInput(getFuelLevelInput(false));
-    report.setFuelRate(getFuelRate(false));
-    report.setFuelStatus(getFuelStatus(false));
-    report.setIntakeAirTemperature(getIntakeAirTemperature(false));
-    report.setIntakeAirTemperatureSensor(getIntakeAirTemperatureSensor(false));
-    report.setCatalystTemperatureSensor1(getCatalystTemperature(false, 2, 1));
-    report.setCatalystTemperatureSensor2(getCatalystTemperature(false, 2, 2));
-    report.setSecondaryAirStatus(getSecondaryAirStatus(false));
-    report.setCommandedEgr(getCommandedEgr(false));
-    report.setEgrError(getEgrError(false));
+    final Map<PID, Response> responses = askBatch(Mode.CURRENT_DATA, supported.filter(REPORT_PIDS));
+    for (final PID pid : REPORT_PIDS) {
+      if (!responses.containsKey(pid)) {
+        responses.put(pid, new ResponseWithNoData(Mode.CURRENT_DATA, pid));
+      }
+    }
+    report.setEcuCompatibility(toEcuCompatibility(responses.get(PID.ECU_COMPATIBILITY)));
+    report.setMonitorStatus(toMonitorStatus(responses.get(PID.MONITOR_STATUS)));
+
+    report.setDistanceSinceErrorCodesCleared(toInteger(decode(responses, PID.DISTANCE_FROM_CODES_CLEARED)));
+    report.setDistanceWithMalfunction(toInteger(decode(responses, PID.DISTANCE_WITH_MALFUNCTION)));
+
+    report.setAmbientAirTemperature(toInteger(decode(responses, PID.AMBIENT_AIR_TEMPERATURE)));
+    report.setEngineOilTemperature(toInteger(decode(responses, PID.ENGINE_OIL_TEMPERATURE)));
+    report.setEngineCoolantTemperature(toInteger(decode(responses, PID.ENGINE_COOLANT_TEMPERATURE)));
+    report.setManifoldSurfaceTemperature(toInteger(decode(responses, PID.MANIFOLD_SURFACE_TEMPERATURE)));
+
+    report.setEngineLoad(decode(responses, PID.ENGINE_LOAD));
+    report.setExhaustGasRecirculationTemperature(
+        toInteger(decode(responses, PID.EXHAUST_GAS_RECIRCULATION_TEMPERATURE)));
+    report.setFuelInjectionTiming(decode(responses, PID.FUEL_INJECTION_TIMING));
+    report.setFuelLevelInput(decode(responses, PID.FUEL_LEVEL_INPUT));
+    report.setFuelRate(decode(responses, PID.FUEL_RATE));
+    report.setFuelStatus(toFuelStatus(responses.get(PID.FUEL_STATUS)));
+    report.setIntakeAirTemperature(toInteger(decode(responses, PID.INTAKE_AIR_TEMPERATURE)));
+    report.setIntakeAirTemperatureSensor(toInteger(decode(responses, PID.INTAKE_AIR_TEMPERATURE_SENSOR)));
+    report.setCatalystTemperatureSensor1(
+        decode(responses, PID.CATALYST_TEMPERATURE_BANK2_SENSOR1));
+    report.setCatalystTemperatureSensor2(
+        decode(responses, PID.CATALYST_TEMPERATURE_BANK2_SENSOR2));
+    report.setSecondaryAirStatus(toSecondaryAirStatus(responses.get(PID.SECONDARY_AIR_STATUS)));
+    report.setCommandedEgr(decode(responses, PID.COMMANDED_EGR));
+    report.setEgrError(decode(responses, PID.EGR_ERROR));
 
     // only bank 1
-    report.setFuelTrimPercentShortTerm(getFuelTrimPercent(false, false, 1));
-    report.setFuelTrimPercentLongTerm(getFuelTrimPercent(false, true, 1));
-    report.setEthanolFuel(getEthanolFuel(false));
+    report.setFuelTrimPercentShortTerm(decode(responses, PID.FUEL_TRIM_PERCENT_SHORT_BANK1));
+    report.setFuelTrimPercentLongTerm(decode(responses, PID.FUEL_TRIM_PERCENT_LONG_BANK1));
+    report.setEthanolFuel(decode(responses, PID.ETHANOL_FUEL));
 
     return report;
   }
@@ -116,10 +436,103 @@ public class OBD2Standard implements Closeable {
    * @param mode
    * @param pid
    * @param hexParams
-   * @return a list of responses. Never null, but may be empty.
+   * @return a list of responses, one for each responding unit. Never null, but may be empty.
+   *         Contains only the {@link ResponseWithNoData} if the PID is in the
+   *         {@link NegativeCache}.
    */
   protected List<Response> ask(final Mode mode, final PID pid, final String... hexParams) {
     LOG.debug("ask(mode={}, pid={}, hexParams={})", mode, pid, hexParams);
+    if (this.negativeCache.isCached(mode, pid)) {
+      LOG.trace("Skipping the PID {}, it failed recently.", pid);
+      return Collections.<Response> singletonList(new ResponseWithNoData(mode, pid));
+    }
+    if (!this.circuitBreaker.allows(mode, pid)) {
+      LOG.trace("Skipping the PID {}, it timed out repeatedly.", pid);
+      return Collections.<Response> singletonList(new ResponseWithNoData(mode, pid));
+    }
+    return askDevice(mode, pid, hexParams);
+  }
+
+
+  /**
+   * Repeats the last request by sending only the carriage return, so the device doesn't need to
+   * parse the request again. The caller is responsible for the last request being the request of
+   * the PID.
+   *
+   * @param mode
+   * @param pid
+   * @return a list of responses, one for each responding unit.
+   * @throws PortCommunicationTimeoutException - if the response did not come in time.
+   */
+  public List<Response> askAgain(final Mode mode, final PID pid) {
+    LOG.trace("askAgain(mode={}, pid={})", mode, pid);
+    final long start = System.nanoTime();
+    final List<Message> messages = request(0, getTimeout(mode, pid));
+    measured(mode, pid, System.nanoTime() - start);
+    if (messages.isEmpty()) {
+      return Collections.<Response> singletonList(new ResponseWithNoData(mode, pid));
+    }
+    final List<Response> responses = new ArrayList<>(messages.size());
+    for (final Message message : messages) {
+      responses.add(toResponse(mode, pid, message));
+    }
+    return responses;
+  }
+
+
+  /**
+   * Sets the adaptive timing of the device, see AT AT in elm327.pdf.
+   *
+   * @param mode - 0 is off, 1 is the default, 2 is aggressive.
+   * @throws PortCommunicationException
+   */
+  public void setAdaptiveTiming(final int mode) throws PortCommunicationException {
+    this.comm.setAdaptiveTiming(mode);
+  }
+
+
+  /**
+   * Sends the request without looking into the {@link NegativeCache} and the
+   * {@link CircuitBreaker}, but updates them.
+   */
+  private List<Response> askDevice(final Mode mode, final PID pid, final String... hexParams) {
+    final List<Message> messages = requestPid(mode, pid, hexParams);
+    if (messages == null || messages.isEmpty()) {
+      return Collections.<Response> singletonList(new ResponseWithNoData(mode, pid));
+    }
+    final List<Response> responses = new ArrayList<>(messages.size());
+    for (final Message message : messages) {
+      responses.add(toResponse(mode, pid, message));
+    }
+    return responses;
+  }
+
+
+  /**
+   * Same as {@link #askDevice(Mode, PID, String...)}, but passes only the response of the first
+   * responding unit to the handler.
+   */
+  private void askDevice(final Mode mode, final PID pid, final ResponseHandler handler) {
+    final List<Message> messages = requestPid(mode, pid, (String[]) null);
+    if (messages == null || messages.isEmpty()) {
+      handler.handle(pid, new ResponseWithNoData(mode, pid));
+      return;
+    }
+    if (messages.size() > 1) {
+      LOG.debug("More units responded, using the first response of {}.", messages.size());
+    }
+    handler.handle(pid, toSample(mode, pid, messages.get(0)));
+  }
+
+
+  /**
+   * Sends the request of the PID and updates the {@link NegativeCache}, the {@link CircuitBreaker}
+   * and the {@link VehicleProfile}.
+   *
+   * @return messages of responding units, reused by the next request. Empty list if the unit
+   *         responded NO DATA, null if the request timed out.
+   */
+  private List<Message> requestPid(final Mode mode, final PID pid, final String... hexParams) {
     final String[] params;
     if (hexParams == null) {
       params = new String[2];
@@ -133,28 +546,53 @@ public class OBD2Standard implements Closeable {
         params[i + 2] = hexParams[i];
       }
     }
-    comm.writeln(params);
-    final String responseString = removeIgnoredText(comm.readResponse(StringUtils.join(params)));
-    final List<Response> responses = new ArrayList<>();
+    final int expectedResponses = this.profile.getResponseCounts().get(mode, pid);
+    final long start = System.nanoTime();
+    final List<Message> messages;
+    try {
+      messages = request(expectedResponses, getTimeout(mode, pid), params);
+    } catch (final PortCommunicationTimeoutException e) {
+      LOG.warn("The PID {} did not respond: {}", pid, e.getMessage());
+      this.circuitBreaker.timedOut(mode, pid);
+      return null;
+    }
+    this.circuitBreaker.succeeded(mode, pid);
+    measured(mode, pid, System.nanoTime() - start);
+    if (mode == Mode.CURRENT_DATA) {
+      this.profile.setNoData(pid, messages.isEmpty());
+    }
     // Ford Focus 1.4
-    if ("NO DATA".equals(responseString)) {
-      responses.add(new ResponseWithNoData(mode, pid));
-      return responses;
+    if (messages.isEmpty()) {
+      this.negativeCache.failed(mode, pid);
+      return messages;
     }
-
-    final String[] vals = split(responseString);
-    LOG.trace("vals: \n  {}", Arrays.toString(vals));
-    final String firstWord = vals[0];
-    if (firstWord.length() != 2) {
-      throw new PortCommunicationException("Invalid response: '" + responseString + "'");
+    final boolean error = messages.get(0).byteAt(0) == ERROR_RESPONSE;
+    if (error) {
+      this.negativeCache.failed(mode, pid);
+    } else {
+      this.negativeCache.succeeded(mode, pid);
     }
-    if ("7F".equals(firstWord)) {
-      LOG.warn("Error response: '{}'", responseString);
-      final Response response = new Response(true, mode, pid, vals);
-      responses.add(response);
-      return responses;
+    if (expectedResponses == 0 && !error) {
+      this.profile.getResponseCounts().learn(mode, pid, messages.size());
+    }
+    return messages;
+  }
+
+
+  private Response toResponse(final Mode mode, final PID pid, final Message message) {
+    return toSample(mode, pid, message).copy();
+  }
+
+
+  /**
+   * @return the reused {@link #sample} filled with the data of the message.
+   */
+  private Response toSample(final Mode mode, final PID pid, final Message message) {
+    if (message.byteAt(0) == ERROR_RESPONSE) {
+      LOG.warn("Error response: '{}'", message);
+      this.sample.set(true, mode, pid, message, 0, message.length());
+      return this.sample;
     }
-    final String[] data;
     final PID responsePID;
     final int dataOffset;
     if (mode == Mode.DIAGNOSTIC || mode == Mode.CLEAR_TROUBLE_CODES) {
@@ -162,46 +600,83 @@ public class OBD2Standard implements Closeable {
       responsePID = null;
     } else {
       dataOffset = 2;
-      responsePID = PID.parseHex(vals[1], mode);
-    }
-    if (vals.length > dataOffset) {
-      data = Arrays.copyOfRange(vals, dataOffset, vals.length);
-    } else {
-      data = null;
+      responsePID = PID.parse(message.byteAt(1), mode);
     }
-    final Response response = new Response(false, mode, responsePID, data);
-    responses.add(response);
-    return responses;
+    this.sample.set(false, mode, responsePID, message, dataOffset, message.length() - dataOffset);
+    return this.sample;
   }
 
 
-  private String[] split(final String responseString) {
-    final ArrayList<String> response = new ArrayList<>();
-    Character first = null;
-    for (int i = 0; i < responseString.length(); i++) {
-      final char c = responseString.charAt(i);
-      if (Character.isWhitespace(c)) {
-        continue;
-      }
-      if (first == null) {
-        first = Character.valueOf(c);
-      } else {
-        response.add(StringUtils.join(first, c));
-        first = null;
-      }
-
+  /**
+   * Sends the request and splits the response to messages of the responding units.
+   *
+   * @param expectedResponses - count of expected responses, 0 if unknown. If the device supports
+   *          it, it doesn't wait for more responses than expected.
+   * @param timeout - timeout of the response in millis.
+   * @param params - the request
+   * @return messages of responding units. Empty list if the unit responded NO DATA.
+   * @throws PortCommunicationTimeoutException - if the response did not come in time. The request
+   *           is interrupted, so the device is ready for the next one.
+   */
+  private List<Message> request(final int expectedResponses, final long timeout, final String... params) {
+    final ObdRequestEvent event = new ObdRequestEvent();
+    event.begin();
+    List<Message> messages = null;
+    boolean timedOut = false;
+    try {
+      messages = send(expectedResponses, timeout, params);
+      return messages;
+    } catch (final PortCommunicationTimeoutException e) {
+      timedOut = true;
+      throw e;
+    } finally {
+      event.commit(params, timeout, messages, timedOut);
     }
-    return response.toArray(new String[response.size()]);
   }
 
 
-  private String removeIgnoredText(final String responseString) {
-    LOG.trace("removeIgnoredText(responseString={})", responseString);
-    final String fixed = StringUtils.removeIgnoreCase(responseString, "SEARCHING...");
-    if (fixed.length() != responseString.length()) {
-      LOG.warn("Removed ignored text from the response: '{}'. Result: '{}'", responseString, fixed);
+  /**
+   * Same as {@link #request(int, long, String...)}, without the {@link ObdRequestEvent}.
+   */
+  private List<Message> send(final int expectedResponses, final long timeout, final String... params) {
+    final boolean countSent = this.responseCountSupported && expectedResponses > 0;
+    if (countSent) {
+      final String[] paramsWithCount = Arrays.copyOf(params, params.length + 1);
+      paramsWithCount[params.length] = HEX_DIGITS[expectedResponses];
+      comm.writeln(paramsWithCount);
+    } else {
+      comm.writeln(params);
+    }
+    final ResponseView payload;
+    try {
+      payload = comm.readPayload(timeout);
+    } catch (final PortCommunicationTimeoutException e) {
+      comm.interrupt(timeout);
+      throw e;
+    }
+    if (countSent && payload.contentEquals(UNKNOWN_COMMAND)) {
+      LOG.warn("The device does not support the count of expected responses, it will not be sent any more.");
+      this.responseCountSupported = false;
+      return send(0, timeout, params);
+    }
+    if (payload.isSearching()) {
+      LOG.warn("Removed ignored text SEARCHING... from the response.");
     }
-    return fixed;
+    if (payload.contentEquals(NO_DATA)) {
+      this.metrics.noDataResponse();
+      return Collections.emptyList();
+    }
+    final List<Message> messages = this.parser.parse(payload);
+    if (messages == null || messages.isEmpty()) {
+      throw new PortCommunicationException("Invalid response: '" + payload + "'");
+    }
+    for (int i = 0; i < messages.size(); i++) {
+      if (messages.get(i).byteAt(0) == ERROR_RESPONSE) {
+        this.metrics.errorResponse();
+      }
+    }
+    LOG.trace("messages: \n  {}", messages);
+    return messages;
   }
 
 
@@ -217,47 +692,284 @@ public class OBD2Standard implements Closeable {
     LOG.trace("askOneLine(mode={}, pid={}, hexParams={})", mode, pid, hexParams);
     final List<Response> responses = ask(mode, pid, hexParams);
     if (responses.size() > 1) {
-      // bug or something weird.
-      throw new IllegalStateException(
-          "Too many responses for this command: " + ReflectionToStringBuilder.toString(responses));
+      LOG.debug("More units responded, using the first response of {}.", responses.size());
     }
     final Response response = responses.get(0);
     return response;
   }
 
 
+  /**
+   * Asks for several PIDs of the same mode. On CAN protocols the PIDs are grouped to requests of up
+   * to {@value #MAX_PIDS_IN_REQUEST} PIDs, on other protocols every PID is requested separately.
+   *
+   * @param mode
+   * @param pids - PIDs with known length of the data.
+   * @return responses mapped by requested PIDs in the same order. PIDs missing in the response are
+   *         mapped to the {@link ResponseWithNoData}.
+   */
+  public Map<PID, Response> askBatch(final Mode mode, final Collection<PID> pids) {
+    final Map<PID, Response> responses = new LinkedHashMap<>();
+    for (final PID pid : pids) {
+      // keeps the order of PIDs, the handler is not called in the same order
+      responses.put(pid, null);
+    }
+    askBatch(mode, pids, (pid, response) -> responses.put(pid, response.copy()));
+    return responses;
+  }
+
+
+  /**
+   * Same as {@link #askBatch(Mode, Collection)}, but passes responses to the handler instead of
+   * collecting them, so the polling loop doesn't allocate a response for every value.
+   *
+   * @param mode
+   * @param pids - PIDs with known length of the data.
+   * @param handler - called once for every PID, but not in the order of PIDs.
+   */
+  public void askBatch(final Mode mode, final Collection<PID> pids, final ResponseHandler handler) {
+    LOG.debug("askBatch(mode={}, pids={})", mode, pids);
+    final boolean can = getProtocol().isCan();
+    final List<PID> batch = new ArrayList<>(MAX_PIDS_IN_REQUEST);
+    for (final PID pid : pids) {
+      if (this.negativeCache.isCached(mode, pid) || !this.circuitBreaker.allows(mode, pid)) {
+        handler.handle(pid, new ResponseWithNoData(mode, pid));
+        continue;
+      }
+      if (!can) {
+        askDevice(mode, pid, handler);
+        continue;
+      }
+      batch.add(pid);
+      if (batch.size() == MAX_PIDS_IN_REQUEST) {
+        askBatch(mode, batch, handler);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      askBatch(mode, batch, handler);
+    }
+  }
+
+
+  private void askBatch(final Mode mode, final List<PID> batch, final ResponseHandler handler) {
+    LOG.trace("askBatch(mode={}, batch={}, handler)", mode, batch);
+    if (batch.size() == 1) {
+      askDevice(mode, batch.get(0), handler);
+      return;
+    }
+    final String[] params = new String[batch.size() + 1];
+    params[0] = mode.hex();
+    for (int i = 0; i < batch.size(); i++) {
+      params[i + 1] = batch.get(i).hex();
+    }
+    final int expectedResponses = this.profile.getResponseCounts().get(mode, batch);
+    final long start = System.nanoTime();
+    final List<Message> messages;
+    try {
+      messages = request(expectedResponses, getBatchTimeout(mode, batch), params);
+    } catch (final PortCommunicationTimeoutException e) {
+      LOG.warn("The multi-PID request timed out: {}, asking PIDs one by one.", e.getMessage());
+      // responding PIDs close their breakers again by single requests
+      for (final PID pid : batch) {
+        this.circuitBreaker.timedOut(mode, pid);
+      }
+      for (final PID pid : batch) {
+        if (this.circuitBreaker.allows(mode, pid)) {
+          askDevice(mode, pid, handler);
+        } else {
+          handler.handle(pid, new ResponseWithNoData(mode, pid));
+        }
+      }
+      return;
+    }
+    final long duration = System.nanoTime() - start;
+    for (int i = 0; i < messages.size(); i++) {
+      if (messages.get(i).byteAt(0) == ERROR_RESPONSE) {
+        LOG.warn("Error response to the multi-PID request: '{}', asking PIDs one by one.", messages.get(i));
+        for (final PID pid : batch) {
+          askDevice(mode, pid, handler);
+        }
+        return;
+      }
+    }
+    final int[] occurrences = new int[batch.size()];
+    boolean decoded = true;
+    for (int i = 0; i < messages.size(); i++) {
+      decoded &= decodeBatch(mode, messages.get(i), batch, occurrences, handler);
+    }
+    this.metrics.measuredBatch(mode, duration);
+    if (expectedResponses == 0 && decoded) {
+      this.profile.getResponseCounts().learn(mode, batch, messages.size());
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      final PID pid = batch.get(i);
+      if (occurrences[i] == 0 && (!decoded || expectedResponses > 0)) {
+        // the PID may be in the undecoded rest of the response or the count cut off its unit
+        if (expectedResponses > 0) {
+          this.profile.getResponseCounts().forget(mode, batch);
+        }
+        askDevice(mode, pid, handler);
+        continue;
+      }
+      this.circuitBreaker.succeeded(mode, pid);
+      if (mode == Mode.CURRENT_DATA) {
+        this.profile.setNoData(pid, occurrences[i] == 0);
+      }
+      if (occurrences[i] == 0) {
+        this.negativeCache.failed(mode, pid);
+        handler.handle(pid, new ResponseWithNoData(mode, pid));
+        continue;
+      }
+      this.negativeCache.succeeded(mode, pid);
+      if (expectedResponses == 0) {
+        this.profile.getResponseCounts().learn(mode, pid, occurrences[i]);
+      }
+    }
+  }
+
+
+  /**
+   * The message contains the mode and then the sequence of PIDs and their data. PIDs which were
+   * not requested are skipped. The first occurrence of every PID is passed to the handler.
+   *
+   * @param occurrences - counts of messages containing the PID on the same index in the batch.
+   * @return false if the rest of the message could not be decoded.
+   */
+  private boolean decodeBatch(final Mode mode, final Message message, final List<PID> batch,
+      final int[] occurrences, final ResponseHandler handler) {
+    if (message.byteAt(0) != RESPONSE_MODE_OFFSET + mode.getCode()) {
+      throw new PortCommunicationException("Invalid response to the multi-PID request: " + message);
+    }
+    int index = 1;
+    while (index < message.length()) {
+      final PID pid = PID.parse(message.byteAt(index), mode);
+      final int length = pid.getLength();
+      if (length == 0 || index + length >= message.length()) {
+        LOG.warn("Cannot decode the PID {} in the response {}", pid, message);
+        return false;
+      }
+      final int batchIndex = batch.indexOf(pid);
+      if (batchIndex < 0) {
+        LOG.debug("Skipping the PID {} which was not requested.", pid);
+        index += length + 1;
+        continue;
+      }
+      occurrences[batchIndex]++;
+      if (occurrences[batchIndex] == 1) {
+        this.sample.set(false, mode, pid, message, index + 1, length);
+        handler.handle(pid, this.sample);
+      }
+      index += length + 1;
+    }
+    return true;
+  }
+
+
+  /**
+   * @return the protocol used by the device. {@link Protocol#AUTOMATIC} if the device did not
+   *         communicate with the car yet.
+   */
+  public Protocol getProtocol() {
+    if (this.protocol == null || this.protocol == Protocol.AUTOMATIC) {
+      this.protocol = Protocol.parseDPN(comm.at("DPN"));
+      LOG.info("Protocol: {}", this.protocol);
+    }
+    return this.protocol;
+  }
+
+
   private Mode getMode(final boolean freezed) {
     return freezed ? Mode.FREEZE_FRAME_DATA : Mode.CURRENT_DATA;
   }
 
 
   /**
-   * @return the VIN code of the car.
+   * Asks for the PID and converts the response by the formula of the PID.
+   *
+   * @param freezed - true to ask for the freeze frame data.
+   * @param pid - a PID with a formula, see {@link PID#getFormula()}.
+   * @return the value in units of the PID, see {@link PID#getUnit()}. Null if the vehicle did not
+   *         provide the value.
+   */
+  public Double getValue(final boolean freezed, final PID pid) {
+    LOG.debug("getValue(freezed={}, pid={})", freezed, pid);
+    return pid.decode(askOneLine(getMode(freezed), pid));
+  }
+
+
+  private Double decode(final Map<PID, Response> responses, final PID pid) {
+    return pid.decode(responses.get(pid));
+  }
+
+
+  private static Integer toInteger(final Double value) {
+    return value == null ? null : Integer.valueOf((int) Math.round(value));
+  }
+
+
+  /**
+   * Joins ASCII characters of the VIN from all messages of the first responding unit. CAN
+   * protocols send the VIN in one message, older protocols in 5 messages with 4 bytes each,
+   * where the first message is padded by zeros.
+   *
+   * @return the VIN code of the car, null if the vehicle did not provide it.
    */
   public String getVIN() {
     LOG.debug("getVIN()");
-    final Response responseBytes = askOneLine(Mode.VEHICLE_INFO, PID.VIN_COUNT_OF_BYTES);
-    LOG.info("Count of VIN bytes: {}", Integer.parseInt(responseBytes.getData()[0]), 16);
-
-    // TODO: Kalina did not returned any.
-    final List<Response> response = ask(Mode.VEHICLE_INFO, PID.VIN);
-    return response.toString();
+    final List<Response> responses = ask(Mode.VEHICLE_INFO, PID.VIN);
+    final String ecu = responses.get(0).getEcu();
+    final StringBuilder vin = new StringBuilder(VIN_LENGTH);
+    for (final Response response : responses) {
+      if (response.isError() || (ecu != null && !ecu.equals(response.getEcu()))) {
+        continue;
+      }
+      // the first byte is the count of data items or the sequence number of the message
+      for (int i = 1; i < response.length() && vin.length() < VIN_LENGTH; i++) {
+        if (response.byteAt(i) != 0) {
+          vin.append((char) response.byteAt(i));
+        }
+      }
+    }
+    if (vin.length() < VIN_LENGTH) {
+      LOG.warn("Invalid VIN: '{}', responses: {}", vin, responses);
+      return null;
+    }
+    return vin.toString();
   }
 
 
-  public boolean[] getSupportedPIDs() {
+  /**
+   * Asks for the chain of PIDs 0x00, 0x20, 0x40, ... while the vehicle reports the next range as
+   * supported. The result is stored in the profile of the vehicle.
+   *
+   * @return PIDs supported by the vehicle, {@link SupportedPIDs#UNKNOWN} if it did not respond.
+   */
+  public SupportedPIDs getSupportedPIDs() {
     LOG.debug("getSupportedPIDs()");
-    final Response line = askOneLine(Mode.CURRENT_DATA, PID.PIDS_SUPPORTED);
-    if (line.isError()) {
-      return null;
+    if (this.profile.getSupportedPIDs() != null) {
+      return this.profile.getSupportedPIDs();
+    }
+    final SupportedPIDs supported = new SupportedPIDs();
+    for (final PID range : SUPPORTED_PIDS_RANGES) {
+      if (!supported.add(range, askOneLine(Mode.CURRENT_DATA, range))) {
+        break;
+      }
     }
-    return SerialUtils.convertHexToBooleanArray(line.getData());
+    this.profile.setSupportedPIDs(supported.count() == 0 ? SupportedPIDs.UNKNOWN : supported);
+    LOG.info("Supported PIDs: {}", this.profile.getSupportedPIDs());
+    this.profileStore.save(this.profile);
+    return this.profile.getSupportedPIDs();
   }
 
 
   public FuelStatus getFuelStatus(final boolean freezed) {
     LOG.debug("getFuelStatus(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.FUEL_STATUS);
+    return toFuelStatus(askOneLine(getMode(freezed), PID.FUEL_STATUS));
+  }
+
+
+  private FuelStatus toFuelStatus(final Response line) {
     if (line.isError()) {
       return null;
     }
@@ -268,7 +980,11 @@ public class OBD2Standard implements Closeable {
 
   public EcuCompatibility getEcuCompatibility() {
     LOG.debug("getEcuCompatibility()");
-    final Response response = askOneLine(Mode.CURRENT_DATA, PID.ECU_COMPATIBILITY);
+    return toEcuCompatibility(askOneLine(Mode.CURRENT_DATA, PID.ECU_COMPATIBILITY));
+  }
+
+
+  private EcuCompatibility toEcuCompatibility(final Response response) {
     if (response.isError()) {
       return null;
     }
@@ -284,7 +1000,11 @@ public class OBD2Standard implements Closeable {
 
   public MonitorStatus getMonitorStatus() {
     LOG.debug("getMonitorStatus()");
-    final Response response = askOneLine(Mode.CURRENT_DATA, PID.MONITOR_STATUS);
+    return toMonitorStatus(askOneLine(Mode.CURRENT_DATA, PID.MONITOR_STATUS));
+  }
+
+
+  private MonitorStatus toMonitorStatus(final Response response) {
     if (response.isError()) {
       return null;
     }
@@ -320,34 +1040,36 @@ public class OBD2Standard implements Closeable {
       return faults;
     }
     for (final Response response : responses) {
-      final String[] data = response.getData();
-      final boolean[] a1 = SerialUtils.convertHexToBooleanArray(data[0]);
-      final boolean[] b1 = SerialUtils.convertHexToBooleanArray(data[1]);
-      final Fault fault1 = Fault.decode(a1, b1);
-      LOG.info("Parsed fault code1: {}", fault1.getCode());
-      if (!"P0000".equals(fault1.getCode())) {
-        faults.add(fault1);
-      }
-      final boolean[] a2 = SerialUtils.convertHexToBooleanArray(data[2]);
-      final boolean[] b2 = SerialUtils.convertHexToBooleanArray(data[3]);
-      final Fault fault2 = Fault.decode(a2, b2);
-      LOG.info("Parsed fault code2: {}", fault2.getCode());
-      if (!"P0000".equals(fault2.getCode())) {
-        faults.add(fault2);
-      }
-      final boolean[] a3 = SerialUtils.convertHexToBooleanArray(data[4]);
-      final boolean[] b3 = SerialUtils.convertHexToBooleanArray(data[5]);
-      final Fault fault3 = Fault.decode(a3, b3);
-      LOG.info("Parsed fault code3: {}", fault3.getCode());
-      if (!"P0000".equals(fault3.getCode())) {
-        faults.add(fault3);
-      }
+      faults.addAll(decodeFaults(response, getProtocol().isCan()));
     }
 
     return faults;
   }
 
 
+  /**
+   * CAN protocols send the count of codes first, older protocols always send 3 codes padded by
+   * zeros.
+   *
+   * @param response - the response of the mode 03.
+   * @param can - true if the response has the count of codes.
+   * @return decoded codes without the empty code P0000.
+   */
+  static List<Fault> decodeFaults(final Response response, final boolean can) {
+    final List<Fault> faults = new ArrayList<>();
+    final String[] data = response.getData();
+    for (int i = can ? 1 : 0; i + 1 < data.length; i += 2) {
+      final Fault fault = Fault.decode(SerialUtils.convertHexToBooleanArray(data[i]),
+          SerialUtils.convertHexToBooleanArray(data[i + 1]));
+      LOG.info("Parsed fault code: {}", fault.getCode());
+      if (!"P0000".equals(fault.getCode())) {
+        faults.add(fault);
+      }
+    }
+    return faults;
+  }
+
+
   /**
    * @param freezed
    * @return engine load in percents.
@@ -355,105 +1077,53 @@ public class OBD2Standard implements Closeable {
    */
   public Double getEngineLoad(final boolean freezed) {
     LOG.debug("getEngineLoad(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.ENGINE_LOAD);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return (encoded * 100.0) / 255.0;
+    return getValue(freezed, PID.ENGINE_LOAD);
   }
 
 
   public Integer getEngineCoolantTemperature(final boolean freezed) {
     LOG.debug("getEngineCoolantTemperature(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.ENGINE_COOLANT_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
     // TODO: three bytes?!
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return encoded - 40;
+    return toInteger(getValue(freezed, PID.ENGINE_COOLANT_TEMPERATURE));
   }
 
 
   public Integer getEngineOilTemperature(final boolean freezed) {
     LOG.debug("getEngineOilTemperature(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.ENGINE_OIL_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return encoded - 40;
+    return toInteger(getValue(freezed, PID.ENGINE_OIL_TEMPERATURE));
   }
 
 
   public Integer getIntakeAirTemperature(final boolean freezed) {
     LOG.debug("getIntakeAirTemperature(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.INTAKE_AIR_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return encoded - 40;
+    return toInteger(getValue(freezed, PID.INTAKE_AIR_TEMPERATURE));
   }
 
 
   public Integer getIntakeAirTemperatureSensor(final boolean freezed) {
     LOG.debug("getIntakeAirTemperatureSensor(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.INTAKE_AIR_TEMPERATURE_SENSOR);
-    if (line.isError()) {
-      return null;
-    }
-    // TODO: what is it?
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedB = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedC = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedD = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedE = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedF = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedG = Integer.parseInt(line.getData()[0], 16);
-    return encodedA - 40;
+    // the first sensor of the bank 1
+    return toInteger(getValue(freezed, PID.INTAKE_AIR_TEMPERATURE_SENSOR));
   }
 
 
   public Integer getExhaustGasRecirculationTemperature(final boolean freezed) {
     LOG.debug("getExhaustGasRecirculationTemperature(freezed={})", freezed);
-
-    final Response line = askOneLine(getMode(freezed), PID.EXHAUST_GAS_RECIRCULATION_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
-    // TODO: what is it?
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedB = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedC = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedD = Integer.parseInt(line.getData()[0], 16);
-    // final int encodedE = Integer.parseInt(line.getData()[0], 16);
-    return encodedA - 40;
-
+    // the sensor A
+    return toInteger(getValue(freezed, PID.EXHAUST_GAS_RECIRCULATION_TEMPERATURE));
   }
 
 
   public Integer getAmbientAirTemperature(final boolean freezed) {
     LOG.debug("getAmbientAirTemperature(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.AMBIENT_AIR_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return encoded - 40;
+    return toInteger(getValue(freezed, PID.AMBIENT_AIR_TEMPERATURE));
   }
 
 
   public Integer getManifoldSurfaceTemperature(final boolean freezed) {
     LOG.debug("getManifoldSurfaceTemperature(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.MANIFOLD_SURFACE_TEMPERATURE);
-    if (line.isError()) {
-      return null;
-    }
     // TODO: how many bytes?
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return encoded - 40;
+    return toInteger(getValue(freezed, PID.MANIFOLD_SURFACE_TEMPERATURE));
   }
 
 
@@ -467,12 +1137,7 @@ public class OBD2Standard implements Closeable {
     } else {
       throw new IllegalArgumentException("Invalid bank: " + bank);
     }
-    final Response line = askOneLine(getMode(freezed), pid);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return ((encoded - 128.0) * 100.0) / 128.0;
+    return getValue(freezed, pid);
   }
 
 
@@ -498,89 +1163,53 @@ public class OBD2Standard implements Closeable {
       throw new IllegalArgumentException("Invalid bank: " + bank);
     }
 
-    final Response response = askOneLine(getMode(freezed), pid);
-    if (response.isError()) {
-      return null;
-    }
-    final int encodedA = Integer.parseInt(response.getData()[0], 16);
-    final int encodedB = Integer.parseInt(response.getData()[1], 16);
-    return ((encodedA * 256.0 + encodedB) / 10.0) - 40.0;
+    return getValue(freezed, pid);
   }
 
 
   public Integer getDistanceWithMalfunction(final boolean freezed) {
     LOG.debug("getDistanceWithMalfunction(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.DISTANCE_WITH_MALFUNCTION);
-    if (line.isError()) {
-      return null;
-    }
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    final int encodedB = Integer.parseInt(line.getData()[1], 16);
-    return encodedA * 256 + encodedB;
+    return toInteger(getValue(freezed, PID.DISTANCE_WITH_MALFUNCTION));
   }
 
 
   public Integer getDistanceSinceCodesCleared(final boolean freezed) {
     LOG.debug("getDistanceSinceCodesCleared(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.DISTANCE_FROM_CODES_CLEARED);
-    if (line.isError()) {
-      return null;
-    }
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    final int encodedB = Integer.parseInt(line.getData()[1], 16);
-    return encodedA * 256 + encodedB;
+    return toInteger(getValue(freezed, PID.DISTANCE_FROM_CODES_CLEARED));
   }
 
 
   public Double getEthanolFuel(final boolean freezed) {
     LOG.debug("getEthanolFuel(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.ETHANOL_FUEL);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return (encoded * 100.0) / 255.0;
+    return getValue(freezed, PID.ETHANOL_FUEL);
   }
 
 
   public Double getFuelLevelInput(final boolean freezed) {
     LOG.debug("getFuelLevelInput(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.FUEL_LEVEL_INPUT);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return (encoded * 100.0) / 255.0;
+    return getValue(freezed, PID.FUEL_LEVEL_INPUT);
   }
 
 
   public Double getFuelInjectionTiming(final boolean freezed) {
     LOG.debug("getFuelInjectionTiming(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.FUEL_INJECTION_TIMING);
-    if (line.isError()) {
-      return null;
-    }
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    final int encodedB = Integer.parseInt(line.getData()[1], 16);
-    return (encodedA * 256.0 + encodedB - 26880.0) / 128.0;
+    return getValue(freezed, PID.FUEL_INJECTION_TIMING);
   }
 
 
   public Double getFuelRate(final boolean freezed) {
     LOG.debug("getFuelRate(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.FUEL_RATE);
-    if (line.isError()) {
-      return null;
-    }
-    final int encodedA = Integer.parseInt(line.getData()[0], 16);
-    final int encodedB = Integer.parseInt(line.getData()[1], 16);
-    return (encodedA * 256.0 + encodedB) * 0.05;
+    return getValue(freezed, PID.FUEL_RATE);
   }
 
 
   public AirStatus getSecondaryAirStatus(final boolean freezed) {
     LOG.debug("getSecondaryAirStatus(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.SECONDARY_AIR_STATUS);
+    return toSecondaryAirStatus(askOneLine(getMode(freezed), PID.SECONDARY_AIR_STATUS));
+  }
+
+
+  private AirStatus toSecondaryAirStatus(final Response line) {
     if (line.isError()) {
       return null;
     }
@@ -596,22 +1225,12 @@ public class OBD2Standard implements Closeable {
 
   public Double getCommandedEgr(final boolean freezed) {
     LOG.debug("getCommandedEgr(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.COMMANDED_EGR);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return (encoded * 100.0) / 255.0;
+    return getValue(freezed, PID.COMMANDED_EGR);
   }
 
 
   public Double getEgrError(final boolean freezed) {
     LOG.debug("getEgrError(freezed={})", freezed);
-    final Response line = askOneLine(getMode(freezed), PID.EGR_ERROR);
-    if (line.isError()) {
-      return null;
-    }
-    final int encoded = Integer.parseInt(line.getData()[0], 16);
-    return ((encoded - 128.0) * 100.0) / 128.0;
+    return getValue(freezed, PID.EGR_ERROR);
   }
 }
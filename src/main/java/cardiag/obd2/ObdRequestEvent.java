@@ -0,0 +1,99 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.Arrays;
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of one request sent to the vehicle, from writing the request to
+ * parsing the response. The duration of the event is the latency of the request. When the
+ * recording is off, fields are not computed and the JIT removes the allocation of the event.
+ *
+ * @author David Matějček
+ */
+@Name(ObdRequestEvent.NAME)
+@Label("OBD Request")
+@Category({"cardiag", "OBD"})
+@Description("Request sent to the vehicle and its response")
+public final class ObdRequestEvent extends Event {
+
+  /** Name of the event type */
+  public static final String NAME = "cardiag.ObdRequest";
+  /** Outcome of a valid response */
+  public static final String OK = "OK";
+  /** Outcome of the NO DATA response */
+  public static final String NO_DATA = "NO DATA";
+  /** Outcome of the negative response 7F */
+  public static final String NEGATIVE = "7F";
+  /** Outcome of a request which did not respond in time */
+  public static final String TIMEOUT = "TIMEOUT";
+  /** Outcome of an invalid response or a failure of the port */
+  public static final String FAILED = "FAILED";
+
+  @Label("Mode")
+  String mode;
+
+  @Label("PIDs")
+  @Description("Requested PIDs and parameters")
+  String pid;
+
+  @Label("Bytes")
+  @Description("Count of bytes in all messages")
+  @DataAmount
+  int bytes;
+
+  @Label("Responses")
+  @Description("Count of messages of responding units")
+  int responses;
+
+  @Label("Timeout")
+  @Timespan(Timespan.MILLISECONDS)
+  long timeout;
+
+  @Label("Outcome")
+  String outcome;
+
+
+  /**
+   * Ends the event and commits it if the recording is on.
+   *
+   * @param params - the request, the mode and PIDs. Empty if the last request was repeated.
+   * @param timeoutMillis - timeout of the request.
+   * @param messages - parsed response, null if the request failed.
+   * @param timedOut - true if the request failed with the timeout.
+   */
+  void commit(final String[] params, final long timeoutMillis, final List<Message> messages,
+      final boolean timedOut) {
+    end();
+    if (!shouldCommit()) {
+      return;
+    }
+    if (params.length > 0) {
+      this.mode = params[0];
+      this.pid = String.join(" ", Arrays.asList(params).subList(1, params.length));
+    }
+    this.timeout = timeoutMillis;
+    if (messages == null) {
+      this.outcome = timedOut ? TIMEOUT : FAILED;
+    } else if (messages.isEmpty()) {
+      this.outcome = NO_DATA;
+    } else {
+      this.outcome = messages.get(0).byteAt(0) == OBD2Standard.ERROR_RESPONSE ? NEGATIVE : OK;
+      this.responses = messages.size();
+      for (final Message message : messages) {
+        this.bytes += message.length();
+      }
+    }
+    commit();
+  }
+}
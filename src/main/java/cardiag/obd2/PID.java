@@ -3,187 +3,515 @@
  */
 package cardiag.obd2;
 
+import static cardiag.obd2.Formula.BYTE;
+import static cardiag.obd2.Formula.CATALYST_TEMPERATURE;
+import static cardiag.obd2.Formula.EQUIVALENCE_RATIO;
+import static cardiag.obd2.Formula.OXYGEN_SENSOR_VOLTAGE;
+import static cardiag.obd2.Formula.PERCENT;
+import static cardiag.obd2.Formula.SENSOR_EXHAUST_TEMPERATURE;
+import static cardiag.obd2.Formula.SENSOR_TEMPERATURE;
+import static cardiag.obd2.Formula.SIGNED_PERCENT;
+import static cardiag.obd2.Formula.TEMPERATURE;
+import static cardiag.obd2.Formula.TORQUE_PERCENT;
+import static cardiag.obd2.Formula.WORD;
+import static cardiag.obd2.Formula.WORD_PERCENT;
 import static cardiag.obd2.Mode.CURRENT_DATA;
 import static cardiag.obd2.Mode.DIAGNOSTIC;
 import static cardiag.obd2.Mode.FREEZE_FRAME_DATA;
 import static cardiag.obd2.Mode.VEHICLE_INFO;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Parameter IDs and their definitions. Every instance is registered by modes and its code, so
+ * the definition of the PID in the response is found by {@link #get(Mode, int)} in the constant
+ * time. Some PIDs have a different meaning in different modes.
+ *
  * @author David Matějček
  */
 public class PID {
 
   private static final Logger LOG = LoggerFactory.getLogger(PID.class);
+  private static final PID[][] REGISTRY = new PID[Mode.VEHICLE_INFO.getCode() + 1][256];
 
-  public static final PID DIAGNOSTIC_CODES = new PID(0, DIAGNOSTIC);
-  public static final PID CLEAR_TROUBLE_CODES = new PID(0, Mode.CLEAR_TROUBLE_CODES);
-  public static final PID VIN_COUNT_OF_BYTES = new PID(1, VEHICLE_INFO);
-  public static final PID VIN = new PID(2, VEHICLE_INFO);
+  public static final PID DIAGNOSTIC_CODES = new PID(0, 0, "Diagnostic trouble codes", DIAGNOSTIC);
+  public static final PID CLEAR_TROUBLE_CODES = new PID(0, 0, "Clear trouble codes", Mode.CLEAR_TROUBLE_CODES);
+  public static final PID VIN_COUNT_OF_BYTES = new PID(1, 1, "VIN message count", VEHICLE_INFO);
+  public static final PID VIN = new PID(2, 0, "Vehicle identification number", VEHICLE_INFO);
 
-  public static final PID PIDS_SUPPORTED = new PID(0, CURRENT_DATA);
-  public static final PID MONITOR_STATUS = new PID(1, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_STATUS = new PID(3, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID ENGINE_LOAD = new PID(4, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID ENGINE_COOLANT_TEMPERATURE = new PID(5, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_TRIM_PERCENT_SHORT_BANK1 = new PID(6, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_TRIM_PERCENT_LONG_BANK1 = new PID(7, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_TRIM_PERCENT_SHORT_BANK2 = new PID(8, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_TRIM_PERCENT_LONG_BANK2 = new PID(9, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED = new PID(0x00, 4, "PIDs supported [01 - 20]", CURRENT_DATA);
+  public static final PID MONITOR_STATUS = new PID(0x01, 4, "Monitor status since DTCs cleared", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID FREEZE_FRAME_DTC = new PID(0x02, 2, "DTC that caused the freeze frame", FREEZE_FRAME_DATA);
+  public static final PID FUEL_STATUS = new PID(0x03, 2, "Fuel system status", FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_LOAD = new PID(0x04, 1, "Calculated engine load", "%", PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID ENGINE_COOLANT_TEMPERATURE = new PID(0x05, 1, "Engine coolant temperature", "°C", TEMPERATURE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_TRIM_PERCENT_SHORT_BANK1 = new PID(0x06, 1, "Short term fuel trim - bank 1", "%",
+      SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_TRIM_PERCENT_LONG_BANK1 = new PID(0x07, 1, "Long term fuel trim - bank 1", "%",
+      SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_TRIM_PERCENT_SHORT_BANK2 = new PID(0x08, 1, "Short term fuel trim - bank 2", "%",
+      SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_TRIM_PERCENT_LONG_BANK2 = new PID(0x09, 1, "Long term fuel trim - bank 2", "%",
+      SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_PRESSURE = new PID(0x0A, 1, "Fuel pressure (gauge)", "kPa", d -> d[0] * 3.0,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID INTAKE_MANIFOLD_PRESSURE = new PID(0x0B, 1, "Intake manifold absolute pressure", "kPa", BYTE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_RPM = new PID(0x0C, 2, "Engine speed", "rpm", d -> (d[0] * 256.0 + d[1]) / 4.0,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID VEHICLE_SPEED = new PID(0x0D, 1, "Vehicle speed", "km/h", BYTE, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID TIMING_ADVANCE = new PID(0x0E, 1, "Timing advance", "°", d -> d[0] / 2.0 - 64.0,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID INTAKE_AIR_TEMPERATURE = new PID(0x0F, 1, "Intake air temperature", "°C", TEMPERATURE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID MAF_AIR_FLOW_RATE = new PID(0x10, 2, "Mass air flow sensor air flow rate", "g/s",
+      d -> (d[0] * 256.0 + d[1]) / 100.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID THROTTLE_POSITION = new PID(0x11, 1, "Throttle position", "%", PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID SECONDARY_AIR_STATUS = new PID(0x12, 1, "Commanded secondary air status", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID OXYGEN_SENSORS_PRESENT = new PID(0x13, 1, "Oxygen sensors present in 2 banks",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR1_VOLTAGE = new PID(0x14, 2, "Oxygen sensor 1 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR2_VOLTAGE = new PID(0x15, 2, "Oxygen sensor 2 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR3_VOLTAGE = new PID(0x16, 2, "Oxygen sensor 3 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR4_VOLTAGE = new PID(0x17, 2, "Oxygen sensor 4 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR5_VOLTAGE = new PID(0x18, 2, "Oxygen sensor 5 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR6_VOLTAGE = new PID(0x19, 2, "Oxygen sensor 6 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR7_VOLTAGE = new PID(0x1A, 2, "Oxygen sensor 7 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR8_VOLTAGE = new PID(0x1B, 2, "Oxygen sensor 8 - voltage", "V",
+      OXYGEN_SENSOR_VOLTAGE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ECU_COMPATIBILITY = new PID(0x1C, 1, "OBD standards this vehicle conforms to", CURRENT_DATA);
+  public static final PID OXYGEN_SENSORS_PRESENT_4_BANKS = new PID(0x1D, 1, "Oxygen sensors present in 4 banks",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID AUXILIARY_INPUT_STATUS = new PID(0x1E, 1, "Auxiliary input status", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID RUN_TIME_SINCE_ENGINE_START = new PID(0x1F, 2, "Run time since engine start", "s", WORD,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_21_40 = new PID(0x20, 4, "PIDs supported [21 - 40]", CURRENT_DATA);
+  public static final PID DISTANCE_WITH_MALFUNCTION = new PID(0x21, 2,
+      "Distance traveled with malfunction indicator lamp on", "km", WORD, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_RAIL_PRESSURE = new PID(0x22, 2, "Fuel rail pressure relative to the manifold vacuum",
+      "kPa", d -> (d[0] * 256.0 + d[1]) * 0.079, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_RAIL_GAUGE_PRESSURE = new PID(0x23, 2, "Fuel rail gauge pressure", "kPa",
+      d -> (d[0] * 256.0 + d[1]) * 10.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR1_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x24, 4,
+      "Oxygen sensor 1 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR2_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x25, 4,
+      "Oxygen sensor 2 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR3_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x26, 4,
+      "Oxygen sensor 3 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR4_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x27, 4,
+      "Oxygen sensor 4 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR5_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x28, 4,
+      "Oxygen sensor 5 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR6_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x29, 4,
+      "Oxygen sensor 6 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR7_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x2A, 4,
+      "Oxygen sensor 7 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR8_EQUIVALENCE_RATIO_VOLTAGE = new PID(0x2B, 4,
+      "Oxygen sensor 8 - equivalence ratio and voltage", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID COMMANDED_EGR = new PID(0x2C, 1, "Commanded EGR", "%", PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID EGR_ERROR = new PID(0x2D, 1, "EGR error", "%", SIGNED_PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID COMMANDED_EVAPORATIVE_PURGE = new PID(0x2E, 1, "Commanded evaporative purge", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_LEVEL_INPUT = new PID(0x2F, 1, "Fuel tank level input", "%", PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID WARM_UPS_SINCE_CODES_CLEARED = new PID(0x30, 1, "Warm-ups since codes cleared", null, BYTE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID DISTANCE_FROM_CODES_CLEARED = new PID(0x31, 2, "Distance traveled since codes cleared", "km",
+      WORD, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EVAP_SYSTEM_VAPOR_PRESSURE = new PID(0x32, 2, "Evap. system vapor pressure", "Pa",
+      d -> ((short) (d[0] << 8 | d[1])) / 4.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID BAROMETRIC_PRESSURE = new PID(0x33, 1, "Absolute barometric pressure", "kPa", BYTE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR1_EQUIVALENCE_RATIO_CURRENT = new PID(0x34, 4,
+      "Oxygen sensor 1 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR2_EQUIVALENCE_RATIO_CURRENT = new PID(0x35, 4,
+      "Oxygen sensor 2 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR3_EQUIVALENCE_RATIO_CURRENT = new PID(0x36, 4,
+      "Oxygen sensor 3 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR4_EQUIVALENCE_RATIO_CURRENT = new PID(0x37, 4,
+      "Oxygen sensor 4 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR5_EQUIVALENCE_RATIO_CURRENT = new PID(0x38, 4,
+      "Oxygen sensor 5 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR6_EQUIVALENCE_RATIO_CURRENT = new PID(0x39, 4,
+      "Oxygen sensor 6 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR7_EQUIVALENCE_RATIO_CURRENT = new PID(0x3A, 4,
+      "Oxygen sensor 7 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID OXYGEN_SENSOR8_EQUIVALENCE_RATIO_CURRENT = new PID(0x3B, 4,
+      "Oxygen sensor 8 - equivalence ratio and current", "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID CATALYST_TEMPERATURE_BANK1_SENSOR1 = new PID(0x3C, 2,
+      "Catalyst temperature - bank 1, sensor 1", "°C", CATALYST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID CATALYST_TEMPERATURE_BANK2_SENSOR1 = new PID(0x3D, 2,
+      "Catalyst temperature - bank 2, sensor 1", "°C", CATALYST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID CATALYST_TEMPERATURE_BANK1_SENSOR2 = new PID(0x3E, 2,
+      "Catalyst temperature - bank 1, sensor 2", "°C", CATALYST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID CATALYST_TEMPERATURE_BANK2_SENSOR2 = new PID(0x3F, 2,
+      "Catalyst temperature - bank 2, sensor 2", "°C", CATALYST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_41_60 = new PID(0x40, 4, "PIDs supported [41 - 60]", CURRENT_DATA);
+  public static final PID MONITOR_STATUS_THIS_DRIVE_CYCLE = new PID(0x41, 4, "Monitor status this drive cycle",
+      CURRENT_DATA);
+  public static final PID CONTROL_MODULE_VOLTAGE = new PID(0x42, 2, "Control module voltage", "V",
+      d -> (d[0] * 256.0 + d[1]) / 1000.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ABSOLUTE_LOAD = new PID(0x43, 2, "Absolute load value", "%", WORD_PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID COMMANDED_EQUIVALENCE_RATIO = new PID(0x44, 2, "Commanded air-fuel equivalence ratio",
+      "ratio", EQUIVALENCE_RATIO, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID RELATIVE_THROTTLE_POSITION = new PID(0x45, 1, "Relative throttle position", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID AMBIENT_AIR_TEMPERATURE = new PID(0x46, 1, "Ambient air temperature", "°C", TEMPERATURE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ABSOLUTE_THROTTLE_POSITION_B = new PID(0x47, 1, "Absolute throttle position B", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ABSOLUTE_THROTTLE_POSITION_C = new PID(0x48, 1, "Absolute throttle position C", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ACCELERATOR_PEDAL_POSITION_D = new PID(0x49, 1, "Accelerator pedal position D", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ACCELERATOR_PEDAL_POSITION_E = new PID(0x4A, 1, "Accelerator pedal position E", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ACCELERATOR_PEDAL_POSITION_F = new PID(0x4B, 1, "Accelerator pedal position F", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID COMMANDED_THROTTLE_ACTUATOR = new PID(0x4C, 1, "Commanded throttle actuator", "%", PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID TIME_WITH_MIL_ON = new PID(0x4D, 2, "Time run with malfunction indicator lamp on", "min",
+      WORD, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID TIME_SINCE_CODES_CLEARED = new PID(0x4E, 2, "Time since trouble codes cleared", "min", WORD,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID MAXIMUM_EQUIVALENCE_RATIO = new PID(0x4F, 4,
+      "Maximum values of equivalence ratio, oxygen sensor voltage, current and intake manifold pressure", "ratio", BYTE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID MAXIMUM_AIR_FLOW_RATE = new PID(0x50, 4,
+      "Maximum value of air flow rate from mass air flow sensor", "g/s", d -> d[0] * 10.0, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID FUEL_TYPE = new PID(0x51, 1, "Fuel type", FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ETHANOL_FUEL = new PID(0x52, 1, "Ethanol fuel", "%", PERCENT, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID ABSOLUTE_EVAP_SYSTEM_VAPOR_PRESSURE = new PID(0x53, 2, "Absolute evap. system vapor pressure",
+      "kPa", d -> (d[0] * 256.0 + d[1]) / 200.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EVAP_SYSTEM_VAPOR_PRESSURE_WIDE = new PID(0x54, 2, "Evap. system vapor pressure", "Pa",
+      d -> (short) (d[0] << 8 | d[1]), FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID SECONDARY_OXYGEN_TRIM_SHORT_BANK1 = new PID(0x55, 2,
+      "Short term secondary oxygen sensor trim - bank 1", "%", SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID SECONDARY_OXYGEN_TRIM_LONG_BANK1 = new PID(0x56, 2,
+      "Long term secondary oxygen sensor trim - bank 1", "%", SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID SECONDARY_OXYGEN_TRIM_SHORT_BANK2 = new PID(0x57, 2,
+      "Short term secondary oxygen sensor trim - bank 2", "%", SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID SECONDARY_OXYGEN_TRIM_LONG_BANK2 = new PID(0x58, 2,
+      "Long term secondary oxygen sensor trim - bank 2", "%", SIGNED_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_RAIL_ABSOLUTE_PRESSURE = new PID(0x59, 2, "Fuel rail absolute pressure", "kPa",
+      d -> (d[0] * 256.0 + d[1]) * 10.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID RELATIVE_ACCELERATOR_PEDAL_POSITION = new PID(0x5A, 1, "Relative accelerator pedal position",
+      "%", PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID HYBRID_BATTERY_REMAINING_LIFE = new PID(0x5B, 1, "Hybrid battery pack remaining life", "%",
+      PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_OIL_TEMPERATURE = new PID(0x5C, 1, "Engine oil temperature", "°C", TEMPERATURE,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_INJECTION_TIMING = new PID(0x5D, 2, "Fuel injection timing", "°",
+      d -> (d[0] * 256.0 + d[1]) / 128.0 - 210.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_RATE = new PID(0x5E, 2, "Engine fuel rate", "L/h", d -> (d[0] * 256.0 + d[1]) * 0.05,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EMISSION_REQUIREMENTS = new PID(0x5F, 1, "Emission requirements to which vehicle is designed",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_61_80 = new PID(0x60, 4, "PIDs supported [61 - 80]", CURRENT_DATA);
+  public static final PID DRIVER_DEMAND_TORQUE = new PID(0x61, 1, "Driver's demand engine - percent torque", "%",
+      TORQUE_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ACTUAL_ENGINE_TORQUE = new PID(0x62, 1, "Actual engine - percent torque", "%", TORQUE_PERCENT,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_REFERENCE_TORQUE = new PID(0x63, 2, "Engine reference torque", "Nm", WORD,
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_PERCENT_TORQUE = new PID(0x64, 5, "Engine percent torque data, idle", "%",
+      TORQUE_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID AUXILIARY_INPUT_OUTPUT = new PID(0x65, 2, "Auxiliary input / output supported",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID MAF_SENSOR = new PID(0x66, 5, "Mass air flow sensor A", "g/s",
+      d -> (d[1] * 256.0 + d[2]) / 32.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_COOLANT_TEMPERATURE_SENSOR = new PID(0x67, 3, "Engine coolant temperature sensor A",
+      "°C", SENSOR_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID INTAKE_AIR_TEMPERATURE_SENSOR = new PID(0x68, 7, "Intake air temperature sensor 1", "°C",
+      SENSOR_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID COMMANDED_EGR_AND_EGR_ERROR = new PID(0x69, 7, "Actual EGR, commanded EGR, and EGR error",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID DIESEL_INTAKE_AIR_FLOW = new PID(0x6A, 5,
+      "Commanded diesel intake air flow control and relative intake air flow position", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID EXHAUST_GAS_RECIRCULATION_TEMPERATURE = new PID(0x6B, 5,
+      "Exhaust gas recirculation temperature sensor A", "°C", SENSOR_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID THROTTLE_ACTUATOR_CONTROL = new PID(0x6C, 5,
+      "Commanded throttle actuator control and relative throttle position", FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID FUEL_PRESSURE_CONTROL_SYSTEM = new PID(0x6D, 11, "Fuel pressure control system",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID INJECTION_PRESSURE_CONTROL_SYSTEM = new PID(0x6E, 9, "Injection pressure control system",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID TURBOCHARGER_COMPRESSOR_INLET_PRESSURE = new PID(0x6F, 3,
+      "Turbocharger compressor inlet pressure A", "kPa", d -> d[1], FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID BOOST_PRESSURE_CONTROL = new PID(0x70, 10, "Boost pressure control", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID VARIABLE_GEOMETRY_TURBO_CONTROL = new PID(0x71, 6, "Variable geometry turbo control",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID WASTEGATE_CONTROL = new PID(0x72, 5, "Wastegate control", FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EXHAUST_PRESSURE = new PID(0x73, 5, "Exhaust pressure", FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID TURBOCHARGER_RPM = new PID(0x74, 5, "Turbocharger A speed", "rpm", d -> d[1] * 256.0 + d[2],
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID TURBOCHARGER_TEMPERATURE_A = new PID(0x75, 7, "Turbocharger A temperature", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID TURBOCHARGER_TEMPERATURE_B = new PID(0x76, 7, "Turbocharger B temperature", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID CHARGE_AIR_COOLER_TEMPERATURE = new PID(0x77, 5,
+      "Charge air cooler temperature bank 1, sensor 1", "°C", SENSOR_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EXHAUST_GAS_TEMPERATURE_BANK1 = new PID(0x78, 9, "Exhaust gas temperature bank 1, sensor 1",
+      "°C", SENSOR_EXHAUST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID EXHAUST_GAS_TEMPERATURE_BANK2 = new PID(0x79, 9, "Exhaust gas temperature bank 2, sensor 1",
+      "°C", SENSOR_EXHAUST_TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID DIESEL_PARTICULATE_FILTER_BANK1 = new PID(0x7A, 7, "Diesel particulate filter bank 1",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID DIESEL_PARTICULATE_FILTER_BANK2 = new PID(0x7B, 7, "Diesel particulate filter bank 2",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID DIESEL_PARTICULATE_FILTER_TEMPERATURE = new PID(0x7C, 9,
+      "Diesel particulate filter temperature, bank 1 inlet", "°C", SENSOR_EXHAUST_TEMPERATURE, FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID NOX_NTE_CONTROL_AREA_STATUS = new PID(0x7D, 1, "NOx NTE control area status",
+      FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PM_NTE_CONTROL_AREA_STATUS = new PID(0x7E, 1, "PM NTE control area status", FREEZE_FRAME_DATA,
+      CURRENT_DATA);
+  public static final PID ENGINE_RUN_TIME = new PID(0x7F, 13, "Total engine run time", "s",
+      d -> ((long) d[1] << 24 | d[2] << 16 | d[3] << 8 | d[4]), FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_81_A0 = new PID(0x80, 4, "PIDs supported [81 - A0]", CURRENT_DATA);
+  public static final PID MANIFOLD_SURFACE_TEMPERATURE = new PID(0x84, 1, "Manifold surface temperature", "°C",
+      TEMPERATURE, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID ENGINE_FRICTION_TORQUE = new PID(0x8E, 1, "Engine friction - percent torque", "%",
+      TORQUE_PERCENT, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_A1_C0 = new PID(0xA0, 4, "PIDs supported [A1 - C0]", CURRENT_DATA);
+  public static final PID ODOMETER = new PID(0xA6, 4, "Odometer", "km",
+      d -> ((long) d[0] << 24 | d[1] << 16 | d[2] << 8 | d[3]) / 10.0, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public static final PID PIDS_SUPPORTED_C1_E0 = new PID(0xC0, 4, "PIDs supported [C1 - E0]", CURRENT_DATA);
 
-  public static final PID INTAKE_AIR_TEMPERATURE = new PID(0x0F, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID INTAKE_AIR_TEMPERATURE_SENSOR = new PID(0x68, FREEZE_FRAME_DATA, CURRENT_DATA);
 
-  public static final PID SECONDARY_AIR_STATUS = new PID(0x12, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID ECU_COMPATIBILITY = new PID(0x1c, CURRENT_DATA);
+  private final int code;
+  private final int length;
+  private final String hex;
+  private final String description;
+  private final String unit;
+  private final Formula formula;
 
-  public static final PID DISTANCE_WITH_MALFUNCTION = new PID(0x21, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID COMMANDED_EGR = new PID(0x2c, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID EGR_ERROR = new PID(0x2d, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_LEVEL_INPUT = new PID(0x2F, FREEZE_FRAME_DATA, CURRENT_DATA);
 
-  public static final PID DISTANCE_FROM_CODES_CLEARED = new PID(0x31, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID CATALYST_TEMPERATURE_BANK1_SENSOR1 = new PID(0x3c, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID CATALYST_TEMPERATURE_BANK2_SENSOR1 = new PID(0x3d, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID CATALYST_TEMPERATURE_BANK1_SENSOR2 = new PID(0x3e, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID CATALYST_TEMPERATURE_BANK2_SENSOR2 = new PID(0x3f, FREEZE_FRAME_DATA, CURRENT_DATA);
+  /**
+   * Creates a PID without a numeric value, ie. bit flags or enumerations.
+   *
+   * @param pidCode - a code of the PID
+   * @param length - count of data bytes in the response, 0 if it is variable.
+   * @param description - a short description.
+   * @param modesAllowed - modes which can be used with this PID.
+   */
+  protected PID(final int pidCode, final int length, final String description, final Mode... modesAllowed) {
+    this(pidCode, length, description, null, null, modesAllowed);
+  }
 
-  public static final PID AMBIENT_AIR_TEMPERATURE = new PID(0x46, FREEZE_FRAME_DATA, CURRENT_DATA);
 
-  public static final PID ETHANOL_FUEL = new PID(0x51, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID ENGINE_OIL_TEMPERATURE = new PID(0x5c, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_INJECTION_TIMING = new PID(0x5d, FREEZE_FRAME_DATA, CURRENT_DATA);
-  public static final PID FUEL_RATE = new PID(0x5e, FREEZE_FRAME_DATA, CURRENT_DATA);
+  /**
+   * @param pidCode - a code of the PID
+   * @param length - count of data bytes in the response, 0 if it is variable.
+   * @param description - a short description.
+   * @param unit - a unit of the value, may be null.
+   * @param formula - converts data to the value, null if the value is not a number.
+   * @param modesAllowed - modes which can be used with this PID.
+   */
+  protected PID(final int pidCode, final int length, final String description, final String unit,
+      final Formula formula, final Mode... modesAllowed) {
+    this.code = pidCode;
+    this.length = length;
+    this.description = description;
+    this.unit = unit;
+    this.formula = formula;
+    this.hex = StringUtils.leftPad(Integer.toHexString(pidCode), 2, '0');
+    for (final Mode mode : modesAllowed) {
+      final PID registered = REGISTRY[mode.getCode()][pidCode];
+      if (registered != null) {
+        throw new IllegalStateException(
+            String.format("The PID %s in mode %s is already registered as %s", this, mode, registered));
+      }
+      REGISTRY[mode.getCode()][pidCode] = this;
+    }
+  }
 
-  public static final PID EXHAUST_GAS_RECIRCULATION_TEMPERATURE = new PID(0x6b, FREEZE_FRAME_DATA, CURRENT_DATA);
 
-  public static final PID MANIFOLD_SURFACE_TEMPERATURE = new PID(0x84, FREEZE_FRAME_DATA, CURRENT_DATA);
+  public String hex() {
+    return hex;
+  }
 
 
-  private final Mode[] allowedModes;
-  private final int code;
+  /**
+   * @return code of the PID.
+   */
+  public int getCode() {
+    return code;
+  }
 
 
-  protected PID(final int pidCode, final Mode... modesAllowed) {
-    this.code = pidCode;
-    this.allowedModes = modesAllowed;
+  /**
+   * @return count of data bytes in the response, 0 if it is variable.
+   */
+  public int getLength() {
+    return length;
   }
 
 
-  public String hex() {
-    return StringUtils.leftPad(Integer.toHexString(code), 2, '0');
+  /**
+   * @return a short description of the PID.
+   */
+  public String getDescription() {
+    return description;
+  }
+
+
+  /**
+   * @return unit of the value, may be null.
+   */
+  public String getUnit() {
+    return unit;
+  }
+
+
+  /**
+   * @return formula converting the data to the value, null if the value is not a number.
+   */
+  public Formula getFormula() {
+    return formula;
+  }
+
+
+  /**
+   * @param mode
+   * @return true if the PID can be requested in the mode.
+   */
+  public boolean isAllowed(final Mode mode) {
+    return REGISTRY[mode.getCode()][this.code] == this;
+  }
+
+
+  /**
+   * Converts data of the response to the value of the PID.
+   *
+   * @param response
+   * @return the value or null if the response is an error.
+   * @throws IllegalArgumentException - if the PID doesn't have a formula or there is not enough
+   *           data in the response.
+   */
+  public Double decode(final Response response) {
+    if (response.isError()) {
+      return null;
+    }
+    return decodeValue(response);
+  }
+
+
+  /**
+   * Converts data of the response to the value of the PID without boxing.
+   *
+   * @param response
+   * @return the value or {@link Double#NaN} if the response is an error.
+   * @throws IllegalArgumentException - if the PID doesn't have a formula or there is not enough
+   *           data in the response.
+   */
+  public double decodeValue(final Response response) {
+    if (response.isError()) {
+      return Double.NaN;
+    }
+    if (this.formula == null) {
+      throw new IllegalArgumentException("The PID doesn't have a numeric value: " + this);
+    }
+    if (response.length() < this.length) {
+      throw new IllegalArgumentException("Not enough data for the PID " + this + ": " + response);
+    }
+    return this.formula.apply(response.bytes());
   }
 
 
   @Override
   public String toString() {
-    return ReflectionToStringBuilder.toString(this);
+    return this.hex + " (" + this.description + ")";
   }
 
 
-  // the problem is that some pids have very different meaning in different modes.
+  /**
+   * @param mode
+   * @param code - 0-255
+   * @return the registered PID or null.
+   */
+  public static PID get(final Mode mode, final int code) {
+    return REGISTRY[mode.getCode()][code];
+  }
+
+
+  /**
+   * @param mode
+   * @return all PIDs registered for the mode, ordered by their codes.
+   */
+  public static List<PID> values(final Mode mode) {
+    final List<PID> pids = new ArrayList<>();
+    for (final PID pid : REGISTRY[mode.getCode()]) {
+      if (pid != null) {
+        pids.add(pid);
+      }
+    }
+    return Collections.unmodifiableList(pids);
+  }
+
+
+  /**
+   * @param hex - code of the PID as a hex string.
+   * @param mode
+   * @return the registered PID, never null.
+   * @throws IllegalArgumentException - if the PID is unknown or not allowed in the mode.
+   */
   public static PID parseHex(final String hex, final Mode mode) {
-    LOG.debug("parseHex(hex={}, mode={})", hex, mode);
+    LOG.trace("parseHex(hex={}, mode={})", hex, mode);
     if (hex == null) {
       throw new IllegalArgumentException("Invalid PID: " + hex);
     }
-    final int code = Integer.parseInt(hex, 16);
-    switch (code) {
-      case 0:
-        switch (mode) {
-          case CURRENT_DATA:
-            return valid(mode, PIDS_SUPPORTED);
-          case DIAGNOSTIC:
-            return valid(mode, DIAGNOSTIC_CODES);
-          case CLEAR_TROUBLE_CODES:
-            return valid(mode, CLEAR_TROUBLE_CODES);
-          default:
-            break;
-        }
-      case 1:
-        switch (mode) {
-          case VEHICLE_INFO:
-            return valid(mode, VIN_COUNT_OF_BYTES);
-          default:
-            return valid(mode, MONITOR_STATUS);
-        }
-      case 2:
-        return valid(mode, VIN);
-      case 3:
-        return valid(mode, FUEL_STATUS);
-      case 4:
-        return valid(mode, ENGINE_LOAD);
-      case 5:
-        return valid(mode, ENGINE_COOLANT_TEMPERATURE);
-      case 6:
-        return valid(mode, FUEL_TRIM_PERCENT_SHORT_BANK1);
-      case 7:
-        return valid(mode, FUEL_TRIM_PERCENT_LONG_BANK2);
-      case 8:
-        return valid(mode, FUEL_TRIM_PERCENT_SHORT_BANK1);
-      case 9:
-        return valid(mode, FUEL_TRIM_PERCENT_LONG_BANK2);
-      case 0x0F:
-        return valid(mode, INTAKE_AIR_TEMPERATURE);
-      case 0x12:
-        return valid(mode, SECONDARY_AIR_STATUS);
-      case 0x1C:
-        return valid(mode, ECU_COMPATIBILITY);
-      case 0x21:
-        return valid(mode, DISTANCE_WITH_MALFUNCTION);
-      case 0x2c:
-        return valid(mode, COMMANDED_EGR);
-      case 0x2d:
-        return valid(mode, EGR_ERROR);
-      case 0x2F:
-        return valid(mode, FUEL_LEVEL_INPUT);
-      case 0x31:
-        return valid(mode, DISTANCE_FROM_CODES_CLEARED);
-      case 0x3c:
-        return valid(mode, CATALYST_TEMPERATURE_BANK1_SENSOR1);
-      case 0x3d:
-        return valid(mode, CATALYST_TEMPERATURE_BANK2_SENSOR1);
-      case 0x3e:
-        return valid(mode, CATALYST_TEMPERATURE_BANK1_SENSOR2);
-      case 0x3f:
-        return valid(mode, CATALYST_TEMPERATURE_BANK2_SENSOR2);
-      case 0x46:
-        return valid(mode, AMBIENT_AIR_TEMPERATURE);
-      case 0x51:
-        return valid(mode, ETHANOL_FUEL);
-      case 0x5c:
-        return valid(mode, ENGINE_OIL_TEMPERATURE);
-      case 0x5d:
-        return valid(mode, FUEL_INJECTION_TIMING);
-      case 0x5e:
-        return valid(mode, FUEL_RATE);
-      case 0x68:
-        return valid(mode, INTAKE_AIR_TEMPERATURE_SENSOR);
-      case 0x6b:
-        return valid(mode, EXHAUST_GAS_RECIRCULATION_TEMPERATURE);
-      case 0x84:
-        return valid(mode, MANIFOLD_SURFACE_TEMPERATURE);
-      default:
-        throw new IllegalArgumentException("Invalid PID: " + hex);
-    }
+    return parse(Integer.parseInt(hex, 16), mode);
   }
 
 
   /**
+   * @param code - code of the PID.
    * @param mode
-   * @param pidsSupported
-   * @return
+   * @return the registered PID, never null.
+   * @throws IllegalArgumentException - if the PID is unknown or not allowed in the mode.
    */
-  private static PID valid(Mode mode, PID pid) {
-    for (Mode allowed : pid.allowedModes) {
-      if (allowed == mode) {
-        return pid;
+  public static PID parse(final int code, final Mode mode) {
+    if (code < 0 || code > 0xFF) {
+      throw new IllegalArgumentException("Invalid PID: " + code);
+    }
+    final PID pid = REGISTRY[mode.getCode()][code];
+    if (pid != null) {
+      return pid;
+    }
+    for (final PID[] pids : REGISTRY) {
+      if (pids[code] != null) {
+        throw new IllegalArgumentException(
+            String.format("The pid %s is not allowed to run in mode %s.", pids[code], mode));
       }
     }
-    throw new IllegalArgumentException(String.format("The pid %s is not allowed to run in mode %s.", pid, mode));
+    throw new IllegalArgumentException("Invalid PID: " + Integer.toHexString(code));
   }
 }
@@ -0,0 +1,283 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polls {@link Mode#CURRENT_DATA} PIDs with different target frequencies.
+ * <p>
+ * The capacity of the link is given by the round trip of one request and by the count of PIDs in
+ * one request. The plan grants the capacity to PIDs from the slowest ones, so slow signals are
+ * never starved and fast signals get the rest. PIDs then receive credits by their granted rate in
+ * every slot (a weighted round robin); a slot requests PIDs with a full credit, the most overdue
+ * first. If no PID is due, the slot is idle and the link is not used. The measured round trip
+ * replans the schedule if it differs from the expected value.
+ * <p>
+ * The scheduler is not thread safe.
+ *
+ * @author David Matějček
+ */
+public class PollingScheduler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PollingScheduler.class);
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  /** Weight of the last measured round trip in its average */
+  private static final double ROUND_TRIP_SMOOTHING = 0.2;
+  /** Relative change of the round trip which causes a new plan */
+  private static final double REPLAN_THRESHOLD = 0.25;
+
+  private final OBD2Standard obd2;
+  private final int pidsPerRequest;
+  private final Map<PID, Double> rates = new LinkedHashMap<>();
+  private final List<PID> once = new ArrayList<>();
+  private final Map<PID, Double> unmet = new LinkedHashMap<>();
+  private List<PID> plannedPids = Collections.emptyList();
+  private double[] granted = new double[0];
+  private double[] credits = new double[0];
+  /** Indices of PIDs due in the slot, reused by every slot */
+  private int[] due = new int[0];
+  private long plannedRoundTrip;
+  private double roundTrip;
+
+
+  /**
+   * @param obd2 - used to execute requests.
+   * @param roundTripMillis - expected time of one request and response, the first estimate.
+   */
+  public PollingScheduler(final OBD2Standard obd2, final long roundTripMillis) {
+    this(obd2, obd2.getProtocol().isCan() ? OBD2Standard.MAX_PIDS_IN_REQUEST : 1,
+        TimeUnit.MILLISECONDS.toNanos(roundTripMillis));
+  }
+
+
+  PollingScheduler(final OBD2Standard obd2, final int pidsPerRequest, final long roundTripNanos) {
+    LOG.debug("PollingScheduler(obd2={}, pidsPerRequest={}, roundTripNanos={})", obd2, pidsPerRequest,
+        roundTripNanos);
+    if (pidsPerRequest < 1 || roundTripNanos <= 0L) {
+      throw new IllegalArgumentException("Invalid capacity: " + pidsPerRequest + " PIDs in " + roundTripNanos + " ns");
+    }
+    this.obd2 = obd2;
+    this.pidsPerRequest = pidsPerRequest;
+    this.roundTrip = roundTripNanos;
+    this.plannedRoundTrip = roundTripNanos;
+  }
+
+
+  /**
+   * Sets the target frequency of the PID and plans the schedule again.
+   *
+   * @param pid - a PID with known length of the data, see {@link PID#getLength()}.
+   * @param frequency - target frequency in Hz, 0 means once per session.
+   */
+  public void setRate(final PID pid, final double frequency) {
+    LOG.debug("setRate(pid={}, frequency={})", pid, frequency);
+    if (frequency < 0d) {
+      throw new IllegalArgumentException("Invalid frequency: " + frequency);
+    }
+    if (frequency == 0d) {
+      setOnce(pid);
+      return;
+    }
+    this.once.remove(pid);
+    this.rates.put(pid, frequency);
+    plan();
+  }
+
+
+  /**
+   * The PID will be requested only once, in the next slot.
+   *
+   * @param pid - a PID with known length of the data, see {@link PID#getLength()}.
+   */
+  public void setOnce(final PID pid) {
+    LOG.debug("setOnce(pid={})", pid);
+    if (this.rates.remove(pid) != null) {
+      plan();
+    }
+    if (!this.once.contains(pid)) {
+      this.once.add(pid);
+    }
+  }
+
+
+  /**
+   * @param pid
+   * @return frequency in Hz planned for the PID, 0 if the PID is not polled periodically.
+   */
+  public double getPlannedRate(final PID pid) {
+    final int index = this.plannedPids.indexOf(pid);
+    return index < 0 ? 0d : this.granted[index];
+  }
+
+
+  /**
+   * @return PIDs mapped to planned frequencies lower than their targets. Empty if all targets
+   *         are met.
+   */
+  public Map<PID, Double> getUnmetRates() {
+    return Collections.unmodifiableMap(this.unmet);
+  }
+
+
+  /**
+   * @return the average round trip of one request in nanoseconds.
+   */
+  public long getRoundTrip() {
+    return (long) this.roundTrip;
+  }
+
+
+  /**
+   * Requests PIDs due in the next slot. If no PID is due, waits for one round trip.
+   *
+   * @return responses mapped by PIDs, empty if the slot was idle.
+   */
+  public Map<PID, Response> poll() {
+    final Map<PID, Response> responses = new LinkedHashMap<>();
+    poll((pid, response) -> responses.put(pid, response.copy()));
+    return responses;
+  }
+
+
+  /**
+   * Requests PIDs due in the next slot and passes their responses to the handler. If no PID is
+   * due, waits for one round trip.
+   *
+   * @param handler - see {@link OBD2Standard#askBatch(Mode, java.util.Collection, ResponseHandler)}
+   * @return false if the slot was idle.
+   */
+  public boolean poll(final ResponseHandler handler) {
+    final List<PID> slot = nextSlot();
+    if (slot.isEmpty()) {
+      sleep(this.plannedRoundTrip);
+      return false;
+    }
+    final long start = System.nanoTime();
+    this.obd2.askBatch(Mode.CURRENT_DATA, slot, handler);
+    measured(System.nanoTime() - start);
+    return true;
+  }
+
+
+  /**
+   * @return PIDs to request in the next slot, at most one request.
+   */
+  List<PID> nextSlot() {
+    final List<PID> slot = new ArrayList<>(this.pidsPerRequest);
+    while (!this.once.isEmpty() && slot.size() < this.pidsPerRequest) {
+      slot.add(this.once.remove(0));
+    }
+    int dueCount = 0;
+    for (int i = 0; i < this.credits.length; i++) {
+      this.credits[i] += this.granted[i] * this.plannedRoundTrip / NANOS_PER_SECOND;
+      if (this.credits[i] >= 1d) {
+        this.due[dueCount++] = i;
+      }
+    }
+    while (slot.size() < this.pidsPerRequest) {
+      final int chosen = takeMostCredited(dueCount);
+      if (chosen < 0) {
+        break;
+      }
+      final PID pid = this.plannedPids.get(chosen);
+      if (!slot.contains(pid)) {
+        slot.add(pid);
+        this.credits[chosen] -= 1d;
+      }
+    }
+    return slot;
+  }
+
+
+  /**
+   * @param dueCount - count of valid items in the due array.
+   * @return index of the due PID with the most credits, the first one of equal PIDs, or -1 if no
+   *         PID remains. The returned index is removed from the due array.
+   */
+  private int takeMostCredited(final int dueCount) {
+    int best = -1;
+    for (int i = 0; i < dueCount; i++) {
+      if (this.due[i] >= 0 && (best < 0 || this.credits[this.due[i]] > this.credits[this.due[best]])) {
+        best = i;
+      }
+    }
+    if (best < 0) {
+      return -1;
+    }
+    final int index = this.due[best];
+    this.due[best] = -1;
+    return index;
+  }
+
+
+  /**
+   * Updates the average round trip and plans again if it changed too much.
+   *
+   * @param duration - measured duration of a request in nanoseconds.
+   */
+  void measured(final long duration) {
+    this.roundTrip = this.roundTrip * (1d - ROUND_TRIP_SMOOTHING) + duration * ROUND_TRIP_SMOOTHING;
+    if (Math.abs(this.roundTrip - this.plannedRoundTrip) > this.plannedRoundTrip * REPLAN_THRESHOLD) {
+      LOG.debug("The round trip changed from {} ns to {} ns.", this.plannedRoundTrip, (long) this.roundTrip);
+      plan();
+    }
+  }
+
+
+  /**
+   * Grants the capacity to PIDs ordered by their target rates, every PID gets at most the fair
+   * share of the remaining capacity and at most one request per slot.
+   */
+  private void plan() {
+    this.plannedRoundTrip = (long) this.roundTrip;
+    final double slotRate = NANOS_PER_SECOND / this.plannedRoundTrip;
+    final List<PID> pids = new ArrayList<>(this.rates.keySet());
+    pids.sort(Comparator.comparingDouble(this.rates::get));
+    final double[] newGranted = new double[pids.size()];
+    final double[] newCredits = new double[pids.size()];
+    this.unmet.clear();
+    double remaining = slotRate * this.pidsPerRequest;
+    for (int i = 0; i < pids.size(); i++) {
+      final PID pid = pids.get(i);
+      final double target = this.rates.get(pid);
+      final double fairShare = remaining / (pids.size() - i);
+      newGranted[i] = Math.min(target, Math.min(slotRate, fairShare));
+      remaining -= newGranted[i];
+      final int oldIndex = this.plannedPids.indexOf(pid);
+      // new PIDs are due immediately
+      newCredits[i] = oldIndex < 0 ? 1d : this.credits[oldIndex];
+      if (newGranted[i] < target) {
+        this.unmet.put(pid, newGranted[i]);
+      }
+    }
+    this.plannedPids = pids;
+    this.granted = newGranted;
+    this.credits = newCredits;
+    this.due = new int[newCredits.length];
+    if (!this.unmet.isEmpty()) {
+      LOG.warn("Target rates cannot be met with the round trip {} ms, planned rates in Hz: {}",
+          TimeUnit.NANOSECONDS.toMillis(this.plannedRoundTrip), this.unmet);
+    }
+  }
+
+
+  private void sleep(final long nanos) {
+    try {
+      TimeUnit.NANOSECONDS.sleep(nanos);
+    } catch (final InterruptedException e) {
+      LOG.warn("Interrupted.");
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Vehicle profiles persisted in properties files, one file per VIN and adapter. Reconnecting to
+ * a known vehicle then doesn't need to discover its capabilities again.
+ *
+ * @author David Matějček
+ */
+public class ProfileStore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProfileStore.class);
+  private static final String DIRECTORY_NAME = "profiles";
+  private static final String VIN = "vin";
+  private static final String ADAPTER = "adapter";
+  private static final String PROTOCOL = "protocol";
+  private static final String CREATED = "created";
+  private static final String SUPPORTED_PIDS = "supportedPIDs";
+  private static final String NO_DATA = "noData";
+  private static final String LATENCIES = "latencies";
+  private static final String ADAPTIVE_TIMING = "adaptiveTiming";
+  private static final String RESPONSE_COUNTS = "responseCounts.";
+
+  private final File directory;
+
+
+  /**
+   * @param cacheDirectory - a directory for the profiles directory. If null, profiles are not
+   *          persisted.
+   */
+  public ProfileStore(final File cacheDirectory) {
+    LOG.trace("ProfileStore(cacheDirectory={})", cacheDirectory);
+    this.directory = cacheDirectory == null ? null : new File(cacheDirectory, DIRECTORY_NAME);
+  }
+
+
+  /**
+   * @param vin
+   * @param adapter - identification of the adapter.
+   * @return the stored profile or null.
+   */
+  public synchronized VehicleProfile load(final String vin, final String adapter) {
+    final File file = toFile(vin, adapter);
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      properties.load(input);
+      return toProfile(properties);
+    } catch (final IOException | IllegalArgumentException e) {
+      LOG.warn("Cannot read the vehicle profile " + file, e);
+      return null;
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+
+  /**
+   * Saves the profile, if it has the VIN.
+   *
+   * @param profile
+   */
+  public synchronized void save(final VehicleProfile profile) {
+    LOG.debug("save(profile={})", profile);
+    final File file = toFile(profile.getVin(), profile.getAdapter());
+    if (file == null) {
+      return;
+    }
+    if (!this.directory.exists()) {
+      this.directory.mkdirs();
+    }
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(file);
+      toProperties(profile).store(output, "Vehicle profile");
+    } catch (final IOException e) {
+      LOG.warn("Cannot write the vehicle profile " + file, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+
+  private File toFile(final String vin, final String adapter) {
+    if (this.directory == null || vin == null) {
+      return null;
+    }
+    final String name = vin + '_' + StringUtils.defaultString(adapter);
+    return new File(this.directory, name.replaceAll("[^A-Za-z0-9.-]", "_") + ".properties");
+  }
+
+
+  private Properties toProperties(final VehicleProfile profile) {
+    final Properties properties = new Properties();
+    properties.setProperty(VIN, profile.getVin());
+    properties.setProperty(ADAPTER, StringUtils.defaultString(profile.getAdapter()));
+    if (profile.getProtocol() != null) {
+      properties.setProperty(PROTOCOL, Integer.toHexString(profile.getProtocol().getCode()));
+    }
+    properties.setProperty(CREATED, Long.toString(profile.getCreated()));
+    final SupportedPIDs supportedPIDs = profile.getSupportedPIDs();
+    if (supportedPIDs != null && !supportedPIDs.isUnknown()) {
+      final StringBuilder bitmap = new StringBuilder(70);
+      for (final long word : supportedPIDs.toBitmap()) {
+        if (bitmap.length() > 0) {
+          bitmap.append(' ');
+        }
+        bitmap.append(Long.toHexString(word));
+      }
+      properties.setProperty(SUPPORTED_PIDS, bitmap.toString());
+    }
+    final StringBuilder noData = new StringBuilder();
+    final StringBuilder latencies = new StringBuilder();
+    for (final PID pid : PID.values(Mode.CURRENT_DATA)) {
+      if (profile.isNoData(pid)) {
+        append(noData, pid.hex());
+      }
+      if (profile.getLatency(pid) > 0) {
+        append(latencies, pid.hex() + ':' + profile.getLatency(pid));
+      }
+    }
+    if (profile.getAdaptiveTiming() >= 0) {
+      properties.setProperty(ADAPTIVE_TIMING, Integer.toString(profile.getAdaptiveTiming()));
+    }
+    properties.setProperty(NO_DATA, noData.toString());
+    properties.setProperty(LATENCIES, latencies.toString());
+    for (final Mode mode : Mode.values()) {
+      final StringBuilder counts = new StringBuilder();
+      for (final PID pid : PID.values(mode)) {
+        final int count = profile.getResponseCounts().get(mode, pid);
+        if (count > 0) {
+          append(counts, pid.hex() + ':' + count);
+        }
+      }
+      if (counts.length() > 0) {
+        properties.setProperty(RESPONSE_COUNTS + mode.hex(), counts.toString());
+      }
+    }
+    return properties;
+  }
+
+
+  private void append(final StringBuilder list, final String item) {
+    if (list.length() > 0) {
+      list.append(' ');
+    }
+    list.append(item);
+  }
+
+
+  private VehicleProfile toProfile(final Properties properties) {
+    final String protocolCode = properties.getProperty(PROTOCOL);
+    final Protocol protocol = protocolCode == null ? null : Protocol.parseHex(protocolCode);
+    final VehicleProfile profile = new VehicleProfile(properties.getProperty(VIN), properties.getProperty(ADAPTER),
+        protocol, Long.parseLong(properties.getProperty(CREATED, "0")));
+    final String[] bitmap = StringUtils.split(properties.getProperty(SUPPORTED_PIDS));
+    if (bitmap != null && bitmap.length == 4) {
+      final long[] bits = new long[bitmap.length];
+      for (int i = 0; i < bits.length; i++) {
+        bits[i] = Long.parseUnsignedLong(bitmap[i], 16);
+      }
+      profile.setSupportedPIDs(SupportedPIDs.fromBitmap(bits));
+    }
+    profile.setAdaptiveTiming(Integer.parseInt(properties.getProperty(ADAPTIVE_TIMING, "-1")));
+    for (final String hex : split(properties.getProperty(NO_DATA))) {
+      profile.setNoData(PID.parseHex(hex, Mode.CURRENT_DATA), true);
+    }
+    for (final String item : split(properties.getProperty(LATENCIES))) {
+      final String[] pair = item.split(":");
+      profile.setLatency(PID.parseHex(pair[0], Mode.CURRENT_DATA), Integer.parseInt(pair[1]));
+    }
+    for (final Mode mode : Mode.values()) {
+      for (final String item : split(properties.getProperty(RESPONSE_COUNTS + mode.hex()))) {
+        final String[] pair = item.split(":");
+        profile.getResponseCounts().learn(mode, PID.parseHex(pair[0], mode), Integer.parseInt(pair[1]));
+      }
+    }
+    return profile;
+  }
+
+
+  private String[] split(final String list) {
+    final String[] items = StringUtils.split(list);
+    return items == null ? new String[0] : items;
+  }
+}
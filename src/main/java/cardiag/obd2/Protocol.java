@@ -0,0 +1,117 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+/**
+ * OBD protocols supported by the ELM327, see AT SP and AT DP commands.
+ *
+ * @author David Matějček
+ */
+public enum Protocol {
+  AUTOMATIC(0x0, "Automatic", false, 0), //
+  SAE_J1850_PWM(0x1, "SAE J1850 PWM (41.6 kbaud)", false, 6), //
+  SAE_J1850_VPW(0x2, "SAE J1850 VPW (10.4 kbaud)", false, 6), //
+  ISO_9141_2(0x3, "ISO 9141-2 (5 baud init, 10.4 kbaud)", false, 6), //
+  ISO_14230_4_KWP_SLOW(0x4, "ISO 14230-4 KWP (5 baud init, 10.4 kbaud)", false, 6), //
+  ISO_14230_4_KWP_FAST(0x5, "ISO 14230-4 KWP (fast init, 10.4 kbaud)", false, 6), //
+  ISO_15765_4_CAN_11_500(0x6, "ISO 15765-4 CAN (11 bit ID, 500 kbaud)", true, 3), //
+  ISO_15765_4_CAN_29_500(0x7, "ISO 15765-4 CAN (29 bit ID, 500 kbaud)", true, 8), //
+  ISO_15765_4_CAN_11_250(0x8, "ISO 15765-4 CAN (11 bit ID, 250 kbaud)", true, 3), //
+  ISO_15765_4_CAN_29_250(0x9, "ISO 15765-4 CAN (29 bit ID, 250 kbaud)", true, 8), //
+  SAE_J1939_CAN(0xA, "SAE J1939 CAN (29 bit ID, 250 kbaud)", true, 8), //
+  USER1_CAN(0xB, "USER1 CAN (11 bit ID, 125 kbaud)", true, 3), //
+  USER2_CAN(0xC, "USER2 CAN (11 bit ID, 50 kbaud)", true, 3);
+
+  private final int code;
+  private final String description;
+  private final boolean can;
+  private final int headerLength;
+
+
+  Protocol(final int code, final String description, final boolean can, final int headerLength) {
+    this.code = code;
+    this.description = description;
+    this.can = can;
+    this.headerLength = headerLength;
+  }
+
+
+  /**
+   * @return the code.
+   */
+  public int getCode() {
+    return code;
+  }
+
+
+  /**
+   * @return the code as one hex digit, used by AT SP command.
+   */
+  public String hex() {
+    return Integer.toHexString(code).toUpperCase();
+  }
+
+
+  /**
+   * @return the description.
+   */
+  public String getDescription() {
+    return description;
+  }
+
+
+  /**
+   * @return true for CAN protocols. They allow to ask for up to 6 PIDs in one request.
+   */
+  public boolean isCan() {
+    return can;
+  }
+
+
+  /**
+   * @return count of hex digits of the header, shown by the ELM327 with AT H1.
+   */
+  public int getHeaderLength() {
+    return headerLength;
+  }
+
+
+  /**
+   * @return code and description
+   */
+  @Override
+  public String toString() {
+    return this.description;
+  }
+
+
+  /**
+   * @param response - a response of the AT DPN command, ie. A6 for automatically detected
+   *          protocol 6.
+   * @return the protocol
+   */
+  public static Protocol parseDPN(final String response) {
+    if (response == null || response.isEmpty()) {
+      throw new IllegalArgumentException("Invalid protocol number: " + response);
+    }
+    // A means that the protocol was detected automatically.
+    return parseHex(response.substring(response.length() - 1));
+  }
+
+
+  public static Protocol parseHex(final String hex) {
+    if (hex == null) {
+      throw new IllegalArgumentException("Invalid hex code: " + hex);
+    }
+
+    int code1 = Integer.parseInt(hex, 16);
+    for (Protocol protocol : Protocol.values()) {
+      if (protocol.code == code1) {
+        return protocol;
+      }
+    }
+
+    throw new IllegalArgumentException("Unknown protocol: " + hex);
+  }
+}
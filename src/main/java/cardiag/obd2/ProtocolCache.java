@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protocols detected by adapters connected to serial ports, persisted in a properties file.
+ * The ELM327 then doesn't have to search for the protocol in next sessions.
+ *
+ * @author David Matějček
+ */
+public class ProtocolCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ProtocolCache.class);
+  private static final String FILE_NAME = "protocols.properties";
+
+  private final File file;
+  private final Properties protocols = new Properties();
+
+
+  /**
+   * @param directory - a directory for the cache file. If null, the cache is not persisted.
+   */
+  public ProtocolCache(final File directory) {
+    LOG.trace("ProtocolCache(directory={})", directory);
+    this.file = directory == null ? null : new File(directory, FILE_NAME);
+    load();
+  }
+
+
+  /**
+   * @param portName
+   * @param adapter - identification of the adapter, response to the AT I command.
+   * @return the cached protocol or null.
+   */
+  public synchronized Protocol get(final String portName, final String adapter) {
+    final String code = this.protocols.getProperty(toKey(portName, adapter));
+    if (code == null) {
+      return null;
+    }
+    try {
+      return Protocol.parseHex(code);
+    } catch (final IllegalArgumentException e) {
+      LOG.warn("Invalid cached protocol: {}", code);
+      return null;
+    }
+  }
+
+
+  /**
+   * Stores the protocol to the cache and saves the file.
+   *
+   * @param portName
+   * @param adapter - identification of the adapter, response to the AT I command.
+   * @param protocol - if null, the protocol is removed from the cache.
+   */
+  public synchronized void put(final String portName, final String adapter, final Protocol protocol) {
+    LOG.debug("put(portName={}, adapter={}, protocol={})", portName, adapter, protocol);
+    final String key = toKey(portName, adapter);
+    if (protocol == null) {
+      this.protocols.remove(key);
+    } else {
+      this.protocols.setProperty(key, Integer.toHexString(protocol.getCode()));
+    }
+    save();
+  }
+
+
+  private String toKey(final String portName, final String adapter) {
+    return portName + '|' + adapter;
+  }
+
+
+  private void load() {
+    if (this.file == null || !this.file.isFile()) {
+      return;
+    }
+    InputStream input = null;
+    try {
+      input = new FileInputStream(this.file);
+      this.protocols.load(input);
+    } catch (final IOException e) {
+      LOG.warn("Cannot read the protocol cache " + this.file, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+
+  private void save() {
+    if (this.file == null) {
+      return;
+    }
+    final File directory = this.file.getParentFile();
+    if (!directory.exists()) {
+      directory.mkdirs();
+    }
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(this.file);
+      this.protocols.store(output, "Protocols detected by adapters");
+    } catch (final IOException e) {
+      LOG.warn("Cannot write the protocol cache " + this.file, e);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+}
@@ -3,7 +3,6 @@
  */
 package cardiag.obd2;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
@@ -14,7 +13,7 @@ import java.util.List;
 public class Report {
 
   private Date timestamp = new Date();
-  private boolean[] supportedPIDS;
+  private SupportedPIDs supportedPIDS = SupportedPIDs.UNKNOWN;
   private MonitorStatus monitorStatus;
   private List<Fault> faults;
   private Integer distanceSinceErrorCodesCleared;
@@ -46,17 +45,13 @@ public class Report {
     return timestamp;
   }
 
-  public boolean[] getSupportedPIDS() {
-    return Arrays.copyOf(supportedPIDS, supportedPIDS.length);
+  public SupportedPIDs getSupportedPIDS() {
+    return supportedPIDS;
   }
 
 
-  public void setSupportedPIDS(final boolean[] supportedPIDS) {
-    if (supportedPIDS == null) {
-      this.supportedPIDS = new boolean[0];
-    } else {
-      this.supportedPIDS = Arrays.copyOf(supportedPIDS, supportedPIDS.length);
-    }
+  public void setSupportedPIDS(final SupportedPIDs supportedPIDS) {
+    this.supportedPIDS = supportedPIDS == null ? SupportedPIDs.UNKNOWN : supportedPIDS;
   }
 
 
@@ -3,17 +3,27 @@
  */
 package cardiag.obd2;
 
+import java.util.Arrays;
+
 /**
  * OBD2 protocol response.
+ * <p>
+ * Responses passed to a {@link ResponseHandler} may be reused for the next response, use
+ * {@link #copy()} to keep them.
  *
  * @author David Matějček
  */
 public class Response {
 
-  private final Mode mode;
-  private final PID pid;
-  private final String[] data;
+  private static final int[] NO_DATA = new int[0];
+
+  private Mode mode;
+  private PID pid;
+  private int[] data;
+  private int length;
+  private String ecu;
   private boolean error;
+  private boolean reused;
 
 
   /**
@@ -22,21 +32,160 @@ public class Response {
    * @param error - if true, data are an error message
    * @param mode - same as the mode of the request.
    * @param pid - same as the pid of the request.
-   * @param data - returned data.
+   * @param data - returned data as hex bytes.
    */
   public Response(final boolean error, final Mode mode, final PID pid, final String... data) {
+    this(error, mode, pid, data, null);
+  }
+
+
+  /**
+   * @param error - if true, data are an error message
+   * @param mode - same as the mode of the request.
+   * @param pid - same as the pid of the request.
+   * @param data - returned data as hex bytes.
+   * @param ecu - the header of the responding unit, null if headers are off.
+   */
+  public Response(final boolean error, final Mode mode, final PID pid, final String[] data, final String ecu) {
+    this(error, mode, pid, parseHex(data), ecu);
+  }
+
+
+  /**
+   * @param error - if true, data are an error message
+   * @param mode - same as the mode of the request.
+   * @param pid - same as the pid of the request.
+   * @param data - returned data as unsigned bytes, the array is not copied.
+   * @param ecu - the header of the responding unit, null if headers are off.
+   */
+  public Response(final boolean error, final Mode mode, final PID pid, final int[] data, final String ecu) {
     this.mode = mode;
     this.pid = pid;
-    this.data = data == null ? new String[1] : data;
+    this.data = data == null ? NO_DATA : data;
+    this.length = this.data.length;
+    this.ecu = ecu;
     this.error = error;
   }
 
 
   /**
-   * @return a data part of the response - several lines of hex numbers separated by a space.
+   * Creates an empty response to be filled by {@link #set(boolean, Mode, PID, Message, int, int)}.
+   */
+  Response() {
+    this(false, null, null, new int[8], null);
+    this.length = 0;
+    this.reused = true;
+  }
+
+
+  /**
+   * Replaces the content of the reused response, the internal array grows when needed.
+   *
+   * @param newError - if true, data are an error message
+   * @param newMode - same as the mode of the request.
+   * @param newPid - same as the pid of the request.
+   * @param message - the source of data bytes.
+   * @param from - index of the first copied byte in the message.
+   * @param count - count of copied bytes.
+   */
+  void set(final boolean newError, final Mode newMode, final PID newPid, final Message message, final int from,
+      final int count) {
+    if (this.data.length < count) {
+      this.data = new int[Math.max(count, this.data.length * 2)];
+    }
+    for (int i = 0; i < count; i++) {
+      this.data[i] = message.byteAt(from + i);
+    }
+    this.length = count;
+    this.mode = newMode;
+    this.pid = newPid;
+    this.ecu = message.getEcu();
+    this.error = newError;
+  }
+
+
+  /**
+   * @return this response or its independent copy if this instance is reused for next responses.
+   */
+  public Response copy() {
+    if (!this.reused) {
+      return this;
+    }
+    return new Response(this.error, this.mode, this.pid, Arrays.copyOf(this.data, this.length), this.ecu);
+  }
+
+
+  private static int[] parseHex(final String[] hex) {
+    if (hex == null) {
+      return NO_DATA;
+    }
+    final int[] bytes = new int[hex.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = Integer.parseInt(hex[i], 16);
+    }
+    return bytes;
+  }
+
+
+  /**
+   * Creates strings, use {@link #byteAt(int)} and {@link #u16At(int)} where possible.
+   *
+   * @return a data part of the response as hex bytes.
    */
   public String[] getData() {
-    return data;
+    final String[] hex = new String[this.length];
+    for (int i = 0; i < hex.length; i++) {
+      hex[i] = ResponseParser.toHex(this.data[i]);
+    }
+    return hex;
+  }
+
+
+  /**
+   * @return count of data bytes.
+   */
+  public int length() {
+    return this.length;
+  }
+
+
+  /**
+   * @param index - 0 for the byte A
+   * @return the unsigned byte
+   */
+  public int byteAt(final int index) {
+    if (index >= this.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", length: " + this.length);
+    }
+    return this.data[index];
+  }
+
+
+  /**
+   * @param index - 0 for the word AB
+   * @return the unsigned 16 bit big endian number starting on the index.
+   */
+  public int u16At(final int index) {
+    if (index + 1 >= this.length) {
+      throw new IndexOutOfBoundsException("Index: " + (index + 1) + ", length: " + this.length);
+    }
+    return (this.data[index] << 8) | this.data[index + 1];
+  }
+
+
+  /**
+   * @return the data array itself, must not be modified. May be longer than {@link #length()}.
+   */
+  int[] bytes() {
+    return this.data;
+  }
+
+
+  /**
+   * @return the header of the responding unit, null if headers are off.
+   */
+  public String getEcu() {
+    return ecu;
   }
 
 
@@ -46,4 +195,15 @@ public class Response {
   public boolean isError() {
     return error;
   }
+
+
+  @Override
+  public String toString() {
+    final StringBuilder string = new StringBuilder(this.length * 3 + 16);
+    string.append(this.mode).append(' ').append(this.pid == null ? "--" : this.pid.hex()).append(':');
+    for (int i = 0; i < this.length; i++) {
+      string.append(' ').append(ResponseParser.toHex(this.data[i]));
+    }
+    return string.toString();
+  }
 }
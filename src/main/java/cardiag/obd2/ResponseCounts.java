@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of units responding to requests of a vehicle. The count is sent to the ELM327 with the
+ * request, so it doesn't have to wait for its timeout for other units to respond.
+ * <p>
+ * Every unit answers a multi-PID request with one message containing its PIDs, so the count of
+ * a multi-PID request is learned for the whole combination of PIDs, it cannot be derived from
+ * counts of single PIDs. Counts of combinations are not stored to the profile.
+ *
+ * @author David Matějček
+ */
+public class ResponseCounts {
+
+  /** The ELM327 accepts only one hex digit. */
+  public static final int MAX_COUNT = 0xF;
+
+  private final byte[][] counts = new byte[16][256];
+  private final Map<BitSet, Integer> batchCounts = new HashMap<>();
+
+
+  /**
+   * @param mode
+   * @param pid
+   * @return the count of units responding to the PID in the mode or 0 if unknown.
+   */
+  public int get(final Mode mode, final PID pid) {
+    return this.counts[mode.getCode()][pid.getCode()];
+  }
+
+
+  /**
+   * @param mode
+   * @param pids - PIDs of one multi-PID request.
+   * @return the count of messages responding to the multi-PID request or 0 if unknown.
+   */
+  public int get(final Mode mode, final Collection<PID> pids) {
+    final Integer count = this.batchCounts.get(toKey(mode, pids));
+    return count == null ? 0 : count;
+  }
+
+
+  /**
+   * Remembers the count of responding units if it was not known yet.
+   *
+   * @param mode
+   * @param pid
+   * @param count - count of received responses.
+   */
+  public void learn(final Mode mode, final PID pid, final int count) {
+    if (count <= 0 || count > MAX_COUNT || get(mode, pid) != 0) {
+      return;
+    }
+    this.counts[mode.getCode()][pid.getCode()] = (byte) count;
+  }
+
+
+  /**
+   * Remembers the count of messages responding to the multi-PID request sent without the count.
+   *
+   * @param mode
+   * @param pids - PIDs of one multi-PID request.
+   * @param count - count of received messages.
+   */
+  public void learn(final Mode mode, final Collection<PID> pids, final int count) {
+    if (count <= 0 || count > MAX_COUNT) {
+      return;
+    }
+    this.batchCounts.putIfAbsent(toKey(mode, pids), count);
+  }
+
+
+  /**
+   * Forgets the count of the multi-PID request, ie. when it may have cut off some messages.
+   *
+   * @param mode
+   * @param pids - PIDs of one multi-PID request.
+   */
+  public void forget(final Mode mode, final Collection<PID> pids) {
+    this.batchCounts.remove(toKey(mode, pids));
+  }
+
+
+  private static BitSet toKey(final Mode mode, final Collection<PID> pids) {
+    final BitSet key = new BitSet();
+    for (final PID pid : pids) {
+      key.set(mode.getCode() * 256 + pid.getCode());
+    }
+    return key;
+  }
+
+
+  /**
+   * Forgets all counts, ie. when another vehicle was connected.
+   */
+  public void clear() {
+    for (final byte[] modeCounts : this.counts) {
+      Arrays.fill(modeCounts, (byte) 0);
+    }
+    this.batchCounts.clear();
+  }
+}
@@ -0,0 +1,22 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+/**
+ * Receives responses one by one, without collecting them to a map.
+ *
+ * @author David Matějček
+ */
+@FunctionalInterface
+public interface ResponseHandler {
+
+  /**
+   * The response is valid only during the call, it is reused by the next response. Use
+   * {@link Response#copy()} to keep it. The handler must not send requests to the device.
+   *
+   * @param pid - the requested PID.
+   * @param response - the response of the first responding unit or the {@link ResponseWithNoData}.
+   */
+  void handle(PID pid, Response response);
+}
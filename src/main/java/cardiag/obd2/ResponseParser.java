@@ -0,0 +1,322 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.serial.ResponseView;
+
+/**
+ * Splits the payload of the response to messages of responding units. Accepts hex bytes separated
+ * by spaces (AT S1) or packed (AT S0). If headers are on (AT H1), the header of each line is used
+ * to identify the sender and ISO 15765 frames are joined by the sender.
+ * <p>
+ * ASCII hex digits are converted by a lookup table directly to unsigned bytes of reused
+ * {@link Message}s, so parsing of a response doesn't allocate any memory once the parser has seen
+ * responses of similar size. The parser is not thread safe.
+ *
+ * @author David Matějček
+ */
+public class ResponseParser {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseParser.class);
+
+  private static final String[] HEX_BYTES = new String[256];
+  private static final byte[] NIBBLES = new byte[128];
+  static {
+    for (int i = 0; i < HEX_BYTES.length; i++) {
+      HEX_BYTES[i] = StringUtils.leftPad(Integer.toHexString(i), 2, '0').toUpperCase();
+    }
+    for (int i = 0; i < NIBBLES.length; i++) {
+      NIBBLES[i] = (byte) Character.digit(i, 16);
+    }
+  }
+  private static final int PCI_SINGLE_FRAME = 0;
+  private static final int PCI_FIRST_FRAME = 1;
+  private static final int PCI_CONSECUTIVE_FRAME = 2;
+  /** Count of remembered headers and count of units sending multiframe messages at once */
+  private static final int MAX_UNITS = 16;
+
+  private final Protocol protocol;
+  private final boolean headers;
+  private final int headerLength;
+  private int[] nibbles = new int[256];
+  private final List<Message> messages = new ArrayList<>();
+  private final List<Message> pool = new ArrayList<>();
+  private int pooled;
+  private final Message[] multiFrames = new Message[MAX_UNITS];
+  private final int[] headerKeys = new int[MAX_UNITS];
+  private final String[] headerValues = new String[MAX_UNITS];
+  private int headerCount;
+
+
+  /**
+   * @param protocol - used protocol, important only if headers are on.
+   * @param headers - true if the device sends headers.
+   */
+  public ResponseParser(final Protocol protocol, final boolean headers) {
+    this.protocol = protocol;
+    this.headers = headers;
+    this.headerLength = headers ? protocol.getHeaderLength() : 0;
+    if (headers && this.headerLength == 0) {
+      throw new IllegalArgumentException("Headers cannot be parsed for the protocol " + protocol);
+    }
+  }
+
+
+  /**
+   * @param value - 0-255
+   * @return two uppercase hex digits, shared constant.
+   */
+  public static String toHex(final int value) {
+    return HEX_BYTES[value];
+  }
+
+
+  /**
+   * @param c - an ASCII character
+   * @return value of the hex digit or -1 if the character is not a hex digit.
+   */
+  public static int toNibble(final int c) {
+    return c >= 0 && c < NIBBLES.length ? NIBBLES[c] : -1;
+  }
+
+
+  /**
+   * @return true if headers are parsed.
+   */
+  public boolean isHeaders() {
+    return this.headers;
+  }
+
+
+  /**
+   * @return protocol used to parse headers.
+   */
+  public Protocol getProtocol() {
+    return this.protocol;
+  }
+
+
+  /**
+   * @param payload
+   * @return messages or null if the payload is not a sequence of hex bytes. The list and messages
+   *         are reused by the next call.
+   */
+  public List<Message> parse(final ResponseView payload) {
+    if (this.nibbles.length < payload.length()) {
+      this.nibbles = new int[payload.length()];
+    }
+    this.messages.clear();
+    this.pooled = 0;
+    Message multiFrame = null;
+    int lineStart = 0;
+    for (int lineEnd = 0; lineEnd <= payload.length(); lineEnd++) {
+      if (lineEnd < payload.length() && payload.byteAt(lineEnd) != '\r') {
+        continue;
+      }
+      boolean frame = false;
+      int count = 0;
+      for (int i = lineStart; i < lineEnd; i++) {
+        final byte c = payload.byteAt(i);
+        final int digit = toNibble(c);
+        if (digit >= 0) {
+          this.nibbles[count++] = digit;
+        } else if (c == ':' && !frame && !this.headers) {
+          frame = true;
+          count = 0;
+        } else if (c != ' ' && c != '\t' && c != '\n') {
+          clearMultiFrames();
+          return null;
+        }
+      }
+      lineStart = lineEnd + 1;
+      if (count == 0) {
+        continue;
+      }
+      if (this.headers) {
+        if (!parseLineWithHeader(count)) {
+          clearMultiFrames();
+          return null;
+        }
+      } else if (!frame && count == 3) {
+        multiFrame = obtain(null, toInt(0, 3));
+      } else if (count % 2 != 0) {
+        return null;
+      } else if (frame) {
+        if (multiFrame == null) {
+          LOG.debug("Ignoring a frame without the byte count or after the end of the message.");
+          continue;
+        }
+        fill(0, count, multiFrame);
+        if (multiFrame.isComplete()) {
+          this.messages.add(multiFrame);
+          multiFrame = null;
+        }
+      } else {
+        final Message message = obtain(null, 0);
+        fill(0, count, message);
+        this.messages.add(message);
+      }
+    }
+    if (multiFrame != null && multiFrame.length() > 0) {
+      addIncomplete(multiFrame);
+    }
+    for (int i = 0; i < this.multiFrames.length; i++) {
+      if (this.multiFrames[i] != null) {
+        addIncomplete(this.multiFrames[i]);
+        this.multiFrames[i] = null;
+      }
+    }
+    return this.messages;
+  }
+
+
+  private boolean parseLineWithHeader(final int count) {
+    if (count < this.headerLength || (count - this.headerLength) % 2 != 0) {
+      return false;
+    }
+    final String ecu = toHeader();
+    if (!this.protocol.isCan()) {
+      // the last byte is a checksum
+      if (count - this.headerLength < 4) {
+        return false;
+      }
+      final Message message = obtain(ecu, 0);
+      fill(this.headerLength, count - 2, message);
+      this.messages.add(message);
+      return true;
+    }
+    if (count == this.headerLength) {
+      return false;
+    }
+    final int pci = toInt(this.headerLength, this.headerLength + 2);
+    final int dataStart = this.headerLength + 2;
+    switch (pci >> 4) {
+      case PCI_SINGLE_FRAME:
+        final Message single = obtain(ecu, pci & 0xF);
+        fill(dataStart, count, single);
+        this.messages.add(single);
+        return true;
+      case PCI_FIRST_FRAME:
+        if (count < dataStart + 2) {
+          return false;
+        }
+        final Message first = obtain(ecu, ((pci & 0xF) << 8) | toInt(dataStart, dataStart + 2));
+        fill(dataStart + 2, count, first);
+        final int free = indexOfMultiFrame(null);
+        if (free < 0) {
+          LOG.warn("Too many units send multiframe messages, ignoring {}", ecu);
+          return true;
+        }
+        this.multiFrames[free] = first;
+        return true;
+      case PCI_CONSECUTIVE_FRAME:
+        final int index = indexOfMultiFrame(ecu);
+        if (index < 0) {
+          LOG.warn("Consecutive frame without the first frame from {}", ecu);
+          return true;
+        }
+        final Message consecutive = this.multiFrames[index];
+        fill(dataStart, count, consecutive);
+        if (consecutive.isComplete()) {
+          this.messages.add(consecutive);
+          this.multiFrames[index] = null;
+        }
+        return true;
+      default:
+        LOG.warn("Unsupported frame type: {}", pci);
+        return false;
+    }
+  }
+
+
+  private int indexOfMultiFrame(final String ecu) {
+    for (int i = 0; i < this.multiFrames.length; i++) {
+      final Message message = this.multiFrames[i];
+      if (ecu == null ? message == null : message != null && ecu.equals(message.getEcu())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+
+  private void clearMultiFrames() {
+    for (int i = 0; i < this.multiFrames.length; i++) {
+      this.multiFrames[i] = null;
+    }
+  }
+
+
+  private Message obtain(final String ecu, final int expectedLength) {
+    final Message message;
+    if (this.pooled < this.pool.size()) {
+      message = this.pool.get(this.pooled);
+    } else {
+      message = new Message();
+      this.pool.add(message);
+    }
+    this.pooled++;
+    message.reset(ecu, expectedLength);
+    return message;
+  }
+
+
+  private void addIncomplete(final Message multiFrame) {
+    LOG.warn("Incomplete multiframe message from {}, expected {} bytes, received {}.", multiFrame.getEcu(),
+        multiFrame.getExpectedLength(), multiFrame.length());
+    this.messages.add(multiFrame);
+  }
+
+
+  /**
+   * @return the header of the line as a shared string.
+   */
+  private String toHeader() {
+    if (!this.protocol.isCan()) {
+      // priority, receiver and sender; the sender identifies the unit.
+      return HEX_BYTES[toInt(this.headerLength - 2, this.headerLength)];
+    }
+    final int key = toInt(0, this.headerLength);
+    for (int i = 0; i < this.headerCount; i++) {
+      if (this.headerKeys[i] == key) {
+        return this.headerValues[i];
+      }
+    }
+    final char[] header = new char[this.headerLength];
+    for (int i = 0; i < this.headerLength; i++) {
+      header[i] = Character.toUpperCase(Character.forDigit(this.nibbles[i], 16));
+    }
+    final String value = new String(header);
+    final int index = this.headerCount < MAX_UNITS ? this.headerCount++ : key % MAX_UNITS;
+    this.headerKeys[index] = key;
+    this.headerValues[index] = value;
+    return value;
+  }
+
+
+  /**
+   * Converts nibbles in the range to bytes and appends them to the message.
+   */
+  private void fill(final int from, final int to, final Message target) {
+    for (int i = from; i + 1 < to; i += 2) {
+      target.append((this.nibbles[i] << 4) | this.nibbles[i + 1]);
+    }
+  }
+
+
+  private int toInt(final int from, final int to) {
+    int value = 0;
+    for (int i = from; i < to; i++) {
+      value = (value << 4) | this.nibbles[i];
+    }
+    return value;
+  }
+}
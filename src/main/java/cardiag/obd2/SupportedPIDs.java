@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * PIDs of the {@link Mode#CURRENT_DATA} supported by the vehicle, collected from responses to the
+ * chain of PIDs 0x00, 0x20, 0x40, ... 0xC0. Each of them returns a bitmap of the next 32 PIDs,
+ * where the last bit says if the next range PID is supported.
+ *
+ * @author David Matějček
+ */
+public class SupportedPIDs {
+
+  /** Used when the vehicle did not respond, then every PID is considered as supported. */
+  public static final SupportedPIDs UNKNOWN = new SupportedPIDs(null);
+  private static final int RANGE = 0x20;
+
+  private final long[] bits;
+
+
+  /**
+   * Creates an empty bitmap.
+   */
+  SupportedPIDs() {
+    this(new long[4]);
+  }
+
+
+  private SupportedPIDs(final long[] bits) {
+    this.bits = bits;
+  }
+
+
+  /**
+   * @param bitmap - 4 longs, bit n is set if the PID n is supported. Null for {@link #UNKNOWN}.
+   * @return a new instance
+   */
+  static SupportedPIDs fromBitmap(final long[] bitmap) {
+    return bitmap == null ? UNKNOWN : new SupportedPIDs(Arrays.copyOf(bitmap, 4));
+  }
+
+
+  /**
+   * @return a copy of the bitmap, null for {@link #UNKNOWN}.
+   */
+  long[] toBitmap() {
+    return this.bits == null ? null : this.bits.clone();
+  }
+
+
+  /**
+   * Adds PIDs from the response to one of the PIDs 0x00, 0x20, 0x40, ...
+   *
+   * @param range - the requested PID
+   * @param response - 4 bytes of the bitmap
+   * @return true if the next range PID is supported and should be asked too.
+   */
+  boolean add(final PID range, final Response response) {
+    if (response.isError() || response.length() < 4) {
+      return false;
+    }
+    set(range.getCode());
+    final long bitmap = ((long) response.u16At(0) << 16) | response.u16At(2);
+    for (int i = 0; i < RANGE; i++) {
+      if ((bitmap & (1L << (RANGE - 1 - i))) != 0) {
+        set(range.getCode() + 1 + i);
+      }
+    }
+    return (bitmap & 1) != 0;
+  }
+
+
+  private void set(final int code) {
+    this.bits[code >>> 6] |= 1L << (code & 63);
+  }
+
+
+  /**
+   * @return true if the vehicle did not respond to the PID 0x00.
+   */
+  public boolean isUnknown() {
+    return this.bits == null;
+  }
+
+
+  /**
+   * @param code - the code of a PID of the {@link Mode#CURRENT_DATA}.
+   * @return true if the PID is supported or the support is unknown.
+   */
+  public boolean isSupported(final int code) {
+    if (this.bits == null) {
+      return true;
+    }
+    return code >= 0 && code < 256 && (this.bits[code >>> 6] & (1L << (code & 63))) != 0;
+  }
+
+
+  /**
+   * @param pid
+   * @return true if the PID is supported or the support is unknown.
+   */
+  public boolean isSupported(final PID pid) {
+    return isSupported(pid.getCode());
+  }
+
+
+  /**
+   * @param pids
+   * @return supported PIDs in the same order.
+   */
+  public List<PID> filter(final Collection<PID> pids) {
+    final List<PID> supported = new ArrayList<>(pids.size());
+    for (final PID pid : pids) {
+      if (isSupported(pid)) {
+        supported.add(pid);
+      }
+    }
+    return supported;
+  }
+
+
+  /**
+   * @return count of supported PIDs, -1 if unknown.
+   */
+  public int count() {
+    if (this.bits == null) {
+      return -1;
+    }
+    int count = 0;
+    for (final long word : this.bits) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+
+  /**
+   * @return hex codes of supported PIDs separated by spaces.
+   */
+  @Override
+  public String toString() {
+    if (this.bits == null) {
+      return "unknown";
+    }
+    final StringBuilder string = new StringBuilder(count() * 3);
+    for (int code = 0; code < 256; code++) {
+      if (isSupported(code)) {
+        if (string.length() > 0) {
+          string.append(' ');
+        }
+        string.append(ResponseParser.toHex(code));
+      }
+    }
+    return string.toString();
+  }
+}
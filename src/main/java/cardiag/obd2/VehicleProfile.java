@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Capabilities of a vehicle learned through an adapter: the protocol, supported PIDs, counts of
+ * responding units, latencies of PIDs and PIDs known to respond NO DATA. Latencies and NO DATA
+ * flags are kept only for the {@link Mode#CURRENT_DATA}.
+ *
+ * @author David Matějček
+ */
+public class VehicleProfile {
+
+  private static final double LATENCY_WEIGHT = 0.2;
+
+  private final String vin;
+  private final String adapter;
+  private final Protocol protocol;
+  private final long created;
+  private final ResponseCounts responseCounts = new ResponseCounts();
+  private final long[] noData = new long[4];
+  private final int[] latencies = new int[256];
+  private SupportedPIDs supportedPIDs;
+  private int adaptiveTiming = -1;
+
+
+  /**
+   * Creates an empty profile.
+   *
+   * @param vin - VIN of the vehicle, null if the vehicle did not provide it.
+   * @param adapter - identification of the adapter.
+   * @param protocol - used protocol, may be null if the vehicle did not respond yet.
+   */
+  public VehicleProfile(final String vin, final String adapter, final Protocol protocol) {
+    this(vin, adapter, protocol, System.currentTimeMillis());
+  }
+
+
+  VehicleProfile(final String vin, final String adapter, final Protocol protocol, final long created) {
+    this.vin = vin;
+    this.adapter = adapter;
+    this.protocol = protocol;
+    this.created = created;
+  }
+
+
+  /**
+   * @return VIN of the vehicle, null if the vehicle did not provide it.
+   */
+  public String getVin() {
+    return vin;
+  }
+
+
+  /**
+   * @return identification of the adapter.
+   */
+  public String getAdapter() {
+    return adapter;
+  }
+
+
+  /**
+   * @return the protocol used when the profile was created.
+   */
+  public Protocol getProtocol() {
+    return protocol;
+  }
+
+
+  /**
+   * @return time of creation of the profile in milliseconds since epoch.
+   */
+  public long getCreated() {
+    return created;
+  }
+
+
+  /**
+   * @param currentProtocol - the protocol used by the device now.
+   * @param maxAge - maximal age of the profile in milliseconds.
+   * @return true if the profile can be used instead of the discovery.
+   */
+  public boolean isValid(final Protocol currentProtocol, final long maxAge) {
+    return this.vin != null && this.protocol != null && this.protocol == currentProtocol
+        && System.currentTimeMillis() - this.created < maxAge;
+  }
+
+
+  /**
+   * @return counts of units responding to requests.
+   */
+  public ResponseCounts getResponseCounts() {
+    return responseCounts;
+  }
+
+
+  /**
+   * @return supported PIDs, null if they were not discovered yet.
+   */
+  public SupportedPIDs getSupportedPIDs() {
+    return supportedPIDs;
+  }
+
+
+  /**
+   * @param supportedPIDs
+   */
+  public void setSupportedPIDs(final SupportedPIDs supportedPIDs) {
+    this.supportedPIDs = supportedPIDs;
+  }
+
+
+  /**
+   * @return the adaptive timing mode of the adapter found by the {@link AdapterBenchmark}, -1 if
+   *         the default of the adapter should be used.
+   */
+  public int getAdaptiveTiming() {
+    return adaptiveTiming;
+  }
+
+
+  /**
+   * @param adaptiveTiming - 0 - 2, see AT AT in elm327.pdf; -1 to use the default.
+   */
+  public void setAdaptiveTiming(final int adaptiveTiming) {
+    this.adaptiveTiming = adaptiveTiming;
+  }
+
+
+  /**
+   * @param pid - a PID of the {@link Mode#CURRENT_DATA}
+   * @return true if the vehicle responded NO DATA to the last request of the PID.
+   */
+  public boolean isNoData(final PID pid) {
+    return (this.noData[pid.getCode() >>> 6] & (1L << (pid.getCode() & 63))) != 0;
+  }
+
+
+  /**
+   * @param pid - a PID of the {@link Mode#CURRENT_DATA}
+   * @param value - true if the vehicle responded NO DATA.
+   */
+  public void setNoData(final PID pid, final boolean value) {
+    if (value) {
+      this.noData[pid.getCode() >>> 6] |= 1L << (pid.getCode() & 63);
+    } else {
+      this.noData[pid.getCode() >>> 6] &= ~(1L << (pid.getCode() & 63));
+    }
+  }
+
+
+  /**
+   * @param pid - a PID of the {@link Mode#CURRENT_DATA}
+   * @return the moving average of latencies of the PID in microseconds, 0 if unknown.
+   */
+  public int getLatency(final PID pid) {
+    return this.latencies[pid.getCode()];
+  }
+
+
+  /**
+   * Updates the moving average of latencies of the PID.
+   *
+   * @param pid - a PID of the {@link Mode#CURRENT_DATA}
+   * @param nanos - duration of the request.
+   */
+  public void measured(final PID pid, final long nanos) {
+    final int micros = (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(nanos));
+    final int average = this.latencies[pid.getCode()];
+    this.latencies[pid.getCode()] = average == 0 ? micros
+        : (int) Math.round(average + LATENCY_WEIGHT * (micros - average));
+  }
+
+
+  void setLatency(final PID pid, final int micros) {
+    this.latencies[pid.getCode()] = micros;
+  }
+
+
+  @Override
+  public String toString() {
+    return "VehicleProfile[vin=" + this.vin + ", adapter=" + this.adapter + ", protocol=" + this.protocol + "]";
+  }
+}
@@ -0,0 +1,264 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+
+/**
+ * Random access reader of sessions written by the {@link SessionRecorder}. The session is mapped
+ * to the memory by regions and the {@link SessionIndex} is used to seek to the start of the
+ * selected time range, so opening and seeking don't depend on the size of the session. Records of
+ * not selected PIDs are skipped without decoding of their payload.
+ * <p>
+ * Without the index file the session is read from the start.
+ *
+ * @author David Matějček
+ */
+public class MappedSessionReader implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MappedSessionReader.class);
+  /** Default size of one mapped region */
+  public static final long DEFAULT_REGION_SIZE = 256L * 1024 * 1024;
+
+  private final File file;
+  private final FileChannel channel;
+  private final SessionHeader header;
+  private final SessionIndex index;
+  private final long dataOffset;
+  private final long size;
+  private final long regionSize;
+  private final MappedByteBuffer[] regions;
+
+
+  /**
+   * Opens the session and its index with the default region size.
+   *
+   * @param file - the session file.
+   * @throws IOException - the file is not a session or it is unreadable.
+   */
+  public MappedSessionReader(final File file) throws IOException {
+    this(file, DEFAULT_REGION_SIZE);
+  }
+
+
+  /**
+   * Opens the session and its index.
+   *
+   * @param file - the session file.
+   * @param regionSize - size of one mapped region.
+   * @throws IOException - the file is not a session or it is unreadable.
+   */
+  public MappedSessionReader(final File file, final long regionSize) throws IOException {
+    LOG.debug("MappedSessionReader(file={}, regionSize={})", file, regionSize);
+    if (regionSize < SessionRecorder.MAX_RECORD_LENGTH || regionSize > Integer.MAX_VALUE / 2) {
+      throw new IllegalArgumentException("Invalid region size: " + regionSize);
+    }
+    this.file = file;
+    this.regionSize = regionSize;
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      this.header = SessionHeader.read(input);
+    }
+    this.dataOffset = this.header.length();
+    this.index = readIndex(SessionIndex.toIndexFile(file));
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.size = this.channel.size();
+    this.regions = new MappedByteBuffer[(int) ((this.size + regionSize - 1) / regionSize)];
+  }
+
+
+  private static SessionIndex readIndex(final File indexFile) {
+    if (!indexFile.exists()) {
+      LOG.warn("The index {} doesn't exist, the session will be read from the start.", indexFile);
+      return new SessionIndex(new long[0], new long[0]);
+    }
+    try {
+      return SessionIndex.read(indexFile);
+    } catch (final IOException e) {
+      LOG.warn("Cannot read the index, the session will be read from the start.", e);
+      return new SessionIndex(new long[0], new long[0]);
+    }
+  }
+
+
+  /**
+   * @return the header of the session.
+   */
+  public SessionHeader getHeader() {
+    return header;
+  }
+
+
+  /**
+   * @return the time index of the session.
+   */
+  public SessionIndex getIndex() {
+    return index;
+  }
+
+
+  /**
+   * Creates the cursor over samples of the time range.
+   *
+   * @param from - microseconds since the start of the session, inclusive.
+   * @param to - microseconds since the start of the session, inclusive.
+   * @param pids - selected PIDs, all PIDs if empty.
+   * @return the cursor, not thread safe.
+   */
+  public Cursor select(final long from, final long to, final PID... pids) {
+    final boolean[] selected = new boolean[this.header.getPIDs().size() + 1];
+    if (pids.length == 0) {
+      Arrays.fill(selected, true);
+    }
+    for (final PID pid : pids) {
+      final int pidIndex = this.header.indexOf(pid);
+      if (pidIndex >= 0) {
+        selected[pidIndex + 1] = true;
+      }
+    }
+    final int entry = this.index.floor(from);
+    if (entry < 0) {
+      return new Cursor(this.dataOffset, 0L, from, to, selected);
+    }
+    return new Cursor(this.index.getOffset(entry), this.index.getTime(entry), from, to, selected);
+  }
+
+
+  /**
+   * Regions overlap by the maximal length of the record, so each record starting in the region is
+   * readable from it.
+   */
+  private synchronized MappedByteBuffer getRegion(final int region) {
+    if (this.regions[region] == null) {
+      final long start = region * this.regionSize;
+      final long length = Math.min(this.regionSize + SessionRecorder.MAX_RECORD_LENGTH, this.size - start);
+      try {
+        this.regions[region] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      } catch (final IOException e) {
+        throw new IllegalStateException("Cannot map the file: " + this.file, e);
+      }
+    }
+    return this.regions[region];
+  }
+
+
+  /**
+   * Closes the file. Regions are unmapped by the garbage collector.
+   */
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+
+  @Override
+  public String toString() {
+    return "MappedSessionReader[file=" + this.file + ", size=" + this.size + ", " + this.index + "]";
+  }
+
+
+  /**
+   * Iterates samples of the selected PIDs and the time range.
+   */
+  public final class Cursor {
+
+    private final long from;
+    private final long to;
+    private final boolean[] selected;
+    private long position;
+    private long time;
+    private boolean finished;
+
+
+    Cursor(final long position, final long time, final long from, final long to, final boolean[] selected) {
+      this.position = position;
+      this.time = time;
+      this.from = from;
+      this.to = to;
+      this.selected = selected;
+    }
+
+
+    /**
+     * @return the next sample or null at the end of the range.
+     */
+    public SessionReader.Sample next() {
+      while (!this.finished && this.position < size) {
+        final int region = (int) (this.position / regionSize);
+        final MappedByteBuffer buffer = getRegion(region);
+        final int limit = buffer.limit();
+        int offset = (int) (this.position - region * regionSize);
+        final int pidIndex = buffer.get(offset++) & 0xFF;
+        if (pidIndex == 0) {
+          // the unused part of the mapped region of a crashed session
+          this.finished = true;
+          return null;
+        }
+        if (pidIndex >= this.selected.length) {
+          break;
+        }
+        long delta = 0;
+        int b = 0x80;
+        for (int shift = 0; (b & 0x80) != 0 && shift < Long.SIZE && offset < limit; shift += 7) {
+          b = buffer.get(offset++) & 0xFF;
+          delta |= (long) (b & 0x7F) << shift;
+        }
+        if ((b & 0x80) != 0 || offset >= limit) {
+          break;
+        }
+        final int length = buffer.get(offset++) & 0xFF;
+        final int payload = length == SessionRecorder.NO_DATA ? 0 : length;
+        if (offset + payload > limit) {
+          break;
+        }
+        this.time += delta;
+        if (this.time > this.to) {
+          this.finished = true;
+          return null;
+        }
+        this.position = region * regionSize + offset + payload;
+        if (this.time >= this.from && this.selected[pidIndex]) {
+          return createSample(buffer, offset, length, pidIndex);
+        }
+      }
+      if (!this.finished && this.position < size) {
+        LOG.warn("The session {} ends with an invalid record at {}.", file, this.position);
+      }
+      this.finished = true;
+      return null;
+    }
+
+
+    private SessionReader.Sample createSample(final MappedByteBuffer buffer, final int offset, final int length,
+        final int pidIndex) {
+      final List<PID> pids = header.getPIDs();
+      final PID pid = pids.get(pidIndex - 1);
+      if (length == SessionRecorder.NO_DATA) {
+        return new SessionReader.Sample(this.time, pid, new Response(true, Mode.CURRENT_DATA, pid, (int[]) null,
+            null));
+      }
+      final int[] data = new int[length];
+      for (int i = 0; i < length; i++) {
+        data[i] = buffer.get(offset + i) & 0xFF;
+      }
+      return new SessionReader.Sample(this.time, pid, new Response(false, Mode.CURRENT_DATA, pid, data, null));
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Protocol;
+
+/**
+ * Header of the binary session recorded by the {@link SessionRecorder}: the VIN, the protocol,
+ * the start time and the dictionary of recorded PIDs. Records refer to PIDs by their index in the
+ * dictionary.
+ *
+ * @author David Matějček
+ */
+public class SessionHeader {
+
+  /** The first bytes of the file */
+  static final byte[] MAGIC = {'C', 'D', 'S', 'N'};
+  /** Version of the format */
+  static final int VERSION = 1;
+  /** Maximal count of PIDs in the dictionary, the index 0 of records marks the end of data. */
+  public static final int MAX_PIDS = 254;
+  private static final int UNKNOWN_PROTOCOL = 0xFF;
+
+  private final String vin;
+  private final Protocol protocol;
+  private final long startTime;
+  private final List<PID> pids;
+  private final byte[] indexes = new byte[256];
+
+
+  /**
+   * @param vin - VIN of the vehicle, may be null.
+   * @param protocol - may be null.
+   * @param startTime - start of the session in millis since epoch.
+   * @param pids - PIDs of the {@link Mode#CURRENT_DATA} which will be recorded.
+   */
+  public SessionHeader(final String vin, final Protocol protocol, final long startTime, final List<PID> pids) {
+    if (pids.size() > MAX_PIDS) {
+      throw new IllegalArgumentException("Too many PIDs: " + pids.size());
+    }
+    if (vin != null && vin.length() > 255) {
+      throw new IllegalArgumentException("Invalid VIN: " + vin);
+    }
+    this.vin = vin;
+    this.protocol = protocol;
+    this.startTime = startTime;
+    this.pids = Collections.unmodifiableList(new ArrayList<>(pids));
+    for (int i = 0; i < pids.size(); i++) {
+      this.indexes[pids.get(i).getCode()] = (byte) (i + 1);
+    }
+  }
+
+
+  /**
+   * @return VIN of the vehicle, may be null.
+   */
+  public String getVin() {
+    return vin;
+  }
+
+
+  /**
+   * @return the protocol, may be null.
+   */
+  public Protocol getProtocol() {
+    return protocol;
+  }
+
+
+  /**
+   * @return start of the session in millis since epoch.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+
+  /**
+   * @return the dictionary of PIDs.
+   */
+  public List<PID> getPIDs() {
+    return pids;
+  }
+
+
+  /**
+   * @param pid
+   * @return index of the PID in the dictionary, -1 if it is not there.
+   */
+  public int indexOf(final PID pid) {
+    return (this.indexes[pid.getCode()] & 0xFF) - 1;
+  }
+
+
+  /**
+   * @return count of bytes of the encoded header.
+   */
+  int length() {
+    return MAGIC.length + 1 + Long.BYTES + 1 + (vin == null ? 0 : vin.length()) + 1 + 1 + pids.size() * 2;
+  }
+
+
+  void write(final ByteBuffer buffer) {
+    buffer.put(MAGIC).put((byte) VERSION).putLong(this.startTime);
+    final byte[] vinBytes = this.vin == null ? new byte[0] : this.vin.getBytes(StandardCharsets.US_ASCII);
+    buffer.put((byte) vinBytes.length).put(vinBytes);
+    buffer.put((byte) (this.protocol == null ? UNKNOWN_PROTOCOL : this.protocol.getCode()));
+    buffer.put((byte) this.pids.size());
+    for (final PID pid : this.pids) {
+      buffer.put((byte) Mode.CURRENT_DATA.getCode()).put((byte) pid.getCode());
+    }
+  }
+
+
+  /**
+   * @param input
+   * @return the header
+   * @throws IOException - the input is not a session or it is unreadable.
+   */
+  static SessionHeader read(final DataInput input) throws IOException {
+    final byte[] magic = new byte[MAGIC.length];
+    input.readFully(magic);
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (magic[i] != MAGIC[i]) {
+        throw new IOException("Not a recorded session.");
+      }
+    }
+    final int version = input.readUnsignedByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported version of the session: " + version);
+    }
+    final long startTime = input.readLong();
+    final byte[] vinBytes = new byte[input.readUnsignedByte()];
+    input.readFully(vinBytes);
+    final int protocolCode = input.readUnsignedByte();
+    final Protocol protocol = protocolCode == UNKNOWN_PROTOCOL ? null
+        : Protocol.parseHex(Integer.toHexString(protocolCode));
+    final int count = input.readUnsignedByte();
+    final List<PID> pids = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      final Mode mode = Mode.parseHex(Integer.toHexString(input.readUnsignedByte()));
+      pids.add(PID.parse(input.readUnsignedByte(), mode));
+    }
+    return new SessionHeader(vinBytes.length == 0 ? null : new String(vinBytes, StandardCharsets.US_ASCII),
+        protocol, startTime, pids);
+  }
+
+
+  @Override
+  public String toString() {
+    return "SessionHeader[vin=" + this.vin + ", protocol=" + this.protocol + ", startTime=" + this.startTime
+        + ", pids=" + this.pids + "]";
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse time index of the session, stored in the file with the <code>.idx</code> suffix next to
+ * the session. The {@link SessionRecorder} adds one entry for each block of records: the time of
+ * the record before the block in microseconds since the start and the file offset of the first
+ * record of the block. Records are delta encoded, so the time of the entry is the base of the
+ * first delta.
+ * <p>
+ * The index of a crashed session may miss the last entries, the rest of the session is then
+ * reachable by iterating from the last entry.
+ *
+ * @author David Matějček
+ */
+public class SessionIndex {
+
+  /** Suffix added to the name of the session */
+  public static final String SUFFIX = ".idx";
+  static final byte[] MAGIC = {'C', 'D', 'S', 'I'};
+  static final int VERSION = 1;
+  /** Length of the header of the index file */
+  static final int HEADER_LENGTH = MAGIC.length + 1 + Integer.BYTES;
+  /** Length of one entry */
+  static final int ENTRY_LENGTH = 2 * Long.BYTES;
+
+  private final long[] times;
+  private final long[] offsets;
+
+
+  SessionIndex(final long[] times, final long[] offsets) {
+    this.times = times;
+    this.offsets = offsets;
+  }
+
+
+  /**
+   * @param session
+   * @return the index file of the session.
+   */
+  public static File toIndexFile(final File session) {
+    return new File(session.getParentFile(), session.getName() + SUFFIX);
+  }
+
+
+  /**
+   * @return count of entries.
+   */
+  public int size() {
+    return this.times.length;
+  }
+
+
+  /**
+   * @param entry
+   * @return time of the record before the block in microseconds since the start of the session.
+   */
+  public long getTime(final int entry) {
+    return this.times[entry];
+  }
+
+
+  /**
+   * @param entry
+   * @return file offset of the first record of the block.
+   */
+  public long getOffset(final int entry) {
+    return this.offsets[entry];
+  }
+
+
+  /**
+   * @param time - microseconds since the start of the session.
+   * @return the last entry whose records before it are all older than the time, -1 if there is no
+   *         such entry and the session must be read from the start.
+   */
+  public int floor(final long time) {
+    final int found = Arrays.binarySearch(this.times, time);
+    // equal times: the previous block may end with a record of the same time
+    int entry = found >= 0 ? found - 1 : -found - 2;
+    while (entry >= 0 && this.times[entry] >= time) {
+      entry--;
+    }
+    return entry;
+  }
+
+
+  static void writeHeader(final ByteBuffer buffer, final int interval) {
+    buffer.put(MAGIC).put((byte) VERSION).putInt(interval);
+  }
+
+
+  static void writeEntry(final ByteBuffer buffer, final long time, final long offset) {
+    buffer.putLong(time).putLong(offset);
+  }
+
+
+  /**
+   * Reads the index file. Incomplete last entry of a crashed session is ignored.
+   *
+   * @param file - the index file.
+   * @return the index
+   * @throws IOException - the file is not an index or it is unreadable.
+   */
+  public static SessionIndex read(final File file) throws IOException {
+    final int count = (int) Math.max(0L, (file.length() - HEADER_LENGTH) / ENTRY_LENGTH);
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      final byte[] magic = new byte[MAGIC.length];
+      input.readFully(magic);
+      if (!Arrays.equals(MAGIC, magic) || input.readUnsignedByte() != VERSION) {
+        throw new IOException("Not an index of a session: " + file);
+      }
+      input.readInt();
+      final long[] times = new long[count];
+      final long[] offsets = new long[count];
+      for (int i = 0; i < count; i++) {
+        times[i] = input.readLong();
+        offsets[i] = input.readLong();
+      }
+      return new SessionIndex(times, offsets);
+    } catch (final EOFException e) {
+      throw new IOException("Not an index of a session: " + file, e);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "SessionIndex[entries=" + this.times.length + "]";
+  }
+}
@@ -0,0 +1,171 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+
+/**
+ * Sequential reader of sessions written by the {@link SessionRecorder}.
+ *
+ * @author David Matějček
+ */
+public class SessionReader implements Closeable {
+
+  private final DataInputStream input;
+  private final SessionHeader header;
+  private long time;
+  private boolean finished;
+
+
+  /**
+   * Opens the file and reads the header.
+   *
+   * @param file
+   * @throws IOException - the file is not a session or it is unreadable.
+   */
+  public SessionReader(final File file) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      this.header = SessionHeader.read(this.input);
+    } catch (final IOException e) {
+      this.input.close();
+      throw e;
+    }
+  }
+
+
+  /**
+   * @return the header of the session.
+   */
+  public SessionHeader getHeader() {
+    return header;
+  }
+
+
+  /**
+   * @return the next sample or null at the end of the session.
+   * @throws IOException - the file is corrupted or unreadable.
+   */
+  public Sample next() throws IOException {
+    if (this.finished) {
+      return null;
+    }
+    final int index = this.input.read();
+    if (index <= 0) {
+      // the end of the file or the unused part of the mapped region of a crashed session
+      this.finished = true;
+      return null;
+    }
+    final List<PID> pids = this.header.getPIDs();
+    if (index > pids.size()) {
+      throw new IOException("Invalid index of the PID: " + (index - 1));
+    }
+    final PID pid = pids.get(index - 1);
+    try {
+      this.time += readVarint();
+      final int length = this.input.readUnsignedByte();
+      final Response response;
+      if (length == SessionRecorder.NO_DATA) {
+        response = new Response(true, Mode.CURRENT_DATA, pid, (int[]) null, null);
+      } else {
+        final int[] data = new int[length];
+        for (int i = 0; i < length; i++) {
+          data[i] = this.input.readUnsignedByte();
+        }
+        response = new Response(false, Mode.CURRENT_DATA, pid, data, null);
+      }
+      return new Sample(this.time, pid, response);
+    } catch (final EOFException e) {
+      throw new IOException("The last record is incomplete.", e);
+    }
+  }
+
+
+  private long readVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      final int b = this.input.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Invalid time of the record.");
+  }
+
+
+  @Override
+  public void close() throws IOException {
+    this.input.close();
+  }
+
+
+  /**
+   * One recorded response.
+   */
+  public static final class Sample {
+
+    private final long time;
+    private final PID pid;
+    private final Response response;
+
+
+    Sample(final long time, final PID pid, final Response response) {
+      this.time = time;
+      this.pid = pid;
+      this.response = response;
+    }
+
+
+    /**
+     * @return time since the start of the session in microseconds.
+     */
+    public long getTime() {
+      return time;
+    }
+
+
+    /**
+     * @param header - header of the session of the sample.
+     * @return time of the sample in millis since epoch.
+     */
+    public long getTimeMillis(final SessionHeader header) {
+      return header.getStartTime() + TimeUnit.MICROSECONDS.toMillis(this.time);
+    }
+
+
+    /**
+     * @return the PID.
+     */
+    public PID getPID() {
+      return pid;
+    }
+
+
+    /**
+     * @return the response, an error response for NO DATA.
+     */
+    public Response getResponse() {
+      return response;
+    }
+
+
+    @Override
+    public String toString() {
+      return "Sample[time=" + this.time + ", pid=" + this.pid + ", response=" + this.response + "]";
+    }
+  }
+}
@@ -0,0 +1,309 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+
+/**
+ * Append-only binary recording of a watch session, usually 10 times smaller than the text
+ * output. The file contains the {@link SessionHeader} and then records:
+ * <ul>
+ * <li>index of the PID in the dictionary + 1, 1 byte; 0 marks the end of data.
+ * <li>time since the previous record (or the start) in microseconds, unsigned varint of 7 bit
+ * groups, the lowest first. Times are measured by {@link System#nanoTime()}, so they are
+ * monotonic.
+ * <li>length of the payload, 1 byte; 0xFF means NO DATA or an error response.
+ * <li>raw bytes of the response payload.
+ * </ul>
+ * The file is written through a buffered {@link FileChannel} or through memory mapped regions.
+ * Mapped regions are filled by zeros, so the reader of a crashed session stops at the end of
+ * written data.
+ * <p>
+ * The recorder writes also the {@link SessionIndex} with one entry per block of records.
+ *
+ * @author David Matějček
+ */
+public class SessionRecorder implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionRecorder.class);
+  /** Default size of the buffer or of the mapped region */
+  public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+  /** Default count of records per entry of the index */
+  public static final int DEFAULT_INDEX_INTERVAL = 1024;
+  static final int NO_DATA = 0xFF;
+  /** index, varint of a long, length, payload */
+  static final int MAX_RECORD_LENGTH = 1 + 10 + 1 + 254;
+  private static final int INDEX_BUFFER_SIZE = 4096;
+
+  private final File file;
+  private final SessionHeader header;
+  private final FileChannel channel;
+  private final FileChannel indexChannel;
+  private final ByteBuffer indexBuffer = ByteBuffer.allocate(INDEX_BUFFER_SIZE);
+  private final boolean mapped;
+  private final int bufferSize;
+  private final int indexInterval;
+  private ByteBuffer buffer;
+  /** File position of the start of the buffer */
+  private long bufferPosition;
+  private long lastTime;
+  /** Time of the last record in microseconds since the start */
+  private long elapsed;
+  private long records;
+  private boolean closed;
+
+
+  /**
+   * Creates the file and writes the header, uses the buffered {@link FileChannel}.
+   *
+   * @param file - a new file, an existing file is overwritten.
+   * @param header
+   */
+  public SessionRecorder(final File file, final SessionHeader header) {
+    this(file, header, false, DEFAULT_BUFFER_SIZE);
+  }
+
+
+  /**
+   * Creates the file and writes the header, uses the default index interval.
+   *
+   * @param file - a new file, an existing file is overwritten.
+   * @param header
+   * @param mapped - true to write through memory mapped regions, false to use the buffered
+   *          {@link FileChannel}.
+   * @param bufferSize - size of the buffer or of the mapped region.
+   */
+  public SessionRecorder(final File file, final SessionHeader header, final boolean mapped, final int bufferSize) {
+    this(file, header, mapped, bufferSize, DEFAULT_INDEX_INTERVAL);
+  }
+
+
+  /**
+   * Creates the file and its index and writes the header.
+   *
+   * @param file - a new file, an existing file is overwritten.
+   * @param header
+   * @param mapped - true to write through memory mapped regions, false to use the buffered
+   *          {@link FileChannel}.
+   * @param bufferSize - size of the buffer or of the mapped region.
+   * @param indexInterval - count of records per entry of the index.
+   */
+  public SessionRecorder(final File file, final SessionHeader header, final boolean mapped, final int bufferSize,
+      final int indexInterval) {
+    LOG.debug("SessionRecorder(file={}, header={}, mapped={}, bufferSize={}, indexInterval={})", file, header,
+        mapped, bufferSize, indexInterval);
+    if (bufferSize < header.length() + MAX_RECORD_LENGTH || indexInterval < 1) {
+      throw new IllegalArgumentException("Invalid buffer size: " + bufferSize + " or index interval: "
+          + indexInterval);
+    }
+    this.file = file;
+    this.header = header;
+    this.mapped = mapped;
+    this.bufferSize = bufferSize;
+    this.indexInterval = indexInterval;
+    try {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      this.indexChannel = FileChannel.open(SessionIndex.toIndexFile(file).toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      this.buffer = mapped ? map(0) : ByteBuffer.allocateDirect(bufferSize);
+    } catch (final IOException e) {
+      throw new IllegalArgumentException("Cannot write to the file: " + file, e);
+    }
+    header.write(this.buffer);
+    SessionIndex.writeHeader(this.indexBuffer, indexInterval);
+    this.lastTime = System.nanoTime();
+  }
+
+
+  /**
+   * @return the header of the session.
+   */
+  public SessionHeader getHeader() {
+    return header;
+  }
+
+
+  /**
+   * @return count of written records.
+   */
+  public long getRecords() {
+    return records;
+  }
+
+
+  /**
+   * Records the response with the current time.
+   *
+   * @param pid - a PID from the dictionary.
+   * @param response
+   */
+  public void record(final PID pid, final Response response) {
+    record(System.nanoTime(), pid, response);
+  }
+
+
+  /**
+   * Records the response.
+   *
+   * @param nanoTime - the {@link System#nanoTime()} of the response, not lower than the previous.
+   * @param pid - a PID from the dictionary.
+   * @param response
+   */
+  public synchronized void record(final long nanoTime, final PID pid, final Response response) {
+    if (this.closed) {
+      throw new IllegalStateException("The recorder is closed: " + this.file);
+    }
+    final int index = this.header.indexOf(pid);
+    if (index < 0) {
+      throw new IllegalArgumentException("The PID " + pid + " is not in the dictionary.");
+    }
+    if (this.buffer.remaining() < MAX_RECORD_LENGTH) {
+      nextBuffer();
+    }
+    if (this.records % this.indexInterval == 0) {
+      if (this.indexBuffer.remaining() < SessionIndex.ENTRY_LENGTH) {
+        writeIndex();
+      }
+      SessionIndex.writeEntry(this.indexBuffer, this.elapsed, this.bufferPosition + this.buffer.position());
+    }
+    final long delta = TimeUnit.NANOSECONDS.toMicros(Math.max(0L, nanoTime - this.lastTime));
+    // keep the rest of micros for the next record, so the error doesn't accumulate.
+    this.lastTime += TimeUnit.MICROSECONDS.toNanos(delta);
+    this.elapsed += delta;
+    this.buffer.put((byte) (index + 1));
+    putVarint(delta);
+    if (response.isError()) {
+      this.buffer.put((byte) NO_DATA);
+    } else {
+      final int length = Math.min(response.length(), NO_DATA - 1);
+      this.buffer.put((byte) length);
+      for (int i = 0; i < length; i++) {
+        this.buffer.put((byte) response.byteAt(i));
+      }
+    }
+    this.records++;
+  }
+
+
+  private void putVarint(final long value) {
+    long rest = value;
+    while ((rest & ~0x7FL) != 0) {
+      this.buffer.put((byte) ((rest & 0x7F) | 0x80));
+      rest >>>= 7;
+    }
+    this.buffer.put((byte) rest);
+  }
+
+
+  private ByteBuffer map(final long position) throws IOException {
+    return this.channel.map(FileChannel.MapMode.READ_WRITE, position, this.bufferSize);
+  }
+
+
+  private void nextBuffer() {
+    try {
+      if (this.mapped) {
+        this.bufferPosition += this.buffer.position();
+        this.buffer = map(this.bufferPosition);
+      } else {
+        writeBuffer();
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot write to the file: " + this.file, e);
+    }
+  }
+
+
+  private void writeBuffer() throws IOException {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      this.channel.write(this.buffer);
+    }
+    this.bufferPosition += this.buffer.position();
+    this.buffer.clear();
+  }
+
+
+  private void writeIndex() {
+    this.indexBuffer.flip();
+    try {
+      while (this.indexBuffer.hasRemaining()) {
+        this.indexChannel.write(this.indexBuffer);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot write the index of the file: " + this.file, e);
+    } finally {
+      this.indexBuffer.clear();
+    }
+  }
+
+
+  /**
+   * Writes buffered records and index entries to files. Mapped regions are written by the
+   * operating system.
+   */
+  public synchronized void flush() {
+    if (this.closed) {
+      return;
+    }
+    writeIndex();
+    if (this.mapped) {
+      return;
+    }
+    try {
+      writeBuffer();
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot write to the file: " + this.file, e);
+    }
+  }
+
+
+  /**
+   * Writes remaining records, truncates the unused part of the mapped region and closes the file.
+   */
+  @Override
+  public synchronized void close() {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      writeIndex();
+      if (this.mapped) {
+        this.channel.truncate(this.bufferPosition + this.buffer.position());
+      } else {
+        writeBuffer();
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot write to the file: " + this.file, e);
+    } finally {
+      this.buffer = null;
+      close(this.channel);
+      close(this.indexChannel);
+    }
+    LOG.debug("Closed the session {} with {} records.", this.file, this.records);
+  }
+
+
+  private void close(final FileChannel fileChannel) {
+    try {
+      fileChannel.close();
+    } catch (final IOException e) {
+      LOG.warn("Cannot close the file " + this.file, e);
+    }
+  }
+}
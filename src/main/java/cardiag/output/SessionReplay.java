@@ -0,0 +1,339 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.obd2.Elm327Simulator;
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+import cardiag.serial.SerialTransport;
+
+/**
+ * Plays the session recorded by the {@link SessionRecorder} back through the simulated ELM327,
+ * so the session can be processed by the same code as the vehicle. The simulated vehicle has the
+ * VIN and the protocol of the session and supports the PIDs of its dictionary.
+ * <p>
+ * With the speed 0 the replay is exact and reproducible: every requested PID, alone or in a
+ * multi-PID request, is answered with its next recorded sample, so each sample is read once and in
+ * the recorded order of the PID, whatever the order and the rates of requests are. A recorded NO
+ * DATA answers only one request. Samples of PIDs which are not requested wait in memory, PIDs
+ * without more samples respond NO DATA.
+ * <p>
+ * With other speeds the recorded values are set to the vehicle in the recorded time divided by the
+ * speed and stay there until the next sample of the PID. Requests see the state of the vehicle at
+ * their time, so samples may be repeated or skipped, depending on the polling rates, and a
+ * recorded NO DATA lasts until the next sample.
+ * <p>
+ * The replay starts with the first request of current data, until then the vehicle responds
+ * zeros, so the initial detection of supported PIDs sees all PIDs of the session.
+ *
+ * @author David Matějček
+ */
+public class SessionReplay implements SerialTransport {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SessionReplay.class);
+  /** Current data request of one or more PIDs, optionally with the count of responses */
+  private static final String DATA_REQUEST = "01([0-9A-F]{2})+[0-9A-F]?";
+
+  private final File file;
+  private final SessionReader reader;
+  private final Elm327Simulator simulator;
+  private volatile double speed;
+  private volatile boolean finished;
+  private boolean started;
+  /** Samples read ahead of requests of their PIDs, used with the speed 0 */
+  private final Map<PID, Deque<SessionReader.Sample>> queues = new HashMap<>();
+  private int queued;
+  private boolean exhausted;
+  private Thread worker;
+
+
+  /**
+   * Opens the session.
+   *
+   * @param file - the recorded session.
+   * @throws IOException - the file is not a session or it is unreadable.
+   */
+  public SessionReplay(final File file) throws IOException {
+    this.file = file;
+    this.reader = new SessionReader(file);
+    final SessionHeader header = this.reader.getHeader();
+    this.simulator = new Elm327Simulator(file.getName());
+    this.simulator.setVin(header.getVin());
+    if (header.getProtocol() != null) {
+      this.simulator.setVehicleProtocol(header.getProtocol());
+    }
+    this.simulator.setLatency(0L);
+    this.simulator.setNoDataDelay(0L);
+    this.simulator.setSearchTime(0L);
+    this.simulator.setPacing(false);
+    for (int code = 1; code < 0x100; code++) {
+      if (code % 0x20 != 0) {
+        this.simulator.setPid(code);
+      }
+    }
+    for (final PID pid : header.getPIDs()) {
+      this.simulator.setPid(pid.getCode(), new int[Math.max(1, pid.getLength())]);
+    }
+    this.speed = 1.0;
+  }
+
+
+  /**
+   * @param speed - 1 for the recorded speed, 2 for double, 0 to answer each request with the next
+   *          recorded sample. Must be set before the replay starts.
+   */
+  public void setSpeed(final double speed) {
+    if (speed < 0 || Double.isNaN(speed)) {
+      throw new IllegalArgumentException("Invalid speed: " + speed);
+    }
+    this.speed = speed;
+  }
+
+
+  /**
+   * @return the header of the replayed session.
+   */
+  public SessionHeader getHeader() {
+    return this.reader.getHeader();
+  }
+
+
+  /**
+   * @return true if all recorded samples were replayed.
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+
+  @Override
+  public String getName() {
+    return this.simulator.getName();
+  }
+
+
+  @Override
+  public boolean open() {
+    return this.simulator.open();
+  }
+
+
+  @Override
+  public boolean setBaudRate(final int baudRate) {
+    return this.simulator.setBaudRate(baudRate);
+  }
+
+
+  @Override
+  public void writeBytes(final byte[] bytes) {
+    final String request = toDataRequest(bytes);
+    if (request != null) {
+      if (this.speed == 0) {
+        step(request);
+      } else {
+        start();
+      }
+    }
+    this.simulator.writeBytes(bytes);
+  }
+
+
+  /**
+   * @return the request without spaces, null if it is not a request of current data.
+   */
+  private static String toDataRequest(final byte[] bytes) {
+    final String command = new String(bytes, StandardCharsets.US_ASCII).replace(" ", "").trim().toUpperCase();
+    if (!command.matches(DATA_REQUEST) || Integer.parseInt(command.substring(2, 4), 16) % 0x20 == 0) {
+      return null;
+    }
+    return command;
+  }
+
+
+  /**
+   * Sets the next recorded sample of every PID of the request to the vehicle.
+   */
+  private synchronized void step(final String request) {
+    try {
+      // the odd character at the end is the count of responses
+      for (int i = 2; i + 2 <= request.length(); i += 2) {
+        final int code = Integer.parseInt(request.substring(i, i + 2), 16);
+        final PID pid = PID.get(Mode.CURRENT_DATA, code);
+        if (pid == null || this.reader.getHeader().indexOf(pid) < 0) {
+          continue;
+        }
+        final SessionReader.Sample sample = nextSample(pid);
+        if (sample == null) {
+          this.simulator.setPid(code);
+        } else {
+          apply(sample);
+        }
+      }
+      if (this.queued == 0 && !this.exhausted) {
+        // detects the end of the session
+        final SessionReader.Sample sample = this.reader.next();
+        if (sample == null) {
+          this.exhausted = true;
+        } else {
+          enqueue(sample);
+        }
+      }
+    } catch (final IOException e) {
+      LOG.error("Cannot read the session " + this.file, e);
+      this.exhausted = true;
+      this.queues.clear();
+      this.queued = 0;
+    }
+    this.finished = this.exhausted && this.queued == 0;
+  }
+
+
+  /**
+   * @return the next sample of the PID, null if there is none.
+   */
+  private SessionReader.Sample nextSample(final PID pid) throws IOException {
+    final Deque<SessionReader.Sample> queue = this.queues.get(pid);
+    if (queue != null && !queue.isEmpty()) {
+      this.queued--;
+      return queue.poll();
+    }
+    while (!this.exhausted) {
+      final SessionReader.Sample sample = this.reader.next();
+      if (sample == null) {
+        this.exhausted = true;
+      } else if (sample.getPID() == pid) {
+        return sample;
+      } else {
+        enqueue(sample);
+      }
+    }
+    return null;
+  }
+
+
+  private void enqueue(final SessionReader.Sample sample) {
+    this.queues.computeIfAbsent(sample.getPID(), pid -> new ArrayDeque<>()).add(sample);
+    this.queued++;
+  }
+
+
+  private synchronized void start() {
+    if (this.started) {
+      return;
+    }
+    this.started = true;
+    this.worker = new Thread(this::replay, "cardiag-session-replay");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+
+  private void replay() {
+    final long start = System.nanoTime();
+    try {
+      for (SessionReader.Sample sample = this.reader.next(); sample != null; sample = this.reader.next()) {
+        final long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(sample.getTime()) / this.speed);
+        while (due - System.nanoTime() > 0) {
+          LockSupport.parkNanos(due - System.nanoTime());
+          if (Thread.currentThread().isInterrupted()) {
+            return;
+          }
+        }
+        apply(sample);
+      }
+      LOG.info("The replay of {} finished.", this.file);
+    } catch (final IOException e) {
+      if (Thread.currentThread().isInterrupted()) {
+        LOG.debug("The replay of {} was closed.", this.file);
+      } else {
+        LOG.error("Cannot read the session " + this.file, e);
+      }
+    } finally {
+      this.finished = true;
+    }
+  }
+
+
+  private void apply(final SessionReader.Sample sample) {
+    final Response response = sample.getResponse();
+    if (response.isError()) {
+      this.simulator.setPid(sample.getPID().getCode());
+      return;
+    }
+    final int[] data = new int[response.length()];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = response.byteAt(i);
+    }
+    this.simulator.setPid(sample.getPID().getCode(), data);
+  }
+
+
+  @Override
+  public int getInputBufferBytesCount() {
+    return this.simulator.getInputBufferBytesCount();
+  }
+
+
+  @Override
+  public byte[] readBytes() {
+    return this.simulator.readBytes();
+  }
+
+
+  @Override
+  public byte[] readBytes(final int count) {
+    return this.simulator.readBytes(count);
+  }
+
+
+  @Override
+  public void purgeInput() {
+    this.simulator.purgeInput();
+  }
+
+
+  @Override
+  public void setListener(final Listener listener) {
+    this.simulator.setListener(listener);
+  }
+
+
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (this) {
+      thread = this.worker;
+      this.worker = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+    this.simulator.close();
+    try {
+      this.reader.close();
+    } catch (final IOException e) {
+      LOG.warn("Cannot close the session " + this.file, e);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "SessionReplay[file=" + this.file + ", speed=" + this.speed + "]";
+  }
+}
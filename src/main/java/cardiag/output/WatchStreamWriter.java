@@ -0,0 +1,326 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+
+/**
+ * Long-lived sink of watched values. Keeps one file channel open for the whole session and
+ * writes lines in the format <code>HH:mm:ss.SSS label: value unit</code> to a buffer. The buffer
+ * is flushed when it reaches the size limit or by the background thread when the oldest unflushed
+ * line is older than the flush interval.
+ * <p>
+ * Timestamps and numbers are formatted without allocations.
+ *
+ * @author David Matějček
+ */
+public class WatchStreamWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WatchStreamWriter.class);
+  /** Default size of the buffer */
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+  /** Default maximal time of data in the buffer */
+  public static final long DEFAULT_FLUSH_INTERVAL = 1000L;
+  private static final int MAX_LINE_LENGTH = 1024;
+  /** Maximal length of the label and of the unit */
+  private static final int MAX_LABEL_LENGTH = MAX_LINE_LENGTH / 4;
+  private static final String NO_VALUE = "--";
+  private static final int DECIMALS = 100;
+  private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+  private final File outputFile;
+  private final FileChannel channel;
+  private final ByteBuffer buffer;
+  private final CharBuffer line = CharBuffer.allocate(MAX_LINE_LENGTH);
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+  private final char[] digits = new char[20];
+  private final TimeZone timeZone = TimeZone.getDefault();
+  private final long flushInterval;
+  private final ScheduledExecutorService flusher;
+  /** The {@link System#nanoTime()} of the first unflushed line */
+  private long dirtySince;
+  private boolean closed;
+
+
+  /**
+   * Opens the file with default buffer size and flush interval.
+   *
+   * @param outputFile - the data are appended to the file.
+   */
+  public WatchStreamWriter(final File outputFile) {
+    this(outputFile, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL);
+  }
+
+
+  /**
+   * Opens the file.
+   *
+   * @param outputFile - the data are appended to the file.
+   * @param bufferSize - the buffer is flushed when it is full.
+   * @param flushInterval - maximal time of data in the buffer in millis.
+   */
+  public WatchStreamWriter(final File outputFile, final int bufferSize, final long flushInterval) {
+    LOG.debug("WatchStreamWriter(outputFile={}, bufferSize={}, flushInterval={})", outputFile, bufferSize,
+        flushInterval);
+    if (bufferSize < MAX_LINE_LENGTH * 4 || flushInterval < 1) {
+      throw new IllegalArgumentException("Invalid buffer size: " + bufferSize + " or interval: " + flushInterval);
+    }
+    this.outputFile = outputFile;
+    try {
+      this.channel = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND);
+    } catch (final IOException e) {
+      throw new IllegalArgumentException("Cannot write to the outputFile: " + outputFile, e);
+    }
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      final Thread thread = new Thread(runnable, "cardiag-watch-flusher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long period = Math.max(1L, flushInterval / 2);
+    this.flusher.scheduleWithFixedDelay(this::flushIfOld, period, period, TimeUnit.MILLISECONDS);
+  }
+
+
+  /**
+   * Writes the decoded value of the response. Error responses are written as --, PIDs without
+   * formula as hex bytes.
+   *
+   * @param timeMillis - time of the response in millis since epoch.
+   * @param pid
+   * @param response
+   */
+  public synchronized void write(final long timeMillis, final PID pid, final Response response) {
+    startLine(timeMillis, pid.getDescription());
+    if (response.isError()) {
+      this.line.put(NO_VALUE);
+    } else if (pid.getFormula() == null) {
+      for (int i = 0; i < response.length() && getValueSpace() >= 3; i++) {
+        if (i > 0) {
+          this.line.put(' ');
+        }
+        this.line.put(HEX_DIGITS[response.byteAt(i) >>> 4]).put(HEX_DIGITS[response.byteAt(i) & 0xF]);
+      }
+    } else {
+      appendNumber(pid.decodeValue(response));
+    }
+    endLine(pid.getUnit());
+  }
+
+
+  /**
+   * Writes the line with the value.
+   *
+   * @param timeMillis - time of the value in millis since epoch.
+   * @param label
+   * @param value
+   * @param unit - may be null, then not written.
+   */
+  public synchronized void write(final long timeMillis, final String label, final double value, final String unit) {
+    startLine(timeMillis, label);
+    appendNumber(value);
+    endLine(unit);
+  }
+
+
+  /**
+   * Writes the line with the value.
+   *
+   * @param timeMillis - time of the value in millis since epoch.
+   * @param label
+   * @param value - may be null, then -- are written.
+   * @param unit - may be null, then not written.
+   */
+  public synchronized void write(final long timeMillis, final String label, final CharSequence value,
+      final String unit) {
+    startLine(timeMillis, label);
+    if (value == null) {
+      this.line.put(NO_VALUE);
+    } else {
+      final int length = Math.min(value.length(), getValueSpace());
+      for (int i = 0; i < length; i++) {
+        this.line.put(value.charAt(i));
+      }
+    }
+    endLine(unit);
+  }
+
+
+  private void startLine(final long timeMillis, final String label) {
+    if (this.closed) {
+      throw new IllegalStateException("The writer is closed: " + this.outputFile);
+    }
+    this.line.clear();
+    final long local = timeMillis + this.timeZone.getOffset(timeMillis);
+    final int millisOfDay = (int) Math.floorMod(local, MILLIS_PER_DAY);
+    appendTwoDigits(millisOfDay / 3_600_000);
+    this.line.put(':');
+    appendTwoDigits(millisOfDay / 60_000 % 60);
+    this.line.put(':');
+    appendTwoDigits(millisOfDay / 1000 % 60);
+    this.line.put('.');
+    final int millis = millisOfDay % 1000;
+    this.line.put((char) ('0' + millis / 100)).put((char) ('0' + millis / 10 % 10)).put((char) ('0' + millis % 10));
+    this.line.put(' ');
+    putTruncated(label);
+    this.line.put(": ");
+  }
+
+
+  private void endLine(final String unit) {
+    if (unit != null) {
+      this.line.put(' ');
+      putTruncated(unit);
+    }
+    this.line.put('\n');
+    this.line.flip();
+    if (this.buffer.position() == 0) {
+      this.dirtySince = System.nanoTime();
+    }
+    this.encoder.reset();
+    CoderResult result = this.encoder.encode(this.line, this.buffer, true);
+    while (result.isOverflow()) {
+      flushBuffer();
+      result = this.encoder.encode(this.line, this.buffer, true);
+    }
+    if (this.buffer.remaining() < MAX_LINE_LENGTH * 4) {
+      flushBuffer();
+    }
+  }
+
+
+  /**
+   * @return count of characters which can be used by the value, the rest is kept for the unit.
+   */
+  private int getValueSpace() {
+    return this.line.remaining() - MAX_LABEL_LENGTH - 2;
+  }
+
+
+  private void putTruncated(final String text) {
+    final int length = Math.min(text.length(), MAX_LABEL_LENGTH);
+    for (int i = 0; i < length; i++) {
+      this.line.put(text.charAt(i));
+    }
+  }
+
+
+  private void appendTwoDigits(final int value) {
+    this.line.put((char) ('0' + value / 10)).put((char) ('0' + value % 10));
+  }
+
+
+  /**
+   * Appends the value rounded to 2 decimal places, at least one decimal place is written.
+   */
+  private void appendNumber(final double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / DECIMALS) {
+      this.line.put(NO_VALUE);
+      return;
+    }
+    long scaled = Math.round(Math.abs(value) * DECIMALS);
+    if (value < 0 && scaled != 0) {
+      this.line.put('-');
+    }
+    long integral = scaled / DECIMALS;
+    int count = 0;
+    do {
+      this.digits[count++] = (char) ('0' + integral % 10);
+      integral /= 10;
+    } while (integral > 0);
+    while (count > 0) {
+      this.line.put(this.digits[--count]);
+    }
+    this.line.put('.');
+    final int fraction = (int) (scaled % DECIMALS);
+    this.line.put((char) ('0' + fraction / 10));
+    if (fraction % 10 != 0) {
+      this.line.put((char) ('0' + fraction % 10));
+    }
+  }
+
+
+  private void flushIfOld() {
+    synchronized (this) {
+      if (this.closed || this.buffer.position() == 0 || System.nanoTime() - this.dirtySince < this.flushInterval) {
+        return;
+      }
+      try {
+        flushBuffer();
+      } catch (final IllegalStateException e) {
+        LOG.error("Flush failed, data were lost.", e);
+      }
+    }
+  }
+
+
+  /**
+   * Writes buffered data to the file.
+   */
+  public synchronized void flush() {
+    if (!this.closed) {
+      flushBuffer();
+    }
+  }
+
+
+  private void flushBuffer() {
+    this.buffer.flip();
+    try {
+      while (this.buffer.hasRemaining()) {
+        this.channel.write(this.buffer);
+      }
+    } catch (final IOException e) {
+      throw new IllegalStateException("Cannot write to the outputFile: " + this.outputFile, e);
+    } finally {
+      this.buffer.clear();
+    }
+  }
+
+
+  /**
+   * Flushes the buffer, stops the background thread and closes the file.
+   */
+  @Override
+  public void close() {
+    this.flusher.shutdown();
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      try {
+        flushBuffer();
+      } finally {
+        this.closed = true;
+        try {
+          this.channel.close();
+        } catch (final IOException e) {
+          LOG.warn("Cannot close the outputFile " + this.outputFile, e);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays the {@link WireCapture} back instead of the device. Each write of the host is matched to
+ * the next captured write with same bytes and then bytes read after it in the capture are sent
+ * to the host with captured delays divided by the speed. If the host writes something else, the
+ * replay continues with the next captured write and logs the divergence.
+ *
+ * @author David Matějček
+ */
+public class CaptureReplay implements SerialTransport {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CaptureReplay.class);
+  private static final int OUTPUT_CAPACITY = 1 << 16;
+
+  private final String name;
+  private final List<WireCapture.Record> records;
+  private final BlockingQueue<byte[]> writes = new LinkedBlockingQueue<>();
+  private final Object lock = new Object();
+  private final byte[] output = new byte[OUTPUT_CAPACITY];
+  private volatile double speed = 1.0;
+  private volatile boolean finished;
+  private Listener listener;
+  private Thread worker;
+  private int outputHead;
+  private int outputTail;
+  /** Index of the next record to replay */
+  private int position;
+
+
+  /**
+   * @param name - name of the port
+   * @param capture - the capture to replay.
+   */
+  public CaptureReplay(final String name, final WireCapture capture) {
+    this.name = name;
+    this.records = capture.getRecords();
+  }
+
+
+  /**
+   * @param speed - 1 for the captured speed, 2 for double, 0 or lower to send responses
+   *          immediately.
+   */
+  public void setSpeed(final double speed) {
+    this.speed = speed;
+  }
+
+
+  /**
+   * @return true if all captured records were replayed.
+   */
+  public boolean isFinished() {
+    return this.finished;
+  }
+
+
+  @Override
+  public String getName() {
+    return this.name;
+  }
+
+
+  @Override
+  public boolean open() {
+    synchronized (this.lock) {
+      if (this.worker != null) {
+        return false;
+      }
+      this.worker = new Thread(this::run, "cardiag-capture-replay");
+      this.worker.setDaemon(true);
+      this.worker.start();
+      return true;
+    }
+  }
+
+
+  @Override
+  public boolean setBaudRate(final int baudRate) {
+    return true;
+  }
+
+
+  @Override
+  public void writeBytes(final byte[] bytes) {
+    this.writes.add(bytes.clone());
+  }
+
+
+  @Override
+  public int getInputBufferBytesCount() {
+    synchronized (this.lock) {
+      return this.outputHead - this.outputTail;
+    }
+  }
+
+
+  @Override
+  public byte[] readBytes() {
+    synchronized (this.lock) {
+      final int count = this.outputHead - this.outputTail;
+      return count == 0 ? null : readBytes(count);
+    }
+  }
+
+
+  @Override
+  public byte[] readBytes(final int count) {
+    synchronized (this.lock) {
+      final byte[] bytes = new byte[Math.min(count, this.outputHead - this.outputTail)];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = this.output[this.outputTail++ & (OUTPUT_CAPACITY - 1)];
+      }
+      return bytes;
+    }
+  }
+
+
+  @Override
+  public void purgeInput() {
+    synchronized (this.lock) {
+      this.outputTail = this.outputHead;
+    }
+  }
+
+
+  @Override
+  public void setListener(final Listener newListener) {
+    synchronized (this.lock) {
+      this.listener = newListener;
+    }
+  }
+
+
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (this.lock) {
+      thread = this.worker;
+      this.worker = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+
+  private void run() {
+    try {
+      while (!this.finished) {
+        replay(this.writes.take());
+      }
+      LOG.info("The replay of {} finished.", this.name);
+    } catch (final InterruptedException e) {
+      LOG.debug("The replay {} was closed.", this.name);
+    }
+  }
+
+
+  private void replay(final byte[] written) {
+    int next = this.position;
+    while (next < this.records.size() && !isWrite(next, written)) {
+      next++;
+    }
+    if (next == this.records.size()) {
+      LOG.warn("The host diverged from the capture, it wrote '{}'.",
+          new String(written, StandardCharsets.US_ASCII).trim());
+      next = this.position;
+      while (next < this.records.size() && this.records.get(next).getDirection() != WireCapture.WRITE) {
+        next++;
+      }
+      if (next == this.records.size()) {
+        this.finished = true;
+        return;
+      }
+    } else if (next > this.position + 1) {
+      LOG.debug("Skipped {} captured records.", next - this.position);
+    }
+    long previous = this.records.get(next).getNanoTime();
+    next++;
+    while (next < this.records.size() && this.records.get(next).getDirection() == WireCapture.READ) {
+      final WireCapture.Record record = this.records.get(next++);
+      final double currentSpeed = this.speed;
+      if (currentSpeed > 0) {
+        LockSupport.parkNanos((long) ((record.getNanoTime() - previous) / currentSpeed));
+      }
+      previous = record.getNanoTime();
+      send(record.getBytes());
+    }
+    this.position = next;
+    this.finished = next == this.records.size();
+  }
+
+
+  private boolean isWrite(final int index, final byte[] bytes) {
+    final WireCapture.Record record = this.records.get(index);
+    return record.getDirection() == WireCapture.WRITE && Arrays.equals(record.getBytes(), bytes);
+  }
+
+
+  private void send(final byte[] bytes) {
+    final Listener currentListener;
+    synchronized (this.lock) {
+      for (final byte b : bytes) {
+        this.output[this.outputHead++ & (OUTPUT_CAPACITY - 1)] = b;
+      }
+      currentListener = this.listener;
+    }
+    if (currentListener != null) {
+      currentListener.dataAvailable(bytes.length);
+    }
+  }
+
+
+  @Override
+  public String toString() {
+    return "CaptureReplay[name=" + this.name + ", records=" + this.records.size() + "]";
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+
+/**
+ * The serial port accessed by the jSSC library.
+ *
+ * @author David Matějček
+ */
+public class JsscTransport implements SerialTransport {
+
+  private final SerialPort port;
+
+
+  /**
+   * @param portName - ie. /dev/ttyUSB0 or COM3
+   */
+  public JsscTransport(final String portName) {
+    this.port = new SerialPort(portName);
+  }
+
+
+  @Override
+  public String getName() {
+    return this.port.getPortName();
+  }
+
+
+  @Override
+  public boolean open() throws SerialPortException {
+    return this.port.openPort();
+  }
+
+
+  @Override
+  public boolean setBaudRate(final int baudRate) throws SerialPortException {
+    // see page 7 in elm327.pdf - do not change other parameters!
+    return this.port.setParams(baudRate, 8, 1, 0, true, true);
+  }
+
+
+  @Override
+  public void writeBytes(final byte[] bytes) throws SerialPortException {
+    this.port.writeBytes(bytes);
+  }
+
+
+  @Override
+  public int getInputBufferBytesCount() throws SerialPortException {
+    return this.port.getInputBufferBytesCount();
+  }
+
+
+  @Override
+  public byte[] readBytes() throws SerialPortException {
+    return this.port.readBytes();
+  }
+
+
+  @Override
+  public byte[] readBytes(final int count) throws SerialPortException {
+    return this.port.readBytes(count);
+  }
+
+
+  @Override
+  public void purgeInput() throws SerialPortException {
+    this.port.purgePort(SerialPort.PURGE_RXCLEAR);
+  }
+
+
+  @Override
+  public void setListener(final Listener listener) throws SerialPortException {
+    this.port.addEventListener(new SerialPortEventListener() {
+
+      @Override
+      public void serialEvent(final SerialPortEvent event) {
+        if (event.isRXCHAR() && event.getEventValue() > 0) {
+          listener.dataAvailable(event.getEventValue());
+        }
+      }
+    }, SerialPort.MASK_RXCHAR);
+  }
+
+
+  @Override
+  public void close() throws SerialPortException {
+    this.port.closePort();
+  }
+}
@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Histogram of durations in microseconds with logarithmic buckets: values under 16 us have their
+ * own buckets, then each power of two is split to 8 buckets, so the relative error is under
+ * 12.5 %. Recording is lock-free and doesn't allocate, so the histogram may be read by other
+ * threads, ie. by JMX, while the communication is running.
+ *
+ * @author David Matějček
+ */
+public class LatencyHistogram {
+
+  private static final int LINEAR = 16;
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = LINEAR + (Integer.SIZE - 1 - 4) * SUB_BUCKETS;
+
+  private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+
+
+  /**
+   * @param nanos - measured duration.
+   */
+  public void record(final long nanos) {
+    final long micros = Math.min(Integer.MAX_VALUE, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    this.counts.incrementAndGet(toBucket((int) micros));
+    this.count.incrementAndGet();
+  }
+
+
+  /**
+   * @return count of recorded values.
+   */
+  public long getCount() {
+    return this.count.get();
+  }
+
+
+  /**
+   * @param percentile - 0 - 1, ie. 0.99 for the 99th percentile.
+   * @return the upper bound of the bucket containing the percentile in microseconds, 0 if there
+   *         are no values.
+   */
+  public long getPercentile(final double percentile) {
+    final long total = this.count.get();
+    if (total == 0) {
+      return 0;
+    }
+    final long rank = Math.max(1, (long) Math.ceil(percentile * total));
+    long seen = 0;
+    int last = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      final int bucketCount = this.counts.get(i);
+      seen += bucketCount;
+      if (bucketCount > 0) {
+        last = i;
+      }
+      if (seen >= rank) {
+        return toUpperBound(i);
+      }
+    }
+    // concurrent recording, buckets may be behind the total count.
+    return toUpperBound(last);
+  }
+
+
+  /**
+   * Forgets all values.
+   */
+  public void clear() {
+    for (int i = 0; i < BUCKETS; i++) {
+      this.counts.set(i, 0);
+    }
+    this.count.set(0);
+  }
+
+
+  static int toBucket(final int micros) {
+    if (micros < LINEAR) {
+      return micros;
+    }
+    final int exponent = Integer.SIZE - 1 - Integer.numberOfLeadingZeros(micros);
+    final int subBucket = (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return LINEAR + (exponent - 4) * SUB_BUCKETS + subBucket;
+  }
+
+
+  static long toUpperBound(final int bucket) {
+    if (bucket < LINEAR) {
+      return bucket;
+    }
+    final int exponent = (bucket - LINEAR) / SUB_BUCKETS + 4;
+    final long subBucket = (bucket - LINEAR) % SUB_BUCKETS;
+    final long width = 1L << (exponent - SUB_BUCKET_BITS);
+    return (SUB_BUCKETS + subBucket) * width + width - 1;
+  }
+
+
+  @Override
+  public String toString() {
+    return "LatencyHistogram[count=" + getCount() + ", p50=" + getPercentile(0.5) + " us, p99="
+        + getPercentile(0.99) + " us]";
+  }
+}
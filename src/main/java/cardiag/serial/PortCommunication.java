@@ -4,15 +4,15 @@
 package cardiag.serial;
 
 import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jssc.SerialPort;
 import jssc.SerialPortException;
 
 /**
@@ -22,102 +22,382 @@ import jssc.SerialPortException;
  */
 public class PortCommunication implements Closeable {
 
+  /** The baud rate of the ELM327 after the reset, see page 7 in elm327.pdf */
+  public static final int DEFAULT_BAUD_RATE = 38400;
+
   private static final Logger LOG = LoggerFactory.getLogger(PortCommunication.class);
+  /** Baud rates tried by the AT BRD command, from the fastest */
+  private static final int[] BAUD_RATES = {500000, 230400, 115200, 57600};
+  /** AT BRD divides this frequency */
+  private static final int BAUD_RATE_CLOCK = 4000000;
+  /** Time for the AT BRD confirmation, 5 ms units: 200 ms */
+  private static final String BAUD_RATE_TIMEOUT = "28";
+  private static final long NEGOTIATION_TIMEOUT = 1000L;
+  /** Time for the AT I response, the device answers in few millis if it is idle */
+  private static final long HANDSHAKE_TIMEOUT = 200L;
   private static final String RESPONSE_OK = "OK";
-  private static final String RESPONSE_TERMINALCHAR = ">";
+  private static final long POLLING_INTERVAL = 1L;
+  /** Time for the prompt of a response which came just after its timeout */
+  private static final long LATE_PROMPT_TIMEOUT = 20L;
+  /** Interrupts the busy device, the idle device ignores it */
+  private static final byte[] INTERRUPT = {' '};
+  private static final int BUFFER_CAPACITY = 4096;
+  private static final byte[] LINE_END = {'\r', '\n'};
 
   private final PortConfiguration cfg;
-  private final SerialPort port;
+  private final SerialTransport port;
+  private final ReceiveBuffer receiveBuffer;
+  private final PortEventReader eventReader;
+  private final PortStatistics statistics = new PortStatistics();
+  private final WireTap wireTap;
+  /** The rate used to open the port, the device returns to it after the reset */
+  private final int resetBaudRate;
+  private int baudRate;
+  /** The {@link System#nanoTime()} of the last written command */
+  private long writeTime;
 
 
   /**
-   * Initializes and opens the port.
+   * Initializes and opens the serial port.
    *
    * @param cfg - a port configuration
    * @throws PortCommunicationException - cannot initialize the communication.
    */
   public PortCommunication(final PortConfiguration cfg) throws PortCommunicationException {
-    LOG.debug("PortCommunication(cfg={})", cfg);
+    this(cfg, new JsscTransport(cfg.getPortName()));
+  }
+
+
+  /**
+   * Initializes and opens the transport.
+   *
+   * @param cfg - a port configuration, the port name is ignored.
+   * @param transport - the serial port or a simulator.
+   * @throws PortCommunicationException - cannot initialize the communication.
+   */
+  public PortCommunication(final PortConfiguration cfg, final SerialTransport transport)
+      throws PortCommunicationException {
+    LOG.debug("PortCommunication(cfg={}, transport={})", cfg, transport);
+    this.resetBaudRate = cfg.getBaudRate();
+    this.wireTap = cfg.getCaptureFile() == null ? null : new WireTap(cfg.getCaptureFile());
     try {
       this.cfg = cfg;
-      this.port = new SerialPort(cfg.getPortName());
-      if (!this.port.openPort()) {
+      this.receiveBuffer = new ReceiveBuffer(BUFFER_CAPACITY);
+      this.port = transport;
+      if (!this.port.open()) {
         throw new PortCommunicationException("Cannot open port!");
       }
-      // see page 7 in elm327.pdf - do not change!
-      if (!this.port.setParams(38400, 8, 1, 0, true, true)) {
-        throw new PortCommunicationException("Setting parameters was unsuccessful!");
+      setBaudRate(cfg.getBaudRate());
+      if (cfg.getMaxBaudRate() > this.baudRate) {
+        negotiateBaudRate();
+      }
+      if (cfg.getReadMode() == ReadMode.EVENTS) {
+        this.eventReader = new PortEventReader(this.port, this.receiveBuffer, this.statistics, this.wireTap);
+        this.port.setListener(this.eventReader);
+      } else {
+        this.eventReader = null;
       }
     } catch (final SerialPortException e) {
+      closeWireTap();
       throw new PortCommunicationException(e);
+    } catch (final RuntimeException e) {
+      closeWireTap();
+      throw e;
+    }
+  }
+
+
+  /**
+   * @return the baud rate currently used by the port.
+   */
+  public int getBaudRate() {
+    return this.baudRate;
+  }
+
+
+  /**
+   * @return counters and round trips of the communication.
+   */
+  public PortStatistics getStatistics() {
+    return this.statistics;
+  }
+
+
+  private void setBaudRate(final int rate) throws SerialPortException {
+    if (!this.port.setBaudRate(rate)) {
+      throw new PortCommunicationException("Setting parameters was unsuccessful!");
     }
+    this.baudRate = rate;
   }
 
 
   /**
-   * Reads responses line by line from the buffer until {@value #RESPONSE_TERMINALCHAR} comes or
-   * timeout occurs.
+   * Tries to switch the device to higher baud rates with AT BRD until the device confirms one of
+   * them. The agreed rate is stored to the configuration. Uses only direct reads, so it must be
+   * called before the event listener is registered.
+   */
+  private void negotiateBaudRate() throws SerialPortException {
+    final String identification = readIdentification();
+    if (identification == null) {
+      LOG.warn("The device did not respond to AT I, keeping the baud rate {}.", this.baudRate);
+      return;
+    }
+    writeRaw("ATBRT" + BAUD_RATE_TIMEOUT);
+    if (!readRaw(NEGOTIATION_TIMEOUT, ">").contains(RESPONSE_OK)) {
+      LOG.info("The device doesn't support the baud rate change, keeping the baud rate {}.", this.baudRate);
+      return;
+    }
+    for (final int rate : BAUD_RATES) {
+      if (rate > cfg.getMaxBaudRate() || rate <= this.baudRate) {
+        continue;
+      }
+      if (switchBaudRate(rate, identification)) {
+        LOG.info("Switched to the baud rate {}.", rate);
+        this.cfg.setBaudRate(rate);
+        return;
+      }
+    }
+    LOG.info("Keeping the baud rate {}.", this.baudRate);
+  }
+
+
+  /**
+   * The device answers OK with the old rate, then sends the identification with the new rate and
+   * waits for the carriage return. If it doesn't come in time, the device returns to the old rate
+   * and sends the prompt.
+   */
+  private boolean switchBaudRate(final int rate, final String identification) throws SerialPortException {
+    LOG.debug("switchBaudRate(rate={}, identification={})", rate, identification);
+    final int oldRate = this.baudRate;
+    final String divisor = String.format("%02X", Math.round((float) BAUD_RATE_CLOCK / rate));
+    writeRaw("ATBRD" + divisor);
+    final String response = readRaw(NEGOTIATION_TIMEOUT, RESPONSE_OK, "?");
+    if (!response.contains(RESPONSE_OK)) {
+      LOG.debug("AT BRD {} refused: {}", divisor, response);
+      readRaw(NEGOTIATION_TIMEOUT, ">");
+      return false;
+    }
+    setBaudRate(rate);
+    if (readRaw(NEGOTIATION_TIMEOUT, identification).contains(identification)) {
+      writeRaw("");
+      if (readRaw(NEGOTIATION_TIMEOUT, ">").contains(RESPONSE_OK)) {
+        return true;
+      }
+    }
+    LOG.debug("The baud rate {} was not confirmed, stepping down.", rate);
+    setBaudRate(oldRate);
+    readRaw(NEGOTIATION_TIMEOUT, ">");
+    this.port.purgeInput();
+    return false;
+  }
+
+
+  private String readIdentification() throws SerialPortException {
+    // garbage remaining in the device after opening the port may cause the ? response.
+    for (int attempt = 0; attempt < 2; attempt++) {
+      writeRaw("ATI");
+      final String response = readRaw(HANDSHAKE_TIMEOUT, ">");
+      for (final String line : response.split("\\r")) {
+        final String trimmed = line.replace(">", "").trim();
+        if (!trimmed.isEmpty() && !trimmed.contains("?") && !trimmed.startsWith("AT")) {
+          return trimmed;
+        }
+      }
+    }
+    return null;
+  }
+
+
+  private void writeRaw(final String command) throws SerialPortException {
+    LOG.trace("writeRaw(command={})", command);
+    final byte[] bytes = (command + '\r').getBytes(StandardCharsets.US_ASCII);
+    this.statistics.sent(bytes.length);
+    write(bytes);
+  }
+
+
+  /**
+   * Reads the port directly until one of terminators is received or timeout occurs.
    *
-   * @return a response, never null and never empty.
+   * @return received characters, may be incomplete.
+   */
+  private String readRaw(final long timeout, final String... terminators) throws SerialPortException {
+    final StringBuilder response = new StringBuilder();
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    while (deadline - System.nanoTime() > 0L) {
+      for (final String terminator : terminators) {
+        if (response.indexOf(terminator) >= 0) {
+          return response.toString();
+        }
+      }
+      if (this.port.getInputBufferBytesCount() == 0) {
+        sleep(POLLING_INTERVAL);
+        continue;
+      }
+      final byte[] bytes = readChunk();
+      if (bytes != null) {
+        for (final byte b : bytes) {
+          response.append((char) b);
+        }
+      }
+    }
+    LOG.trace("readRaw timed out, received: {}", response);
+    return response.toString();
+  }
+
+
+  /**
+   * Reads responses line by line from the buffer until the prompt ('&gt;') comes or timeout
+   * occurs.
+   *
+   * @param request - the request, used for logging.
+   * @return a response, never null.
    * @throws PortCommunicationException - if there was no response or prompt was missing.
    */
   public String readResponse(final String request) throws PortCommunicationException {
     LOG.debug("readResponse(request={})", request);
+    final String response = readPayload().toString();
+    LOG.debug("Received response: {}", response);
+    return response;
+  }
+
+
+  /**
+   * Reads the response to the last written command without creating any strings. The echo of the
+   * command, the SEARCHING... message and the prompt are removed.
+   *
+   * @return a view of the response payload, never null. The view is valid only until next read.
+   * @throws PortCommunicationException - if there was no response or prompt was missing.
+   */
+  public ResponseView readPayload() throws PortCommunicationException {
+    return readPayload(cfg.getCommandTimeout());
+  }
 
+
+  /**
+   * Same as {@link #readPayload()}, but with a timeout for this response only.
+   *
+   * @param timeout - time in millis.
+   * @return a view of the response payload, never null. The view is valid only until next read.
+   * @throws PortCommunicationTimeoutException - if the prompt did not come in time.
+   * @throws PortCommunicationException - if the port failed.
+   */
+  public ResponseView readPayload(final long timeout) throws PortCommunicationException {
+    final ResponseView response = awaitPrompt(timeout);
+    if (response == null) {
+      this.statistics.timedOut();
+      throw new PortCommunicationTimeoutException(timeout);
+    }
+    this.statistics.responded(response, System.nanoTime() - this.writeTime);
+    return response;
+  }
+
+
+  /**
+   * @param timeout - time in millis.
+   * @return the response or null if the prompt did not come in time.
+   */
+  private ResponseView awaitPrompt(final long timeout) throws PortCommunicationException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
     try {
-      final String response = readAll(request);
-      LOG.debug("Received response: {}", response);
-      if (response == null) {
-        throw new PortCommunicationException("Retrieved no response from the port.");
+      if (this.eventReader == null) {
+        return pollAll(deadline);
       }
-      return response;
+      return this.eventReader.await(deadline);
     } catch (final SerialPortException e) {
       throw new PortCommunicationException(e);
     }
   }
 
 
-  private String readAll(final String request) throws SerialPortException {
-    LOG.trace("readAll(request={})", request);
-    final StringBuilder buffer = new StringBuilder(256);
-    final long start = System.currentTimeMillis();
-    final long timeout = cfg.getCommandTimeout();
+  private ResponseView pollAll(final long deadline) throws SerialPortException {
     while (true) {
-      if (start + timeout < System.currentTimeMillis()) {
-        throw new PortCommunicationException(String.format("Timeout %d ms occured.", timeout));
+      final ResponseView response = this.receiveBuffer.nextResponse();
+      if (response != null) {
+        return response;
+      }
+      if (deadline - System.nanoTime() < 0L) {
+        return null;
       }
       if (this.port.getInputBufferBytesCount() == 0) {
-        Thread.yield();
+        sleep(POLLING_INTERVAL);
         continue;
       }
-      final String string = StringUtils.trimToNull(this.port.readString());
-      LOG.trace("response string={}", string);
-      if (string == null) {
-        sleep(100L);
-        continue;
+      final byte[] bytes = readChunk();
+      if (bytes != null) {
+        this.receiveBuffer.write(bytes, 0, bytes.length);
       }
-      buffer.append(string);
-      if (StringUtils.endsWith(string, RESPONSE_TERMINALCHAR)) {
-        LOG.trace("Response terminated with the character {}. Character deleted.", RESPONSE_TERMINALCHAR);
-        buffer.setLength(buffer.length() - 1);
-        if (buffer.indexOf(request) == 0) {
-          buffer.replace(0, request.length(), "");
-        }
-        return buffer.toString().trim();
+    }
+  }
+
+
+  /**
+   * Reads bytes available in the port, counts them and emits the {@link SerialReadEvent}.
+   */
+  private byte[] readChunk() throws SerialPortException {
+    final SerialReadEvent event = new SerialReadEvent();
+    event.begin();
+    final byte[] bytes = this.port.readBytes();
+    event.commit(this.port.getName(), bytes);
+    if (bytes != null) {
+      this.statistics.received(bytes.length);
+      if (this.wireTap != null) {
+        this.wireTap.read(bytes);
       }
     }
+    return bytes;
+  }
+
+
+  private void write(final byte[] bytes) throws SerialPortException {
+    if (this.wireTap != null) {
+      this.wireTap.written(bytes);
+    }
+    this.port.writeBytes(bytes);
   }
 
 
   private void sleep(final long timeInMillis) {
     try {
-      Thread.sleep(100L);
+      Thread.sleep(timeInMillis);
     } catch (final InterruptedException e) {
       LOG.warn("Interrupted.");
+      Thread.currentThread().interrupt();
     }
   }
 
 
+  /**
+   * Stops the command still processed by the device after a timeout and drops the rest of its
+   * response. A response which comes just after the timeout is only dropped. Otherwise a space
+   * interrupts the ELM327, which then responds STOPPED; if the command finished meanwhile, the
+   * space is ignored and doesn't repeat the command as the carriage return would.
+   *
+   * @param timeout - time in millis for the prompt after the interruption, usually the timeout of
+   *          the interrupted command.
+   * @throws PortCommunicationTimeoutException - if the device did not send the prompt.
+   * @throws PortCommunicationException - if the port failed.
+   */
+  public void interrupt(final long timeout) throws PortCommunicationException {
+    LOG.debug("interrupt(timeout={})", timeout);
+    ResponseView dropped = awaitPrompt(LATE_PROMPT_TIMEOUT);
+    if (dropped == null) {
+      try {
+        write(INTERRUPT);
+      } catch (final SerialPortException e) {
+        throw new PortCommunicationException(e);
+      }
+      this.statistics.sent(INTERRUPT.length);
+      dropped = awaitPrompt(timeout);
+      if (dropped == null) {
+        this.statistics.timedOut();
+        throw new PortCommunicationTimeoutException(timeout);
+      }
+    }
+    LOG.trace("Dropped response: {}", dropped);
+  }
+
+
   /**
    * Writes command and arguments to the port.
    *
@@ -125,12 +405,30 @@ public class PortCommunication implements Closeable {
    * @throws PortCommunicationException
    */
   public void writeln(final String... command) throws PortCommunicationException {
-    LOG.debug("writeln(command={})", Arrays.toString(command));
-    try {
-      for (final String commandPart : command) {
-        this.port.writeString(commandPart);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("writeln(command={})", Arrays.toString(command));
+    }
+    if (this.eventReader == null) {
+      this.receiveBuffer.prepare(command);
+    } else {
+      this.eventReader.prepare(command);
+    }
+    int length = LINE_END.length;
+    for (final String commandPart : command) {
+      length += commandPart.length();
+    }
+    final byte[] bytes = new byte[length];
+    int index = 0;
+    for (final String commandPart : command) {
+      for (int i = 0; i < commandPart.length(); i++) {
+        bytes[index++] = (byte) commandPart.charAt(i);
       }
-      this.port.writeString("\r\n");
+    }
+    System.arraycopy(LINE_END, 0, bytes, index, LINE_END.length);
+    this.statistics.sent(bytes.length);
+    this.writeTime = System.nanoTime();
+    try {
+      write(bytes);
     } catch (final SerialPortException e) {
       throw new PortCommunicationException(e);
     }
@@ -209,31 +507,136 @@ public class PortCommunication implements Closeable {
 
 
   /**
-   * Sends AT Z command, resets the communication.
+   * Sends ATS signal and sets spaces between bytes in responses on/off
+   *
+   * @param on
+   * @throws PortCommunicationException
+   */
+  public void setSpaces(final boolean on) throws PortCommunicationException {
+    LOG.debug("setSpaces(on={})", on);
+    final String onTranslated = translate(on);
+    writeln("ATS", onTranslated);
+    checkOkResponse("ATS".concat(onTranslated));
+  }
+
+
+  /**
+   * Sends ATH signal and sets headers in responses on/off
+   *
+   * @param on
+   * @throws PortCommunicationException
+   */
+  public void setHeaders(final boolean on) throws PortCommunicationException {
+    LOG.debug("setHeaders(on={})", on);
+    final String onTranslated = translate(on);
+    writeln("ATH", onTranslated);
+    checkOkResponse("ATH".concat(onTranslated));
+  }
+
+
+  /**
+   * Sends AT AT signal and sets the adaptive timing of responses.
+   *
+   * @param mode - 0 is off, 1 is the default, 2 is aggressive.
+   * @throws PortCommunicationException
+   */
+  public void setAdaptiveTiming(final int mode) throws PortCommunicationException {
+    LOG.debug("setAdaptiveTiming(mode={})", mode);
+    if (mode < 0 || mode > 2) {
+      throw new IllegalArgumentException("Invalid adaptive timing mode: " + mode);
+    }
+    final String modeTranslated = Integer.toString(mode);
+    writeln("ATAT", modeTranslated);
+    checkOkResponse("ATAT".concat(modeTranslated));
+  }
+
+
+  /**
+   * Sends ATSP signal, sets the OBD protocol and saves it as the default.
+   *
+   * @param protocol - a hex code of the protocol, 0 means automatic detection.
+   * @throws PortCommunicationException
+   */
+  public void setProtocol(final String protocol) throws PortCommunicationException {
+    LOG.debug("setProtocol(protocol={})", protocol);
+    writeln("ATSP", protocol);
+    checkOkResponse("ATSP".concat(protocol));
+  }
+
+
+  /**
+   * Sends AT Z command, resets the communication. The device returns to the baud rate used to open
+   * the port, so the port follows it.
    *
+   * @return the device identification.
    * @throws PortCommunicationException
    */
-  public void reset() throws PortCommunicationException {
+  public String reset() throws PortCommunicationException {
     LOG.debug("reset()");
-    final String response = at("Z");
-    // with echo on the first line will be ATZ (sent command)
+    if (this.baudRate == this.resetBaudRate) {
+      return checkIdentification(at("Z"));
+    }
+    writeln("AT", "Z");
+    try {
+      setBaudRate(this.resetBaudRate);
+    } catch (final SerialPortException e) {
+      throw new PortCommunicationException(e);
+    }
+    this.cfg.setBaudRate(this.resetBaudRate);
+    // the echo was sent with the old rate, only the last line is valid.
+    final String response = checkIdentification(readResponse("ATZ"));
+    return response.substring(response.lastIndexOf('\r') + 1);
+  }
+
+
+  /**
+   * Sends AT WS command, a warm start. Resets settings as the {@link #reset()}, but it is much
+   * faster and keeps the baud rate.
+   *
+   * @return the device identification.
+   * @throws PortCommunicationException
+   */
+  public String warmStart() throws PortCommunicationException {
+    LOG.debug("warmStart()");
+    return checkIdentification(at("WS"));
+  }
+
+
+  private String checkIdentification(final String response) throws PortCommunicationException {
+    // with echo on the first line will be the sent command, removed by the buffer.
     // another line will be a device type identification.
-    if (response == null) {
+    // garbage remaining in the device after opening the port causes the ? response.
+    if (response == null || response.isEmpty() || response.contains("?")) {
       throw new PortCommunicationException("Command unsuccessful! Response: " + response);
     }
+    return response;
   }
 
 
   /**
-   * Closes the port.
+   * Closes the port. If the baud rate was changed, the device is reset and the configuration gets
+   * the original baud rate back, so the next session can open the port with the same baud rate
+   * again.
    */
   @Override
   public void close() {
     try {
-      this.port.closePort();
+      if (this.baudRate != this.resetBaudRate) {
+        write("ATZ\r".getBytes(StandardCharsets.US_ASCII));
+        this.cfg.setBaudRate(this.resetBaudRate);
+      }
+      this.port.close();
     } catch (final SerialPortException e) {
       throw new IllegalStateException("Cannot close the port.", e);
+    } finally {
+      closeWireTap();
     }
   }
 
+
+  private void closeWireTap() {
+    if (this.wireTap != null) {
+      this.wireTap.close();
+    }
+  }
 }
@@ -0,0 +1,33 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+/**
+ * The device did not finish the response in time.
+ *
+ * @author David Matějček
+ */
+public class PortCommunicationTimeoutException extends PortCommunicationException {
+
+  private static final long serialVersionUID = -4170553870452306517L;
+
+  private final long timeout;
+
+
+  /**
+   * @param timeout - the timeout in millis.
+   */
+  public PortCommunicationTimeoutException(final long timeout) {
+    super(String.format("Timeout %d ms occured.", timeout));
+    this.timeout = timeout;
+  }
+
+
+  /**
+   * @return the timeout in millis.
+   */
+  public long getTimeout() {
+    return timeout;
+  }
+}
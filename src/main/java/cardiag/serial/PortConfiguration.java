@@ -3,6 +3,8 @@
  */
 package cardiag.serial;
 
+import java.io.File;
+
 /**
  * @author David Matějček
  */
@@ -10,6 +12,14 @@ public class PortConfiguration {
 
   private String portName;
   private Long commandTimeout;
+  private ReadMode readMode = ReadMode.EVENTS;
+  private File cacheDirectory;
+  private boolean spaces = true;
+  private boolean headers;
+  private int baudRate = PortCommunication.DEFAULT_BAUD_RATE;
+  private int maxBaudRate;
+  private long metricsInterval = 60000L;
+  private File captureFile;
 
 
   public String getPortName() {
@@ -34,4 +44,118 @@ public class PortConfiguration {
     this.commandTimeout = commandTimeout;
   }
 
+
+  public ReadMode getReadMode() {
+    return readMode;
+  }
+
+
+  /**
+   * @param readMode - the way of waiting for responses, must not be null. Default is
+   *          {@link ReadMode#EVENTS}.
+   */
+  public void setReadMode(final ReadMode readMode) {
+    this.readMode = readMode;
+  }
+
+
+  public File getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+
+  /**
+   * @param cacheDirectory - a directory for data learned about adapters and vehicles, which can
+   *          speed up next sessions. May be null, then nothing is persisted.
+   */
+  public void setCacheDirectory(final File cacheDirectory) {
+    this.cacheDirectory = cacheDirectory;
+  }
+
+
+  public boolean isSpaces() {
+    return spaces;
+  }
+
+
+  /**
+   * @param spaces - false to send AT S0 - responses without spaces are shorter, so they are
+   *          transferred faster. Default is true.
+   */
+  public void setSpaces(final boolean spaces) {
+    this.spaces = spaces;
+  }
+
+
+  public boolean isHeaders() {
+    return headers;
+  }
+
+
+  /**
+   * @param headers - true to send AT H1 - responses will contain headers identifying the
+   *          responding unit. Default is false.
+   */
+  public void setHeaders(final boolean headers) {
+    this.headers = headers;
+  }
+
+
+  public int getBaudRate() {
+    return baudRate;
+  }
+
+
+  /**
+   * @param baudRate - the baud rate used to open the port, default is 38400 as set in the
+   *          ELM327. After the port was opened, it contains the rate agreed with the device.
+   */
+  public void setBaudRate(final int baudRate) {
+    this.baudRate = baudRate;
+  }
+
+
+  public int getMaxBaudRate() {
+    return maxBaudRate;
+  }
+
+
+  /**
+   * @param maxBaudRate - the highest baud rate tried with AT BRD after the port was opened.
+   *          The serial link is often slower than the vehicle bus. Default is 0, values lower or
+   *          equal to the {@link #getBaudRate()} disable the negotiation. Clones which don't
+   *          answer AT I delay the opening by the handshake timeout.
+   */
+  public void setMaxBaudRate(final int maxBaudRate) {
+    this.maxBaudRate = maxBaudRate;
+  }
+
+
+  public long getMetricsInterval() {
+    return metricsInterval;
+  }
+
+
+  /**
+   * @param metricsInterval - period of the summary log line with metrics of the adapter in millis.
+   *          Default is one minute, 0 disables it.
+   */
+  public void setMetricsInterval(final long metricsInterval) {
+    this.metricsInterval = metricsInterval;
+  }
+
+
+  public File getCaptureFile() {
+    return captureFile;
+  }
+
+
+  /**
+   * @param captureFile - a file for the capture of all bytes transferred through the port, see
+   *          {@link WireTap}. Default is null, then nothing is captured.
+   */
+  public void setCaptureFile(final File captureFile) {
+    this.captureFile = captureFile;
+  }
+
 }
@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jssc.SerialPortException;
+
+/**
+ * Collects bytes announced by the transport to the {@link ReceiveBuffer} and wakes up
+ * the waiting thread as soon as the prompt arrives.
+ *
+ * @author David Matějček
+ */
+class PortEventReader implements SerialTransport.Listener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PortEventReader.class);
+
+  private final SerialTransport port;
+  private final ReceiveBuffer buffer;
+  private final PortStatistics statistics;
+  private final WireTap wireTap;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition terminated = lock.newCondition();
+  private SerialPortException failure;
+
+
+  /**
+   * @param port - a port to read from.
+   * @param buffer - a buffer for received data, used only under the lock of this reader.
+   * @param statistics - counts received bytes.
+   * @param wireTap - captures received bytes, may be null.
+   */
+  PortEventReader(final SerialTransport port, final ReceiveBuffer buffer, final PortStatistics statistics,
+      final WireTap wireTap) {
+    this.port = port;
+    this.buffer = buffer;
+    this.statistics = statistics;
+    this.wireTap = wireTap;
+  }
+
+
+  @Override
+  public void dataAvailable(final int count) {
+    byte[] bytes = null;
+    SerialPortException exception = null;
+    final SerialReadEvent event = new SerialReadEvent();
+    event.begin();
+    try {
+      bytes = this.port.readBytes(count);
+    } catch (final SerialPortException e) {
+      exception = e;
+    }
+    event.commit(this.port.getName(), bytes);
+    if (this.wireTap != null) {
+      this.wireTap.read(bytes);
+    }
+    lock.lock();
+    try {
+      if (exception != null) {
+        this.failure = exception;
+        this.terminated.signalAll();
+        return;
+      }
+      if (bytes == null) {
+        return;
+      }
+      this.statistics.received(bytes.length);
+      if (this.buffer.write(bytes, 0, bytes.length)) {
+        this.terminated.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Discards all received data and prepares the buffer for the response to the request.
+   *
+   * @param request - parts of the request, see {@link ReceiveBuffer#prepare(String...)}
+   */
+  void prepare(final String... request) {
+    lock.lock();
+    try {
+      this.buffer.prepare(request);
+      this.failure = null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  /**
+   * Waits until the prompt is received and returns the response.
+   *
+   * @param deadline - a {@link System#nanoTime()} value when to stop waiting.
+   * @return the response or null if the deadline passed before the prompt arrived.
+   * @throws SerialPortException - if the port failed while reading.
+   */
+  ResponseView await(final long deadline) throws SerialPortException {
+    lock.lock();
+    try {
+      while (!this.buffer.isComplete() && this.failure == null) {
+        final long remaining = deadline - System.nanoTime();
+        if (remaining <= 0L) {
+          LOG.trace("Deadline passed, received {} bytes so far.", this.buffer.available());
+          return null;
+        }
+        try {
+          this.terminated.awaitNanos(remaining);
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new PortCommunicationException("Interrupted while waiting for the response.");
+        }
+      }
+      if (this.failure != null) {
+        final SerialPortException e = this.failure;
+        this.failure = null;
+        throw e;
+      }
+      return this.buffer.nextResponse();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the communication with the device and the histogram of round trips, from writing
+ * the command to receiving the prompt. Updates are lock-free and don't allocate.
+ *
+ * @author David Matějček
+ */
+public class PortStatistics implements PortStatisticsMBean {
+
+  private final AtomicLong bytesIn = new AtomicLong();
+  private final AtomicLong bytesOut = new AtomicLong();
+  private final AtomicLong commands = new AtomicLong();
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong searching = new AtomicLong();
+  private final LatencyHistogram roundTrips = new LatencyHistogram();
+
+
+  /**
+   * @param count - count of bytes received from the device.
+   */
+  void received(final int count) {
+    this.bytesIn.addAndGet(count);
+  }
+
+
+  /**
+   * @param count - count of bytes of the command sent to the device.
+   */
+  void sent(final int count) {
+    this.commands.incrementAndGet();
+    this.bytesOut.addAndGet(count);
+  }
+
+
+  /**
+   * @param response - the received response.
+   * @param nanos - time since the command was sent.
+   */
+  void responded(final ResponseView response, final long nanos) {
+    if (response.isSearching()) {
+      this.searching.incrementAndGet();
+    }
+    this.roundTrips.record(nanos);
+  }
+
+
+  /**
+   * Counts a response which did not come in time.
+   */
+  void timedOut() {
+    this.timeouts.incrementAndGet();
+  }
+
+
+  @Override
+  public long getBytesIn() {
+    return this.bytesIn.get();
+  }
+
+
+  @Override
+  public long getBytesOut() {
+    return this.bytesOut.get();
+  }
+
+
+  @Override
+  public long getCommands() {
+    return this.commands.get();
+  }
+
+
+  @Override
+  public long getTimeouts() {
+    return this.timeouts.get();
+  }
+
+
+  @Override
+  public long getSearching() {
+    return this.searching.get();
+  }
+
+
+  /**
+   * @return the histogram of times from the command to the prompt.
+   */
+  public LatencyHistogram getRoundTrips() {
+    return this.roundTrips;
+  }
+
+
+  @Override
+  public long getRoundTripP50() {
+    return this.roundTrips.getPercentile(0.5);
+  }
+
+
+  @Override
+  public long getRoundTripP99() {
+    return this.roundTrips.getPercentile(0.99);
+  }
+
+
+  @Override
+  public void clear() {
+    this.bytesIn.set(0);
+    this.bytesOut.set(0);
+    this.commands.set(0);
+    this.timeouts.set(0);
+    this.searching.set(0);
+    this.roundTrips.clear();
+  }
+
+
+  @Override
+  public String toString() {
+    return "PortStatistics[commands=" + getCommands() + ", bytesIn=" + getBytesIn() + ", bytesOut="
+        + getBytesOut() + ", timeouts=" + getTimeouts() + ", searching=" + getSearching() + ", roundTrip p50="
+        + getRoundTripP50() + " us, p99=" + getRoundTripP99() + " us]";
+  }
+}
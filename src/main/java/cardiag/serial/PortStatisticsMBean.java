@@ -0,0 +1,59 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+/**
+ * JMX view of the {@link PortStatistics}.
+ *
+ * @author David Matějček
+ */
+public interface PortStatisticsMBean {
+
+  /**
+   * @return count of bytes received from the device.
+   */
+  long getBytesIn();
+
+
+  /**
+   * @return count of bytes sent to the device.
+   */
+  long getBytesOut();
+
+
+  /**
+   * @return count of commands sent to the device.
+   */
+  long getCommands();
+
+
+  /**
+   * @return count of responses which did not come in time.
+   */
+  long getTimeouts();
+
+
+  /**
+   * @return count of responses starting with the SEARCHING... message.
+   */
+  long getSearching();
+
+
+  /**
+   * @return the median of times from the command to the prompt in microseconds.
+   */
+  long getRoundTripP50();
+
+
+  /**
+   * @return the 99th percentile of times from the command to the prompt in microseconds.
+   */
+  long getRoundTripP99();
+
+
+  /**
+   * Forgets all values.
+   */
+  void clear();
+}
@@ -0,0 +1,31 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+/**
+ * The way how {@link PortCommunication} waits for responses of the device.
+ *
+ * @author David Matějček
+ */
+public enum ReadMode {
+
+  /**
+   * Periodically checks the input buffer of the port. Simple, but adds a latency to each response.
+   */
+  POLLING,
+  /**
+   * Waits for RXCHAR events of the port and wakes up as soon as the prompt arrives.
+   */
+  EVENTS;
+
+
+  public static ReadMode parse(final String str) {
+    for (ReadMode mode : ReadMode.values()) {
+      if (mode.name().equalsIgnoreCase(str)) {
+        return mode;
+      }
+    }
+    throw new IllegalArgumentException("Invalid read mode: " + str);
+  }
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Byte ring buffer for data received from the ELM327 device. It scans incoming bytes for the prompt
+ * and cuts them to responses without creating any objects.
+ * <p>
+ * The buffer is not thread safe.
+ *
+ * @author David Matějček
+ */
+public class ReceiveBuffer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReceiveBuffer.class);
+
+  /** The prompt character, the device waits for a next command. */
+  public static final byte PROMPT = '>';
+  private static final byte CR = '\r';
+  private static final byte LF = '\n';
+  private static final String SEARCHING = "SEARCHING...";
+
+  private final byte[] ring;
+  private final int mask;
+  private final byte[] request;
+  private final ResponseView view;
+  private long head;
+  private long tail;
+  private int prompts;
+  private int requestLength;
+  /** Bytes discarded since the last complete response */
+  private long overflow;
+  private long dropped;
+
+
+  /**
+   * @param capacity - minimal capacity of the buffer, will be rounded up to a power of two.
+   */
+  public ReceiveBuffer(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Invalid capacity: " + capacity);
+    }
+    final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+    this.ring = new byte[size];
+    this.mask = size - 1;
+    this.request = new byte[size];
+    this.view = new ResponseView(size);
+  }
+
+
+  /**
+   * Discards all unread data and sets the request, which's echo will be removed from the response.
+   *
+   * @param requestParts - parts of the request, concatenated without separators.
+   */
+  public void prepare(final String... requestParts) {
+    clear();
+    int length = 0;
+    for (final String part : requestParts) {
+      for (int i = 0; i < part.length() && length < this.request.length; i++) {
+        this.request[length++] = (byte) part.charAt(i);
+      }
+    }
+    this.requestLength = length;
+  }
+
+
+  /**
+   * Discards all unread data.
+   */
+  public void clear() {
+    this.tail = this.head;
+    this.prompts = 0;
+    reportOverflow();
+  }
+
+
+  /**
+   * @return count of bytes discarded because the buffer was full.
+   */
+  public long getDropped() {
+    return this.dropped;
+  }
+
+
+  private void reportOverflow() {
+    if (this.overflow > 0) {
+      LOG.warn("Receive buffer overflow, {} oldest bytes were discarded.", this.overflow);
+      this.overflow = 0;
+    }
+  }
+
+
+  /**
+   * Appends received bytes to the buffer. If the buffer is full, the oldest bytes are overwritten
+   * and counted.
+   *
+   * @param data
+   * @param offset
+   * @param length
+   * @return true if there is a complete response in the buffer.
+   */
+  public boolean write(final byte[] data, final int offset, final int length) {
+    for (int i = offset; i < offset + length; i++) {
+      write(data[i]);
+    }
+    return this.prompts > 0;
+  }
+
+
+  /**
+   * Appends one received byte to the buffer. If the buffer is full, the oldest byte is overwritten.
+   *
+   * @param b
+   * @return true if there is a complete response in the buffer.
+   */
+  public boolean write(final byte b) {
+    if (this.head - this.tail == this.ring.length) {
+      final byte lost = this.ring[(int) (this.tail++ & this.mask)];
+      if (lost == PROMPT) {
+        this.prompts--;
+      }
+      // logged once when the response is complete
+      this.overflow++;
+      this.dropped++;
+    }
+    this.ring[(int) (this.head++ & this.mask)] = b;
+    if (b == PROMPT) {
+      this.prompts++;
+    }
+    return this.prompts > 0;
+  }
+
+
+  /**
+   * @return count of unread bytes.
+   */
+  public int available() {
+    return (int) (this.head - this.tail);
+  }
+
+
+  /**
+   * @return true if there is a complete response in the buffer.
+   */
+  public boolean isComplete() {
+    return this.prompts > 0;
+  }
+
+
+  /**
+   * Reads bytes up to the next prompt and copies the payload to the view.
+   *
+   * @return the view of the response or null if the response is not complete yet. The view is
+   *         reused by next calls.
+   */
+  public ResponseView nextResponse() {
+    if (this.prompts == 0) {
+      return null;
+    }
+    this.view.reset();
+    int lineStart = 0;
+    while (true) {
+      final byte b = this.ring[(int) (this.tail++ & this.mask)];
+      if (b == PROMPT) {
+        this.prompts--;
+        finishLine(lineStart);
+        if (this.view.length() > 0) {
+          // the last line separator
+          this.view.setLength(this.view.length() - 1);
+        }
+        reportOverflow();
+        return this.view;
+      }
+      if (b == CR || b == LF) {
+        finishLine(lineStart);
+        lineStart = this.view.length();
+        continue;
+      }
+      this.view.append(b);
+    }
+  }
+
+
+  private void finishLine(final int lineStart) {
+    final byte[] bytes = this.view.array();
+    int start = lineStart;
+    int end = this.view.length();
+    while (start < end && isWhitespace(bytes[start])) {
+      start++;
+    }
+    while (end > start && isWhitespace(bytes[end - 1])) {
+      end--;
+    }
+    if (start == end || isEcho(bytes, start, end)) {
+      this.view.setLength(lineStart);
+      return;
+    }
+    if (isSearching(bytes, start, end)) {
+      this.view.setSearching();
+      this.view.setLength(lineStart);
+      return;
+    }
+    System.arraycopy(bytes, start, bytes, lineStart, end - start);
+    this.view.setLength(lineStart + end - start);
+    this.view.append(CR);
+    this.view.lineFinished();
+  }
+
+
+  private boolean isEcho(final byte[] bytes, final int start, final int end) {
+    if (end - start != this.requestLength) {
+      return false;
+    }
+    for (int i = 0; i < this.requestLength; i++) {
+      if (bytes[start + i] != this.request[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static boolean isSearching(final byte[] bytes, final int start, final int end) {
+    if (end - start != SEARCHING.length()) {
+      return false;
+    }
+    for (int i = 0; i < SEARCHING.length(); i++) {
+      if (Character.toUpperCase(bytes[start + i]) != SEARCHING.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private static boolean isWhitespace(final byte b) {
+    // some clones send zero bytes after reset.
+    return b >= 0 && b <= ' ';
+  }
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+/**
+ * Reusable view of the payload of one response received from the device. Lines are separated by
+ * the CR character, the prompt, the command echo, the SEARCHING... message and surrounding
+ * whitespaces are removed.
+ * <p>
+ * The content is valid only until the next response is read from the same port.
+ *
+ * @author David Matějček
+ */
+public final class ResponseView {
+
+  private static final byte[] NO_BYTES = new byte[0];
+
+  private final byte[] bytes;
+  private int length;
+  private int lineCount;
+  private boolean searching;
+
+
+  /**
+   * @param capacity - maximal length of the payload.
+   */
+  ResponseView(final int capacity) {
+    this.bytes = capacity == 0 ? NO_BYTES : new byte[capacity];
+  }
+
+
+  /**
+   * @return count of bytes in the payload.
+   */
+  public int length() {
+    return this.length;
+  }
+
+
+  /**
+   * @param index - index of the byte, 0 - {@link #length()} - 1
+   * @return an ASCII character on the index.
+   */
+  public byte byteAt(final int index) {
+    if (index < 0 || index >= this.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", length: " + this.length);
+    }
+    return this.bytes[index];
+  }
+
+
+  /**
+   * @return count of non-empty lines in the payload.
+   */
+  public int getLineCount() {
+    return this.lineCount;
+  }
+
+
+  /**
+   * @return true if the device sent the SEARCHING... message before the payload.
+   */
+  public boolean isSearching() {
+    return this.searching;
+  }
+
+
+  /**
+   * @return true if the payload is empty.
+   */
+  public boolean isEmpty() {
+    return this.length == 0;
+  }
+
+
+  /**
+   * @param text - ASCII text
+   * @return true if the payload is equal to the text.
+   */
+  public boolean contentEquals(final CharSequence text) {
+    return this.length == text.length() && regionMatches(0, text);
+  }
+
+
+  /**
+   * @param text - ASCII text
+   * @return true if the payload starts with the text.
+   */
+  public boolean startsWith(final CharSequence text) {
+    return this.length >= text.length() && regionMatches(0, text);
+  }
+
+
+  private boolean regionMatches(final int offset, final CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (this.bytes[offset + i] != text.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /**
+   * Creates a new string from the payload. Don't use it on frequently called code.
+   */
+  @Override
+  public String toString() {
+    final char[] chars = new char[this.length];
+    for (int i = 0; i < this.length; i++) {
+      chars[i] = (char) (this.bytes[i] & 0xFF);
+    }
+    return new String(chars);
+  }
+
+
+  void reset() {
+    this.length = 0;
+    this.lineCount = 0;
+    this.searching = false;
+  }
+
+
+  byte[] array() {
+    return this.bytes;
+  }
+
+
+  void setLength(final int length) {
+    this.length = length;
+  }
+
+
+  void append(final byte b) {
+    if (this.length < this.bytes.length) {
+      this.bytes[this.length++] = b;
+    }
+  }
+
+
+  void lineFinished() {
+    this.lineCount++;
+  }
+
+
+  void setSearching() {
+    this.searching = true;
+  }
+}
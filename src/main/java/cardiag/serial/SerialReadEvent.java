@@ -0,0 +1,51 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event of one chunk of bytes read from the port. The duration of the event
+ * is the duration of the read. When the recording is off, the event is not committed and the JIT
+ * removes its allocation.
+ *
+ * @author David Matějček
+ */
+@Name(SerialReadEvent.NAME)
+@Label("Serial Read")
+@Category({"cardiag", "Serial"})
+@Description("Chunk of bytes read from the serial port")
+public final class SerialReadEvent extends Event {
+
+  /** Name of the event type */
+  public static final String NAME = "cardiag.SerialRead";
+
+  @Label("Port")
+  String port;
+
+  @Label("Bytes")
+  @DataAmount
+  int bytes;
+
+
+  /**
+   * Ends the event and commits it if the recording is on.
+   *
+   * @param portName - name of the port.
+   * @param data - read data, may be null.
+   */
+  void commit(final String portName, final byte[] data) {
+    end();
+    if (shouldCommit()) {
+      this.port = portName;
+      this.bytes = data == null ? 0 : data.length;
+      commit();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import jssc.SerialPortException;
+
+/**
+ * Byte channel to the device used by the {@link PortCommunication}. Implemented by the serial
+ * port and by the simulator of the ELM327.
+ *
+ * @author David Matějček
+ */
+public interface SerialTransport {
+
+  /**
+   * Receives notifications about received bytes.
+   */
+  interface Listener {
+
+    /**
+     * Called by a thread of the transport.
+     *
+     * @param count - count of bytes ready to read, see {@link SerialTransport#readBytes(int)}.
+     */
+    void dataAvailable(int count);
+  }
+
+
+  /**
+   * @return name of the port.
+   */
+  String getName();
+
+
+  /**
+   * Opens the transport.
+   *
+   * @return false if the transport cannot be opened.
+   * @throws SerialPortException
+   */
+  boolean open() throws SerialPortException;
+
+
+  /**
+   * Sets the baud rate, 8 data bits, 1 stop bit and no parity.
+   *
+   * @param baudRate
+   * @return false if the rate cannot be set.
+   * @throws SerialPortException
+   */
+  boolean setBaudRate(int baudRate) throws SerialPortException;
+
+
+  /**
+   * @param bytes - bytes to send to the device.
+   * @throws SerialPortException
+   */
+  void writeBytes(byte[] bytes) throws SerialPortException;
+
+
+  /**
+   * @return count of received bytes ready to read.
+   * @throws SerialPortException
+   */
+  int getInputBufferBytesCount() throws SerialPortException;
+
+
+  /**
+   * @return all received bytes or null if there are none.
+   * @throws SerialPortException
+   */
+  byte[] readBytes() throws SerialPortException;
+
+
+  /**
+   * @param count - count of bytes to read, must not be higher than the count of available bytes.
+   * @return received bytes.
+   * @throws SerialPortException
+   */
+  byte[] readBytes(int count) throws SerialPortException;
+
+
+  /**
+   * Discards all received bytes.
+   *
+   * @throws SerialPortException
+   */
+  void purgeInput() throws SerialPortException;
+
+
+  /**
+   * Registers the listener notified from a thread of the transport, only one is supported.
+   *
+   * @param listener
+   * @throws SerialPortException
+   */
+  void setListener(Listener listener) throws SerialPortException;
+
+
+  /**
+   * Closes the transport.
+   *
+   * @throws SerialPortException
+   */
+  void close() throws SerialPortException;
+}
@@ -0,0 +1,224 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Raw serial traffic captured by the {@link WireCaptureWriter}. The file has a fixed size and
+ * consists of the header and of blocks used as a ring, the oldest block is overwritten when all
+ * blocks are full.
+ * <p>
+ * The header contains the magic <code>CDWT</code>, the version, the size and the count of blocks,
+ * the start time in millis since epoch and the {@link System#nanoTime()} of the start. Each block
+ * starts with its sequence number (0 for an unused block) and the nano time of the block, then
+ * records follow: the direction, the time since the previous record in nanos as unsigned varint,
+ * the length as unsigned varint and the bytes. The direction 0 marks the end of the block.
+ *
+ * @author David Matějček
+ */
+public final class WireCapture {
+
+  static final byte[] MAGIC = {'C', 'D', 'W', 'T'};
+  static final int VERSION = 1;
+  /** Length of the header of the file */
+  static final int HEADER_LENGTH = 32;
+  /** Length of the header of the block */
+  static final int BLOCK_HEADER_LENGTH = 2 * Long.BYTES;
+  /** Direction of bytes written to the device */
+  public static final int WRITE = 1;
+  /** Direction of bytes read from the device */
+  public static final int READ = 2;
+
+  private final long startTime;
+  private final List<Record> records;
+
+
+  private WireCapture(final long startTime, final List<Record> records) {
+    this.startTime = startTime;
+    this.records = Collections.unmodifiableList(records);
+  }
+
+
+  /**
+   * @return start of the capture in millis since epoch.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+
+  /**
+   * @return records from the oldest one.
+   */
+  public List<Record> getRecords() {
+    return records;
+  }
+
+
+  /**
+   * Reads all records of the capture file. Incomplete records at the end of blocks are ignored.
+   *
+   * @param file
+   * @return the capture
+   * @throws IOException - the file is not a capture or it is unreadable.
+   */
+  public static WireCapture read(final File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      readFully(channel, header, 0L);
+      final byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      if (!Arrays.equals(MAGIC, magic) || (header.get() & 0xFF) != VERSION) {
+        throw new IOException("Not a capture: " + file);
+      }
+      final int blockSize = header.getInt();
+      final int blockCount = header.getInt();
+      final long startTime = header.getLong();
+      if (blockSize <= BLOCK_HEADER_LENGTH || blockCount < 1) {
+        throw new IOException("Invalid blocks of the capture: " + file);
+      }
+      final List<ByteBuffer> blocks = new ArrayList<>();
+      for (int i = 0; i < blockCount; i++) {
+        final long position = HEADER_LENGTH + (long) i * blockSize;
+        if (position + BLOCK_HEADER_LENGTH > channel.size()) {
+          break;
+        }
+        final ByteBuffer block = ByteBuffer.allocate((int) Math.min(blockSize, channel.size() - position));
+        readFully(channel, block, position);
+        if (block.getLong(0) != 0L) {
+          blocks.add(block);
+        }
+      }
+      blocks.sort((block1, block2) -> Long.compare(block1.getLong(0), block2.getLong(0)));
+      final List<Record> records = new ArrayList<>();
+      for (final ByteBuffer block : blocks) {
+        readBlock(block, records);
+      }
+      return new WireCapture(startTime, records);
+    }
+  }
+
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of the capture.");
+      }
+    }
+    buffer.flip();
+  }
+
+
+  private static void readBlock(final ByteBuffer block, final List<Record> records) {
+    block.position(Long.BYTES);
+    long time = block.getLong();
+    while (block.hasRemaining()) {
+      final int direction = block.get() & 0xFF;
+      if (direction != WRITE && direction != READ) {
+        return;
+      }
+      final long delta = readVarint(block);
+      final long length = readVarint(block);
+      if (delta < 0 || length < 0 || length > block.remaining()) {
+        return;
+      }
+      time += delta;
+      final byte[] bytes = new byte[(int) length];
+      block.get(bytes);
+      records.add(new Record(direction, time, bytes));
+    }
+  }
+
+
+  /**
+   * @return the value or -1 if the varint is incomplete.
+   */
+  private static long readVarint(final ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < Long.SIZE && buffer.hasRemaining(); shift += 7) {
+      final int b = buffer.get() & 0xFF;
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    return -1L;
+  }
+
+
+  static void putVarint(final ByteBuffer buffer, final long value) {
+    long rest = value;
+    while ((rest & ~0x7FL) != 0) {
+      buffer.put((byte) ((rest & 0x7F) | 0x80));
+      rest >>>= 7;
+    }
+    buffer.put((byte) rest);
+  }
+
+
+  @Override
+  public String toString() {
+    return "WireCapture[startTime=" + this.startTime + ", records=" + this.records.size() + "]";
+  }
+
+
+  /**
+   * Bytes written to or read from the device.
+   */
+  public static final class Record {
+
+    private final int direction;
+    private final long nanoTime;
+    private final byte[] bytes;
+
+
+    Record(final int direction, final long nanoTime, final byte[] bytes) {
+      this.direction = direction;
+      this.nanoTime = nanoTime;
+      this.bytes = bytes;
+    }
+
+
+    /**
+     * @return {@link WireCapture#WRITE} or {@link WireCapture#READ}
+     */
+    public int getDirection() {
+      return direction;
+    }
+
+
+    /**
+     * @return the {@link System#nanoTime()} of the record in the capturing JVM.
+     */
+    public long getNanoTime() {
+      return nanoTime;
+    }
+
+
+    /**
+     * @return the bytes, must not be modified.
+     */
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+
+    @Override
+    public String toString() {
+      return (this.direction == WRITE ? "W " : "R ") + this.nanoTime + " '"
+          + new String(this.bytes, StandardCharsets.US_ASCII) + "'";
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the {@link WireCapture} file. The current block is kept in the memory and written to its
+ * place in the file when it is full or flushed, so the file never exceeds the header and the count
+ * of blocks. Not thread safe.
+ *
+ * @author David Matějček
+ */
+public class WireCaptureWriter implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WireCaptureWriter.class);
+  /** Default size of one block */
+  public static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+  /** Default count of blocks, together 4 MiB */
+  public static final int DEFAULT_BLOCK_COUNT = 64;
+  /** direction, varint of the time, varint of the length */
+  private static final int MAX_RECORD_HEADER = 1 + 10 + 5;
+
+  private final File file;
+  private final FileChannel channel;
+  private final ByteBuffer block;
+  private final int blockCount;
+  private long sequence;
+  private long lastTime;
+  private boolean dirty;
+
+
+  /**
+   * Creates the file with the default size.
+   *
+   * @param file - an existing file is overwritten.
+   */
+  public WireCaptureWriter(final File file) {
+    this(file, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT);
+  }
+
+
+  /**
+   * Creates the file.
+   *
+   * @param file - an existing file is overwritten.
+   * @param blockSize - size of one block in bytes.
+   * @param blockCount - count of blocks in the ring.
+   */
+  public WireCaptureWriter(final File file, final int blockSize, final int blockCount) {
+    LOG.debug("WireCaptureWriter(file={}, blockSize={}, blockCount={})", file, blockSize, blockCount);
+    if (blockSize < WireCapture.BLOCK_HEADER_LENGTH + MAX_RECORD_HEADER + 1 || blockCount < 1) {
+      throw new IllegalArgumentException("Invalid block size: " + blockSize + " or count: " + blockCount);
+    }
+    this.file = file;
+    this.blockCount = blockCount;
+    this.block = ByteBuffer.allocate(blockSize);
+    final ByteBuffer header = ByteBuffer.allocate(WireCapture.HEADER_LENGTH);
+    header.put(WireCapture.MAGIC).put((byte) WireCapture.VERSION).putInt(blockSize).putInt(blockCount)
+        .putLong(System.currentTimeMillis()).putLong(System.nanoTime());
+    header.clear();
+    try {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING);
+      writeFully(header, 0L);
+    } catch (final IOException e) {
+      throw new IllegalArgumentException("Cannot write to the file: " + file, e);
+    }
+  }
+
+
+  /**
+   * Adds the record, splits it to more records if it doesn't fit to an empty block.
+   *
+   * @param direction - {@link WireCapture#WRITE} or {@link WireCapture#READ}
+   * @param nanoTime - the {@link System#nanoTime()} of the transfer, older times than the time of
+   *          the previous record are replaced by it.
+   * @param bytes
+   * @param offset
+   * @param length
+   * @throws IOException - cannot write the full block.
+   */
+  public void write(final int direction, final long nanoTime, final byte[] bytes, final int offset,
+      final int length) throws IOException {
+    int written = 0;
+    do {
+      final int rest = length - written;
+      // records are split only if they don't fit to an empty block
+      if (this.sequence == 0 || this.block.remaining() <= MAX_RECORD_HEADER
+          || this.block.remaining() - MAX_RECORD_HEADER < rest
+              && this.block.position() > WireCapture.BLOCK_HEADER_LENGTH) {
+        nextBlock(nanoTime);
+      }
+      final int part = Math.min(rest, this.block.remaining() - MAX_RECORD_HEADER);
+      this.block.put((byte) direction);
+      WireCapture.putVarint(this.block, Math.max(0L, nanoTime - this.lastTime));
+      WireCapture.putVarint(this.block, part);
+      this.block.put(bytes, offset + written, part);
+      this.lastTime = Math.max(this.lastTime, nanoTime);
+      this.dirty = true;
+      written += part;
+    } while (written < length);
+  }
+
+
+  private void nextBlock(final long nanoTime) throws IOException {
+    if (this.sequence > 0) {
+      flush();
+    }
+    this.sequence++;
+    Arrays.fill(this.block.array(), (byte) 0);
+    this.block.clear();
+    this.block.putLong(this.sequence).putLong(nanoTime);
+    this.lastTime = nanoTime;
+  }
+
+
+  /**
+   * Writes the current block to the file.
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    if (!this.dirty) {
+      return;
+    }
+    final ByteBuffer data = this.block.duplicate();
+    data.clear();
+    writeFully(data, WireCapture.HEADER_LENGTH + (this.sequence - 1) % this.blockCount * data.capacity());
+    this.dirty = false;
+  }
+
+
+  private void writeFully(final ByteBuffer data, final long position) throws IOException {
+    while (data.hasRemaining()) {
+      this.channel.write(data, position + data.position());
+    }
+  }
+
+
+  /**
+   * Writes the current block and closes the file.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      this.channel.close();
+    }
+    LOG.debug("Closed the capture {}, blocks written: {}", this.file, this.sequence);
+  }
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures all bytes written to and read from the port to the {@link WireCapture} file.
+ * <p>
+ * Threads of the communication only put references to the transferred arrays with the
+ * {@link System#nanoTime()} to a bounded lock-free ring, they never block and never allocate. If
+ * the ring is full, the record is dropped and counted. The background thread moves records from
+ * the ring to the {@link WireCaptureWriter} and flushes it when it has nothing to do.
+ *
+ * @author David Matějček
+ */
+public class WireTap implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WireTap.class);
+  /** Default count of records in the ring */
+  public static final int DEFAULT_CAPACITY = 4096;
+  /** Sleep of the writer thread when the ring is empty */
+  private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(10);
+  /** Maximal age of data not written to the file */
+  private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  private final WireCaptureWriter writer;
+  private final int mask;
+  /** Sequence of each slot: equal to the tail when free, tail + 1 when filled */
+  private final AtomicLongArray sequences;
+  private final int[] directions;
+  private final long[] times;
+  private final byte[][] data;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+  /** Used only by the writer thread */
+  private long head;
+  private long captured;
+  private volatile boolean closed;
+
+
+  /**
+   * Creates the capture file with default sizes and starts the writer thread.
+   *
+   * @param file - an existing file is overwritten.
+   */
+  public WireTap(final File file) {
+    this(new WireCaptureWriter(file), DEFAULT_CAPACITY);
+  }
+
+
+  /**
+   * Starts the writer thread.
+   *
+   * @param writer - the capture file.
+   * @param capacity - count of records in the ring, a power of 2.
+   */
+  public WireTap(final WireCaptureWriter writer, final int capacity) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("The capacity must be a power of 2: " + capacity);
+    }
+    this.writer = writer;
+    this.mask = capacity - 1;
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      this.sequences.set(i, i);
+    }
+    this.directions = new int[capacity];
+    this.times = new long[capacity];
+    this.data = new byte[capacity][];
+    this.thread = new Thread(this::run, "cardiag-wire-tap");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+
+  /**
+   * @param bytes - bytes written to the device, the array must not be modified later.
+   */
+  public void written(final byte[] bytes) {
+    offer(WireCapture.WRITE, bytes);
+  }
+
+
+  /**
+   * @param bytes - bytes read from the device, the array must not be modified later. May be null.
+   */
+  public void read(final byte[] bytes) {
+    if (bytes != null && bytes.length > 0) {
+      offer(WireCapture.READ, bytes);
+    }
+  }
+
+
+  private void offer(final int direction, final byte[] bytes) {
+    final long time = System.nanoTime();
+    long position = this.tail.get();
+    while (true) {
+      final int slot = (int) position & this.mask;
+      final long difference = this.sequences.get(slot) - position;
+      if (difference == 0) {
+        if (this.tail.compareAndSet(position, position + 1)) {
+          break;
+        }
+        position = this.tail.get();
+      } else if (difference < 0) {
+        // the writer thread is behind by the whole ring
+        this.dropped.incrementAndGet();
+        return;
+      } else {
+        position = this.tail.get();
+      }
+    }
+    final int slot = (int) position & this.mask;
+    this.directions[slot] = direction;
+    this.times[slot] = time;
+    this.data[slot] = bytes;
+    // publishes the slot to the writer thread
+    this.sequences.lazySet(slot, position + 1);
+  }
+
+
+  /**
+   * @return count of records lost because the ring was full.
+   */
+  public long getDropped() {
+    return this.dropped.get();
+  }
+
+
+  private void run() {
+    long lastFlush = System.nanoTime();
+    boolean dirty = false;
+    try {
+      while (!this.closed) {
+        if (drain()) {
+          dirty = true;
+          continue;
+        }
+        if (dirty && System.nanoTime() - lastFlush > FLUSH_INTERVAL) {
+          this.writer.flush();
+          lastFlush = System.nanoTime();
+          dirty = false;
+        }
+        LockSupport.parkNanos(IDLE_PARK);
+      }
+      drain();
+    } catch (final IOException e) {
+      LOG.error("The wire tap failed, the capture is incomplete.", e);
+    }
+  }
+
+
+  /**
+   * @return false if the ring was empty.
+   */
+  private boolean drain() throws IOException {
+    boolean any = false;
+    while (true) {
+      final int slot = (int) this.head & this.mask;
+      if (this.sequences.get(slot) != this.head + 1) {
+        return any;
+      }
+      final byte[] bytes = this.data[slot];
+      this.data[slot] = null;
+      this.writer.write(this.directions[slot], this.times[slot], bytes, 0, bytes.length);
+      this.sequences.lazySet(slot, this.head + this.mask + 1);
+      this.head++;
+      this.captured++;
+      any = true;
+    }
+  }
+
+
+  /**
+   * Writes remaining records, stops the writer thread and closes the file.
+   */
+  @Override
+  public void close() {
+    this.closed = true;
+    LockSupport.unpark(this.thread);
+    try {
+      this.thread.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      this.writer.close();
+    } catch (final IOException e) {
+      LOG.warn("Cannot close the capture.", e);
+    }
+    LOG.info("The wire tap captured {} records, dropped {}.", this.captured, this.dropped.get());
+  }
+}
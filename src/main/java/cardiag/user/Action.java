@@ -11,7 +11,10 @@ public enum Action {
 
   REPORT,
   WATCH,
-  CLEAR_TROUBLE_CODES;
+  RECORD,
+  REPLAY,
+  CLEAR_TROUBLE_CODES,
+  BENCHMARK;
 
 
   public static Action parse(final String str) {
@@ -3,6 +3,7 @@
  */
 package cardiag.user;
 
+import java.io.File;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -44,10 +45,26 @@ public class UserCommunication {
     final String selectedPortName = selectPort(portNames);
     cfg.setPortName(selectedPortName);
     cfg.setCommandTimeout(10000L);
+    cfg.setSpaces(false);
+    cfg.setCacheDirectory(new File(System.getProperty("user.home"), ".java-cardiag"));
     return cfg;
   }
 
 
+  /**
+   * Prints the message and waits for the answer.
+   *
+   * @param message - a question.
+   * @return true if the user answered Y.
+   */
+  public boolean confirm(final String message) {
+    LOG.debug("confirm(message={})", message);
+    console.format("%s\n", message);
+    console.flush();
+    return "Y".equalsIgnoreCase(StringUtils.trim(console.readLine("[y/N]: ")));
+  }
+
+
   protected String selectPort(final List<String> portNames) {
     LOG.debug("selectPort(portNames={})", portNames);
 
@@ -0,0 +1,75 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.serial.PortConfiguration;
+
+/**
+ * @author David Matějček
+ */
+public class AdapterBenchmarkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Elm327Simulator simulator;
+  private PortConfiguration cfg;
+
+
+  @Before
+  public void init() {
+    this.simulator = SimulatorFixture.createSimulator("benchmark");
+    this.cfg = SimulatorFixture.createConfiguration("benchmark", 1000L, this.folder.getRoot());
+  }
+
+
+  @After
+  public void close() {
+    this.simulator.close();
+  }
+
+
+  @Test
+  public void testRunAndSave() {
+    OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    final AdapterBenchmark benchmark = new AdapterBenchmark(obd2);
+    try {
+      benchmark.setIterations(5);
+      final List<AdapterBenchmark.Result> results = benchmark.run();
+      assertEquals(6, results.size());
+      for (final AdapterBenchmark.Result result : results) {
+        assertEquals(result.toString(), 5, result.getRequests());
+        assertEquals(result.toString(), 0, result.getFailures());
+        assertTrue(result.toString(), result.getRequestsPerSecond() > 0);
+        assertTrue(result.toString(), result.getPercentile(0.99) > 0);
+      }
+      assertTrue(results.get(1).getName().startsWith("batch"));
+      assertTrue(results.get(1).getPidsPerSecond() > results.get(0).getPidsPerSecond());
+      assertNotNull(benchmark.getBest());
+      assertTrue(benchmark.getBestTiming() >= 0);
+      assertTrue(benchmark.save());
+    } finally {
+      obd2.close();
+    }
+
+    obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      assertEquals(benchmark.getBestTiming(), obd2.getProfile().getAdaptiveTiming());
+    } finally {
+      obd2.close();
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.serial.PortConfiguration;
+import cardiag.serial.PortStatistics;
+
+/**
+ * @author David Matějček
+ */
+public class AdapterMetricsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Elm327Simulator simulator;
+  private PortConfiguration cfg;
+
+
+  @Before
+  public void init() {
+    this.simulator = SimulatorFixture.createSimulator("metrics");
+    this.cfg = SimulatorFixture.createConfiguration("metrics", 300L, this.folder.getRoot());
+  }
+
+
+  @After
+  public void close() {
+    this.simulator.close();
+  }
+
+
+  @Test
+  public void testCounters() {
+    this.simulator.script("010C", "7F 01 12");
+    this.simulator.script("0105", Elm327Simulator.NO_RESPONSE);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final AdapterMetrics metrics = obd2.getMetrics();
+      final PortStatistics port = metrics.getPortStatistics();
+      assertEquals(1, port.getSearching());
+      obd2.getValue(false, PID.ENGINE_RPM);
+      obd2.getValue(false, PID.ENGINE_OIL_TEMPERATURE);
+      obd2.getValue(false, PID.ENGINE_COOLANT_TEMPERATURE);
+      obd2.getValue(false, PID.VEHICLE_SPEED);
+      assertEquals(1, metrics.getErrorResponses());
+      assertEquals(1, metrics.getNoDataResponses());
+      assertEquals(1, port.getTimeouts());
+      assertTrue(port.getCommands() > 4);
+      assertTrue(port.getBytesIn() > port.getBytesOut());
+      assertTrue(port.getRoundTripP99() > 0);
+      assertNotNull(metrics.getLatency(Mode.CURRENT_DATA, PID.VEHICLE_SPEED));
+      assertEquals(1, metrics.getLatency(Mode.CURRENT_DATA, PID.VEHICLE_SPEED).getCount());
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchLatency() {
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final AdapterMetrics metrics = obd2.getMetrics();
+      obd2.askBatch(Mode.CURRENT_DATA, Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_LOAD));
+      assertEquals(1, metrics.getBatchLatency(Mode.CURRENT_DATA).getCount());
+      // the round trip of the batch is not a latency of its PIDs
+      assertNull(metrics.getLatency(Mode.CURRENT_DATA, PID.ENGINE_RPM));
+      assertNull(metrics.getLatency(Mode.CURRENT_DATA, PID.VEHICLE_SPEED));
+      assertTrue(String.join("\n", metrics.getLatencies()).contains("01 batch: count=1"));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testMBeans() throws Exception {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    final ObjectName metricsName = AdapterMetrics.toObjectName("AdapterMetrics", "metrics");
+    final ObjectName portName = AdapterMetrics.toObjectName("PortStatistics", "metrics");
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      obd2.getValue(false, PID.VEHICLE_SPEED);
+      assertEquals(0L, server.getAttribute(metricsName, "ErrorResponses"));
+      final String[] latencies = (String[]) server.getAttribute(metricsName, "Latencies");
+      assertTrue(String.join("\n", latencies).contains("01 0d: count=1"));
+      assertTrue((Long) server.getAttribute(portName, "Commands") > 0);
+    } finally {
+      obd2.close();
+    }
+    assertFalse(server.isRegistered(metricsName));
+    assertFalse(server.isRegistered(portName));
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class CircuitBreakerTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+
+  @Test
+  public void testTrip() {
+    final CircuitBreaker breaker = new CircuitBreaker();
+    breaker.setThreshold(2, 10000);
+    final PID pid = PID.FUEL_RATE;
+    breaker.timedOut(Mode.CURRENT_DATA, pid, 0);
+    assertTrue(breaker.allows(Mode.CURRENT_DATA, pid, SECOND));
+    breaker.timedOut(Mode.CURRENT_DATA, pid, SECOND);
+    assertFalse(breaker.allows(Mode.CURRENT_DATA, pid, 2 * SECOND));
+    assertEquals(1, breaker.getTrips());
+
+    // half open, the next timeout opens it again
+    assertTrue(breaker.allows(Mode.CURRENT_DATA, pid, 11 * SECOND));
+    breaker.timedOut(Mode.CURRENT_DATA, pid, 11 * SECOND);
+    assertFalse(breaker.allows(Mode.CURRENT_DATA, pid, 12 * SECOND));
+    assertTrue(breaker.allows(Mode.CURRENT_DATA, pid, 21 * SECOND));
+    breaker.succeeded(Mode.CURRENT_DATA, pid);
+    breaker.timedOut(Mode.CURRENT_DATA, pid, 21 * SECOND);
+    assertTrue(breaker.allows(Mode.CURRENT_DATA, pid, 22 * SECOND));
+    assertEquals(2, breaker.getTrips());
+    assertEquals(2, breaker.getRejected());
+  }
+}
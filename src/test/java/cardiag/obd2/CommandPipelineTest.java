@@ -0,0 +1,134 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * The pipeline only passes the {@link OBD2Standard} to commands, so these tests don't need any.
+ *
+ * @author David Matějček
+ */
+public class CommandPipelineTest {
+
+  @Test
+  public void testOrderAndQueueDepth() throws Exception {
+    final CommandPipeline pipeline = new CommandPipeline(null);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch blocker = new CountDownLatch(1);
+    final List<Integer> executed = new ArrayList<>();
+    try {
+      pipeline.submit(obd2 -> {
+        started.countDown();
+        return await(blocker);
+      });
+      assertTrue(await(started));
+      final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+      for (int i = 0; i < 5; i++) {
+        final int value = i;
+        futures.add(pipeline.submit(obd2 -> {
+          executed.add(value);
+          return value;
+        }));
+      }
+      assertEquals(5, pipeline.getQueueDepth());
+      blocker.countDown();
+      for (int i = 0; i < 5; i++) {
+        assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(0, pipeline.getQueueDepth());
+    } finally {
+      pipeline.close();
+    }
+    assertEquals("[0, 1, 2, 3, 4]", executed.toString());
+  }
+
+
+  @Test
+  public void testFailureAndClose() throws Exception {
+    final CommandPipeline pipeline = new CommandPipeline(null);
+    final IllegalStateException exception = new IllegalStateException("No response.");
+    final CompletableFuture<Object> failed = pipeline.submit(obd2 -> {
+      throw exception;
+    });
+    try {
+      failed.get(5, TimeUnit.SECONDS);
+      fail("ExecutionException expected");
+    } catch (final ExecutionException e) {
+      assertSame(exception, e.getCause());
+    }
+    assertEquals("OK", pipeline.submit(obd2 -> "OK").get(5, TimeUnit.SECONDS));
+    pipeline.close();
+    assertTrue(pipeline.submit(obd2 -> "late").isCompletedExceptionally());
+  }
+
+
+  @Test
+  public void testError() throws Exception {
+    final CommandPipeline pipeline = new CommandPipeline(null);
+    try {
+      final AssertionError error = new AssertionError("Broken command.");
+      final CompletableFuture<Object> failed = pipeline.submit(obd2 -> {
+        throw error;
+      });
+      try {
+        failed.get(5, TimeUnit.SECONDS);
+        fail("ExecutionException expected");
+      } catch (final ExecutionException e) {
+        assertSame(error, e.getCause());
+      }
+      // the I/O thread survived
+      assertEquals("OK", pipeline.submit(obd2 -> "OK").get(5, TimeUnit.SECONDS));
+    } finally {
+      pipeline.close();
+    }
+  }
+
+
+  @Test
+  public void testSubmitDuringClose() throws Exception {
+    final CommandPipeline pipeline = new CommandPipeline(null);
+    final List<CompletableFuture<String>> futures = Collections.synchronizedList(new ArrayList<>());
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final Thread submitter = new Thread(() -> {
+      while (running.get()) {
+        futures.add(pipeline.submit(obd2 -> "OK"));
+      }
+    });
+    submitter.start();
+    Thread.sleep(50L);
+    pipeline.close();
+    running.set(false);
+    submitter.join(5000L);
+    assertTrue(futures.size() > 0);
+    synchronized (futures) {
+      for (final CompletableFuture<String> future : futures) {
+        assertTrue(future.isDone());
+      }
+    }
+  }
+
+
+  private static Boolean await(final CountDownLatch latch) {
+    try {
+      return latch.await(5, TimeUnit.SECONDS);
+    } catch (final InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cardiag.serial.PortConfiguration;
+
+/**
+ * End-to-end tests of the {@link OBD2Standard} communicating with the simulated ELM327.
+ *
+ * @author David Matějček
+ */
+public class Elm327SimulatorTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Elm327SimulatorTest.class);
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Elm327Simulator simulator;
+  private PortConfiguration cfg;
+
+
+  @Before
+  public void init() {
+    this.simulator = SimulatorFixture.createSimulator("simulator");
+    this.cfg = SimulatorFixture.createConfiguration("simulator", 1000L, this.folder.getRoot());
+  }
+
+
+  @After
+  public void close() {
+    this.simulator.close();
+  }
+
+
+  @Test
+  public void testReport() {
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      assertEquals(Protocol.ISO_15765_4_CAN_11_500, obd2.getProtocol());
+      assertEquals("TMBJJ7NE8G0123456", obd2.getProfile().getVin());
+      final long start = System.nanoTime();
+      final long requests = this.simulator.getRequestCount();
+      final Report report = obd2.createReport();
+      final long duration = System.nanoTime() - start;
+      LOG.info("Report cycle: {} ms, {} requests.", TimeUnit.NANOSECONDS.toMillis(duration),
+          this.simulator.getRequestCount() - requests);
+      assertTrue(report.getSupportedPIDS().isSupported(PID.ENGINE_LOAD));
+      assertFalse(report.getSupportedPIDS().isSupported(PID.ENGINE_OIL_TEMPERATURE));
+      assertEquals(50.2, report.getEngineLoad(), 0.1);
+      assertEquals(Integer.valueOf(83), report.getEngineCoolantTemperature());
+      assertEquals(Integer.valueOf(500), report.getDistanceSinceErrorCodesCleared());
+      assertNull(report.getEngineOilTemperature());
+      assertTrue(report.getFaults().isEmpty());
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testHeadersAndPackedBytes() {
+    this.cfg.setHeaders(true);
+    this.cfg.setSpaces(false);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      assertEquals("TMBJJ7NE8G0123456", obd2.getVIN());
+      final Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA,
+          Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_OIL_TEMPERATURE));
+      assertEquals(1726, PID.ENGINE_RPM.decode(responses.get(PID.ENGINE_RPM)), 0.1);
+      assertEquals("7E8", responses.get(PID.ENGINE_RPM).getEcu());
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+      assertTrue(responses.get(PID.ENGINE_OIL_TEMPERATURE).isError());
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchHandler() {
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final Map<PID, Response> samples = new LinkedHashMap<>();
+      final Map<PID, Double> values = new LinkedHashMap<>();
+      obd2.askBatch(Mode.CURRENT_DATA, Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_OIL_TEMPERATURE),
+          (pid, response) -> {
+            samples.put(pid, response);
+            values.put(pid, pid.decodeValue(response));
+          });
+      assertEquals(3, values.size());
+      assertEquals(1726, values.get(PID.ENGINE_RPM), 0.1);
+      assertEquals(50, values.get(PID.VEHICLE_SPEED), 0.1);
+      assertTrue(Double.isNaN(values.get(PID.ENGINE_OIL_TEMPERATURE)));
+      // decoded values share one instance
+      assertSame(samples.get(PID.ENGINE_RPM), samples.get(PID.VEHICLE_SPEED));
+      assertNotSame(samples.get(PID.ENGINE_RPM), samples.get(PID.ENGINE_RPM).copy());
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchOfTwoUnits() {
+    this.simulator.setTransmissionPid(PID.ENGINE_OIL_TEMPERATURE.getCode(), 0x82);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      // single requests learn one responding unit for each PID
+      assertEquals(1726, obd2.getValue(false, PID.ENGINE_RPM), 0.1);
+      assertEquals(90, obd2.getValue(false, PID.ENGINE_OIL_TEMPERATURE), 0.1);
+      assertEquals(1, obd2.getResponseCounts().get(Mode.CURRENT_DATA, PID.ENGINE_OIL_TEMPERATURE));
+      final List<PID> pids = Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_OIL_TEMPERATURE);
+      for (int i = 0; i < 3; i++) {
+        final long requests = this.simulator.getRequestCount();
+        final Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA, pids);
+        assertEquals(1, this.simulator.getRequestCount() - requests);
+        assertEquals(1726, PID.ENGINE_RPM.decode(responses.get(PID.ENGINE_RPM)), 0.1);
+        assertEquals(90, PID.ENGINE_OIL_TEMPERATURE.decode(responses.get(PID.ENGINE_OIL_TEMPERATURE)), 0.1);
+      }
+      // both units answer the multi-PID request
+      assertEquals(2, obd2.getResponseCounts().get(Mode.CURRENT_DATA, pids));
+      assertFalse(obd2.getNegativeCache().isCached(Mode.CURRENT_DATA, PID.ENGINE_OIL_TEMPERATURE));
+      assertFalse(obd2.getProfile().isNoData(PID.ENGINE_OIL_TEMPERATURE));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testUndecodedBatch() {
+    // the response ends in the middle of the vehicle speed
+    this.simulator.script("010C0D05", "41 0C 1A F8 0D");
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final long requests = this.simulator.getRequestCount();
+      final Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA,
+          Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_COOLANT_TEMPERATURE));
+      assertEquals(3, this.simulator.getRequestCount() - requests);
+      assertEquals(1726, PID.ENGINE_RPM.decode(responses.get(PID.ENGINE_RPM)), 0.1);
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+      assertEquals(83, PID.ENGINE_COOLANT_TEMPERATURE.decode(responses.get(PID.ENGINE_COOLANT_TEMPERATURE)), 0.1);
+      assertFalse(obd2.getNegativeCache().isCached(Mode.CURRENT_DATA, PID.VEHICLE_SPEED));
+      assertFalse(obd2.getProfile().isNoData(PID.ENGINE_COOLANT_TEMPERATURE));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchWithUnrequestedPid() {
+    this.simulator.script("010C0D", "41 0C 1A F8 05 7B 0D 32");
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA,
+          Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED));
+      assertEquals(2, responses.size());
+      assertFalse(responses.containsKey(PID.ENGINE_COOLANT_TEMPERATURE));
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchWithLongPid() {
+    this.simulator.setPid(PID.BOOST_PRESSURE_CONTROL.getCode(), 0x1F, 0x03, 0xE8, 0x03, 0xF0, 0x03, 0xE0, 0x03, 0xE9,
+        0x05);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      final Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA,
+          Arrays.asList(PID.BOOST_PRESSURE_CONTROL, PID.VEHICLE_SPEED, PID.ENGINE_COOLANT_TEMPERATURE));
+      assertEquals(10, responses.get(PID.BOOST_PRESSURE_CONTROL).length());
+      assertEquals(0x05, responses.get(PID.BOOST_PRESSURE_CONTROL).byteAt(9));
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+      assertEquals(83, PID.ENGINE_COOLANT_TEMPERATURE.decode(responses.get(PID.ENGINE_COOLANT_TEMPERATURE)), 0.1);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBaudRateNegotiation() {
+    assertEquals(0, new PortConfiguration().getMaxBaudRate());
+    this.cfg.setMaxBaudRate(115200);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      // the simulator refuses AT BRD
+      assertEquals(38400, this.cfg.getBaudRate());
+      assertEquals(50, obd2.getValue(false, PID.VEHICLE_SPEED), 0.1);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testOlderProtocol() {
+    this.simulator.setVehicleProtocol(Protocol.ISO_9141_2);
+    this.cfg.setHeaders(true);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      assertEquals(Protocol.ISO_9141_2, obd2.getProtocol());
+      assertEquals("TMBJJ7NE8G0123456", obd2.getVIN());
+      assertEquals(1726, obd2.getValue(false, PID.ENGINE_RPM), 0.1);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testScriptedFailures() {
+    this.cfg.setCommandTimeout(300L);
+    this.simulator.script("010C", "7F 01 12");
+    this.simulator.script("0105", Elm327Simulator.NO_RESPONSE);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      assertNull(obd2.getValue(false, PID.ENGINE_RPM));
+      assertNull(obd2.getValue(false, PID.ENGINE_RPM));
+      assertEquals(1, obd2.getNegativeCache().getHits());
+
+      for (int i = 0; i < CircuitBreaker.DEFAULT_THRESHOLD + 1; i++) {
+        assertNull(obd2.getValue(false, PID.ENGINE_COOLANT_TEMPERATURE));
+      }
+      assertEquals(1, obd2.getCircuitBreaker().getTrips());
+      assertEquals(1, obd2.getCircuitBreaker().getRejected());
+      // the device is usable after interrupted requests
+      assertNotNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchTimeout() {
+    this.cfg.setCommandTimeout(10000L);
+    this.simulator.script("0105", Elm327Simulator.NO_RESPONSE);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      for (int i = 0; i < 20; i++) {
+        assertNotNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+      }
+      final List<PID> pids = Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_COOLANT_TEMPERATURE);
+      final long start = System.nanoTime();
+      Map<PID, Response> responses = obd2.askBatch(Mode.CURRENT_DATA, pids);
+      assertEquals(1726, PID.ENGINE_RPM.decode(responses.get(PID.ENGINE_RPM)), 0.1);
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+      assertTrue(responses.get(PID.ENGINE_COOLANT_TEMPERATURE) instanceof ResponseWithNoData);
+
+      // the batch and the single request timed out, the batch opens the breaker now
+      final long requests = this.simulator.getRequestCount();
+      responses = obd2.askBatch(Mode.CURRENT_DATA, pids);
+      assertEquals(3, this.simulator.getRequestCount() - requests);
+      assertEquals(1, obd2.getCircuitBreaker().getTrips());
+      assertTrue(obd2.getCircuitBreaker().isOpen(Mode.CURRENT_DATA, PID.ENGINE_COOLANT_TEMPERATURE));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+      responses = obd2.askBatch(Mode.CURRENT_DATA, pids);
+      assertEquals(4, this.simulator.getRequestCount() - requests);
+      assertEquals(50, PID.VEHICLE_SPEED.decode(responses.get(PID.VEHICLE_SPEED)), 0.1);
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testTimeoutOfUnmeasuredPid() {
+    this.cfg.setCommandTimeout(10000L);
+    this.simulator.script("0105", Elm327Simulator.NO_RESPONSE);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      for (int i = 0; i < 20; i++) {
+        assertNotNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+      }
+      final long timeout = obd2.getTimeout(Mode.CURRENT_DATA, PID.ENGINE_COOLANT_TEMPERATURE);
+      assertTrue("timeout: " + timeout, timeout < 1000L);
+      final long start = System.nanoTime();
+      assertNull(obd2.getValue(false, PID.ENGINE_COOLANT_TEMPERATURE));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testResponseAfterTimeout() {
+    this.cfg.setCommandTimeout(10000L);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    try {
+      for (int i = 0; i < 20; i++) {
+        assertNotNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+      }
+      final long timeout = obd2.getTimeout(Mode.CURRENT_DATA, PID.VEHICLE_SPEED);
+      assertTrue("timeout: " + timeout, timeout < 1000L);
+      this.simulator.setLatency(timeout + 10L);
+      final long requests = this.simulator.getRequestCount();
+      final long start = System.nanoTime();
+      assertNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+      // the late response is dropped, the request is not repeated
+      assertEquals(1, this.simulator.getRequestCount() - requests);
+      assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(3 * timeout));
+
+      this.simulator.setLatency(2);
+      final long next = System.nanoTime();
+      assertEquals(1726, obd2.getValue(false, PID.ENGINE_RPM), 0.1);
+      assertEquals(2, this.simulator.getRequestCount() - requests);
+      assertTrue(System.nanoTime() - next < TimeUnit.MILLISECONDS.toNanos(timeout));
+    } finally {
+      obd2.close();
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class FaultDecodingTest {
+
+  @Test
+  public void testLegacyLayout() {
+    final Response response = new Response(false, Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, "01", "33", "C1", "23",
+        "00", "00");
+    final List<Fault> faults = OBD2Standard.decodeFaults(response, false);
+    assertEquals(2, faults.size());
+    assertEquals("P0133", faults.get(0).getCode());
+    assertEquals("U0123", faults.get(1).getCode());
+  }
+
+
+  @Test
+  public void testLegacyLayoutWithoutCodes() {
+    final Response response = new Response(false, Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, "00", "00", "00", "00",
+        "00", "00");
+    assertTrue(OBD2Standard.decodeFaults(response, false).isEmpty());
+  }
+
+
+  @Test
+  public void testCanLayout() {
+    // the count of codes first, then any count of pairs
+    final Response response = new Response(false, Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, "04", "01", "33", "C1",
+        "23", "41", "00", "93", "45");
+    final List<Fault> faults = OBD2Standard.decodeFaults(response, true);
+    assertEquals(4, faults.size());
+    assertEquals("P0133", faults.get(0).getCode());
+    assertEquals("U0123", faults.get(1).getCode());
+    assertEquals("C0100", faults.get(2).getCode());
+    assertEquals("B1345", faults.get(3).getCode());
+  }
+
+
+  @Test
+  public void testCanLayoutWithoutCodes() {
+    final Response response = new Response(false, Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, "00");
+    assertTrue(OBD2Standard.decodeFaults(response, true).isEmpty());
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class NegativeCacheTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+
+  @Test
+  public void testBackoff() {
+    final NegativeCache cache = new NegativeCache();
+    cache.setBackoff(1000, 3000);
+    final PID pid = PID.ENGINE_OIL_TEMPERATURE;
+    final long start = 1000 * SECOND;
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, pid, start));
+
+    cache.failed(Mode.CURRENT_DATA, pid, start);
+    assertTrue(cache.isCached(Mode.CURRENT_DATA, pid, start + SECOND / 2));
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, pid, start + SECOND));
+
+    cache.failed(Mode.CURRENT_DATA, pid, start + SECOND);
+    assertTrue(cache.isCached(Mode.CURRENT_DATA, pid, start + 2 * SECOND));
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, pid, start + 3 * SECOND));
+
+    // limited by the max back-off
+    cache.failed(Mode.CURRENT_DATA, pid, start + 3 * SECOND);
+    cache.failed(Mode.CURRENT_DATA, pid, start + 3 * SECOND);
+    assertEquals(4, cache.getFailures(Mode.CURRENT_DATA, pid));
+    assertTrue(cache.isCached(Mode.CURRENT_DATA, pid, start + 5 * SECOND));
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, pid, start + 6 * SECOND));
+
+    cache.succeeded(Mode.CURRENT_DATA, pid);
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, pid, start + 6 * SECOND));
+    assertEquals(3, cache.getHits());
+    assertEquals(5, cache.getMisses());
+  }
+
+
+  @Test
+  public void testNotCacheable() {
+    final NegativeCache cache = new NegativeCache();
+    cache.failed(Mode.CURRENT_DATA, PID.PIDS_SUPPORTED_21_40, 0);
+    assertFalse(cache.isCached(Mode.CURRENT_DATA, PID.PIDS_SUPPORTED_21_40, 1));
+    cache.failed(Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, 0);
+    assertFalse(cache.isCached(Mode.DIAGNOSTIC, PID.DIAGNOSTIC_CODES, 1));
+    assertEquals(0, cache.getHits() + cache.getMisses());
+  }
+}
@@ -5,6 +5,7 @@ package cardiag.obd2;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -47,10 +48,10 @@ public class OBD2StandardITest {
    */
   @Test
   public void testSupportedPIDs() throws OBD2Exception {
-    final boolean[] pids = obd2.getSupportedPIDs();
+    final SupportedPIDs pids = obd2.getSupportedPIDs();
     LOG.debug("pids={}", pids);
     assertNotNull(pids);
-    assertEquals(32, pids.length);
+    assertTrue(pids.isSupported(PID.PIDS_SUPPORTED));
   }
 
 
@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.serial.PortConfiguration;
+import cardiag.serial.SerialReadEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * @author David Matějček
+ */
+public class ObdRequestEventTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Elm327Simulator simulator;
+  private PortConfiguration cfg;
+
+
+  @Before
+  public void init() {
+    this.simulator = SimulatorFixture.createSimulator("jfr");
+    this.cfg = SimulatorFixture.createConfiguration("jfr", 300L, this.folder.getRoot());
+  }
+
+
+  @After
+  public void close() {
+    this.simulator.close();
+  }
+
+
+  @Test
+  public void testEvents() throws Exception {
+    this.simulator.script("010C", "7F 01 12");
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, this.simulator);
+    final Path file = this.folder.newFile("requests.jfr").toPath();
+    try (Recording recording = new Recording()) {
+      recording.enable(ObdRequestEvent.NAME);
+      recording.enable(SerialReadEvent.NAME);
+      recording.start();
+      obd2.getValue(false, PID.VEHICLE_SPEED);
+      obd2.getValue(false, PID.ENGINE_RPM);
+      obd2.getValue(false, PID.ENGINE_OIL_TEMPERATURE);
+      recording.stop();
+      recording.dump(file);
+    } finally {
+      obd2.close();
+    }
+    final List<RecordedEvent> requests = new ArrayList<>();
+    int bytesRead = 0;
+    for (final RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (event.getEventType().getName().equals(ObdRequestEvent.NAME)) {
+        requests.add(event);
+      } else if (event.getEventType().getName().equals(SerialReadEvent.NAME)) {
+        assertEquals("jfr", event.getString("port"));
+        bytesRead += event.getInt("bytes");
+      }
+    }
+    assertEquals(3, requests.size());
+    assertEquals("01", requests.get(0).getString("mode"));
+    assertEquals("0d", requests.get(0).getString("pid").toLowerCase());
+    assertEquals(ObdRequestEvent.OK, requests.get(0).getString("outcome"));
+    assertEquals(3, requests.get(0).getInt("bytes"));
+    assertTrue(requests.get(0).getDuration().toNanos() > 0);
+    assertEquals(ObdRequestEvent.NEGATIVE, requests.get(1).getString("outcome"));
+    assertEquals(ObdRequestEvent.NO_DATA, requests.get(2).getString("outcome"));
+    assertTrue(bytesRead > 0);
+  }
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class PIDTest {
+
+  @Test
+  public void testRegistry() {
+    assertSame(PID.FUEL_TRIM_PERCENT_SHORT_BANK1, PID.parseHex("06", Mode.CURRENT_DATA));
+    assertSame(PID.FUEL_TRIM_PERCENT_LONG_BANK1, PID.parseHex("07", Mode.CURRENT_DATA));
+    assertSame(PID.FUEL_TRIM_PERCENT_SHORT_BANK2, PID.parseHex("08", Mode.FREEZE_FRAME_DATA));
+    assertSame(PID.FUEL_TRIM_PERCENT_LONG_BANK2, PID.parseHex("09", Mode.CURRENT_DATA));
+    assertSame(PID.ETHANOL_FUEL, PID.get(Mode.CURRENT_DATA, 0x52));
+    assertSame(PID.FUEL_TYPE, PID.get(Mode.CURRENT_DATA, 0x51));
+    assertSame(PID.VIN, PID.parseHex("02", Mode.VEHICLE_INFO));
+    assertSame(PID.MONITOR_STATUS, PID.parseHex("01", Mode.CURRENT_DATA));
+    assertSame(PID.VIN_COUNT_OF_BYTES, PID.parseHex("01", Mode.VEHICLE_INFO));
+    assertNull(PID.get(Mode.CURRENT_DATA, 0xFF));
+    assertTrue(PID.ECU_COMPATIBILITY.isAllowed(Mode.CURRENT_DATA));
+    assertFalse(PID.ECU_COMPATIBILITY.isAllowed(Mode.FREEZE_FRAME_DATA));
+    assertTrue(PID.values(Mode.CURRENT_DATA).size() > 100);
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAllowed() {
+    PID.parseHex("1C", Mode.FREEZE_FRAME_DATA);
+  }
+
+
+  @Test
+  public void testDecode() {
+    assertEquals(1726.0, decode(PID.ENGINE_RPM, "1A", "F8"), 0.001);
+    assertEquals(50.0, decode(PID.ENGINE_COOLANT_TEMPERATURE, "5A"), 0.001);
+    assertEquals(-25.0, decode(PID.FUEL_TRIM_PERCENT_SHORT_BANK1, "60"), 0.001);
+    assertEquals(100.0, decode(PID.ENGINE_LOAD, "FF"), 0.001);
+    assertEquals(-8192.0, decode(PID.EVAP_SYSTEM_VAPOR_PRESSURE, "80", "00"), 0.001);
+    assertEquals(25.0, decode(PID.INTAKE_AIR_TEMPERATURE_SENSOR, "01", "41", "00", "00", "00", "00", "00"), 0.001);
+    assertEquals(12345.6, decode(PID.ODOMETER, "00", "01", "E2", "40"), 0.001);
+    assertNull(PID.ENGINE_LOAD.decode(new ResponseWithNoData(Mode.CURRENT_DATA, PID.ENGINE_LOAD)));
+  }
+
+
+  @Test
+  public void testDecodeValue() {
+    assertEquals(1726.0, PID.ENGINE_RPM.decodeValue(new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM, "1A",
+        "F8")), 0.001);
+    assertTrue(Double.isNaN(PID.ENGINE_LOAD.decodeValue(new ResponseWithNoData(Mode.CURRENT_DATA, PID.ENGINE_LOAD))));
+  }
+
+
+  private double decode(final PID pid, final String... data) {
+    return pid.decode(new Response(false, Mode.CURRENT_DATA, pid, data));
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the plan without any communication.
+ *
+ * @author David Matějček
+ */
+public class PollingSchedulerTest {
+
+  private static final long ROUND_TRIP = TimeUnit.MILLISECONDS.toNanos(100);
+
+
+  @Test
+  public void testRatesAndOnce() {
+    final PollingScheduler scheduler = new PollingScheduler(null, 6, ROUND_TRIP);
+    scheduler.setRate(PID.ENGINE_LOAD, 10);
+    scheduler.setRate(PID.ENGINE_COOLANT_TEMPERATURE, 0.2);
+    scheduler.setOnce(PID.DISTANCE_FROM_CODES_CLEARED);
+    assertTrue(scheduler.getUnmetRates().isEmpty());
+
+    final List<PID> first = scheduler.nextSlot();
+    assertEquals(3, first.size());
+    assertEquals(PID.DISTANCE_FROM_CODES_CLEARED, first.get(0));
+
+    // 10 seconds
+    final Map<PID, Integer> counts = count(scheduler, 100);
+    assertEquals(Integer.valueOf(100), counts.get(PID.ENGINE_LOAD));
+    assertEquals(2, counts.get(PID.ENGINE_COOLANT_TEMPERATURE), 1);
+    assertEquals(null, counts.get(PID.DISTANCE_FROM_CODES_CLEARED));
+  }
+
+
+  @Test
+  public void testUnmetRates() {
+    final PollingScheduler scheduler = new PollingScheduler(null, 1, ROUND_TRIP);
+    scheduler.setRate(PID.ENGINE_COOLANT_TEMPERATURE, 0.5);
+    scheduler.setRate(PID.ENGINE_LOAD, 10);
+    scheduler.setRate(PID.FUEL_RATE, 10);
+    assertEquals(0.5, scheduler.getPlannedRate(PID.ENGINE_COOLANT_TEMPERATURE), 0.001);
+    assertEquals(4.75, scheduler.getPlannedRate(PID.ENGINE_LOAD), 0.001);
+    assertEquals(2, scheduler.getUnmetRates().size());
+
+    final Map<PID, Integer> counts = count(scheduler, 200);
+    assertEquals(10, counts.get(PID.ENGINE_COOLANT_TEMPERATURE), 1);
+    assertEquals(95, counts.get(PID.ENGINE_LOAD), 1);
+    assertEquals(95, counts.get(PID.FUEL_RATE), 1);
+
+    // faster link
+    for (int i = 0; i < 20; i++) {
+      scheduler.measured(ROUND_TRIP / 10);
+    }
+    assertTrue(scheduler.getUnmetRates().isEmpty());
+    assertEquals(10, scheduler.getPlannedRate(PID.FUEL_RATE), 0.001);
+  }
+
+
+  private Map<PID, Integer> count(final PollingScheduler scheduler, final int slots) {
+    final Map<PID, Integer> counts = new HashMap<>();
+    for (int i = 0; i < slots; i++) {
+      for (final PID pid : scheduler.nextSlot()) {
+        counts.merge(pid, 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+}
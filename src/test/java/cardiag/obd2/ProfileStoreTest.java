@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author David Matějček
+ */
+public class ProfileStoreTest {
+
+  private static final String VIN = "1D4GP00R55B123456";
+  private static final String ADAPTER = "ELM327 v1.5";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  @Test
+  public void testSaveAndLoad() throws Exception {
+    final ProfileStore store = new ProfileStore(folder.getRoot());
+    assertNull(store.load(VIN, ADAPTER));
+
+    final VehicleProfile profile = new VehicleProfile(VIN, ADAPTER, Protocol.ISO_15765_4_CAN_11_500);
+    final SupportedPIDs supported = new SupportedPIDs();
+    supported.add(PID.PIDS_SUPPORTED, new Response(false, Mode.CURRENT_DATA, PID.PIDS_SUPPORTED, "BE", "1F", "A8",
+        "13"));
+    profile.setSupportedPIDs(supported);
+    profile.getResponseCounts().learn(Mode.CURRENT_DATA, PID.ENGINE_RPM, 2);
+    profile.getResponseCounts().learn(Mode.VEHICLE_INFO, PID.VIN, 1);
+    profile.setNoData(PID.ENGINE_OIL_TEMPERATURE, true);
+    profile.measured(PID.ENGINE_RPM, TimeUnit.MILLISECONDS.toNanos(45));
+    store.save(profile);
+
+    final VehicleProfile loaded = store.load(VIN, ADAPTER);
+    assertNotNull(loaded);
+    assertEquals(VIN, loaded.getVin());
+    assertEquals(profile.getCreated(), loaded.getCreated());
+    assertEquals(supported.toString(), loaded.getSupportedPIDs().toString());
+    assertEquals(2, loaded.getResponseCounts().get(Mode.CURRENT_DATA, PID.ENGINE_RPM));
+    assertEquals(1, loaded.getResponseCounts().get(Mode.VEHICLE_INFO, PID.VIN));
+    assertTrue(loaded.isNoData(PID.ENGINE_OIL_TEMPERATURE));
+    assertFalse(loaded.isNoData(PID.ENGINE_RPM));
+    assertEquals(45000, loaded.getLatency(PID.ENGINE_RPM));
+    assertTrue(loaded.isValid(Protocol.ISO_15765_4_CAN_11_500, TimeUnit.DAYS.toMillis(1)));
+    assertFalse(loaded.isValid(Protocol.ISO_9141_2, TimeUnit.DAYS.toMillis(1)));
+    assertNull(store.load(VIN, "ELM327 v2.1"));
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import cardiag.serial.ReceiveBuffer;
+import cardiag.serial.ResponseView;
+
+/**
+ * @author David Matějček
+ */
+public class ResponseParserTest {
+
+  @Test
+  public void testSpacesAndPacked() {
+    final ResponseParser parser = new ResponseParser(Protocol.AUTOMATIC, false);
+    List<Message> messages = parser.parse(view("41 0C 1A F8\r41 0C 1A F0"));
+    assertEquals(2, messages.size());
+    assertArrayEquals(new String[] {"41", "0C", "1A", "F8"}, messages.get(0).getData());
+    assertNull(messages.get(0).getEcu());
+
+    messages = parser.parse(view("410c1af8"));
+    assertEquals(1, messages.size());
+    assertArrayEquals(new String[] {"41", "0C", "1A", "F8"}, messages.get(0).getData());
+
+    assertNull(parser.parse(view("UNABLE TO CONNECT")));
+    assertNull(parser.parse(view("410C1AF")));
+  }
+
+
+  @Test
+  public void testMultiFrame() {
+    final ResponseParser parser = new ResponseParser(Protocol.ISO_15765_4_CAN_11_500, false);
+    final List<Message> messages = parser.parse(view("00D\r0:410405450F5A\r1:2F804607052F5C\r2:55555555555555"));
+    assertEquals(1, messages.size());
+    assertArrayEquals(new String[] {"41", "04", "05", "45", "0F", "5A", "2F", "80", "46", "07", "05", "2F", "5C"},
+        messages.get(0).getData());
+  }
+
+
+  @Test
+  public void testCanHeaders() {
+    final ResponseParser parser = new ResponseParser(Protocol.ISO_15765_4_CAN_11_500, true);
+    final List<Message> messages = parser.parse(view(
+        "7E8 06 41 00 BE 3F A8 13\r7E9 06 41 00 98 18 80 11\r7E8 10 14 49 02 01 31 44 34\r"
+            + "7E8 21 47 50 30 30 52 35 35\r7E8 22 42 31 32 33 34 35 36"));
+    assertEquals(3, messages.size());
+    assertEquals("7E8", messages.get(0).getEcu());
+    assertEquals("7E9", messages.get(1).getEcu());
+    assertArrayEquals(new String[] {"41", "00", "98", "18", "80", "11"}, messages.get(1).getData());
+    assertEquals("7E8", messages.get(2).getEcu());
+    assertEquals(20, messages.get(2).getData().length);
+    assertEquals("36", messages.get(2).getData()[19]);
+  }
+
+
+  @Test
+  public void testIsoHeaders() {
+    final ResponseParser parser = new ResponseParser(Protocol.ISO_9141_2, true);
+    final List<Message> messages = parser.parse(view("486B10410C1AF8C1\r48 6B 18 41 0C 1A F0 B9"));
+    assertEquals(2, messages.size());
+    assertEquals("10", messages.get(0).getEcu());
+    assertArrayEquals(new String[] {"41", "0C", "1A", "F8"}, messages.get(0).getData());
+    assertEquals("18", messages.get(1).getEcu());
+  }
+
+
+  @Test
+  public void testParsingDoesNotAllocate() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    final ResponseParser parser = new ResponseParser(Protocol.ISO_15765_4_CAN_11_500, true);
+    final ResponseView view = view("7E8 04 41 0C 1A F8\r7E9 04 41 0C 1A F0\r7E8 10 14 49 02 01 31 44 34\r"
+        + "7E8 21 47 50 30 30 52 35 35\r7E8 22 42 31 32 33 34 35 36");
+    final Response sample = new Response();
+    final int iterations = 100_000;
+    double sum = parseAndDecode(parser, view, sample, iterations);
+    final long threadId = Thread.currentThread().getId();
+    final long before = threads.getThreadAllocatedBytes(threadId);
+    sum += parseAndDecode(parser, view, sample, iterations);
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    assertTrue("sum: " + sum, sum > 0);
+    assertTrue("Allocated " + allocated + " bytes for " + iterations + " responses", allocated < iterations);
+  }
+
+
+  private double parseAndDecode(final ResponseParser parser, final ResponseView view, final Response sample,
+      final int iterations) {
+    double sum = 0;
+    for (int i = 0; i < iterations; i++) {
+      final List<Message> messages = parser.parse(view);
+      for (int m = 0; m < messages.size(); m++) {
+        sum += messages.get(m).byteAt(messages.get(m).length() - 1);
+      }
+      sample.set(false, Mode.CURRENT_DATA, PID.ENGINE_RPM, messages.get(0), 2, 2);
+      sum += PID.ENGINE_RPM.decodeValue(sample);
+    }
+    return sum;
+  }
+
+
+  private ResponseView view(final String response) {
+    final ReceiveBuffer buffer = new ReceiveBuffer(256);
+    final byte[] bytes = (response + "\r\r>").getBytes(StandardCharsets.US_ASCII);
+    buffer.write(bytes, 0, bytes.length);
+    return buffer.nextResponse();
+  }
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import java.io.File;
+
+import cardiag.serial.PortConfiguration;
+
+/**
+ * Common setup of tests communicating with the {@link Elm327Simulator}.
+ *
+ * @author David Matějček
+ */
+public final class SimulatorFixture {
+
+  private SimulatorFixture() {
+    // static factory methods only
+  }
+
+
+  /**
+   * @param name - the port name.
+   * @return a simulator with short delays, so tests run fast.
+   */
+  public static Elm327Simulator createSimulator(final String name) {
+    final Elm327Simulator simulator = new Elm327Simulator(name);
+    simulator.setLatency(2);
+    simulator.setNoDataDelay(5);
+    simulator.setSearchTime(10);
+    return simulator;
+  }
+
+
+  /**
+   * @param name - the port name.
+   * @param commandTimeout - see {@link PortConfiguration#setCommandTimeout(Long)}
+   * @param cacheDirectory - a temporary directory, null to disable the cache.
+   * @return a configuration without the periodic metrics log.
+   */
+  public static PortConfiguration createConfiguration(final String name, final long commandTimeout,
+      final File cacheDirectory) {
+    final PortConfiguration cfg = new PortConfiguration();
+    cfg.setPortName(name);
+    cfg.setCommandTimeout(commandTimeout);
+    cfg.setCacheDirectory(cacheDirectory);
+    cfg.setMetricsInterval(0L);
+    return cfg;
+  }
+}
@@ -0,0 +1,44 @@
+/**
+ *
+ */
+package cardiag.obd2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class SupportedPIDsTest {
+
+  @Test
+  public void testChain() {
+    final SupportedPIDs pids = new SupportedPIDs();
+    assertTrue(pids.add(PID.PIDS_SUPPORTED, response(PID.PIDS_SUPPORTED, "BE", "1F", "A8", "13")));
+    assertFalse(pids.add(PID.PIDS_SUPPORTED_21_40, response(PID.PIDS_SUPPORTED_21_40, "80", "00", "00", "00")));
+    assertEquals("00 01 03 04 05 06 07 0C 0D 0E 0F 10 11 13 15 1C 1F 20 21", pids.toString());
+    assertTrue(pids.isSupported(PID.ENGINE_RPM));
+    assertFalse(pids.isSupported(PID.ENGINE_OIL_TEMPERATURE));
+    assertFalse(pids.isSupported(PID.PIDS_SUPPORTED_41_60));
+    assertEquals(Arrays.asList(PID.ENGINE_LOAD, PID.ENGINE_RPM),
+        pids.filter(Arrays.asList(PID.ENGINE_LOAD, PID.ENGINE_OIL_TEMPERATURE, PID.ENGINE_RPM, PID.FUEL_RATE)));
+  }
+
+
+  @Test
+  public void testUnknown() {
+    assertTrue(SupportedPIDs.UNKNOWN.isSupported(PID.FUEL_RATE));
+    assertFalse(new SupportedPIDs().add(PID.PIDS_SUPPORTED, new ResponseWithNoData(Mode.CURRENT_DATA,
+        PID.PIDS_SUPPORTED)));
+  }
+
+
+  private Response response(final PID pid, final String... data) {
+    return new Response(false, Mode.CURRENT_DATA, pid, data);
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+import cardiag.obd2.ResponseWithNoData;
+
+/**
+ * @author David Matějček
+ */
+public class MappedSessionReaderTest {
+
+  private static final List<PID> PIDS = Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_LOAD);
+  private static final int CYCLES = 2000;
+  /** Time between cycles in micros */
+  private static final long PERIOD = 10_000L;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private File file;
+
+
+  @Before
+  public void record() throws Exception {
+    this.file = this.folder.newFile("session.cds");
+    final SessionHeader header = new SessionHeader(null, null, System.currentTimeMillis(), PIDS);
+    try (SessionRecorder recorder = new SessionRecorder(this.file, header, false, 1024, 16)) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < CYCLES; i++) {
+        final long time = start + TimeUnit.MICROSECONDS.toNanos(i * PERIOD);
+        recorder.record(time, PID.ENGINE_RPM, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM,
+            new int[] {i >> 8, i & 0xFF}, null));
+        recorder.record(time, PID.VEHICLE_SPEED, new Response(false, Mode.CURRENT_DATA, PID.VEHICLE_SPEED,
+            new int[] {i & 0xFF}, null));
+        recorder.record(time, PID.ENGINE_LOAD, new ResponseWithNoData(Mode.CURRENT_DATA, PID.ENGINE_LOAD));
+      }
+    }
+  }
+
+
+  @Test
+  public void testIndex() throws Exception {
+    final SessionIndex index = SessionIndex.read(SessionIndex.toIndexFile(this.file));
+    assertEquals((CYCLES * 3 + 15) / 16, index.size());
+    assertEquals(0L, index.getTime(0));
+    assertEquals(-1, index.floor(0L));
+    assertEquals(0, index.floor(index.getTime(1)));
+    final int entry = index.floor(PERIOD * 1000);
+    assertTrue(index.getTime(entry) < PERIOD * 1000);
+    assertTrue(index.getTime(entry + 1) >= PERIOD * 1000);
+  }
+
+
+  @Test
+  public void testSelect() throws Exception {
+    try (MappedSessionReader reader = new MappedSessionReader(this.file, 1000L)) {
+      assertTrue(reader.getIndex().size() > 0);
+      final long from = PERIOD * 1234;
+      final long to = PERIOD * 1300;
+      final MappedSessionReader.Cursor cursor = reader.select(from, to, PID.ENGINE_RPM);
+      for (int i = 1234; i <= 1300; i++) {
+        final SessionReader.Sample sample = cursor.next();
+        assertEquals(PID.ENGINE_RPM, sample.getPID());
+        assertEquals(PERIOD * i, sample.getTime());
+        assertEquals(i, sample.getResponse().u16At(0));
+      }
+      assertNull(cursor.next());
+    }
+  }
+
+
+  @Test
+  public void testSameAsSequentialReader() throws Exception {
+    final List<String> expected = new ArrayList<>();
+    try (SessionReader reader = new SessionReader(this.file)) {
+      for (SessionReader.Sample sample = reader.next(); sample != null; sample = reader.next()) {
+        expected.add(sample.toString());
+      }
+    }
+    assertEquals(CYCLES * 3, expected.size());
+    final List<String> mapped = new ArrayList<>();
+    try (MappedSessionReader reader = new MappedSessionReader(this.file, 777L)) {
+      final MappedSessionReader.Cursor cursor = reader.select(0L, Long.MAX_VALUE);
+      for (SessionReader.Sample sample = cursor.next(); sample != null; sample = cursor.next()) {
+        mapped.add(sample.toString());
+      }
+    }
+    assertEquals(expected, mapped);
+  }
+
+
+  @Test
+  public void testWithoutIndex() throws Exception {
+    assertTrue(SessionIndex.toIndexFile(this.file).delete());
+    try (MappedSessionReader reader = new MappedSessionReader(this.file)) {
+      assertEquals(0, reader.getIndex().size());
+      final MappedSessionReader.Cursor cursor = reader.select(PERIOD * 5, PERIOD * 6, PID.ENGINE_LOAD);
+      for (int i = 5; i <= 6; i++) {
+        final SessionReader.Sample sample = cursor.next();
+        assertEquals(PID.ENGINE_LOAD, sample.getPID());
+        assertEquals(PERIOD * i, sample.getTime());
+        assertTrue(sample.getResponse().isError());
+      }
+      assertNull(cursor.next());
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Protocol;
+import cardiag.obd2.Response;
+import cardiag.obd2.ResponseWithNoData;
+
+/**
+ * @author David Matějček
+ */
+public class SessionRecorderTest {
+
+  private static final List<PID> PIDS = Arrays.asList(PID.ENGINE_LOAD, PID.ENGINE_RPM, PID.VEHICLE_SPEED,
+      PID.ENGINE_COOLANT_TEMPERATURE);
+  private static final String VIN = "WVWZZZ1JZXW000001";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  @Test
+  public void testChannel() throws Exception {
+    roundTrip(false, 512);
+  }
+
+
+  @Test
+  public void testMapped() throws Exception {
+    roundTrip(true, 512);
+  }
+
+
+  private void roundTrip(final boolean mapped, final int bufferSize) throws Exception {
+    final File file = this.folder.newFile();
+    final SessionHeader header = new SessionHeader(VIN, Protocol.ISO_15765_4_CAN_11_500, 1_500_000_000_000L, PIDS);
+    final int count = 1000;
+    final long start;
+    try (SessionRecorder recorder = new SessionRecorder(file, header, mapped, bufferSize)) {
+      start = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        final long time = start + TimeUnit.MILLISECONDS.toNanos(i * 50L);
+        recorder.record(time, PID.ENGINE_RPM, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM,
+            new int[] {i >> 8 & 0xFF, i & 0xFF}, null));
+        recorder.record(time, PID.VEHICLE_SPEED, new ResponseWithNoData(Mode.CURRENT_DATA, PID.VEHICLE_SPEED));
+      }
+      assertEquals(count * 2, recorder.getRecords());
+    }
+
+    try (SessionReader reader = new SessionReader(file)) {
+      assertEquals(VIN, reader.getHeader().getVin());
+      assertEquals(Protocol.ISO_15765_4_CAN_11_500, reader.getHeader().getProtocol());
+      assertEquals(1_500_000_000_000L, reader.getHeader().getStartTime());
+      assertEquals(PIDS, reader.getHeader().getPIDs());
+      long previous = -1;
+      for (int i = 0; i < count; i++) {
+        final SessionReader.Sample rpm = reader.next();
+        assertEquals(PID.ENGINE_RPM, rpm.getPID());
+        assertFalse(rpm.getResponse().isError());
+        assertEquals(2, rpm.getResponse().length());
+        assertEquals(i, rpm.getResponse().u16At(0));
+        assertTrue("monotonic", rpm.getTime() >= previous);
+        previous = rpm.getTime();
+        final SessionReader.Sample speed = reader.next();
+        assertEquals(PID.VEHICLE_SPEED, speed.getPID());
+        assertTrue(speed.getResponse().isError());
+        assertEquals(rpm.getTime(), speed.getTime());
+      }
+      assertNull(reader.next());
+      assertNull(reader.next());
+    }
+  }
+
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownPID() throws Exception {
+    final SessionHeader header = new SessionHeader(null, null, 0L, PIDS);
+    try (SessionRecorder recorder = new SessionRecorder(this.folder.newFile(), header)) {
+      recorder.record(PID.FUEL_RATE, new Response(false, Mode.CURRENT_DATA, PID.FUEL_RATE, "00", "10"));
+    }
+  }
+
+
+  @Test
+  public void testSizeComparedToText() throws Exception {
+    final File text = this.folder.newFile();
+    final File binary = this.folder.newFile();
+    final SessionHeader header = new SessionHeader(VIN, null, System.currentTimeMillis(), PIDS);
+    try (WatchStreamWriter writer = new WatchStreamWriter(text);
+        SessionRecorder recorder = new SessionRecorder(binary, header)) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < 1000; i++) {
+        final long nanoTime = start + TimeUnit.MILLISECONDS.toNanos(i * 100L);
+        final long millis = header.getStartTime() + i * 100L;
+        for (final PID pid : PIDS) {
+          final int[] data = pid == PID.ENGINE_RPM ? new int[] {0x1A, i & 0xFF} : new int[] {i & 0xFF};
+          final Response response = new Response(false, Mode.CURRENT_DATA, pid, data, null);
+          writer.write(millis, pid, response);
+          recorder.record(nanoTime, pid, response);
+        }
+      }
+    }
+    assertTrue("text: " + text.length() + ", binary: " + binary.length(), binary.length() * 8 < text.length());
+  }
+}
@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.OBD2Standard;
+import cardiag.obd2.PID;
+import cardiag.obd2.Protocol;
+import cardiag.obd2.Response;
+import cardiag.obd2.ResponseWithNoData;
+import cardiag.obd2.SimulatorFixture;
+import cardiag.serial.PortConfiguration;
+
+/**
+ * @author David Matějček
+ */
+public class SessionReplayTest {
+
+  private static final String VIN = "WVWZZZ1JZXW000001";
+  private static final int CYCLES = 10;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private File file;
+  private PortConfiguration cfg;
+
+
+  @Before
+  public void record() throws Exception {
+    this.file = this.folder.newFile("session.cds");
+    final SessionHeader header = new SessionHeader(VIN, Protocol.ISO_15765_4_CAN_29_500, System.currentTimeMillis(),
+        Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED));
+    try (SessionRecorder recorder = new SessionRecorder(this.file, header)) {
+      final long start = System.nanoTime();
+      for (int i = 0; i < CYCLES; i++) {
+        final long time = start + TimeUnit.MILLISECONDS.toNanos(i * 100L);
+        recorder.record(time, PID.ENGINE_RPM, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM,
+            new int[] {0, i * 4}, null));
+        recorder.record(time, PID.VEHICLE_SPEED, new Response(false, Mode.CURRENT_DATA, PID.VEHICLE_SPEED,
+            new int[] {i * 10}, null));
+      }
+    }
+    this.cfg = SimulatorFixture.createConfiguration(this.file.getName(), 1000L, null);
+    this.cfg.setMaxBaudRate(0);
+  }
+
+
+  @Test
+  public void testStepByRequests() throws Exception {
+    final SessionReplay replay = new SessionReplay(this.file);
+    replay.setSpeed(0);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, replay);
+    try {
+      assertEquals(Protocol.ISO_15765_4_CAN_29_500, obd2.getProtocol());
+      assertEquals(VIN, obd2.getVIN());
+      assertTrue(obd2.getSupportedPIDs().isSupported(PID.VEHICLE_SPEED));
+      assertFalse(obd2.getSupportedPIDs().isSupported(PID.ENGINE_LOAD));
+      for (int i = 0; i < CYCLES; i++) {
+        assertEquals(i, obd2.getValue(false, PID.ENGINE_RPM), 0.01);
+      }
+      // samples of the vehicle speed waited for their requests
+      for (int i = 0; i < CYCLES; i++) {
+        assertFalse(replay.isFinished());
+        assertEquals(i * 10, obd2.getValue(false, PID.VEHICLE_SPEED), 0.01);
+      }
+      assertTrue(replay.isFinished());
+      assertNull(obd2.getValue(false, PID.VEHICLE_SPEED));
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testBatchesAndNoData() throws Exception {
+    final File session = this.folder.newFile("nodata.cds");
+    final SessionHeader header = new SessionHeader(VIN, Protocol.ISO_15765_4_CAN_29_500, System.currentTimeMillis(),
+        Arrays.asList(PID.ENGINE_RPM, PID.VEHICLE_SPEED, PID.ENGINE_LOAD));
+    try (SessionRecorder recorder = new SessionRecorder(session, header)) {
+      for (int i = 0; i < CYCLES; i++) {
+        recorder.record(PID.ENGINE_RPM, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM, new int[] {0, i * 4},
+            null));
+        if (i % 2 == 0) {
+          recorder.record(PID.ENGINE_LOAD, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_LOAD,
+              new int[] {i * 51 / 2}, null));
+        }
+        if (i == 5) {
+          recorder.record(PID.VEHICLE_SPEED, new ResponseWithNoData(Mode.CURRENT_DATA, PID.VEHICLE_SPEED));
+        } else {
+          recorder.record(PID.VEHICLE_SPEED, new Response(false, Mode.CURRENT_DATA, PID.VEHICLE_SPEED,
+              new int[] {i * 10}, null));
+        }
+      }
+    }
+    final Map<PID, List<Double>> values = replay(session);
+    assertEquals(Arrays.asList(0d, 1d, 2d, 3d, 4d, 5d, 6d, 7d, 8d, 9d), values.get(PID.ENGINE_RPM));
+    // the PID missing in the response to the learned count of messages is asked again alone
+    assertEquals(Arrays.asList(0d, 10d, 20d, 30d, 40d, 60d, 70d, 80d, 90d, Double.NaN),
+        values.get(PID.VEHICLE_SPEED));
+    // the engine load has less samples, then it has no data
+    assertEquals(Arrays.asList(0d, 20d, 40d, 60d, 80d, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN),
+        values.get(PID.ENGINE_LOAD));
+    // the replay is reproducible
+    assertEquals(values, replay(session));
+  }
+
+
+  /**
+   * Polls all PIDs of the session in multi-PID requests until the replay finishes.
+   *
+   * @return replayed values, NaN for NO DATA.
+   */
+  private Map<PID, List<Double>> replay(final File session) throws Exception {
+    final SessionReplay replay = new SessionReplay(session);
+    replay.setSpeed(0);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, replay);
+    try {
+      final List<PID> pids = replay.getHeader().getPIDs();
+      final Map<PID, List<Double>> values = new LinkedHashMap<>();
+      for (final PID pid : pids) {
+        values.put(pid, new ArrayList<>());
+      }
+      // the back-off after NO DATA would only delay next samples of the PID
+      obd2.getNegativeCache().setBackoff(0, 0);
+      for (int i = 0; i < 100 && !replay.isFinished(); i++) {
+        obd2.askBatch(Mode.CURRENT_DATA, pids, (pid, response) -> values.get(pid).add(pid.decodeValue(response)));
+      }
+      assertTrue(replay.isFinished());
+      return values;
+    } finally {
+      obd2.close();
+    }
+  }
+
+
+  @Test
+  public void testSpeed() throws Exception {
+    final SessionReplay replay = new SessionReplay(this.file);
+    replay.setSpeed(10);
+    final OBD2Standard obd2 = new OBD2Standard(this.cfg, replay);
+    try {
+      obd2.getValue(false, PID.VEHICLE_SPEED);
+      final long start = System.nanoTime();
+      while (!replay.isFinished() && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5)) {
+        Thread.sleep(5L);
+      }
+      final long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue("finished in " + duration + " ms", replay.isFinished());
+      assertTrue("finished in " + duration + " ms", duration >= 70L);
+      assertEquals((CYCLES - 1) * 10, obd2.getValue(false, PID.VEHICLE_SPEED), 0.01);
+    } finally {
+      obd2.close();
+    }
+  }
+}
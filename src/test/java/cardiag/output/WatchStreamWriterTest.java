@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package cardiag.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.obd2.Mode;
+import cardiag.obd2.PID;
+import cardiag.obd2.Response;
+import cardiag.obd2.ResponseWithNoData;
+
+/**
+ * @author David Matějček
+ */
+public class WatchStreamWriterTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  @Test
+  public void testFormat() throws Exception {
+    final File file = this.folder.newFile();
+    final long time = System.currentTimeMillis();
+    final String timestamp = new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(time));
+    try (WatchStreamWriter writer = new WatchStreamWriter(file)) {
+      writer.write(time, PID.ENGINE_RPM, new Response(false, Mode.CURRENT_DATA, PID.ENGINE_RPM, "1A", "F8"));
+      writer.write(time, PID.ENGINE_COOLANT_TEMPERATURE,
+          new Response(false, Mode.CURRENT_DATA, PID.ENGINE_COOLANT_TEMPERATURE, "7B"));
+      writer.write(time, PID.ENGINE_OIL_TEMPERATURE, new ResponseWithNoData(Mode.CURRENT_DATA,
+          PID.ENGINE_OIL_TEMPERATURE));
+      writer.write(time, "Load", 33.333, "%");
+      writer.write(time, "Trim", -0.5, null);
+      writer.write(time, "Status", "00 07 E5", null);
+    }
+    final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    assertEquals(6, lines.size());
+    assertEquals(timestamp + " Engine speed: 1726.0 rpm", lines.get(0));
+    assertEquals(timestamp + ' ' + PID.ENGINE_COOLANT_TEMPERATURE.getDescription() + ": 83.0 "
+        + PID.ENGINE_COOLANT_TEMPERATURE.getUnit(), lines.get(1));
+    assertTrue(lines.get(2), lines.get(2).endsWith(": -- " + PID.ENGINE_OIL_TEMPERATURE.getUnit()));
+    assertEquals(timestamp + " Load: 33.33 %", lines.get(3));
+    assertEquals(timestamp + " Trim: -0.5", lines.get(4));
+    assertEquals(timestamp + " Status: 00 07 E5", lines.get(5));
+  }
+
+
+  @Test
+  public void testFlushPolicy() throws Exception {
+    final File file = this.folder.newFile();
+    try (WatchStreamWriter writer = new WatchStreamWriter(file, 8192, 50L)) {
+      writer.write(System.currentTimeMillis(), "Speed", 50, "km/h");
+      assertEquals(0, file.length());
+      final long deadline = System.currentTimeMillis() + 2000L;
+      while (file.length() == 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10L);
+      }
+      assertTrue("flushed by time", file.length() > 0);
+      final long flushed = file.length();
+      for (int i = 0; i < 1000; i++) {
+        writer.write(System.currentTimeMillis(), "Speed", i, "km/h");
+      }
+      assertTrue("flushed by size", file.length() > flushed + 8192 / 2);
+    }
+  }
+
+
+  @Test
+  public void testWritingDoesNotAllocate() throws Exception {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    final int iterations = 100_000;
+    try (WatchStreamWriter writer = new WatchStreamWriter(this.folder.newFile())) {
+      final long time = System.currentTimeMillis();
+      for (int i = 0; i < iterations; i++) {
+        writer.write(time + i, "Engine load", i * 0.01, "%");
+      }
+      final long threadId = Thread.currentThread().getId();
+      final long before = threads.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < iterations; i++) {
+        writer.write(time + i, "Engine load", i * 0.01, "%");
+      }
+      final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+      assertTrue("Allocated " + allocated + " bytes for " + iterations + " lines", allocated < iterations);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author David Matějček
+ */
+public class CaptureReplayTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+  private CaptureReplay replay;
+
+
+  @Before
+  public void init() throws Exception {
+    final File file = this.folder.newFile();
+    try (WireCaptureWriter writer = new WireCaptureWriter(file)) {
+      final long ms = TimeUnit.MILLISECONDS.toNanos(1);
+      write(writer, WireCapture.WRITE, 0L, "ATI\r");
+      write(writer, WireCapture.READ, 10 * ms, "ELM327 v1.5\r\r");
+      write(writer, WireCapture.READ, 20 * ms, ">");
+      write(writer, WireCapture.WRITE, 30 * ms, "010D\r");
+      write(writer, WireCapture.READ, 130 * ms, "41 0D 32\r\r>");
+      write(writer, WireCapture.WRITE, 200 * ms, "010C\r");
+      write(writer, WireCapture.READ, 300 * ms, "41 0C 1A F8\r\r>");
+    }
+    this.replay = new CaptureReplay("capture", WireCapture.read(file));
+    assertTrue(this.replay.open());
+  }
+
+
+  @After
+  public void close() {
+    this.replay.close();
+  }
+
+
+  private static void write(final WireCaptureWriter writer, final int direction, final long time,
+      final String text) throws Exception {
+    final byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+    writer.write(direction, time, bytes, 0, bytes.length);
+  }
+
+
+  @Test
+  public void testCapturedSpeed() throws Exception {
+    final long start = System.nanoTime();
+    assertEquals("ELM327 v1.5\r\r>", request("ATI\r"));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    assertFalse(this.replay.isFinished());
+  }
+
+
+  @Test
+  public void testSkippedAndDivergedWrites() throws Exception {
+    this.replay.setSpeed(0);
+    // the host didn't send ATI and 010D
+    assertEquals("41 0C 1A F8\r\r>", request("010C\r"));
+    assertTrue(this.replay.isFinished());
+  }
+
+
+  @Test
+  public void testDivergedWrite() throws Exception {
+    this.replay.setSpeed(0);
+    assertEquals("ELM327 v1.5\r\r>", request("ATZ\r"));
+    assertEquals("41 0D 32\r\r>", request("010D\r"));
+  }
+
+
+  private String request(final String command) throws Exception {
+    this.replay.writeBytes(command.getBytes(StandardCharsets.US_ASCII));
+    final StringBuilder response = new StringBuilder();
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (response.indexOf(">") < 0 && System.nanoTime() < deadline) {
+      final byte[] bytes = this.replay.readBytes();
+      if (bytes == null) {
+        Thread.sleep(1L);
+      } else {
+        response.append(new String(bytes, StandardCharsets.US_ASCII));
+      }
+    }
+    return response.toString();
+  }
+}
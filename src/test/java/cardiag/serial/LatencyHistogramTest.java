@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class LatencyHistogramTest {
+
+  @Test
+  public void testBuckets() {
+    for (int micros = 0; micros < 1_000_000; micros += 7) {
+      final long upperBound = LatencyHistogram.toUpperBound(LatencyHistogram.toBucket(micros));
+      assertTrue(micros + " > " + upperBound, micros <= upperBound);
+      assertTrue(micros + " << " + upperBound, upperBound < 16 || upperBound - micros <= micros / 8);
+    }
+    assertEquals(Integer.MAX_VALUE, LatencyHistogram.toUpperBound(LatencyHistogram.toBucket(Integer.MAX_VALUE)));
+  }
+
+
+  @Test
+  public void testPercentile() {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentile(0.99));
+    for (int i = 0; i < 99; i++) {
+      histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+    histogram.record(TimeUnit.SECONDS.toNanos(2));
+    assertEquals(100, histogram.getCount());
+    assertEquals(50, TimeUnit.MICROSECONDS.toMillis(histogram.getPercentile(0.99)), 50 / 8);
+    assertEquals(2000, TimeUnit.MICROSECONDS.toMillis(histogram.getPercentile(1)), 2000 / 8);
+  }
+
+
+  @Test
+  public void testConcurrentRecording() throws Exception {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 10_000; j++) {
+          histogram.record(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+      });
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(40_000, histogram.getCount());
+    assertEquals(20, TimeUnit.MICROSECONDS.toMillis(histogram.getPercentile(0.5)), 20 / 8);
+  }
+}
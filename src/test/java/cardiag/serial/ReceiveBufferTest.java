@@ -0,0 +1,81 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @author David Matějček
+ */
+public class ReceiveBufferTest {
+
+  @Test
+  public void testEchoAndSearching() {
+    final ReceiveBuffer buffer = new ReceiveBuffer(64);
+    buffer.prepare("01", "00");
+    assertFalse(write(buffer, "0100\rSEARCHING...\r"));
+    assertNull(buffer.nextResponse());
+    assertTrue(write(buffer, "41 00 BE 3E B8 11 \r\r>"));
+    final ResponseView view = buffer.nextResponse();
+    assertEquals("41 00 BE 3E B8 11", view.toString());
+    assertTrue(view.isSearching());
+    assertEquals(1, view.getLineCount());
+    assertTrue(view.startsWith("41 00"));
+    assertEquals(0, buffer.available());
+  }
+
+
+  @Test
+  public void testMultiLineAndReuse() {
+    final ReceiveBuffer buffer = new ReceiveBuffer(40);
+    buffer.prepare("03");
+    write(buffer, "\0\r43 01 33 00 00\r\n43 00 00 00 00\r\r>");
+    final ResponseView view = buffer.nextResponse();
+    assertEquals("43 01 33 00 00\r43 00 00 00 00", view.toString());
+    assertEquals(2, view.getLineCount());
+
+    buffer.prepare("01", "0D");
+    write(buffer, "NO DATA\r\r>");
+    assertSame(view, buffer.nextResponse());
+    assertTrue(view.contentEquals("NO DATA"));
+    assertFalse(view.isSearching());
+  }
+
+
+  @Test
+  public void testTwoResponses() {
+    final ReceiveBuffer buffer = new ReceiveBuffer(32);
+    write(buffer, "OK\r\r>ELM327 v1.5\r\r>");
+    assertEquals("OK", buffer.nextResponse().toString());
+    assertEquals("ELM327 v1.5", buffer.nextResponse().toString());
+    assertNull(buffer.nextResponse());
+  }
+
+
+  @Test
+  public void testOverflow() {
+    final ReceiveBuffer buffer = new ReceiveBuffer(16);
+    assertTrue(write(buffer, "0123456789ABCDEF0123456789\r>"));
+    assertEquals(12, buffer.getDropped());
+    assertEquals("CDEF0123456789", buffer.nextResponse().toString());
+    assertEquals(0, buffer.available());
+    write(buffer, "OK\r>");
+    assertEquals("OK", buffer.nextResponse().toString());
+    assertEquals(12, buffer.getDropped());
+  }
+
+
+  private boolean write(final ReceiveBuffer buffer, final String data) {
+    final byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+    return buffer.write(bytes, 0, bytes.length);
+  }
+}
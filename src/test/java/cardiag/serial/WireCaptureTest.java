@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author David Matějček
+ */
+public class WireCaptureTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final File file = this.folder.newFile();
+    final byte[] request = "010C\r".getBytes(StandardCharsets.US_ASCII);
+    final byte[] response = "41 0C 1A F8\r\r>".getBytes(StandardCharsets.US_ASCII);
+    try (WireCaptureWriter writer = new WireCaptureWriter(file)) {
+      writer.write(WireCapture.WRITE, 1000L, request, 0, request.length);
+      writer.write(WireCapture.READ, 21000L, response, 0, 5);
+      writer.write(WireCapture.READ, 22000L, response, 5, response.length - 5);
+    }
+    final List<WireCapture.Record> records = WireCapture.read(file).getRecords();
+    assertEquals(3, records.size());
+    assertEquals(WireCapture.WRITE, records.get(0).getDirection());
+    assertEquals(1000L, records.get(0).getNanoTime());
+    assertArrayEquals(request, records.get(0).getBytes());
+    assertEquals(WireCapture.READ, records.get(1).getDirection());
+    assertEquals(21000L, records.get(1).getNanoTime());
+    assertEquals("41 0C", new String(records.get(1).getBytes(), StandardCharsets.US_ASCII));
+    assertEquals(22000L, records.get(2).getNanoTime());
+  }
+
+
+  @Test
+  public void testRing() throws Exception {
+    final File file = this.folder.newFile();
+    final int blockSize = 128;
+    final int blockCount = 4;
+    try (WireCaptureWriter writer = new WireCaptureWriter(file, blockSize, blockCount)) {
+      for (int i = 0; i < 1000; i++) {
+        final byte[] bytes = Integer.toString(i).getBytes(StandardCharsets.US_ASCII);
+        writer.write(WireCapture.READ, i * 100L, bytes, 0, bytes.length);
+      }
+    }
+    assertTrue(file.length() <= WireCapture.HEADER_LENGTH + blockSize * blockCount);
+    final List<WireCapture.Record> records = WireCapture.read(file).getRecords();
+    assertTrue(records.size() > 20);
+    for (int i = 0; i < records.size(); i++) {
+      final int expected = 1000 - records.size() + i;
+      assertEquals(Integer.toString(expected), new String(records.get(i).getBytes(), StandardCharsets.US_ASCII));
+      assertEquals(expected * 100L, records.get(i).getNanoTime());
+    }
+  }
+
+
+  @Test
+  public void testSplitRecord() throws Exception {
+    final File file = this.folder.newFile();
+    final byte[] bytes = new byte[500];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    try (WireCaptureWriter writer = new WireCaptureWriter(file, 128, 16)) {
+      writer.write(WireCapture.WRITE, 5L, bytes, 0, bytes.length);
+    }
+    final List<WireCapture.Record> records = WireCapture.read(file).getRecords();
+    assertTrue(records.size() > 1);
+    int offset = 0;
+    for (final WireCapture.Record record : records) {
+      assertEquals(5L, record.getNanoTime());
+      for (final byte b : record.getBytes()) {
+        assertEquals(bytes[offset++], b);
+      }
+    }
+    assertEquals(bytes.length, offset);
+  }
+}
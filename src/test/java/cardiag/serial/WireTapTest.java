@@ -0,0 +1,97 @@
+/**
+ *
+ */
+package cardiag.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cardiag.obd2.Elm327Simulator;
+import cardiag.obd2.OBD2Standard;
+import cardiag.obd2.PID;
+import cardiag.obd2.SimulatorFixture;
+
+/**
+ * @author David Matějček
+ */
+public class WireTapTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    final File file = this.folder.newFile();
+    final int producers = 4;
+    final int count = 20000;
+    final WireTap tap = new WireTap(new WireCaptureWriter(file, 64 * 1024, 64), 1024);
+    final List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      final Thread thread = new Thread(() -> {
+        for (int i = 0; i < count; i++) {
+          tap.read(ByteBuffer.allocate(8).putInt(producer).putInt(i).array());
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    tap.close();
+
+    final List<WireCapture.Record> records = WireCapture.read(file).getRecords();
+    assertEquals(producers * count, records.size() + tap.getDropped());
+    final int[] last = new int[producers];
+    Arrays.fill(last, -1);
+    for (final WireCapture.Record record : records) {
+      final ByteBuffer bytes = ByteBuffer.wrap(record.getBytes());
+      final int producer = bytes.getInt();
+      final int value = bytes.getInt();
+      assertTrue("order of the producer " + producer, value > last[producer]);
+      last[producer] = value;
+    }
+  }
+
+
+  @Test
+  public void testCaptureAndReplay() throws Exception {
+    final File file = this.folder.newFile();
+    final PortConfiguration cfg = SimulatorFixture.createConfiguration("simulator", 1000L, null);
+    cfg.setMaxBaudRate(0);
+    cfg.setCaptureFile(file);
+    final Elm327Simulator simulator = SimulatorFixture.createSimulator("simulator");
+    final OBD2Standard obd2 = new OBD2Standard(cfg, simulator);
+    final Double rpm;
+    try {
+      rpm = obd2.getValue(false, PID.ENGINE_RPM);
+    } finally {
+      obd2.close();
+    }
+    final WireCapture capture = WireCapture.read(file);
+    assertTrue(capture.toString(), capture.getRecords().size() > 10);
+    assertEquals(WireCapture.WRITE, capture.getRecords().get(0).getDirection());
+
+    cfg.setCaptureFile(null);
+    final CaptureReplay replay = new CaptureReplay("replay", capture);
+    replay.setSpeed(0);
+    final OBD2Standard replayed = new OBD2Standard(cfg, replay);
+    try {
+      assertEquals(rpm, replayed.getValue(false, PID.ENGINE_RPM));
+    } finally {
+      replayed.close();
+    }
+  }
+}
@@ -33,4 +33,17 @@ public class UserCommunicationTest {
     assertNull(selectedPort);
   }
 
+
+  @Test
+  public void testConfirm() {
+    final ConsoleMock console = new ConsoleMock();
+    final UserCommunication comm = new UserCommunication(console);
+    console.appendLine(" y");
+    assertTrue(comm.confirm("Really?"));
+    console.appendLine("");
+    assertFalse(comm.confirm("Really?"));
+    console.appendLine(null);
+    assertFalse(comm.confirm("Really?"));
+  }
+
 }